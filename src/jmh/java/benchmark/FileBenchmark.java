@@ -0,0 +1,125 @@
+package benchmark;
+
+import com.dampcake.bencode.Bencode;
+import com.dampcake.bencode.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uploadresetter.QbtUploadResetter;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the per-file steps of a reset on a single synthetic .fastresume and .torrent pair.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Djmh.args="FileBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileBenchmark {
+    private static final Bencode BENCODE = new Bencode();
+
+    @Param({"2048", "32768"})
+    public int pieces;
+
+    @Param({"1", "500"})
+    public int files;
+
+    private File folder;
+    private File fastresume;
+    private File torrent;
+    private byte[] original;
+    private byte[] data;
+    private int resetLength;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        folder = Files.createTempDirectory("qbt-benchmark").toFile();
+        fastresume = new SyntheticBackupGenerator(pieces, files, 42).generate(folder, 1).get(0);
+        torrent = new File(fastresume.getPath().replace(".fastresume", ".torrent"));
+        original = Files.readAllBytes(fastresume.toPath());
+        data = original.clone();
+        resetLength = QbtUploadResetter.resetUploadedAmount(original.clone());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : folder.listFiles()) {
+            file.delete();
+        }
+        folder.delete();
+    }
+
+    @Benchmark
+    public byte[] readFileToByteArray() {
+        return QbtUploadResetter.readFileToByteArray(fastresume);
+    }
+
+    @Benchmark
+    public int resetUploadedAmount() {
+        System.arraycopy(original, 0, data, 0, original.length);
+        return QbtUploadResetter.resetUploadedAmount(data);
+    }
+
+    @Benchmark
+    public int resetUploadedAmountVerified() throws Throwable {
+        System.arraycopy(original, 0, data, 0, original.length);
+        return Resetter.resetUploadedAmountVerified(data);
+    }
+
+    @Benchmark
+    public int resetUploadedAmountByRules() throws Throwable {
+        System.arraycopy(original, 0, data, 0, original.length);
+        return Resetter.resetUploadedAmountByRules(data);
+    }
+
+    /**
+     * Reset followed by a full decode of the result, as a baseline for {@link #resetUploadedAmountVerified()}.
+     */
+    @Benchmark
+    public Map<String, Object> resetUploadedAmountDecoded() {
+        System.arraycopy(original, 0, data, 0, original.length);
+        int length = QbtUploadResetter.resetUploadedAmount(data);
+        return BENCODE.decode(Arrays.copyOf(data, length), Type.DICTIONARY);
+    }
+
+    @Benchmark
+    public Long scanUploadedValue() {
+        return QbtUploadResetter.scanUploadedValue(fastresume);
+    }
+
+    @Benchmark
+    public void saveFileWithResetData() throws Throwable {
+        Resetter.saveFileWithResetData(original, resetLength, fastresume);
+    }
+
+    @Benchmark
+    public String getTorrentName() {
+        return QbtUploadResetter.getTorrentName(fastresume.getPath());
+    }
+
+    /**
+     * Full decode of the .torrent file, as a baseline for {@link #getTorrentName()}.
+     */
+    @Benchmark
+    public Map<String, Object> decodeTorrentFile() {
+        return QbtUploadResetter.decodeTorrentFile(torrent);
+    }
+}
@@ -0,0 +1,72 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uploadresetter.ResetEngine;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of a ResetEngine over a synthetic BT_backup folder, which is generated again before
+ * every iteration so that each one resets every file.
+ * Larger folders can be selected with -p torrents=10000,100000.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Djmh.args="ProcessFilesBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessFilesBenchmark {
+    @Param({"1000"})
+    public int torrents;
+
+    @Param({"256"})
+    public int pieces;
+
+    @Param({"1"})
+    public int files;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"none"})
+    public String fsync;
+
+    private File folder;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("qbt-benchmark").toFile();
+        new SyntheticBackupGenerator(pieces, files, 42).generate(folder, torrents);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        for (File file : folder.listFiles()) {
+            file.delete();
+        }
+        folder.delete();
+    }
+
+    @Benchmark
+    public ResetEngine.Summary resetFolder() throws Exception {
+        try (ResetEngine engine = ResetEngine.builder().threads(threads).durability(fsync).build()) {
+            return engine.resetFolder(folder);
+        }
+    }
+}
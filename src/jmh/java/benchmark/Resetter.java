@@ -0,0 +1,95 @@
+package benchmark;
+
+import uploadresetter.QbtUploadResetter;
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resetter gives the benchmarks access to the package-private patching and writing classes of the
+ * {@code uploadresetter} package. The methods are bound once through constant method handles, which the JIT
+ * inlines like direct calls. The public API of QbtUploadResetter and ResetEngine is called directly.
+ */
+final class Resetter {
+    private static final MethodHandle PATCH_AND_VERIFY;
+    private static final MethodHandle PATCH;
+    private static final MethodHandle WRITE;
+    private static final Object UPLOADED_PATCHER;
+    // Sets total_uploaded by rules that read total_downloaded and the trackers
+    private static final Object RULES_PATCHER;
+    // Writes without flushing to the disk, like --fsync none
+    private static final Object UNSYNCED_WRITER;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            // Patching returns the patched array and its length, of which the benchmarks return the length.
+            Method getLength = Class.forName("uploadresetter.FastresumePatcher$Patched")
+                    .getDeclaredMethod("getLength");
+            getLength.setAccessible(true);
+            MethodHandle patchedLength = lookup.unreflect(getLength);
+            Class<?> patcherClass = Class.forName("uploadresetter.FastresumePatcher");
+            Method patch = Class.forName("uploadresetter.PatchVerifier").getDeclaredMethod("patch",
+                    patcherClass, byte[].class, String[].class);
+            patch.setAccessible(true);
+            PATCH_AND_VERIFY = MethodHandles.filterReturnValue(lookup.unreflect(patch), patchedLength).asType(
+                    MethodType.methodType(int.class, Object.class, byte[].class, String[].class));
+            Field patcher = QbtUploadResetter.class.getDeclaredField("UPLOADED_PATCHER");
+            patcher.setAccessible(true);
+            UPLOADED_PATCHER = patcher.get(null);
+            Class<?> rulesClass = Class.forName("uploadresetter.ResetRules");
+            Method parseRules = rulesClass.getDeclaredMethod("parse", List.class);
+            parseRules.setAccessible(true);
+            Constructor<?> withRules = patcherClass.getDeclaredConstructor(List.class, rulesClass);
+            withRules.setAccessible(true);
+            RULES_PATCHER = withRules.newInstance(Collections.singletonList("total_uploaded"), parseRules.invoke(null,
+                    Arrays.asList("ratio 0.5 if tracker=example.org", "scale 0.5")));
+            Method patchMethod = patcherClass.getDeclaredMethod("patch", byte[].class);
+            patchMethod.setAccessible(true);
+            PATCH = MethodHandles.filterReturnValue(lookup.unreflect(patchMethod), patchedLength).asType(
+                    MethodType.methodType(int.class, Object.class, byte[].class));
+            Class<?> writerClass = Class.forName("uploadresetter.AtomicFileWriter");
+            Method parseWriter = writerClass.getDeclaredMethod("parse", String.class);
+            parseWriter.setAccessible(true);
+            UNSYNCED_WRITER = parseWriter.invoke(null, "none");
+            Method write = writerClass.getDeclaredMethod("write", File.class, byte[].class, int.class);
+            write.setAccessible(true);
+            WRITE = lookup.unreflect(write).asType(
+                    MethodType.methodType(void.class, Object.class, File.class, byte[].class, int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Resetter() {
+    }
+
+    /**
+     * Resets the uploaded amount like {@link QbtUploadResetter#resetUploadedAmount(byte[])} with --verify.
+     */
+    static int resetUploadedAmountVerified(byte[] data) throws Throwable {
+        return (int) PATCH_AND_VERIFY.invokeExact(UPLOADED_PATCHER, data, new String[1]);
+    }
+
+    /**
+     * Sets the uploaded amount by rules for a tracker and for all other torrents, like --rule.
+     */
+    static int resetUploadedAmountByRules(byte[] data) throws Throwable {
+        return (int) PATCH.invokeExact(RULES_PATCHER, data);
+    }
+
+    /**
+     * Atomically replaces the file like {@link QbtUploadResetter#saveFileWithResetData(byte[], int, String)},
+     * without flushing it to the disk, as with --fsync none.
+     */
+    static void saveFileWithResetData(byte[] data, int length, File file) throws Throwable {
+        WRITE.invokeExact(UNSYNCED_WRITER, file, data, length);
+    }
+}
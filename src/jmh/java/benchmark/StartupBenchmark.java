@@ -0,0 +1,153 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup benchmark of the packaged application, run as a separate process over a small synthetic folder
+ * the way a cron job runs it. The variants are the jar-with-dependencies, the same jar with the AppCDS
+ * archive of the appcds profile, and the executable of the native profile; all of them must have been
+ * built first, for example with mvn -Pappcds,native package.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Djmh.args="StartupBenchmark -p variant=jar,appcds,native"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+    private static final String FIRST_FILE_PREFIX = "Processing file: ";
+
+    @Param({"jar"})
+    public String variant;
+
+    @Param({"100"})
+    public int torrents;
+
+    private File folder;
+    private List<String> command;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File target = new File(System.getProperty("qbt.target", "target")).getAbsoluteFile();
+        File jar = new File(target, "qBittorrent-upload-resetter-1.0-jar-with-dependencies.jar");
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        switch (variant) {
+            case "jar":
+                command = new ArrayList<>(Arrays.asList(java, "-jar", require(jar).getPath()));
+                break;
+            case "appcds":
+                File archive = require(new File(target, "qBittorrent-upload-resetter.jsa"));
+                command = new ArrayList<>(Arrays.asList(java, "-XX:SharedArchiveFile=" + archive.getPath(), "-jar",
+                        require(jar).getPath()));
+                break;
+            case "native":
+                command = new ArrayList<>(Arrays.asList(require(new File(target, "qbt-upload-resetter")).getPath()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown variant: " + variant);
+        }
+        folder = Files.createTempDirectory("qbt-benchmark").toFile();
+        new SyntheticBackupGenerator(256, 1, 42).generate(folder, torrents);
+        command.addAll(Arrays.asList("-p", folder.getPath(), "--no-cache", "--fsync", "none", "-t", "1"));
+    }
+
+    private static File require(File file) {
+        if (!file.exists()) {
+            throw new IllegalStateException("Not built: " + file.getPath());
+        }
+        return file;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : folder.listFiles()) {
+            file.delete();
+        }
+        folder.delete();
+    }
+
+    @TearDown(Level.Invocation)
+    public void awaitExit() throws InterruptedException {
+        if (process != null) {
+            process.waitFor();
+            process = null;
+        }
+    }
+
+    /**
+     * Measures the whole run, from starting the process until it exits.
+     */
+    @Benchmark
+    public int run() throws IOException, InterruptedException {
+        process = start();
+        drain(process, false);
+        return process.waitFor();
+    }
+
+    /**
+     * Measures the time until the first file has been reset, which is mostly the startup time.
+     */
+    @Benchmark
+    public boolean timeToFirstFile() throws IOException {
+        process = start();
+        return drain(process, true);
+    }
+
+    private Process start() throws IOException {
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    /**
+     * Reads the output of the process, up to the line of the first file if requested. The rest is read on
+     * another thread so that the process does not block on a full pipe.
+     *
+     * @return true if a file was processed.
+     */
+    private static boolean drain(Process process, boolean untilFirstFile) throws IOException {
+        BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8));
+        String line;
+        while ((line = out.readLine()) != null) {
+            if (untilFirstFile && line.startsWith(FIRST_FILE_PREFIX)) {
+                Thread rest = new Thread(() -> {
+                    try {
+                        while (out.readLine() != null) {
+                            // Discard the remaining output
+                        }
+                    } catch (IOException e) {
+                        // The process has exited
+                    }
+                });
+                rest.setDaemon(true);
+                rest.start();
+                return true;
+            }
+        }
+        return false;
+    }
+}
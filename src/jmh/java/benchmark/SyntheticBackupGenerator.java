@@ -0,0 +1,251 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * SyntheticBackupGenerator writes a BT_backup-like folder of .fastresume and .torrent pairs for benchmarking.
+ * The files follow the layout written by qBittorrent and libtorrent: sorted dictionary keys, one byte
+ * per piece in the resume bitfield, compact peer lists and a 20 byte SHA-1 hash per piece in the torrent.
+ * Files are named after the infohash of their torrent, and the same seed always produces the same folder.
+ *
+ * Usage: java SyntheticBackupGenerator <folder> <torrents> [pieces per torrent] [files per torrent]
+ */
+public final class SyntheticBackupGenerator {
+    static final int DEFAULT_PIECES = 2048;
+    static final int DEFAULT_FILES = 1;
+    private static final int PIECE_LENGTH = 4 * 1024 * 1024;
+    private static final int PEERS = 50;
+
+    private final int pieces;
+    private final int files;
+    private final Random random;
+
+    SyntheticBackupGenerator(int pieces, int files, long seed) {
+        this.pieces = pieces;
+        this.files = files;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java SyntheticBackupGenerator <folder> <torrents> "
+                    + "[pieces per torrent] [files per torrent]");
+            return;
+        }
+        int pieces = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PIECES;
+        int files = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_FILES;
+        File folder = new File(args[0]);
+        new SyntheticBackupGenerator(pieces, files, 42).generate(folder, Integer.parseInt(args[1]));
+        System.out.println("Generated " + args[1] + " torrents in " + folder.getAbsolutePath());
+    }
+
+    /**
+     * Writes the given number of .fastresume and .torrent pairs to a folder.
+     *
+     * @param folder   The folder to write to, created if missing.
+     * @param torrents The number of pairs.
+     * @return The written .fastresume files.
+     * @throws IOException if a file cannot be written.
+     */
+    List<File> generate(File folder, int torrents) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Failed to create folder: " + folder);
+        }
+        List<File> fastresumeFiles = new ArrayList<>(torrents);
+        for (int i = 0; i < torrents; i++) {
+            Map<String, Object> info = info("Synthetic torrent " + i);
+            byte[] encodedInfo = encode(info);
+            String infoHash = toHex(sha1(encodedInfo));
+
+            Map<String, Object> torrent = new TreeMap<>();
+            torrent.put("announce", "http://tracker" + (i % 10) + ".example.org/announce");
+            torrent.put("creation date", 1_700_000_000L + i);
+            torrent.put("info", info);
+            Files.write(new File(folder, infoHash + ".torrent").toPath(), encode(torrent));
+
+            File fastresume = new File(folder, infoHash + ".fastresume");
+            Files.write(fastresume.toPath(), encode(fastresume(infoHash, i)));
+            fastresumeFiles.add(fastresume);
+        }
+        return fastresumeFiles;
+    }
+
+    /**
+     * Builds the bencoded content of a single .fastresume file.
+     *
+     * @param index The index of the torrent, used for the tracker and category.
+     * @return The encoded file content.
+     */
+    byte[] fastresume(int index) {
+        return encode(fastresume(toHex(randomBytes(20)), index));
+    }
+
+    /**
+     * Builds the bencoded content of a single .torrent file.
+     *
+     * @param name The torrent name.
+     * @return The encoded file content.
+     */
+    byte[] torrent(String name) {
+        Map<String, Object> torrent = new TreeMap<>();
+        torrent.put("announce", "http://tracker.example.org/announce");
+        torrent.put("info", info(name));
+        return encode(torrent);
+    }
+
+    private Map<String, Object> info(String name) {
+        Map<String, Object> info = new TreeMap<>();
+        long totalLength = (long) pieces * PIECE_LENGTH;
+        if (files > 1) {
+            List<Object> fileList = new ArrayList<>(files);
+            for (int f = 0; f < files; f++) {
+                Map<String, Object> file = new TreeMap<>();
+                file.put("length", totalLength / files);
+                file.put("path", Arrays.asList("Disc " + (f / 20 + 1), "Track " + f + ".flac"));
+                fileList.add(file);
+            }
+            info.put("files", fileList);
+        } else {
+            info.put("length", totalLength);
+        }
+        info.put("name", name);
+        info.put("piece length", (long) PIECE_LENGTH);
+        info.put("pieces", randomBytes(pieces * 20));
+        return info;
+    }
+
+    private Map<String, Object> fastresume(String infoHash, int index) {
+        Map<String, Object> resume = new TreeMap<>();
+        resume.put("active_time", 86_400L + random.nextInt(1_000_000));
+        resume.put("added_time", 1_700_000_000L + index);
+        resume.put("allocation", "sparse");
+        resume.put("auto_managed", 0L);
+        resume.put("completed_time", 1_700_000_100L + index);
+        resume.put("file-format", "libtorrent resume file");
+        resume.put("file-version", 1L);
+        resume.put("file_priority", repeat(1L, files));
+        resume.put("finished_time", 80_000L + random.nextInt(1_000_000));
+        resume.put("info-hash", fromHex(infoHash));
+        resume.put("last_download", 0L);
+        resume.put("last_upload", 1_700_000_200L + index);
+        resume.put("libtorrent-version", "2.0.9.0");
+        resume.put("max_connections", 100L);
+        resume.put("max_uploads", -1L);
+        resume.put("num_complete", (long) random.nextInt(500));
+        resume.put("num_incomplete", (long) random.nextInt(50));
+        resume.put("paused", 0L);
+        resume.put("peers", randomBytes(PEERS * 6));
+        resume.put("peers6", randomBytes(PEERS / 5 * 18));
+        resume.put("piece_priority", filled(pieces, (byte) 1));
+        resume.put("pieces", filled(pieces, (byte) 1));
+        resume.put("qBt-category", "category" + (index % 5));
+        resume.put("qBt-savePath", "/downloads/category" + (index % 5));
+        resume.put("qBt-tags", new ArrayList<>());
+        resume.put("save_path", "/downloads/category" + (index % 5));
+        resume.put("seed_mode", 0L);
+        resume.put("seeding_time", 40_000L + random.nextInt(1_000_000));
+        resume.put("sequential_download", 0L);
+        resume.put("total_downloaded", (long) pieces * PIECE_LENGTH);
+        resume.put("total_uploaded", (long) (random.nextDouble() * 10 * pieces * PIECE_LENGTH));
+        resume.put("trackers", Arrays.asList(Arrays.asList("http://tracker" + (index % 10) + ".example.org/announce")));
+        resume.put("upload_rate_limit", 0L);
+        return resume;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] filled(int length, byte value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+
+    private static List<Object> repeat(Object value, int count) {
+        List<Object> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    /**
+     * Encodes strings, byte arrays, longs, lists and maps with sorted string keys.
+     */
+    static byte[] encode(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encode(value, out);
+        return out.toByteArray();
+    }
+
+    private static void encode(Object value, ByteArrayOutputStream out) {
+        if (value instanceof String) {
+            encode(((String) value).getBytes(StandardCharsets.UTF_8), out);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            writeAscii(bytes.length + ":", out);
+            out.write(bytes, 0, bytes.length);
+        } else if (value instanceof Long) {
+            writeAscii("i" + value + "e", out);
+        } else if (value instanceof List) {
+            out.write('l');
+            for (Object item : (List<?>) value) {
+                encode(item, out);
+            }
+            out.write('e');
+        } else if (value instanceof Map) {
+            out.write('d');
+            for (Map.Entry<?, ?> entry : new TreeMap<>((Map<?, ?>) value).entrySet()) {
+                encode(entry.getKey(), out);
+                encode(entry.getValue(), out);
+            }
+            out.write('e');
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + value);
+        }
+    }
+
+    private static void writeAscii(String text, ByteArrayOutputStream out) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] sha1(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
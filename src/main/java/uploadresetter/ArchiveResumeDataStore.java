@@ -0,0 +1,495 @@
+package uploadresetter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ArchiveResumeDataStore is a snapshot of a BT_backup folder in a zip, tar or tar.gz archive. The archive is
+ * read as a stream, one entry at a time, and every entry is written to a new archive as soon as it is
+ * handled, so nothing is extracted and the archives are each passed over once.
+ *
+ * The name of a torrent is read from the .torrent entry of the same torrent, which may come before or after
+ * its .fastresume entry. A .fastresume entry that needs the name is held back until its .torrent entry
+ * turns up, and the names of .torrent entries are remembered for .fastresume entries that come later. Both
+ * are bounded by a lookahead, beyond which the oldest .fastresume entry is handled without its name, as a
+ * file without a .torrent file is in a folder. Entries therefore come out in nearly the same order.
+ */
+final class ArchiveResumeDataStore implements ResumeDataStore {
+    static final int DEFAULT_LOOKAHEAD = 64;
+    private static final String OUTPUT_SUFFIX = "-reset";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The archive formats, recognized by the file extension.
+     */
+    enum Format {
+        ZIP(".zip"),
+        TAR(".tar"),
+        TAR_GZ(".tar.gz", ".tgz");
+
+        private final String[] extensions;
+
+        Format(String... extensions) {
+            this.extensions = extensions;
+        }
+
+        /**
+         * @return The format of an archive file name, or null if the name is not that of an archive.
+         */
+        static Format of(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            for (Format format : values()) {
+                for (String extension : format.extensions) {
+                    if (name.endsWith(extension)) {
+                        return format;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private String extensionOf(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            for (String extension : extensions) {
+                if (name.endsWith(extension)) {
+                    return fileName.substring(fileName.length() - extension.length());
+                }
+            }
+            return "";
+        }
+    }
+
+    /**
+     * The entries of an input archive, and the output archive they are written to.
+     */
+    private interface Entries<E> extends Closeable {
+        /**
+         * @return The next entry of the input, or null at its end.
+         */
+        E next() throws IOException;
+
+        String getName(E entry);
+
+        boolean isFile(E entry);
+
+        /**
+         * @return The data of the current entry of the input.
+         */
+        InputStream getData();
+
+        /**
+         * Copies the current entry of the input to the output as it is.
+         */
+        void copy(E entry) throws IOException;
+
+        /**
+         * Writes an entry with the given data to the output.
+         */
+        void write(E entry, byte[] data, int length) throws IOException;
+    }
+
+    /**
+     * A .fastresume entry waiting for the name of its torrent.
+     */
+    private static final class Pending<E> {
+        private final E entry;
+        private final byte[] data;
+
+        Pending(E entry, byte[] data) {
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
+    private final File archive;
+    private final File output;
+    private final Format format;
+    private final int lookahead;
+
+    /**
+     * Creates a store for an archive.
+     *
+     * @param archive   The archive.
+     * @param output    The archive to write, which is replaced once the new archive is complete.
+     * @param lookahead The number of .fastresume entries held back while waiting for their .torrent entry.
+     */
+    ArchiveResumeDataStore(File archive, File output, int lookahead) {
+        this.format = Format.of(archive.getName());
+        if (format == null) {
+            throw new IllegalArgumentException("Unknown archive format: " + archive.getPath());
+        }
+        if (lookahead < 1) {
+            throw new IllegalArgumentException("Lookahead must be positive: " + lookahead);
+        }
+        this.archive = archive;
+        this.output = output;
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * @return true if the file is an archive of a known format.
+     */
+    static boolean isArchive(File file) {
+        return file.isFile() && Format.of(file.getName()) != null;
+    }
+
+    /**
+     * Returns the archive written for an archive when no output is given: the same name with a suffix before
+     * the extension, in the same folder, for example {@code backup-reset.tar.gz} for {@code backup.tar.gz}.
+     */
+    static File defaultOutput(File archive) {
+        String name = archive.getName();
+        String extension = Format.of(name).extensionOf(name);
+        String baseName = name.substring(0, name.length() - extension.length());
+        return new File(archive.getAbsoluteFile().getParentFile(), baseName + OUTPUT_SUFFIX + extension);
+    }
+
+    /**
+     * Resets the values of all torrents in the archive and writes the new archive. The archive is read by
+     * one thread in one pass, so the threads, incremental and resume settings of the folder do not apply.
+     */
+    @Override
+    public void resetAll(QbtUploadResetter resetter) throws IOException {
+        System.out.println("Using archive: " + archive.getPath());
+        if (output.getAbsoluteFile().equals(archive.getAbsoluteFile())) {
+            throw new IOException("Failed to write archive: " + output.getPath() + " - it is the archive being read");
+        }
+        Path target = output.toPath();
+        Path temp = target.resolveSibling(target.getFileName() + AtomicFileWriter.TEMP_FILE_SUFFIX);
+        try {
+            try (Entries<?> entries = open(archive, temp.toFile())) {
+                process(entries, resetter);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Failed to process archive: " + archive.getPath() + " - " + e.getMessage(), e);
+        }
+        System.out.println("Wrote archive: " + output.getPath());
+    }
+
+    private Entries<?> open(File input, File outputFile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(input), BUFFER_SIZE);
+        OutputStream out;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(outputFile), BUFFER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        switch (format) {
+            case ZIP:
+                return new ZipEntries(new ZipInputStream(in), new ZipOutputStream(out));
+            case TAR_GZ:
+                try {
+                    in = new GZIPInputStream(in, BUFFER_SIZE);
+                    out = new GZIPOutputStream(out, BUFFER_SIZE);
+                } catch (IOException e) {
+                    in.close();
+                    out.close();
+                    throw e;
+                }
+                return new TarEntries(new TarArchive.Reader(in), new TarArchive.Writer(out));
+            default:
+                return new TarEntries(new TarArchive.Reader(in), new TarArchive.Writer(out));
+        }
+    }
+
+    private <E> void process(Entries<E> entries, QbtUploadResetter resetter) throws IOException {
+        ResetEngine engine = resetter.getEngine();
+        Map<String, Pending<E>> pending = new LinkedHashMap<>();
+        // Names of torrents whose .fastresume entry has not been seen yet, oldest first
+        Map<String, String> names = new LinkedHashMap<String, String>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > lookahead;
+            }
+        };
+        int fastresumeEntries = 0;
+        E entry;
+        while ((entry = entries.next()) != null) {
+            String entryName = entries.getName(entry);
+            boolean fastresume = entryName.endsWith(QbtUploadResetter.FASTRESUME_FILE_EXTENSION);
+            boolean torrent = entryName.endsWith(QbtUploadResetter.TORRENT_FILE_EXTENSION);
+            if (!entries.isFile(entry) || !fastresume && !torrent) {
+                entries.copy(entry);
+                continue;
+            }
+            byte[] data = readAll(entries.getData());
+            String key = stripExtension(entryName);
+            if (fastresume) {
+                fastresumeEntries++;
+                if (!needsName(engine, data)) {
+                    entries.write(entry, data, data.length);
+                } else if (names.containsKey(key)) {
+                    reset(entries, entry, data, names.remove(key), resetter);
+                } else {
+                    pending.put(key, new Pending<>(entry, data));
+                    if (pending.size() > lookahead) {
+                        Iterator<Pending<E>> eldest = pending.values().iterator();
+                        Pending<E> waiting = eldest.next();
+                        eldest.remove();
+                        reset(entries, waiting.entry, waiting.data, ResetEngine.UNKNOWN_TORRENT, resetter);
+                    }
+                }
+            } else {
+                entries.write(entry, data, data.length);
+                String torrentName = readTorrentName(entryName, data);
+                Pending<E> waiting = pending.remove(key);
+                if (waiting != null) {
+                    reset(entries, waiting.entry, waiting.data, torrentName, resetter);
+                } else {
+                    names.put(key, torrentName);
+                }
+            }
+        }
+        for (Pending<E> waiting : pending.values()) {
+            reset(entries, waiting.entry, waiting.data, ResetEngine.UNKNOWN_TORRENT, resetter);
+        }
+        if (fastresumeEntries == 0) {
+            System.out.println("No .fastresume files found in the specified archive");
+        }
+    }
+
+    /**
+     * Checks the parts of a .fastresume entry that do not depend on the torrent name.
+     *
+     * @return true if the entry may be reset once the name is known.
+     */
+    private static boolean needsName(ResetEngine engine, byte[] data) {
+        RunMetrics metrics = engine.getMetrics();
+        metrics.increment(RunMetrics.Counter.FILES);
+        metrics.add(RunMetrics.Counter.BYTES_READ, data.length);
+        long start = System.nanoTime();
+        try {
+            if (engine.getPatcher().isReset(data)) {
+                metrics.increment(RunMetrics.Counter.SKIPPED);
+                return false;
+            }
+            TorrentFilter filter = engine.getFilter();
+            if (!filter.isEmpty() && !filter.matches(TorrentFilter.readFields(data))) {
+                metrics.increment(RunMetrics.Counter.FILTERED);
+                return false;
+            }
+            return true;
+        } finally {
+            metrics.record(RunMetrics.Phase.SCAN, start);
+        }
+    }
+
+    /**
+     * Resets a .fastresume entry whose torrent name is known, and writes it.
+     */
+    private static <E> void reset(Entries<E> entries, E entry, byte[] data, String torrentName,
+                                  QbtUploadResetter resetter) throws IOException {
+        ResetEngine engine = resetter.getEngine();
+        RunMetrics metrics = engine.getMetrics();
+        if (!engine.getFilter().matchesName(torrentName)) {
+            metrics.increment(RunMetrics.Counter.FILTERED);
+            entries.write(entry, data, data.length);
+            return;
+        }
+        if (!resetter.confirmReset(torrentName)) {
+            metrics.increment(RunMetrics.Counter.SKIPPED);
+            System.out.println("Skipping torrent: " + torrentName);
+            entries.write(entry, data, data.length);
+            return;
+        }
+        FastresumePatcher.Patched patched;
+        try {
+            patched = engine.patch(data, null);
+        } catch (IllegalArgumentException e) {
+            metrics.increment(RunMetrics.Counter.FAILED);
+            System.err.println("Failed to reset uploaded amount for entry: " + entries.getName(entry) + " - "
+                    + e.getMessage());
+            entries.write(entry, data, data.length);
+            return;
+        }
+        long start = System.nanoTime();
+        entries.write(entry, patched.getData(), patched.getLength());
+        metrics.record(RunMetrics.Phase.WRITE, start);
+        metrics.add(RunMetrics.Counter.BYTES_WRITTEN, patched.getLength());
+        metrics.increment(RunMetrics.Counter.RESET);
+        resetter.addReset(torrentName);
+    }
+
+    private static String readTorrentName(String entryName, byte[] data) {
+        try {
+            String name = TorrentInfoReader.readName(data);
+            if (name != null) {
+                return name;
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to decode: " + entryName + " - " + e.getMessage());
+        }
+        return ResetEngine.UNKNOWN_TORRENT;
+    }
+
+    private static String stripExtension(String entryName) {
+        int dot = entryName.lastIndexOf('.');
+        return dot == -1 ? entryName : entryName.substring(0, dot);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            data.write(buffer, 0, n);
+        }
+        return data.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        // Both archives are closed at the end of resetAll
+    }
+
+    private static final class ZipEntries implements Entries<ZipEntry> {
+        private final ZipInputStream in;
+        private final ZipOutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        ZipEntries(ZipInputStream in, ZipOutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public ZipEntry next() throws IOException {
+            return in.getNextEntry();
+        }
+
+        @Override
+        public String getName(ZipEntry entry) {
+            return entry.getName();
+        }
+
+        @Override
+        public boolean isFile(ZipEntry entry) {
+            return !entry.isDirectory();
+        }
+
+        @Override
+        public InputStream getData() {
+            return in;
+        }
+
+        @Override
+        public void copy(ZipEntry entry) throws IOException {
+            out.putNextEntry(copyOf(entry));
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            out.closeEntry();
+        }
+
+        @Override
+        public void write(ZipEntry entry, byte[] data, int length) throws IOException {
+            out.putNextEntry(copyOf(entry));
+            out.write(data, 0, length);
+            out.closeEntry();
+        }
+
+        /**
+         * Copies the name, time, comment and extra fields of an entry. The sizes and checksum are left out,
+         * as the entry is compressed again and may have changed.
+         */
+        private static ZipEntry copyOf(ZipEntry entry) {
+            ZipEntry copy = new ZipEntry(entry.getName());
+            copy.setTime(entry.getTime());
+            copy.setComment(entry.getComment());
+            copy.setExtra(entry.getExtra());
+            return copy;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static final class TarEntries implements Entries<TarArchive.Entry> {
+        private final TarArchive.Reader in;
+        private final TarArchive.Writer out;
+
+        TarEntries(TarArchive.Reader in, TarArchive.Writer out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public TarArchive.Entry next() throws IOException {
+            return in.next();
+        }
+
+        @Override
+        public String getName(TarArchive.Entry entry) {
+            return entry.getName();
+        }
+
+        @Override
+        public boolean isFile(TarArchive.Entry entry) {
+            return entry.isFile();
+        }
+
+        @Override
+        public InputStream getData() {
+            return in.getInputStream();
+        }
+
+        @Override
+        public void copy(TarArchive.Entry entry) throws IOException {
+            out.copy(entry, in.getInputStream());
+        }
+
+        @Override
+        public void write(TarArchive.Entry entry, byte[] data, int length) throws IOException {
+            out.write(entry, data, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package uploadresetter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AtomicFileWriter replaces files crash-safely. The new content is written to a temporary file in the
+ * same directory and then moved over the original with an atomic move, so a crash leaves either the old
+ * or the new file but never a truncated one. How much is flushed to disk is chosen by the durability mode.
+ *
+ * A write can also be made conditional on the file being unchanged since it was read, so that resume data
+ * saved by a running client in the meantime is not overwritten. The file must then not be locked by another
+ * process, and its modification time, size and identity must still match the {@link Stamp} taken before it
+ * was read. The check is repeated just before the move, which narrows the race with the client to the move
+ * itself; it cannot be closed completely without the client taking part.
+ *
+ * On POSIX file systems the permissions, owner and group of the original are copied to the temporary file
+ * before the move, so a run as another user or with another umask does not lock the client out of its
+ * resume data.
+ */
+final class AtomicFileWriter {
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+    static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * How writes are flushed to disk.
+     */
+    enum Durability {
+        /** Flush every file and its directory entry before the write returns. */
+        FILE,
+        /** Flush every file before it is moved, and the directory once per batch of files. */
+        BATCH,
+        /** Leave flushing to the operating system. */
+        NONE
+    }
+
+    /**
+     * The modification time, size and identity of a file when it was read.
+     */
+    static final class Stamp {
+        private final long lastModifiedMillis;
+        private final long size;
+        // The inode on platforms that have one, null otherwise
+        private final Object fileKey;
+
+        private Stamp(long lastModifiedMillis, long size, Object fileKey) {
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.size = size;
+            this.fileKey = fileKey;
+        }
+
+        /**
+         * Takes the stamp of a file.
+         *
+         * @param file The file.
+         * @return The stamp, or null if the attributes of the file cannot be read.
+         */
+        static Stamp of(File file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                return new Stamp(attributes.lastModifiedTime().toMillis(), attributes.size(), attributes.fileKey());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp) o;
+            return lastModifiedMillis == other.lastModifiedMillis && size == other.size
+                    && Objects.equals(fileKey, other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModifiedMillis, size, fileKey);
+        }
+    }
+
+    /**
+     * Thrown when a file is locked by another process or has changed since it was read. The write can be
+     * tried again later.
+     */
+    static final class ContendedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ContendedException(String message) {
+            super(message);
+        }
+    }
+
+    private final Durability durability;
+    private final int batchSize;
+    private final RunMetrics metrics;
+    private final AtomicInteger unsyncedMoves = new AtomicInteger();
+    private final Set<Path> unsyncedDirectories = ConcurrentHashMap.newKeySet();
+
+    AtomicFileWriter(Durability durability, int batchSize) {
+        this(durability, batchSize, new RunMetrics());
+    }
+
+    AtomicFileWriter(Durability durability, int batchSize, RunMetrics metrics) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.durability = durability;
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+    }
+
+    Durability getDurability() {
+        return durability;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Parses a durability option of the form {@code file}, {@code batch}, {@code batch:<n>} or {@code none}.
+     *
+     * @param value The option value.
+     * @return The configured writer.
+     * @throws IllegalArgumentException if the value is not valid.
+     */
+    static AtomicFileWriter parse(String value) {
+        return parse(value, new RunMetrics());
+    }
+
+    /**
+     * Parses a durability option, see {@link #parse(String)}.
+     *
+     * @param value   The option value.
+     * @param metrics The metrics that write and fsync timings are recorded in.
+     * @return The configured writer.
+     * @throws IllegalArgumentException if the value is not valid.
+     */
+    static AtomicFileWriter parse(String value, RunMetrics metrics) {
+        String[] parts = value.split(":", 2);
+        Durability durability;
+        try {
+            durability = Durability.valueOf(parts[0].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown durability mode: " + parts[0]);
+        }
+        int batchSize = DEFAULT_BATCH_SIZE;
+        if (parts.length == 2) {
+            if (durability != Durability.BATCH) {
+                throw new IllegalArgumentException("Only the batch durability mode takes a size: " + value);
+            }
+            try {
+                batchSize = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid batch size: " + parts[1]);
+            }
+        }
+        return new AtomicFileWriter(durability, batchSize, metrics);
+    }
+
+    /**
+     * Atomically replaces the content of a file.
+     *
+     * @param target The file to replace.
+     * @param data   The new content.
+     * @param length The number of bytes of {@code data} to write.
+     * @throws IOException if the file cannot be written. The original file is left untouched in that case.
+     */
+    void write(File target, byte[] data, int length) throws IOException {
+        write(target, data, length, null);
+    }
+
+    /**
+     * Atomically replaces the content of a file, unless it has been locked or changed since it was read.
+     *
+     * @param target   The file to replace.
+     * @param data     The new content.
+     * @param length   The number of bytes of {@code data} to write.
+     * @param expected The stamp of the file when it was read, or null to replace it unconditionally.
+     * @return The stamp of the file as it was written, or null if it cannot be read.
+     * @throws ContendedException if the file is locked or has changed. The original file is left untouched.
+     * @throws IOException        if the file cannot be written. The original file is left untouched in that case.
+     */
+    Stamp write(File target, byte[] data, int length, Stamp expected) throws IOException {
+        Path targetPath = target.toPath().toAbsolutePath();
+        Path tempPath = targetPath.resolveSibling(targetPath.getFileName() + TEMP_FILE_SUFFIX);
+        long start = System.nanoTime();
+        try {
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                metrics.record(RunMetrics.Phase.WRITE, start);
+                if (durability != Durability.NONE) {
+                    long syncStart = System.nanoTime();
+                    channel.force(false);
+                    metrics.record(RunMetrics.Phase.FSYNC, syncStart);
+                }
+            }
+            copyPosixAttributes(targetPath, tempPath);
+            if (expected != null) {
+                checkUnchanged(target, expected);
+            }
+            move(tempPath, targetPath);
+            metrics.add(RunMetrics.Counter.BYTES_WRITTEN, length);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+        // Taken right after the move, so that a later change by another process has another stamp
+        Stamp written = Stamp.of(target);
+        if (durability == Durability.FILE) {
+            syncDirectory(targetPath.getParent());
+        } else if (durability == Durability.BATCH) {
+            unsyncedDirectories.add(targetPath.getParent());
+            if (unsyncedMoves.incrementAndGet() % batchSize == 0) {
+                flush();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Checks that no other process holds a lock on a file and that it has not changed since it was read.
+     * The lock is only taken to probe for one, and released right away.
+     *
+     * @param file     The file.
+     * @param expected The stamp of the file when it was read.
+     * @throws ContendedException if the file is locked, cannot be opened because another process is using it,
+     *                            or has changed.
+     * @throws IOException        if the file cannot be opened for another reason.
+     */
+    static void checkUnchanged(File file, Stamp expected) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new ContendedException("File is locked by another process");
+            }
+            lock.release();
+        } catch (NoSuchFileException | AccessDeniedException e) {
+            throw e;
+        } catch (FileSystemException e) {
+            // Windows refuses to open a file that another process has opened without sharing it
+            throw new ContendedException("File is in use by another process: " + e.getReason());
+        }
+        if (!expected.equals(Stamp.of(file))) {
+            throw new ContendedException("File has changed since it was read");
+        }
+    }
+
+    /**
+     * Flushes the directory entries of all moves that have not been flushed yet.
+     */
+    void flush() {
+        Iterator<Path> iterator = unsyncedDirectories.iterator();
+        while (iterator.hasNext()) {
+            Path directory = iterator.next();
+            iterator.remove();
+            syncDirectory(directory);
+        }
+    }
+
+    /**
+     * Gives a file the permissions, owner and group of another. Does nothing if the file system has no
+     * POSIX attributes or the source does not exist.
+     *
+     * @throws IOException if the attributes cannot be set, for example because only root may change the
+     *                     owner. The file would otherwise replace the source with the wrong owner.
+     */
+    private static void copyPosixAttributes(Path source, Path target) throws IOException {
+        PosixFileAttributeView sourceView = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (sourceView == null || targetView == null) {
+            return;
+        }
+        PosixFileAttributes attributes;
+        try {
+            attributes = sourceView.readAttributes();
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        PosixFileAttributes current = targetView.readAttributes();
+        // Owner and group first, since changing the owner may clear the set-user-ID bits of the permissions
+        if (!attributes.owner().equals(current.owner())) {
+            targetView.setOwner(attributes.owner());
+        }
+        if (!attributes.group().equals(current.group())) {
+            targetView.setGroup(attributes.group());
+        }
+        if (!attributes.permissions().equals(current.permissions())) {
+            targetView.setPermissions(attributes.permissions());
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Flushes a directory so that renames inside it survive a crash. Not every platform allows opening
+     * a directory (Windows does not), in which case the flush is skipped.
+     */
+    private void syncDirectory(Path directory) {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+            metrics.record(RunMetrics.Phase.FSYNC, start);
+        } catch (IOException e) {
+            // Directory flushing is not supported on this platform
+        }
+    }
+}
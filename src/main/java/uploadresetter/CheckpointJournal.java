@@ -0,0 +1,168 @@
+package uploadresetter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * CheckpointJournal records the outcome of every file handled by a run in an append-only journal in the
+ * BT_backup folder, so that an interrupted run can be resumed with only the remaining work. Records are
+ * buffered and written in batches; the journal is removed when the run completes.
+ *
+ * The journal is a UTF-8 text file with one line per file: the result, a tab, and the file name.
+ * A last line without a line break is the remains of an interrupted write and is ignored.
+ */
+final class CheckpointJournal implements Closeable {
+    static final String JOURNAL_FILE_NAME = ".upload-resetter.journal";
+    static final int DEFAULT_BATCH_SIZE = 256;
+    private static final char SEPARATOR = '\t';
+    private static final char LINE_END = '\n';
+
+    private final File journalFile;
+    private final Set<String> completed;
+    private final int batchSize;
+    private final Runnable beforeSync;
+    private final FileOutputStream out;
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingCount;
+    private boolean closed;
+
+    private CheckpointJournal(File journalFile, Set<String> completed, boolean append, int batchSize,
+                              Runnable beforeSync) throws IOException {
+        this.journalFile = journalFile;
+        this.completed = completed;
+        this.batchSize = batchSize;
+        this.beforeSync = beforeSync;
+        this.out = new FileOutputStream(journalFile, append);
+    }
+
+    /**
+     * Opens the journal of a folder. When resuming, the files that the journal records as successfully
+     * handled are loaded and new records are appended; otherwise the journal is started over.
+     *
+     * @param folder     The BT_backup folder.
+     * @param resume     Whether to resume from an existing journal.
+     * @param batchSize  The number of records written at once.
+     * @param beforeSync Called before each batch is written, so that the recorded files reach the disk
+     *                   before the journal does.
+     * @return The opened journal.
+     * @throws IOException if the journal cannot be read or created.
+     */
+    static CheckpointJournal open(File folder, boolean resume, int batchSize, Runnable beforeSync)
+            throws IOException {
+        File journalFile = new File(folder, JOURNAL_FILE_NAME);
+        Set<String> completed = resume && journalFile.isFile() ? read(journalFile) : Collections.emptySet();
+        return new CheckpointJournal(journalFile, completed, resume, batchSize, beforeSync);
+    }
+
+    private static Set<String> read(File journalFile) throws IOException {
+        String content = new String(Files.readAllBytes(journalFile.toPath()), StandardCharsets.UTF_8);
+        Set<String> completed = new HashSet<>();
+        int lineStart = 0;
+        int lineEnd;
+        while ((lineEnd = content.indexOf(LINE_END, lineStart)) != -1) {
+            int separator = content.indexOf(SEPARATOR, lineStart);
+            if (separator != -1 && separator < lineEnd) {
+                try {
+                    RunManifest.Result result = RunManifest.Result.valueOf(content.substring(lineStart, separator));
+                    if (result.isSuccessful()) {
+                        completed.add(content.substring(separator + 1, lineEnd));
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Not a record, skipped
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return completed;
+    }
+
+    File getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * @return The number of files that the resumed journal records as successfully handled.
+     */
+    int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Checks whether a file was successfully handled by the run that is being resumed.
+     *
+     * @param file The .fastresume file.
+     * @return true if the file can be skipped.
+     */
+    boolean isCompleted(File file) {
+        return completed.contains(file.getName());
+    }
+
+    /**
+     * Records the outcome of a file, writing the batch once it is full.
+     *
+     * @param file   The .fastresume file.
+     * @param result The result.
+     */
+    synchronized void record(File file, RunManifest.Result result) {
+        pending.append(result.name()).append(SEPARATOR).append(file.getName()).append(LINE_END);
+        if (++pendingCount >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered records to the journal and forces them to disk.
+     */
+    synchronized void flush() {
+        if (closed || pendingCount == 0) {
+            return;
+        }
+        beforeSync.run();
+        try {
+            out.write(pending.toString().getBytes(StandardCharsets.UTF_8));
+            out.getChannel().force(false);
+        } catch (IOException e) {
+            System.err.println("Failed to write checkpoint journal: " + journalFile.getPath() + " - "
+                    + e.getMessage());
+        }
+        pending.setLength(0);
+        pendingCount = 0;
+    }
+
+    /**
+     * Writes the buffered records and closes the journal, which is kept for a later resume.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close checkpoint journal: " + journalFile.getPath() + " - "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes and removes the journal once the run has completed.
+     */
+    synchronized void delete() {
+        pending.setLength(0);
+        pendingCount = 0;
+        close();
+        try {
+            Files.deleteIfExists(journalFile.toPath());
+        } catch (IOException e) {
+            System.err.println("Failed to delete checkpoint journal: " + journalFile.getPath() + " - "
+                    + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package uploadresetter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * FastresumeDirectory enumerates the .fastresume files of a folder lazily through a DirectoryStream, so
+ * processing starts with the first entry and memory stays bounded whatever the size of the folder.
+ *
+ * Progress is reported as the number of files listed so far. The total is not known until the stream
+ * ends, and counting it up front would take a second pass over the folder.
+ */
+final class FastresumeDirectory implements Iterable<File>, Closeable {
+    static final String GLOB = "*" + QbtUploadResetter.FASTRESUME_FILE_EXTENSION;
+    static final int PROGRESS_INTERVAL = 1000;
+
+    private final DirectoryStream<Path> stream;
+    private final RunMetrics metrics;
+    private final int progressInterval;
+    private int listed;
+
+    private FastresumeDirectory(Path folder, RunMetrics metrics, int progressInterval) throws IOException {
+        this.stream = Files.newDirectoryStream(folder, GLOB);
+        this.metrics = metrics;
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Opens a folder for enumeration.
+     *
+     * @param folder           The BT_backup folder.
+     * @param metrics          The metrics that listing timings are recorded in.
+     * @param progressInterval The number of files between progress messages.
+     * @return The opened folder, which must be closed.
+     * @throws IOException if the folder cannot be opened.
+     */
+    static FastresumeDirectory open(Path folder, RunMetrics metrics, int progressInterval) throws IOException {
+        return new FastresumeDirectory(folder, metrics, progressInterval);
+    }
+
+    /**
+     * Returns the files of the folder. Like the underlying DirectoryStream, it can only be iterated once,
+     * and it throws a DirectoryIteratorException if the folder cannot be read while iterating.
+     */
+    @Override
+    public Iterator<File> iterator() {
+        Iterator<Path> paths = stream.iterator();
+        return new Iterator<File>() {
+            @Override
+            public boolean hasNext() {
+                long start = System.nanoTime();
+                boolean hasNext = paths.hasNext();
+                metrics.record(RunMetrics.Phase.LIST, start);
+                return hasNext;
+            }
+
+            @Override
+            public File next() {
+                File file = paths.next().toFile();
+                listed++;
+                if (listed % progressInterval == 0) {
+                    System.out.println("Progress: " + listed + " files listed");
+                }
+                return file;
+            }
+        };
+    }
+
+    /**
+     * @return The number of files returned so far.
+     */
+    int getListed() {
+        return listed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
@@ -0,0 +1,22 @@
+package uploadresetter;
+
+/**
+ * FastresumeFileStore is the resume data of a BT_backup folder, with one .fastresume file per torrent.
+ */
+final class FastresumeFileStore implements ResumeDataStore {
+    private final String path;
+
+    FastresumeFileStore(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public void resetAll(QbtUploadResetter resetter) {
+        resetter.processFolder(path);
+    }
+
+    @Override
+    public void close() {
+        // Every file is closed as soon as it has been processed
+    }
+}
@@ -0,0 +1,716 @@
+package uploadresetter;
+
+import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Checksum;
+
+/**
+ * FastresumePatcher resets a set of integer values in raw .fastresume data to zero. All keys are located
+ * in a single linear pass with an Aho-Corasick automaton over their bencoded form, such as
+ * {@code 14:total_uploadedi}, so the work does not grow with the number of keys and does not depend on
+ * which key follows a value. Only the first well-formed occurrence of each key is reset.
+ *
+ * With {@link ResetRules}, total_uploaded is set to the value of the rules instead. The keys that the rules
+ * read are located in the same pass, after the keys to reset, so the rules add no pass over the data. The
+ * data is patched in place unless a rule raises a value to more digits, which is the only case that needs a
+ * new array.
+ */
+final class FastresumePatcher {
+    static final String UPLOADED_KEY = "total_uploaded";
+    static final String DOWNLOADED_KEY = "total_downloaded";
+    static final List<String> DEFAULT_KEYS = Collections.singletonList(UPLOADED_KEY);
+    // The keys selected by --keys all
+    static final List<String> ALL_KEYS = Collections.unmodifiableList(Arrays.asList(
+            UPLOADED_KEY, DOWNLOADED_KEY, "seeding_time", "active_time", "finished_time"));
+    private static final String ALL = "all";
+
+    private static final byte ZERO = '0';
+    private static final byte INTEGER_END = 'e';
+    private static final byte MINUS = '-';
+    // Longest value that fits in a long
+    private static final int MAX_VALUE_DIGITS = 18;
+    private static final int SCAN_BUFFER_SIZE = 8192;
+    private static final int ALPHABET = 256;
+
+    private final List<String> keys;
+    private final ResetRules rules;
+    // Index of total_uploaded and total_downloaded among the located keys, or -1
+    private final int uploadedKey;
+    private final int downloadedKey;
+    // The bencoded form of each located key up to its value, such as 14:total_uploadedi
+    private final byte[][] patterns;
+    // Complete transition function of the automaton, indexed by state * 256 + byte
+    private final int[] transitions;
+    // Index of the key whose pattern ends in a state, or -1
+    private final int[] matches;
+
+    /**
+     * Creates a patcher for the given keys.
+     *
+     * @param keys The keys of the integer values to reset.
+     * @throws IllegalArgumentException if no keys are given.
+     */
+    FastresumePatcher(List<String> keys) {
+        this(keys, ResetRules.NONE);
+    }
+
+    /**
+     * Creates a patcher for the given keys that sets total_uploaded to the value of rules.
+     *
+     * @param keys  The keys of the integer values to reset.
+     * @param rules The rules for total_uploaded.
+     * @throws IllegalArgumentException if no keys are given, or if there are rules but total_uploaded is not
+     *                                  one of the keys.
+     */
+    FastresumePatcher(List<String> keys, ResetRules rules) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("No keys specified");
+        }
+        if (!rules.isEmpty() && !keys.contains(UPLOADED_KEY)) {
+            throw new IllegalArgumentException("Rules set " + UPLOADED_KEY + ", which is not one of the keys " + keys);
+        }
+        this.keys = Collections.unmodifiableList(Arrays.asList(keys.toArray(new String[0])));
+        this.rules = rules;
+        List<String> located = new ArrayList<>(this.keys);
+        if (rules.readsDownloaded() && !located.contains(DOWNLOADED_KEY)) {
+            located.add(DOWNLOADED_KEY);
+        }
+        this.uploadedKey = located.indexOf(UPLOADED_KEY);
+        this.downloadedKey = located.indexOf(DOWNLOADED_KEY);
+        byte[][] patterns = new byte[located.size()][];
+        int maxStates = 1;
+        for (int k = 0; k < patterns.length; k++) {
+            byte[] key = located.get(k).getBytes(StandardCharsets.UTF_8);
+            byte[] prefix = (key.length + ":").getBytes(StandardCharsets.US_ASCII);
+            patterns[k] = new byte[prefix.length + key.length + 1];
+            System.arraycopy(prefix, 0, patterns[k], 0, prefix.length);
+            System.arraycopy(key, 0, patterns[k], prefix.length, key.length);
+            patterns[k][patterns[k].length - 1] = 'i';
+            maxStates += patterns[k].length;
+        }
+
+        int[] next = new int[maxStates * ALPHABET];
+        int[] output = new int[maxStates];
+        Arrays.fill(next, -1);
+        Arrays.fill(output, -1);
+        int states = 1;
+        for (int k = 0; k < patterns.length; k++) {
+            int state = 0;
+            for (byte b : patterns[k]) {
+                int index = state * ALPHABET + (b & 0xFF);
+                if (next[index] == -1) {
+                    next[index] = states++;
+                }
+                state = next[index];
+            }
+            if (output[state] == -1) {
+                output[state] = k;
+            }
+        }
+
+        // Fill in the missing transitions breadth-first, following the failure links of the trie
+        int[] failure = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int c = 0; c < ALPHABET; c++) {
+                int index = state * ALPHABET + c;
+                int fallback = state == 0 ? 0 : next[failure[state] * ALPHABET + c];
+                if (next[index] == -1) {
+                    next[index] = fallback;
+                } else {
+                    int target = next[index];
+                    failure[target] = fallback;
+                    if (output[target] == -1) {
+                        output[target] = output[fallback];
+                    }
+                    queue.add(target);
+                }
+            }
+        }
+        this.patterns = patterns;
+        this.transitions = Arrays.copyOf(next, states * ALPHABET);
+        this.matches = Arrays.copyOf(output, states);
+    }
+
+    /**
+     * Parses a comma-separated list of keys, or {@code all} for all keys listed in {@link #ALL_KEYS}.
+     *
+     * @param value The option value.
+     * @return The configured patcher.
+     * @throws IllegalArgumentException if the value names no keys.
+     */
+    static FastresumePatcher parse(String value) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String key : value.split(",")) {
+            key = key.trim();
+            if (key.toLowerCase(Locale.ROOT).equals(ALL)) {
+                keys.addAll(ALL_KEYS);
+            } else if (!key.isEmpty()) {
+                keys.add(key);
+            }
+        }
+        return new FastresumePatcher(Arrays.asList(keys.toArray(new String[0])));
+    }
+
+    /**
+     * Returns a patcher for the same keys that sets total_uploaded to the value of rules.
+     *
+     * @param newRules The rules.
+     * @return The patcher.
+     * @throws IllegalArgumentException if there are rules but total_uploaded is not one of the keys.
+     */
+    FastresumePatcher withRules(ResetRules newRules) {
+        return newRules == rules ? this : new FastresumePatcher(keys, newRules);
+    }
+
+    List<String> getKeys() {
+        return keys;
+    }
+
+    ResetRules getRules() {
+        return rules;
+    }
+
+    /**
+     * @return The index of total_uploaded among the keys, or -1 if it is not one of them.
+     */
+    int getUploadedKey() {
+        return uploadedKey;
+    }
+
+    /**
+     * @return A text that identifies the keys and rules, which decide whether a file needs a change.
+     */
+    String getFingerprint() {
+        return String.join(",", keys) + (rules.isEmpty() ? "" : " by " + rules);
+    }
+
+    /**
+     * Data patched by {@link #patch}: the first {@code length} bytes of an array, which is the original array
+     * unless a rule raised a value to more digits than it had.
+     */
+    static final class Patched {
+        private final byte[] data;
+        private final int length;
+        private final long uploaded;
+
+        private Patched(byte[] data, int length, long uploaded) {
+            this.data = data;
+            this.length = length;
+            this.uploaded = uploaded;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        /**
+         * @return The value total_uploaded was set to, 0 unless a rule set it.
+         */
+        long getUploaded() {
+            return uploaded;
+        }
+
+        /**
+         * @return A copy of the patched bytes.
+         */
+        byte[] toArray() {
+            return Arrays.copyOf(data, length);
+        }
+    }
+
+    /**
+     * Resets the values of all keys. The bytes after each value are shifted left in place, so the patched
+     * length may be smaller than the array length.
+     *
+     * @param data The raw .fastresume data, modified in place unless a rule raises a value.
+     * @return The patched data.
+     * @throws IllegalArgumentException if none of the keys with a well-formed integer value is found.
+     */
+    Patched patch(byte[] data) {
+        return patch(data, null);
+    }
+
+    /**
+     * Resets the values of all keys and reports the values they had.
+     *
+     * @param data      The raw .fastresume data, modified in place unless a rule raises a value.
+     * @param oldValues Receives the original digits of each key in the order of the keys, or null for keys
+     *                  that are not found or left unchanged. May be null if the original values are not needed.
+     * @return The patched data.
+     * @throws IllegalArgumentException if none of the keys with a well-formed integer value is found.
+     */
+    Patched patch(byte[] data, String[] oldValues) {
+        return patch(data, oldValues, null, null);
+    }
+
+    /**
+     * Resets the values of all keys, reports the values they had and where the new values are, and feeds
+     * every byte that is kept, that is all bytes outside the changed values, to a checksum before it is
+     * moved. A value that already has the digits it would be set to, or that no rule applies to, is left
+     * unchanged. The data is patched in place unless a rule raises total_uploaded to a value with more
+     * digits, in which case it is spliced into a new array like {@link #restore}.
+     *
+     * @param data       The raw .fastresume data.
+     * @param oldValues  Receives the original digits of each key in the order of the keys, or null for keys
+     *                   that are not found or left unchanged. May be null if the original values are not
+     *                   needed.
+     * @param kept       The checksum of the kept bytes, or null.
+     * @param newOffsets Receives the offset of the new value of each key in the patched data, or -1 for keys
+     *                   that are not found or left unchanged. May be null.
+     * @return The patched data.
+     * @throws IllegalArgumentException if none of the keys with a well-formed integer value is found.
+     */
+    Patched patch(byte[] data, String[] oldValues, Checksum kept, int[] newOffsets) {
+        return patch(data, oldValues, kept, newOffsets, null);
+    }
+
+    /**
+     * Patches the data like {@link #patch(byte[], String[], Checksum, int[])}, evaluating the rules with
+     * fields of the torrent that a store keeps outside the resume data.
+     *
+     * @param fields The fields for the rules, or null to read them from the data.
+     */
+    Patched patch(byte[] data, String[] oldValues, Checksum kept, int[] newOffsets,
+                  TorrentFilter.ResumeFields fields) {
+        int[] spans = locate(data);
+        if (oldValues != null) {
+            Arrays.fill(oldValues, null);
+        }
+        if (newOffsets != null) {
+            Arrays.fill(newOffsets, -1);
+        }
+        // Evaluated before any byte moves
+        long uploaded = rules.isEmpty() ? 0 : uploadedTarget(data, spans, fields);
+        int[] order = keysInDataOrder(spans);
+        byte[] target = data;
+        if (uploaded > 0 && digits(uploaded) > spans[2 * uploadedKey + 1] - spans[2 * uploadedKey]) {
+            int length = data.length;
+            for (int key : order) {
+                if (!isKept(data, spans, key, uploaded)) {
+                    length += (key == uploadedKey ? digits(uploaded) : 1) - (spans[2 * key + 1] - spans[2 * key]);
+                }
+            }
+            target = new byte[length];
+        }
+        // Bytes before copied have been moved to before written
+        int copied = 0;
+        int written = 0;
+        for (int key : order) {
+            if (isKept(data, spans, key, uploaded)) {
+                continue;
+            }
+            int valueStart = spans[2 * key];
+            int valueEnd = spans[2 * key + 1];
+            if (oldValues != null) {
+                oldValues[key] = new String(data, valueStart, valueEnd - valueStart, StandardCharsets.US_ASCII);
+            }
+            int length = valueStart - copied;
+            if (kept != null) {
+                kept.update(data, copied, length);
+            }
+            System.arraycopy(data, copied, target, written, length);
+            written += length;
+            if (newOffsets != null) {
+                newOffsets[key] = written;
+            }
+            if (key == uploadedKey && uploaded != 0) {
+                written = writeValue(target, written, uploaded);
+            } else {
+                target[written++] = ZERO;
+            }
+            copied = valueEnd;
+        }
+        if (kept != null) {
+            kept.update(data, copied, data.length - copied);
+        }
+        System.arraycopy(data, copied, target, written, data.length - copied);
+        return new Patched(target, written + data.length - copied, Math.max(0, uploaded));
+    }
+
+    /**
+     * @param uploaded The new value of total_uploaded, or -1 if no rule applies.
+     * @return true if the value of a key is left unchanged: no rule applies to it, or it already has the
+     *         digits it would be set to.
+     */
+    private boolean isKept(byte[] data, int[] spans, int key, long uploaded) {
+        long value = key == uploadedKey ? uploaded : 0;
+        if (value == -1) {
+            return true;
+        }
+        int valueStart = spans[2 * key];
+        int valueEnd = spans[2 * key + 1];
+        if (valueEnd - valueStart != digits(value)) {
+            return false;
+        }
+        long rest = value;
+        for (int i = valueEnd - 1; i >= valueStart; i--) {
+            if (data[i] != '0' + rest % 10) {
+                return false;
+            }
+            rest /= 10;
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the rules for total_uploaded.
+     *
+     * @param fields The fields for the rules, or null to read them from the data.
+     * @return The new value, 0 if total_uploaded is not found, or -1 if no rule applies.
+     */
+    private long uploadedTarget(byte[] data, int[] spans, TorrentFilter.ResumeFields fields) {
+        if (spans[2 * uploadedKey] == -1) {
+            return 0;
+        }
+        long uploaded = parseValue(data, spans[2 * uploadedKey], spans[2 * uploadedKey + 1]);
+        long downloaded = downloadedKey == -1 || spans[2 * downloadedKey] == -1 ? 0
+                : parseValue(data, spans[2 * downloadedKey], spans[2 * downloadedKey + 1]);
+        return rules.target(uploaded, downloaded, rulesFields(data, fields));
+    }
+
+    /**
+     * Parses the digits of a well-formed integer value, saturating values too long for a long.
+     */
+    private static long parseValue(byte[] data, int valueStart, int valueEnd) {
+        boolean negative = data[valueStart] == MINUS;
+        int digitsStart = negative ? valueStart + 1 : valueStart;
+        if (valueEnd - digitsStart > MAX_VALUE_DIGITS) {
+            return negative ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        long value = 0;
+        for (int i = digitsStart; i < valueEnd; i++) {
+            value = value * 10 + (data[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return The number of digits of a value that is not negative.
+     */
+    private static int digits(long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Writes the digits of a positive value.
+     *
+     * @return The offset after the digits.
+     */
+    private static int writeValue(byte[] data, int offset, long value) {
+        int end = offset + digits(value);
+        long rest = value;
+        for (int i = end - 1; i >= offset; i--) {
+            data[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Puts values back in place of the current values of the keys, undoing {@link #patch(byte[], String[])}.
+     *
+     * @param data   The raw .fastresume data.
+     * @param values The digits to restore in the order of the keys, or null for keys to leave unchanged.
+     * @return The restored data.
+     * @throws IllegalArgumentException if none of the keys with a well-formed integer value is found.
+     */
+    byte[] restore(byte[] data, String[] values) {
+        int[] spans = locate(data);
+        int[] order = keysInDataOrder(spans);
+        int length = data.length;
+        for (int key : order) {
+            if (values[key] != null) {
+                length += values[key].length() - (spans[2 * key + 1] - spans[2 * key]);
+            }
+        }
+        byte[] restored = new byte[length];
+        int copied = 0;
+        int written = 0;
+        for (int key : order) {
+            if (values[key] == null) {
+                continue;
+            }
+            int valueStart = spans[2 * key];
+            System.arraycopy(data, copied, restored, written, valueStart - copied);
+            written += valueStart - copied;
+            byte[] value = values[key].getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(value, 0, restored, written, value.length);
+            written += value.length;
+            copied = spans[2 * key + 1];
+        }
+        System.arraycopy(data, copied, restored, written, data.length - copied);
+        return restored;
+    }
+
+    /**
+     * Checks whether the bencoded form of a key, up to its value, ends right before an offset.
+     *
+     * @param data        The raw .fastresume data.
+     * @param key         The index of the key.
+     * @param valueOffset The offset of the value.
+     * @return true if the key precedes the offset.
+     */
+    boolean isKeyBefore(byte[] data, int key, int valueOffset) {
+        byte[] pattern = patterns[key];
+        int start = valueOffset - pattern.length;
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (data[start + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first well-formed integer value of every located key in a single pass.
+     *
+     * @return The start and end offsets of the digits of each key at index 2 * key and 2 * key + 1,
+     *         or -1 for keys that are not found.
+     * @throws IllegalArgumentException if none of the keys to reset is found.
+     */
+    private int[] locate(byte[] data) {
+        int[] spans = new int[2 * patterns.length];
+        Arrays.fill(spans, -1);
+        int remaining = patterns.length;
+        int state = 0;
+        for (int i = 0; i < data.length && remaining > 0; i++) {
+            state = transitions[state * ALPHABET + (data[i] & 0xFF)];
+            int key = matches[state];
+            if (key == -1 || spans[2 * key] != -1) {
+                continue;
+            }
+            int valueEnd = findValueEnd(data, i + 1);
+            if (valueEnd == -1) {
+                // Not an integer value, so the match is part of some other data
+                continue;
+            }
+            spans[2 * key] = i + 1;
+            spans[2 * key + 1] = valueEnd;
+            remaining--;
+            state = 0;
+            i = valueEnd;
+        }
+        for (int key = 0; key < keys.size(); key++) {
+            if (spans[2 * key] != -1) {
+                return spans;
+            }
+        }
+        throw new IllegalArgumentException("None of the keys " + keys + " is found with an integer value.");
+    }
+
+    /**
+     * @return The indexes of the found keys to reset, ordered by the position of their values.
+     */
+    private int[] keysInDataOrder(int[] spans) {
+        int count = 0;
+        int[] order = new int[keys.size()];
+        for (int key = 0; key < order.length; key++) {
+            if (spans[2 * key] != -1) {
+                // Insertion sort, there are only a few keys
+                int j = count++;
+                while (j > 0 && spans[2 * order[j - 1]] > spans[2 * key]) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = key;
+            }
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Reads the values of all keys from a stream, which is read in chunks until every key has been found.
+     *
+     * @param in The .fastresume data.
+     * @return The values in the order of the keys, with null for keys that are not found.
+     * @throws IOException if the stream cannot be read.
+     */
+    Long[] scan(InputStream in) throws IOException {
+        return Arrays.copyOf(scanLocated(in), keys.size());
+    }
+
+    /**
+     * @return The values of all located keys, with null for keys that are not found.
+     */
+    private Long[] scanLocated(InputStream in) throws IOException {
+        Long[] values = new Long[patterns.length];
+        int remaining = values.length;
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        int state = 0;
+        // Key whose value is being read, or -1
+        int key = -1;
+        boolean negative = false;
+        long value = 0;
+        int digits = 0;
+        int n;
+        while (remaining > 0 && (n = in.read(buffer)) != -1) {
+            for (int i = 0; i < n && remaining > 0; i++) {
+                int c = buffer[i] & 0xFF;
+                if (key != -1) {
+                    if (c == MINUS && digits == 0 && !negative) {
+                        negative = true;
+                        continue;
+                    }
+                    if (c >= '0' && c <= '9' && digits < MAX_VALUE_DIGITS) {
+                        value = value * 10 + (c - '0');
+                        digits++;
+                        continue;
+                    }
+                    if (c == INTEGER_END && digits > 0) {
+                        values[key] = negative ? -value : value;
+                        remaining--;
+                        key = -1;
+                        state = 0;
+                        continue;
+                    }
+                    // Not an integer value, so scan on from this byte
+                    key = -1;
+                    state = 0;
+                }
+                state = transitions[state * ALPHABET + c];
+                int match = matches[state];
+                if (match != -1 && values[match] == null) {
+                    key = match;
+                    negative = false;
+                    value = 0;
+                    digits = 0;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Checks whether the data needs no change: at least one key is found and all found values are zero,
+     * or for total_uploaded the value of the rules, if any applies. Rules for some torrents only need the
+     * tracker and category, which can be anywhere in the data, so then the whole stream is read.
+     *
+     * @param in The .fastresume data.
+     * @return true if all values are already reset.
+     * @throws IOException if the stream cannot be read.
+     */
+    boolean isReset(InputStream in) throws IOException {
+        if (rules.needsFields()) {
+            return isReset(readAll(in));
+        }
+        return isReset(in, null);
+    }
+
+    /**
+     * Checks whether the data needs no change, reading the tracker and category for the rules from it.
+     *
+     * @param data The raw .fastresume data.
+     * @return true if all values are already reset.
+     */
+    boolean isReset(byte[] data) {
+        return isReset(data, null);
+    }
+
+    /**
+     * Checks whether the data needs no change, evaluating the rules with fields of the torrent that a store
+     * keeps outside the resume data, like the category column of torrents.db.
+     *
+     * @param data   The raw .fastresume data.
+     * @param fields The fields for the rules, or null to read them from the data.
+     * @return true if all values are already reset.
+     */
+    boolean isReset(byte[] data, TorrentFilter.ResumeFields fields) {
+        try {
+            return isReset(new ByteArrayInputStream(data), rulesFields(data, fields));
+        } catch (IOException e) {
+            throw new IllegalStateException("Reading from memory cannot fail", e);
+        }
+    }
+
+    /**
+     * @return The fields the rules are evaluated with, or null if no rule needs them.
+     */
+    private TorrentFilter.ResumeFields rulesFields(byte[] data, TorrentFilter.ResumeFields fields) {
+        if (!rules.needsFields()) {
+            return null;
+        }
+        return fields != null ? fields : TorrentFilter.readFields(data);
+    }
+
+    private boolean isReset(InputStream in, TorrentFilter.ResumeFields fields) throws IOException {
+        Long[] values = scanLocated(in);
+        boolean anyFound = false;
+        for (int key = 0; key < keys.size(); key++) {
+            Long value = values[key];
+            if (value != null) {
+                // With rules, even a zero total_uploaded may have to be raised
+                boolean reset = key == uploadedKey && !rules.isEmpty() ? isRuleValue(values, fields) : value == 0;
+                if (!reset) {
+                    return false;
+                }
+                anyFound = true;
+            }
+        }
+        return anyFound;
+    }
+
+    /**
+     * @return true if the scanned total_uploaded is the value of the rules, or no rule applies to it.
+     */
+    private boolean isRuleValue(Long[] values, TorrentFilter.ResumeFields fields) {
+        Long downloaded = downloadedKey == -1 ? null : values[downloadedKey];
+        long target = rules.target(values[uploadedKey], downloaded == null ? 0 : downloaded, fields);
+        return target == -1 || target == values[uploadedKey];
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            data.write(buffer, 0, n);
+        }
+        return data.toByteArray();
+    }
+
+    /**
+     * Finds the terminating 'e' of a bencoded integer value.
+     *
+     * @return The offset of the terminating 'e', or -1 if the value is not a well-formed integer.
+     */
+    private static int findValueEnd(byte[] data, int valueStart) {
+        int i = valueStart;
+        if (i < data.length && data[i] == MINUS) {
+            i++;
+        }
+        int digitsStart = i;
+        while (i < data.length && data[i] >= '0' && data[i] <= '9') {
+            i++;
+        }
+        if (i == digitsStart || i >= data.length || data[i] != INTEGER_END) {
+            return -1;
+        }
+        return i;
+    }
+}
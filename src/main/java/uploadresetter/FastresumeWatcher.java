@@ -0,0 +1,117 @@
+package uploadresetter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * FastresumeWatcher keeps resetting the uploaded amount of .fastresume files as they are created or modified.
+ * qBittorrent saves resume data in bursts, so a file is only processed once it has not changed for the
+ * debounce period. While nothing is pending, the watcher blocks on the WatchService without using any CPU.
+ */
+final class FastresumeWatcher {
+    static final long DEFAULT_DEBOUNCE_MILLIS = 2000;
+
+    private final Path folder;
+    private final long debounceMillis;
+    // Resets the files that have settled
+    private final Consumer<List<File>> handler;
+    // File name -> time at which the file is considered settled, in insertion order
+    private final Map<String, Long> pending = new LinkedHashMap<>();
+
+    FastresumeWatcher(Path folder, long debounceMillis, Consumer<List<File>> handler) {
+        this.folder = folder;
+        this.debounceMillis = debounceMillis;
+        this.handler = handler;
+    }
+
+    /**
+     * Watches the folder until the thread is interrupted.
+     *
+     * @throws IOException if the folder cannot be watched.
+     */
+    void run() throws IOException {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            folder.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            System.out.println("Watching for changes in: " + folder);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long wait = pending.values().iterator().next() - System.currentTimeMillis();
+                    key = watchService.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                }
+                if (key != null) {
+                    boolean valid = handleEvents(key);
+                    if (!valid) {
+                        System.err.println("Folder is no longer accessible: " + folder);
+                        return;
+                    }
+                }
+                processSettledFiles();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records the .fastresume files of a watch key's events, restarting their debounce period.
+     *
+     * @return false if the key is no longer valid.
+     */
+    private boolean handleEvents(WatchKey key) {
+        long settledAt = System.currentTimeMillis() + debounceMillis;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so every file has to be checked
+                pending.clear();
+                String[] names = folder.toFile().list(
+                        (dir, n) -> n.endsWith(QbtUploadResetter.FASTRESUME_FILE_EXTENSION));
+                for (String name : names == null ? new String[0] : names) {
+                    pending.put(name, settledAt);
+                }
+                continue;
+            }
+            String name = event.context().toString();
+            if (name.endsWith(QbtUploadResetter.FASTRESUME_FILE_EXTENSION)) {
+                // Re-insert so that the map stays ordered by settle time
+                pending.remove(name);
+                pending.put(name, settledAt);
+            }
+        }
+        return key.reset();
+    }
+
+    private void processSettledFiles() {
+        long now = System.currentTimeMillis();
+        List<File> settled = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getValue() > now) {
+                break;
+            }
+            iterator.remove();
+            settled.add(folder.resolve(entry.getKey()).toFile());
+        }
+        if (!settled.isEmpty()) {
+            handler.accept(settled);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package uploadresetter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * MultiRootRunner resets the BT_backup folders of several qBittorrent instances in one process, for hosts
+ * that run one instance per user or container. The roots are given by repeating {@code -p}, or listed in a
+ * roots file with options of their own:
+ * <pre>
+ * # path [options]
+ * /home/alice/.local/share/qBittorrent/BT_backup
+ * "/srv/bob/qBittorrent data/BT_backup" --keys all --category tv
+ * </pre>
+ * Options of a root are added after the command-line options, so they win over them, and its rules are
+ * tried before the rules of the command line. Only the options that {@link ResetEngine} supports can be
+ * given per root: the keys, the filter, the rules, {@code --fsync} and {@code --retries}.
+ *
+ * Every root is reset by its own engine, with its own settings and metrics, and records the original
+ * values in the undo journal of its own BT_backup folder, but all roots share one pool of worker threads.
+ * Like the command line for a single root, files whose values are already zero are rewritten as well.
+ * Each root has a lane of the {@link RoundRobinExecutor}, so a root with many files does not starve the
+ * others: while several roots have files waiting, the workers take turns between them.
+ */
+final class MultiRootRunner {
+    static final String ROOTS_OPTION = "--roots";
+
+    /**
+     * The command-line options that need the journals, prompts or connections of a single root.
+     */
+    static final List<String> SINGLE_ROOT_OPTIONS = Collections.unmodifiableList(Arrays.asList("-s", "--single",
+            "-i", "--incremental", "-w", "--watch", "-r", "--resume", "--scan", "--web-ui", "--output"));
+
+    private static final List<String> ROOT_OPTIONS = Arrays.asList("--keys", ResetRules.RULE_OPTION, "--fsync",
+            "--retries");
+    private static final int TASKS_PER_THREAD = 2;
+
+    /**
+     * A BT_backup folder and the options that apply to it only.
+     */
+    static final class Root {
+        private final String path;
+        private final String[] options;
+
+        Root(String path, String... options) {
+            this.path = path;
+            this.options = options.clone();
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        String[] getOptions() {
+            return options.clone();
+        }
+    }
+
+    private final List<Root> roots;
+    private final List<ResetEngine> engines = new ArrayList<>();
+    private final int threads;
+    // The torrents reset and the files still in use at the end of the run, in the order they were done
+    private final List<String> resets = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> contendedFiles = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Creates the engine of every root.
+     *
+     * @param roots     The roots, each listed once.
+     * @param args      The command-line arguments, which apply to every root.
+     * @param threads   The number of worker threads shared by all roots.
+     * @param nameCache The torrent name cache shared by all roots, or null.
+     * @throws IllegalArgumentException if the options of a root are not valid.
+     */
+    MultiRootRunner(List<Root> roots, String[] args, int threads, TorrentNameCache nameCache) {
+        this.roots = new ArrayList<>(roots);
+        this.threads = threads;
+        for (Root root : roots) {
+            try {
+                engines.add(buildEngine(root, args, nameCache, this::printResult));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid options for root: " + root.path + " - "
+                        + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static ResetEngine buildEngine(Root root, String[] args, TorrentNameCache nameCache,
+                                           ResetEngine.Listener listener) {
+        for (int i = 0; i < root.options.length; i++) {
+            String option = root.options[i];
+            if (!ROOT_OPTIONS.contains(option) && !TorrentFilter.isFilterOption(option)) {
+                throw new IllegalArgumentException("Option cannot be given per root: " + option);
+            }
+            if (++i >= root.options.length) {
+                throw new IllegalArgumentException("Missing value for " + option + " option");
+            }
+        }
+        String[] options = new String[args.length + root.options.length];
+        System.arraycopy(args, 0, options, 0, args.length);
+        System.arraycopy(root.options, 0, options, args.length, root.options.length);
+        List<String> rules = new ArrayList<>(ResetRules.findRules(root.options));
+        rules.addAll(ResetRules.findRules(args));
+        // Like a single root without --incremental, which cannot be given with --roots
+        ResetEngine.Builder builder = ResetEngine.builder().filter(options).nameCache(nameCache)
+                .rules(rules.toArray(new String[0])).verify(Arrays.asList(options).contains("--verify"))
+                .undo(true).skipAlreadyReset(false).listener(listener);
+        String keys = lastValue(options, "--keys");
+        if (keys != null) {
+            builder.keys(keys);
+        }
+        String durability = lastValue(options, "--fsync");
+        if (durability != null) {
+            builder.durability(durability);
+        }
+        String retries = lastValue(options, "--retries");
+        if (retries != null) {
+            try {
+                builder.retries(Integer.parseInt(retries), RetryScheduler.DEFAULT_DELAY_MILLIS);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for --retries option: " + retries);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String lastValue(String[] args, String option) {
+        String value = null;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(option)) {
+                value = args[++i];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Prints the result of a file like the command line does for a single root, with the whole path of the
+     * file so that the roots can be told apart.
+     */
+    private void printResult(ResetEngine.FileResult result) {
+        File file = result.getFile();
+        switch (result.getStatus()) {
+            case RESET:
+                System.out.println("Processing file: " + file.getPath());
+                System.out.println("Uploaded amount reset successfully for torrent: " + result.getTorrentName());
+                if (result.getMessage() != null) {
+                    System.err.println(result.getMessage());
+                }
+                resets.add(result.getTorrentName());
+                break;
+            case FAILED:
+                System.err.println("Failed to reset uploaded amount in file: " + file.getPath() + " - "
+                        + result.getMessage());
+                break;
+            case CONTENDED:
+                System.err.println("Failed to save the file, still in use: " + file.getPath() + " - "
+                        + result.getMessage());
+                contendedFiles.add(file.getPath());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads the roots from a roots file. Every line holds a path followed by the options of the root,
+     * separated by whitespace; values with spaces are put in double quotes, and blank lines and lines
+     * starting with # are ignored.
+     *
+     * @param file The roots file.
+     * @return The roots, in the order they are listed.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line cannot be parsed.
+     */
+    static List<Root> readRoots(File file) throws IOException {
+        List<Root> roots = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> tokens = tokenize(line, file, i + 1);
+            roots.add(new Root(tokens.get(0), tokens.subList(1, tokens.size()).toArray(new String[0])));
+        }
+        return roots;
+    }
+
+    private static List<String> tokenize(String line, File file, int lineNumber) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                if (token == null) {
+                    token = new StringBuilder();
+                }
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (token != null) {
+                    tokens.add(token.toString());
+                    token = null;
+                }
+            } else {
+                if (token == null) {
+                    token = new StringBuilder();
+                }
+                token.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unclosed quote in roots file: " + file.getPath() + " line "
+                    + lineNumber);
+        }
+        if (token != null) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Resets all roots and prints the summary of every root and the total. A root that cannot be listed is
+     * reported and does not stop the other roots. The engines are closed afterwards, so the roots are reset
+     * once.
+     *
+     * @return The summary of every root that could be listed, by path.
+     */
+    Map<String, ResetEngine.Summary> run() {
+        Map<String, ResetEngine.Summary> summaries = new LinkedHashMap<>();
+        List<Future<ResetEngine.Summary>> runs = new ArrayList<>();
+        ExecutorService listers = Executors.newFixedThreadPool(roots.size());
+        try (RoundRobinExecutor workers = new RoundRobinExecutor(threads)) {
+            for (int i = 0; i < roots.size(); i++) {
+                File folder = new File(roots.get(i).path);
+                ResetEngine engine = engines.get(i);
+                RoundRobinExecutor.Lane lane = workers.newLane();
+                runs.add(listers.submit(() -> engine.resetFolder(folder, lane, threads * TASKS_PER_THREAD)));
+            }
+            for (int i = 0; i < roots.size(); i++) {
+                String path = roots.get(i).path;
+                try {
+                    summaries.put(path, runs.get(i).get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        System.err.println("Failed to list files in: " + path + " - " + e.getCause().getMessage());
+                    } else {
+                        System.err.println("Failed to process root: " + path);
+                        e.getCause().printStackTrace();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (ResetEngine engine : engines) {
+                engine.cancel();
+            }
+        } finally {
+            listers.shutdownNow();
+            for (ResetEngine engine : engines) {
+                engine.close();
+            }
+        }
+        long[] total = new long[ResetEngine.Status.values().length];
+        for (Map.Entry<String, ResetEngine.Summary> summary : summaries.entrySet()) {
+            System.out.println("Processed " + describe(summary.getValue(), total) + " in " + summary.getKey());
+        }
+        System.out.println("Processed " + describe(new ResetEngine.Summary(total, false), null) + " in "
+                + summaries.size() + " roots");
+        return summaries;
+    }
+
+    /**
+     * Describes the counts of a summary, adding them to the total if one is given.
+     */
+    private static String describe(ResetEngine.Summary summary, long[] total) {
+        long files = 0;
+        for (ResetEngine.Status status : ResetEngine.Status.values()) {
+            long count = summary.getCount(status);
+            files += count;
+            if (total != null) {
+                total[status.ordinal()] += count;
+            }
+        }
+        return files + " files: " + summary.getCount(ResetEngine.Status.RESET) + " reset, "
+                + summary.getCount(ResetEngine.Status.ALREADY_RESET) + " already reset, "
+                + summary.getCount(ResetEngine.Status.FILTERED) + " filtered, "
+                + summary.getCount(ResetEngine.Status.FAILED) + " failed, "
+                + summary.getCount(ResetEngine.Status.CONTENDED) + " in use";
+    }
+
+    /**
+     * @return The names of the torrents reset in all roots, in the order they were done.
+     */
+    List<String> getResets() {
+        return new ArrayList<>(resets);
+    }
+
+    /**
+     * @return The files in all roots that were still in use and were not reset.
+     */
+    List<String> getContendedFiles() {
+        return new ArrayList<>(contendedFiles);
+    }
+
+    /**
+     * @return The metrics of every root, by path.
+     */
+    Map<String, RunMetrics> getMetrics() {
+        Map<String, RunMetrics> metrics = new LinkedHashMap<>();
+        for (int i = 0; i < roots.size(); i++) {
+            metrics.put(roots.get(i).path, engines.get(i).getMetrics());
+        }
+        return metrics;
+    }
+}
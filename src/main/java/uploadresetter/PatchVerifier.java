@@ -0,0 +1,258 @@
+package uploadresetter;
+
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * PatchVerifier checks patched .fastresume data before it replaces the original file, without decoding it
+ * into objects. A splice that went wrong would otherwise only show up when qBittorrent drops the torrent.
+ *
+ * One pass over the patched data checks that it is still a single well-formed bencoded value: containers
+ * are balanced, string length prefixes stay within the data and integers are well-formed. The values of
+ * the reset keys must then be plain non-negative integers right after their keys and equal the values the
+ * patcher set them to, zero or the value of the {@link ResetRules}, and a checksum of all other bytes must match
+ * the checksum that {@link FastresumePatcher#patch(byte[], String[], Checksum, int[])} took of the same
+ * bytes of the original, so a byte lost or moved anywhere outside the values is caught too. The patcher
+ * reports where it wrote the values, so the keys are not searched for again.
+ *
+ * The checksum is CRC32C where the JVM has it, from Java 9 on, and CRC32 otherwise. One checksum is kept
+ * per thread; verifying a file allocates two arrays with one entry per key, for the offsets of the values
+ * as written and in data order.
+ */
+final class PatchVerifier {
+    private static final String CRC32C_CLASS = "java.util.zip.CRC32C";
+    private static final Constructor<? extends Checksum> CRC32C = findCrc32c();
+    private static final ThreadLocal<Checksum> CHECKSUMS = ThreadLocal.withInitial(PatchVerifier::newChecksum);
+
+    /**
+     * Thrown when patched data fails verification.
+     */
+    static final class VerificationException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        VerificationException(String reason) {
+            super("Patched data failed verification: " + reason);
+        }
+    }
+
+    private PatchVerifier() {
+    }
+
+    private static Constructor<? extends Checksum> findCrc32c() {
+        try {
+            return Class.forName(CRC32C_CLASS).asSubclass(Checksum.class).getConstructor();
+        } catch (ReflectiveOperationException e) {
+            // Java 8
+            return null;
+        }
+    }
+
+    private static Checksum newChecksum() {
+        if (CRC32C != null) {
+            try {
+                return CRC32C.newInstance();
+            } catch (ReflectiveOperationException e) {
+                // Fall back to CRC32
+            }
+        }
+        return new CRC32();
+    }
+
+    /**
+     * @return The name of the checksum used, CRC32C or CRC32.
+     */
+    static String getAlgorithm() {
+        return CRC32C != null ? "CRC32C" : "CRC32";
+    }
+
+    /**
+     * Resets the values of all keys in place and verifies the result.
+     *
+     * @param patcher   The patcher.
+     * @param data      The raw .fastresume data, modified in place unless a rule raises a value.
+     * @param oldValues Receives the original digits of each key in the order of the keys, or null for keys
+     *                  that are not found or left unchanged.
+     * @return The patched data.
+     * @throws IllegalArgumentException if none of the keys is found.
+     * @throws VerificationException    if the patched data fails verification, in which case it must not
+     *                                  be written.
+     */
+    static FastresumePatcher.Patched patch(FastresumePatcher patcher, byte[] data, String[] oldValues) {
+        return patch(patcher, data, oldValues, null);
+    }
+
+    /**
+     * Resets the values of all keys like {@link #patch(FastresumePatcher, byte[], String[])}, evaluating the
+     * rules with fields of the torrent that a store keeps outside the resume data.
+     *
+     * @param fields The fields for the rules, or null to read them from the data.
+     */
+    static FastresumePatcher.Patched patch(FastresumePatcher patcher, byte[] data, String[] oldValues,
+                                           TorrentFilter.ResumeFields fields) {
+        Checksum checksum = CHECKSUMS.get();
+        checksum.reset();
+        int[] newOffsets = new int[patcher.getKeys().size()];
+        FastresumePatcher.Patched patched = patcher.patch(data, oldValues, checksum, newOffsets, fields);
+        verify(patcher, patched.getData(), patched.getLength(), newOffsets, patched.getUploaded(),
+                checksum.getValue());
+        return patched;
+    }
+
+    /**
+     * Verifies patched data.
+     *
+     * @param patcher      The patcher that patched the data.
+     * @param data         The patched data.
+     * @param length       The length of the patched data in the array.
+     * @param newOffsets   The offset of the new value of each key, or -1 for keys that were not found or left
+     *                     unchanged.
+     * @param uploaded     The value total_uploaded was set to; other keys must be zero.
+     * @param keptChecksum The checksum of the bytes of the original outside the values of the keys.
+     * @throws VerificationException if the data fails verification.
+     */
+    static void verify(FastresumePatcher patcher, byte[] data, int length, int[] newOffsets, long uploaded,
+                       long keptChecksum) {
+        checkStructure(data, length);
+        int[] offsets = new int[newOffsets.length];
+        int count = 0;
+        for (int key = 0; key < newOffsets.length; key++) {
+            int offset = newOffsets[key];
+            if (offset == -1) {
+                continue;
+            }
+            int end = valueEnd(data, offset, length);
+            if (end == -1 || !patcher.isKeyBefore(data, key, offset)) {
+                throw failure("key " + patcher.getKeys().get(key) + " has no valid value");
+            }
+            long expected = key == patcher.getUploadedKey() ? uploaded : 0;
+            if (!isValue(data, offset, end, expected)) {
+                throw failure("key " + patcher.getKeys().get(key) + " is not set to " + expected);
+            }
+            offsets[count++] = offset;
+        }
+        Arrays.sort(offsets, 0, count);
+        Checksum checksum = CHECKSUMS.get();
+        checksum.reset();
+        int copied = 0;
+        for (int i = 0; i < count; i++) {
+            checksum.update(data, copied, offsets[i] - copied);
+            copied = valueEnd(data, offsets[i], length);
+        }
+        checksum.update(data, copied, length - copied);
+        if (checksum.getValue() != keptChecksum) {
+            throw failure(getAlgorithm() + " of the unchanged bytes does not match the original");
+        }
+    }
+
+    /**
+     * Finds the end of a value written by the patcher: 0, or digits without a leading zero.
+     *
+     * @return The offset of the terminating 'e', or -1 if the value is not written like that.
+     */
+    private static int valueEnd(byte[] data, int offset, int length) {
+        int i = offset;
+        if (i < length && data[i] == '0') {
+            i++;
+        } else {
+            while (i < length && data[i] >= '0' && data[i] <= '9') {
+                i++;
+            }
+        }
+        return i > offset && i < length && data[i] == 'e' ? i : -1;
+    }
+
+    /**
+     * Compares the digits of a value written by the patcher with a number, from the last digit, so digits
+     * beyond the range of a long cannot overflow.
+     *
+     * @return true if the digits between the offsets are the number.
+     */
+    private static boolean isValue(byte[] data, int offset, int end, long expected) {
+        long rest = expected;
+        for (int i = end - 1; i >= offset; i--) {
+            if (data[i] != '0' + rest % 10) {
+                return false;
+            }
+            rest /= 10;
+        }
+        return rest == 0;
+    }
+
+    /**
+     * Walks the bencoded data without building any values.
+     *
+     * @throws VerificationException if the data is not one well-formed bencoded value.
+     */
+    static void checkStructure(byte[] data, int length) {
+        int depth = 0;
+        int i = 0;
+        do {
+            if (i >= length) {
+                throw failure(depth + " containers are not closed");
+            }
+            byte b = data[i];
+            if (b == 'd' || b == 'l') {
+                depth++;
+                i++;
+            } else if (b == 'e') {
+                if (depth == 0) {
+                    throw failure("unbalanced end at offset " + i);
+                }
+                depth--;
+                i++;
+            } else if (b == 'i') {
+                i = integerEnd(data, i + 1, length) + 1;
+            } else if (b >= '0' && b <= '9') {
+                i = stringEnd(data, i, length);
+            } else {
+                throw failure("unexpected byte at offset " + i);
+            }
+        } while (depth > 0);
+        if (i != length) {
+            throw failure((length - i) + " bytes after the end of the data");
+        }
+    }
+
+    /**
+     * @return The offset of the terminating 'e' of the integer whose digits start at the offset.
+     */
+    private static int integerEnd(byte[] data, int start, int length) {
+        int i = start < length && data[start] == '-' ? start + 1 : start;
+        int digitsStart = i;
+        while (i < length && data[i] >= '0' && data[i] <= '9') {
+            i++;
+        }
+        if (i == digitsStart || i >= length || data[i] != 'e') {
+            throw failure("invalid integer at offset " + (start - 1));
+        }
+        return i;
+    }
+
+    /**
+     * @return The offset after the string whose length prefix starts at the offset.
+     */
+    private static int stringEnd(byte[] data, int start, int length) {
+        long size = 0;
+        int i = start;
+        while (i < length && data[i] >= '0' && data[i] <= '9') {
+            size = size * 10 + (data[i] - '0');
+            if (size > length) {
+                throw failure("string length out of range at offset " + start);
+            }
+            i++;
+        }
+        if (i >= length || data[i] != ':') {
+            throw failure("invalid string length at offset " + start);
+        }
+        if (size > length - i - 1) {
+            throw failure("string length out of range at offset " + start);
+        }
+        return i + 1 + (int) size;
+    }
+
+    private static VerificationException failure(String reason) {
+        return new VerificationException(reason);
+    }
+}
@@ -0,0 +1,1400 @@
+package uploadresetter;
+
+import com.dampcake.bencode.Bencode;
+import com.dampcake.bencode.BencodeException;
+import com.dampcake.bencode.Type;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * QbtUploadResetter is a tool to reset the uploaded amount for torrents in qBittorrent.
+ * It processes .fastresume files found in the BT_backup folder, resetting the
+ * total_uploaded amount, and optionally other statistics, to 0, or setting total_uploaded by rules.
+ *
+ * Command-line options:
+ *  -p, --path <path>   Specify the path to the BT_backup folder, to the torrents.db database, or to a zip,
+ *                      tar or tar.gz archive of a BT_backup folder. Repeat to reset several BT_backup folders.
+ *  --roots <file>      Reset the BT_backup folders listed in the file, one per line with their own options.
+ *  -s, --single        Prompt for confirmation before resetting the uploaded amount for each file.
+ *  -t, --threads <n>   Number of worker threads used to process files (defaults to the number of cores).
+ *  -i, --incremental   Skip files that are unchanged since the last incremental run or already reset.
+ *  -w, --watch         Keep running and reset .fastresume files whenever they are created or modified.
+ *  -r, --resume        Skip the files already handled by an interrupted run.
+ *  --undo <journal>    Restore the values recorded in an undo journal instead of resetting.
+ *  --scan <file>       Write the statistics of every torrent to a CSV or JSON file instead of resetting.
+ *  --output <file>     Write the reset copy of an archive to the file (defaults to the archive name with -reset
+ *                      added).
+ *  --top <n>           Number of torrents with the most uploaded listed after a scan (defaults to 10).
+ *  --keys <keys>       Comma-separated keys of the values to reset, or all (defaults to total_uploaded).
+ *  --rule <rule>       Set total_uploaded by a rule instead of resetting it: zero, ratio <r>, cap <size> or
+ *                      scale <f>, optionally followed by if tracker=<host> or if category=<name>. May be
+ *                      repeated; the first rule that applies to a torrent decides, and torrents that no rule
+ *                      applies to keep their value.
+ *  --name <regex>      Only reset torrents whose name matches the regular expression.
+ *  --name-glob <glob>  Only reset torrents whose whole name matches the glob, ignoring case.
+ *  --tracker <host>    Only reset torrents with a tracker on the host or one of its subdomains.
+ *  --category <name>   Only reset torrents in the category.
+ *  --save-path <path>  Only reset torrents saved in the folder or one of its subfolders.
+ *  --min-uploaded <n>  Only reset torrents that uploaded at least n bytes; K, M, G and T suffixes are allowed.
+ *  --web-ui <url>      Pause the torrents being reset through the qBittorrent Web UI at the given address.
+ *  --web-ui-user <name> Web UI user name; the password is read from the QBT_WEBUI_PASSWORD variable.
+ *  --retries <n>       Times a file in use by a running client is retried before it is given up (defaults to 5).
+ *  --fsync <mode>      How writes are flushed to disk: file, batch[:n] or none (defaults to batch:64).
+ *  --verify            Check that patched files are still valid bencode and unchanged outside the reset values
+ *                      before they are written.
+ *  --report <file>     Write a JSON report with the counters and phase timings of the run.
+ *  --prometheus <file> Write the counters and phase timings of the run in the Prometheus text format.
+ *  --cache <file>      Use the given file as the persistent torrent name cache.
+ *  --no-cache          Do not use the persistent torrent name cache.
+ *  -h, --help          Display this help message.
+ */
+public class QbtUploadResetter {
+    static final String TORRENT_FILE_EXTENSION = ".torrent";
+    static final String FASTRESUME_FILE_EXTENSION = ".fastresume";
+    private static final String DEFAULT_PATH = System.getenv("LocalAppData") + "\\qBittorrent\\BT_backup";
+    private static final String YES = "yes";
+    private static final String Y = "y";
+    private static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final FastresumePatcher UPLOADED_PATCHER =
+            new FastresumePatcher(FastresumePatcher.DEFAULT_KEYS);
+
+    // Resets the files of a BT_backup folder; the resetter adds the prompts, checkpoints and manifests
+    private final ResetEngine engine;
+
+    // Whether files that need no change are skipped, selected with --incremental
+    private final boolean incremental;
+
+    // Whether the files already handled by an interrupted run are skipped, selected with --resume
+    private final boolean resume;
+
+    // Prompt shared by all stores in single file mode, so that batch answers carry over between torrents
+    private final ResetPrompt prompt;
+
+    // Web UI client that pauses the torrents being reset, selected with --web-ui
+    private final QbtWebApiClient webApi;
+
+    private final List<String> successfulResets = Collections.synchronizedList(new ArrayList<>());
+
+    // Files that were still in use by a running client when their retry budget ran out
+    private final List<String> contendedFiles = Collections.synchronizedList(new ArrayList<>());
+
+    // Manifest and checkpoint journal of the running processFolder call
+    private volatile RunManifest manifest;
+    private volatile CheckpointJournal checkpoint;
+
+    // The stamps of the files written in watch mode, whose change events are the tool's own writes
+    private final Map<File, AtomicFileWriter.Stamp> writtenStamps = new ConcurrentHashMap<>();
+    private volatile boolean watching;
+
+    /**
+     * @param builder     The settings of the engine that resets the files.
+     * @param incremental Whether to skip files that are unchanged since the last incremental run or already reset.
+     * @param resume      Whether to skip the files already handled by an interrupted run.
+     * @param prompt      The prompt that confirms every torrent in single file mode, or null.
+     * @param webApi      The Web UI client that pauses the torrents being reset, or null.
+     * @throws IllegalArgumentException if a filter option or rule of the builder is not valid.
+     */
+    QbtUploadResetter(ResetEngine.Builder builder, boolean incremental, boolean resume, ResetPrompt prompt,
+                      QbtWebApiClient webApi) {
+        this.incremental = incremental;
+        this.resume = resume;
+        this.prompt = prompt;
+        this.webApi = webApi;
+        this.engine = builder.ordered(true).skipAlreadyReset(incremental).skip(this::isDone)
+                .confirmation(prompt != null ? this::confirm : null)
+                .listener(new ResetEngine.Listener() {
+                    @Override
+                    public void onResult(ResetEngine.FileResult result) {
+                        printResult(result);
+                    }
+
+                    @Override
+                    public void onRetry(File file, String message) {
+                        System.out.println("File in use, retrying later: " + file.getName() + " - " + message);
+                    }
+                }).build();
+    }
+
+    public static void main(String[] args) {
+        String path = parseArguments(args);
+        boolean singleFileMode = isSingleFileMode(args);
+        boolean incrementalMode = isIncrementalMode(args);
+        boolean watchMode = isWatchMode(args);
+        boolean resume = isResumeMode(args);
+        int threads = parseThreads(args);
+        String reportFile = findOptionValue(args, "--report");
+        String prometheusFile = findOptionValue(args, "--prometheus");
+        String undoFile = findOptionValue(args, "--undo");
+        String scanFile = findOptionValue(args, "--scan");
+        String durability = parseDurability(args);
+        String keys = parseKeys(args);
+        List<String> rules = ResetRules.findRules(args);
+        ResetEngine.Builder builder = ResetEngine.builder().threads(threads).durability(durability).filter(args)
+                .rules(rules.toArray(new String[0])).retries(parseRetries(args), RetryScheduler.DEFAULT_DELAY_MILLIS);
+        if (keys != null) {
+            builder.keys(keys);
+        }
+        try {
+            TorrentFilter.parse(args);
+            checkRules(keys, rules);
+        } catch (IllegalArgumentException e) {
+            // Resetting every torrent, or to zero instead of the value of a rule, cannot be undone by running again
+            System.err.println(e.getMessage());
+            return;
+        }
+        if (undoFile != null) {
+            RunMetrics metrics = new RunMetrics();
+            undo(undoFile, threads, AtomicFileWriter.parse(durability, metrics));
+            writeReports(reportFile, prometheusFile, metrics, Collections.emptyMap());
+            return;
+        }
+        List<MultiRootRunner.Root> roots = parseRoots(args);
+        if (roots == null) {
+            return;
+        }
+        if (roots.size() > 1 || findOptionValue(args, MultiRootRunner.ROOTS_OPTION) != null) {
+            resetRoots(roots, args, threads, reportFile, prometheusFile);
+            return;
+        }
+        File cacheFile = parseCacheFile(args);
+        TorrentNameCache cache = cacheFile == null ? null
+                : TorrentNameCache.load(cacheFile, TorrentNameCache.DEFAULT_MAX_ENTRIES);
+        builder.nameCache(cache).verify(isVerifyMode(args)).undo(scanFile == null);
+
+        QbtWebApiClient webApi = null;
+        QbtUploadResetter resetter = null;
+        try {
+            if (path != null) {
+                System.out.println("Path specified: " + path);
+            } else {
+                System.out.println("Using default path");
+                path = DEFAULT_PATH;
+            }
+            String webUiUrl = findOptionValue(args, "--web-ui");
+            if (scanFile == null && webUiUrl != null) {
+                webApi = connectWebApi(webUiUrl, findOptionValue(args, "--web-ui-user"));
+                if (webApi == null) {
+                    // Resetting torrents that qBittorrent keeps running would not stick
+                    return;
+                }
+            }
+            resetter = new QbtUploadResetter(builder, incrementalMode, resume,
+                    singleFileMode ? new ResetPrompt(System.in, System.out) : null, webApi);
+            if (scanFile != null) {
+                resetter.scan(path, scanFile, parseTop(args));
+            } else {
+                try (ResumeDataStore store = ResumeDataStore.open(path, findOptionValue(args, "--output"))) {
+                    store.resetAll(resetter);
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                }
+                if (watchMode && new File(path).isDirectory()) {
+                    resetter.watch(path);
+                }
+            }
+        } finally {
+            if (resetter != null) {
+                resetter.engine.close();
+            }
+            closeWebApi(webApi);
+            if (cache != null) {
+                cache.save();
+            }
+        }
+
+        if (scanFile == null) {
+            printSuccessList(resetter.getSuccessfulResets());
+            printContendedList(resetter.getContendedFiles());
+        }
+        writeReports(reportFile, prometheusFile, resetter.engine.getMetrics(), Collections.emptyMap());
+    }
+
+    /**
+     * Resets several BT_backup folders on one shared pool of worker threads, and prints and reports the
+     * results of every root and in total.
+     *
+     * @param roots          The roots.
+     * @param args           The command-line arguments, which apply to every root.
+     * @param threads        The number of worker threads shared by all roots.
+     * @param reportFile     The JSON report file, or null.
+     * @param prometheusFile The Prometheus metrics file, or null.
+     */
+    private static void resetRoots(List<MultiRootRunner.Root> roots, String[] args, int threads,
+                                   String reportFile, String prometheusFile) {
+        List<String> options = Arrays.asList(args);
+        for (String option : MultiRootRunner.SINGLE_ROOT_OPTIONS) {
+            if (options.contains(option)) {
+                System.err.println("Option cannot be used with several roots: " + option);
+                return;
+            }
+        }
+        File cacheFile = parseCacheFile(args);
+        TorrentNameCache cache = cacheFile == null ? null
+                : TorrentNameCache.load(cacheFile, TorrentNameCache.DEFAULT_MAX_ENTRIES);
+        MultiRootRunner runner;
+        try {
+            runner = new MultiRootRunner(roots, args, threads, cache);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        System.out.println("Resetting " + roots.size() + " roots on " + threads + " threads");
+        runner.run();
+        if (cache != null) {
+            cache.save();
+        }
+        Map<String, RunMetrics> rootMetrics = runner.getMetrics();
+        RunMetrics metrics = new RunMetrics();
+        for (RunMetrics root : rootMetrics.values()) {
+            metrics.addAll(root);
+        }
+        printSuccessList(runner.getResets());
+        printContendedList(runner.getContendedFiles());
+        writeReports(reportFile, prometheusFile, metrics, rootMetrics);
+    }
+
+    /**
+     * Collects the roots given by repeated -p options and by a roots file. A path that is listed in the
+     * roots file takes the options given there.
+     *
+     * @param args The command-line arguments.
+     * @return The roots, each listed once, or null if the roots file cannot be read.
+     */
+    private static List<MultiRootRunner.Root> parseRoots(String[] args) {
+        Map<String, MultiRootRunner.Root> roots = new LinkedHashMap<>();
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("-p") || args[i].equals("--path")) {
+                String path = args[++i];
+                roots.putIfAbsent(path, new MultiRootRunner.Root(path));
+            }
+        }
+        String rootsFile = findOptionValue(args, MultiRootRunner.ROOTS_OPTION);
+        if (rootsFile != null) {
+            try {
+                for (MultiRootRunner.Root root : MultiRootRunner.readRoots(new File(rootsFile))) {
+                    roots.put(root.getPath(), root);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to read roots file: " + rootsFile + " - " + e.getMessage());
+                return null;
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return null;
+            }
+        }
+        return new ArrayList<>(roots.values());
+    }
+
+    /**
+     * Connects to the qBittorrent Web UI. The password is read from an environment variable, so that it
+     * does not show up in the process list.
+     *
+     * @param url      The address of the Web UI.
+     * @param username The user name, or null if the Web UI does not require a login from this host.
+     * @return The client, or null if the Web UI cannot be reached.
+     */
+    private static QbtWebApiClient connectWebApi(String url, String username) {
+        try {
+            QbtWebApiClient client = QbtWebApiClient.connect(url, username,
+                    System.getenv(QbtWebApiClient.PASSWORD_VARIABLE));
+            System.out.println("Connected to Web UI: " + url);
+            return client;
+        } catch (IOException e) {
+            System.err.println("Failed to connect to Web UI: " + url + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void closeWebApi(QbtWebApiClient client) {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                System.err.println("Failed to log out of Web UI - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Restores the values recorded in an undo journal.
+     *
+     * @param journalFile The path to the undo journal.
+     * @param threads     The number of worker threads.
+     */
+    public static void undo(String journalFile, int threads) {
+        undo(journalFile, threads, new AtomicFileWriter(AtomicFileWriter.Durability.BATCH,
+                AtomicFileWriter.DEFAULT_BATCH_SIZE));
+    }
+
+    private static void undo(String journalFile, int threads, AtomicFileWriter writer) {
+        File file = new File(journalFile);
+        if (!file.isFile()) {
+            System.err.println("Invalid undo journal specified: " + journalFile);
+            return;
+        }
+        System.out.println("Undoing resets recorded in: " + journalFile);
+        try {
+            File database = SqliteResumeDataStore.databaseOfUndoJournal(file);
+            if (database != null) {
+                SqliteResumeDataStore.undo(database, file);
+            } else {
+                UndoJournal.undo(file, threads, writer);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to undo resets: " + journalFile + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the metrics of the run, and of every root of a multi-root run, to the report files requested
+     * by the user.
+     *
+     * @param reportFile     The JSON report file, or null.
+     * @param prometheusFile The Prometheus metrics file, or null.
+     * @param metrics        The metrics of the run.
+     * @param roots          The metrics of every root by path, empty unless several roots were reset.
+     */
+    private static void writeReports(String reportFile, String prometheusFile, RunMetrics metrics,
+                                     Map<String, RunMetrics> roots) {
+        if (reportFile != null) {
+            try {
+                metrics.writeJson(new File(reportFile), roots);
+            } catch (IOException e) {
+                System.err.println("Failed to write report: " + reportFile + " - " + e.getMessage());
+            }
+        }
+        if (prometheusFile != null) {
+            try {
+                metrics.writePrometheus(new File(prometheusFile), roots);
+            } catch (IOException e) {
+                System.err.println("Failed to write Prometheus metrics: " + prometheusFile + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Parses command-line arguments to extract the path specified by the user.
+     *
+     * @param args The command-line arguments.
+     * @return The path specified by the user, or null if no valid path is specified or an error occurs.
+     */
+    private static String parseArguments(String[] args) {
+        String path = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-p":
+                case "--path":
+                    if (i + 1 < args.length) {
+                        path = args[++i];
+                        break;
+                    } else {
+                        System.err.println("Missing value for -p/--path option");
+                        return null;
+                    }
+                case "-t":
+                case "--threads":
+                    // The value is validated by parseThreads
+                    i++;
+                    break;
+                case "--cache":
+                    if (i + 1 < args.length) {
+                        i++;
+                        break;
+                    } else {
+                        System.err.println("Missing value for --cache option");
+                        return null;
+                    }
+                case "--retries":
+                    // The value is validated by parseRetries
+                    i++;
+                    break;
+                case "--top":
+                    // The value is validated by parseTop
+                    i++;
+                    break;
+                case "--fsync":
+                    // The value is validated by parseDurability
+                    i++;
+                    break;
+                case "--keys":
+                    // The value is validated by parseKeys
+                    i++;
+                    break;
+                case "--rule":
+                    // The value is validated by checkRules
+                    i++;
+                    break;
+                case "--report":
+                case "--prometheus":
+                case "--undo":
+                case "--scan":
+                case "--web-ui":
+                case "--web-ui-user":
+                case "--output":
+                case "--roots":
+                case "--name":
+                case "--name-glob":
+                case "--tracker":
+                case "--category":
+                case "--save-path":
+                case "--min-uploaded":
+                    if (i + 1 < args.length) {
+                        i++;
+                        break;
+                    } else {
+                        System.err.println("Missing value for " + arg + " option");
+                        return null;
+                    }
+                case "-s":
+                case "--single":
+                case "-i":
+                case "--incremental":
+                case "-w":
+                case "--watch":
+                case "-r":
+                case "--resume":
+                case "--no-cache":
+                case "--verify":
+                    break;
+                case "-h":
+                case "--help":
+                    printHelp();
+                    return null;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    return null;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Checks if the command-line arguments indicate that incremental mode should be used.
+     *
+     * @param args The command-line arguments.
+     * @return true if incremental mode is specified, false otherwise.
+     */
+    private static boolean isIncrementalMode(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("-i") || arg.equals("--incremental")) {
+                System.out.println("Using incremental mode");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the command-line arguments indicate that watch mode should be used.
+     *
+     * @param args The command-line arguments.
+     * @return true if watch mode is specified, false otherwise.
+     */
+    private static boolean isWatchMode(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("-w") || arg.equals("--watch")) {
+                System.out.println("Using watch mode");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the command-line arguments indicate that an interrupted run should be resumed.
+     *
+     * @param args The command-line arguments.
+     * @return true if resume mode is specified, false otherwise.
+     */
+    private static boolean isResumeMode(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("-r") || arg.equals("--resume")) {
+                System.out.println("Resuming interrupted run");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the number of worker threads from the command-line arguments.
+     *
+     * @param args The command-line arguments.
+     * @return The number of threads specified by the user, or the number of available cores by default.
+     */
+    private static int parseThreads(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-t") || args[i].equals("--threads")) {
+                if (i + 1 < args.length) {
+                    try {
+                        int threads = Integer.parseInt(args[i + 1]);
+                        if (threads > 0) {
+                            return threads;
+                        }
+                    } catch (NumberFormatException e) {
+                        // Reported below
+                    }
+                }
+                System.err.println("Invalid value for -t/--threads option, using " + DEFAULT_THREADS + " threads");
+                return DEFAULT_THREADS;
+            }
+        }
+        return DEFAULT_THREADS;
+    }
+
+    /**
+     * Parses the retry budget for files in use by a running client from the command-line arguments.
+     *
+     * @param args The command-line arguments.
+     * @return The number of retries specified by the user, or {@link RetryScheduler#DEFAULT_ATTEMPTS} by default.
+     */
+    private static int parseRetries(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--retries")) {
+                if (i + 1 < args.length) {
+                    try {
+                        int attempts = Integer.parseInt(args[i + 1]);
+                        if (attempts >= 0) {
+                            return attempts;
+                        }
+                    } catch (NumberFormatException e) {
+                        // Reported below
+                    }
+                }
+                System.err.println("Invalid value for --retries option, using " + RetryScheduler.DEFAULT_ATTEMPTS);
+                return RetryScheduler.DEFAULT_ATTEMPTS;
+            }
+        }
+        return RetryScheduler.DEFAULT_ATTEMPTS;
+    }
+
+    /**
+     * Parses the number of top torrents listed after a scan from the command-line arguments.
+     *
+     * @param args The command-line arguments.
+     * @return The number specified by the user, or {@link TorrentScanner#DEFAULT_TOP} by default.
+     */
+    private static int parseTop(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--top")) {
+                if (i + 1 < args.length) {
+                    try {
+                        int top = Integer.parseInt(args[i + 1]);
+                        if (top >= 0) {
+                            return top;
+                        }
+                    } catch (NumberFormatException e) {
+                        // Reported below
+                    }
+                }
+                System.err.println("Invalid value for --top option, using " + TorrentScanner.DEFAULT_TOP);
+                return TorrentScanner.DEFAULT_TOP;
+            }
+        }
+        return TorrentScanner.DEFAULT_TOP;
+    }
+
+    /**
+     * Checks if the command-line arguments indicate that patched data should be verified before it is written.
+     *
+     * @param args The command-line arguments.
+     * @return true if verification is specified, false otherwise.
+     */
+    private static boolean isVerifyMode(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--verify")) {
+                System.out.println("Verifying patched files before they are written");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the command-line arguments indicate that single file mode should be used.
+     *
+     * @param args The command-line arguments.
+     * @return true if single file mode is specified, false otherwise.
+     */
+    private static boolean isSingleFileMode(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("-s") || arg.equals("--single")) {
+                System.out.println("Using single file mode");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the value of an option that takes a value.
+     *
+     * @param args   The command-line arguments.
+     * @param option The option name.
+     * @return The value of the option, or null if the option is not specified.
+     */
+    private static String findOptionValue(String[] args, String option) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(option)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the durability mode of file writes from the command-line arguments.
+     *
+     * @param args The command-line arguments.
+     * @return The mode specified by the user, or the default batch mode.
+     */
+    private static String parseDurability(String[] args) {
+        String batch = AtomicFileWriter.Durability.BATCH.name().toLowerCase(Locale.ROOT) + ":"
+                + AtomicFileWriter.DEFAULT_BATCH_SIZE;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--fsync")) {
+                if (i + 1 < args.length) {
+                    try {
+                        AtomicFileWriter.parse(args[i + 1]);
+                        return args[i + 1];
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage());
+                    }
+                }
+                System.err.println("Invalid value for --fsync option, using " + batch);
+                break;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Parses the keys of the values to reset from the command-line arguments.
+     *
+     * @param args The command-line arguments.
+     * @return The keys specified by the user, or null to reset total_uploaded.
+     */
+    private static String parseKeys(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--keys")) {
+                if (i + 1 < args.length) {
+                    try {
+                        FastresumePatcher keysPatcher = FastresumePatcher.parse(args[i + 1]);
+                        System.out.println("Resetting keys: " + String.join(", ", keysPatcher.getKeys()));
+                        return args[i + 1];
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage());
+                    }
+                }
+                System.err.println("Invalid value for --keys option, using " + FastresumePatcher.UPLOADED_KEY);
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks the rules for total_uploaded given on the command line, and prints them.
+     *
+     * @param keys  The keys to reset, or null for total_uploaded.
+     * @param rules The rules.
+     * @throws IllegalArgumentException if a rule is not valid or total_uploaded is not reset.
+     */
+    private static void checkRules(String keys, List<String> rules) {
+        ResetRules resetRules = ResetRules.parse(rules);
+        if (!resetRules.isEmpty()) {
+            (keys == null ? UPLOADED_PATCHER : FastresumePatcher.parse(keys)).withRules(resetRules);
+            System.out.println("Setting " + FastresumePatcher.UPLOADED_KEY + " by rules: " + resetRules);
+        }
+    }
+
+    /**
+     * Determines the torrent name cache file from the command-line arguments.
+     *
+     * @param args The command-line arguments.
+     * @return The cache file specified by the user, the default cache file, or null if the cache is disabled.
+     */
+    private static File parseCacheFile(String[] args) {
+        File cacheFile = TorrentNameCache.defaultCacheFile();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--no-cache")) {
+                return null;
+            }
+            if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheFile = new File(args[i + 1]);
+            }
+        }
+        return cacheFile;
+    }
+
+    /**
+     * Processes the .fastresume files in the specified path, resetting the uploaded amount for each file.
+     *
+     * @param path            The path to the BT_backup folder.
+     * @param singleFileMode  Whether to prompt for confirmation before resetting each file.
+     */
+    public static void processFiles(String path, boolean singleFileMode) {
+        processFiles(path, singleFileMode, DEFAULT_THREADS);
+    }
+
+    /**
+     * Processes the .fastresume files in the specified path, resetting the uploaded amount for each file.
+     * Files are processed by a pool of worker threads while the results are printed in the order the files
+     * were listed.
+     *
+     * @param path            The path to the BT_backup folder.
+     * @param singleFileMode  Whether to prompt for confirmation before resetting each file.
+     * @param threads         The number of worker threads.
+     */
+    public static void processFiles(String path, boolean singleFileMode, int threads) {
+        processFiles(path, singleFileMode, threads, false);
+    }
+
+    /**
+     * Processes the .fastresume files in the specified path, resetting the uploaded amount for each file.
+     * In incremental mode, files that are unchanged since the last incremental run or whose uploaded amount
+     * is already zero are skipped without being rewritten, and a summary of the run is printed.
+     * The folder is enumerated lazily, so processing starts before the whole folder has been listed.
+     *
+     * @param path            The path to the BT_backup folder.
+     * @param singleFileMode  Whether to prompt for confirmation before resetting each file.
+     * @param threads         The number of worker threads.
+     * @param incremental     Whether to skip files that need no change.
+     */
+    public static void processFiles(String path, boolean singleFileMode, int threads, boolean incremental) {
+        processFiles(path, singleFileMode, threads, incremental, false);
+    }
+
+    /**
+     * Processes the .fastresume files in the specified path, resetting the uploaded amount for each file.
+     * See {@link #processFolder(String)}.
+     *
+     * @param path            The path to the BT_backup folder.
+     * @param singleFileMode  Whether to prompt for confirmation before resetting each file.
+     * @param threads         The number of worker threads.
+     * @param incremental     Whether to skip files that need no change.
+     * @param resume          Whether to skip the files already handled by an interrupted run.
+     */
+    public static void processFiles(String path, boolean singleFileMode, int threads, boolean incremental,
+                                    boolean resume) {
+        QbtUploadResetter resetter = new QbtUploadResetter(ResetEngine.builder().threads(threads), incremental,
+                resume, singleFileMode ? new ResetPrompt(System.in, System.out) : null, null);
+        try {
+            resetter.processFolder(path);
+        } finally {
+            resetter.engine.close();
+        }
+    }
+
+    /**
+     * Processes the .fastresume files in the specified path on the engine. The outcome of every file is
+     * recorded in a checkpoint journal, which is written in batches, flushed by a shutdown hook when the
+     * process is stopped, and removed once all files have been processed. When resuming, the files that the
+     * journal of an interrupted run records as done are skipped.
+     *
+     * @param path The path to the BT_backup folder.
+     */
+    void processFolder(String path) {
+        File folder = new File(path);
+        if (!folder.exists() || !folder.isDirectory()) {
+            System.err.println("Invalid path specified or path is not a directory: " + path);
+            return;
+        }
+
+        RunManifest runManifest = incremental ? RunManifest.load(folder, engine.getPatcher().getFingerprint()) : null;
+        CheckpointJournal journal = openCheckpoint(folder);
+        Thread shutdownHook = journal == null ? null : new Thread(journal::flush, "checkpoint-flush");
+        if (shutdownHook != null) {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+        manifest = runManifest;
+        checkpoint = journal;
+        boolean completed = false;
+        try (FastresumeDirectory files = FastresumeDirectory.open(folder.toPath(), engine.getMetrics(),
+                FastresumeDirectory.PROGRESS_INTERVAL)) {
+            if (webApi != null) {
+                processPausingTorrents(files);
+            } else {
+                engine.reset(files);
+            }
+            // A cancelled run is resumed like an interrupted one
+            completed = !engine.isCancelled();
+            if (files.getListed() == 0) {
+                System.out.println("No .fastresume files found in the specified path");
+            } else if (runManifest != null) {
+                runManifest.save();
+                runManifest.printSummary();
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            System.err.println("Failed to list files in: " + path + " - " + e.getMessage());
+        } finally {
+            manifest = null;
+            checkpoint = null;
+            if (journal != null) {
+                removeShutdownHook(shutdownHook);
+                if (completed) {
+                    journal.delete();
+                } else {
+                    journal.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the checkpoint journal of a folder. A journal that cannot be opened only disables resuming.
+     *
+     * @param folder The BT_backup folder.
+     * @return The journal, or null if it cannot be opened.
+     */
+    private CheckpointJournal openCheckpoint(File folder) {
+        try {
+            CheckpointJournal journal = CheckpointJournal.open(folder, resume, CheckpointJournal.DEFAULT_BATCH_SIZE,
+                    () -> engine.getWriter().flush());
+            if (resume) {
+                System.out.println("Skipping " + journal.getCompletedCount() + " files already done");
+            }
+            return journal;
+        } catch (IOException e) {
+            System.err.println("Failed to open checkpoint journal in: " + folder.getPath() + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void removeShutdownHook(Thread shutdownHook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // The JVM is already shutting down and runs the hook
+        }
+    }
+
+    /**
+     * Watches the specified path and resets the uploaded amount of .fastresume files as they are created
+     * or modified, until the thread is interrupted.
+     *
+     * @param path The path to the BT_backup folder.
+     */
+    void watch(String path) {
+        try {
+            new FastresumeWatcher(Paths.get(path), FastresumeWatcher.DEFAULT_DEBOUNCE_MILLIS,
+                    this::processChangedFiles).run();
+        } catch (IOException e) {
+            System.err.println("Failed to watch path: " + path + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resets the uploaded amount of files reported as changed in watch mode. Files that no longer exist,
+     * that are as this tool last wrote them, or whose values are already reset are skipped. Rules such as
+     * {@code scale} change a value again every time they are applied, so the events of the tool's own writes
+     * must not reset a file a second time.
+     *
+     * @param files The changed .fastresume files.
+     */
+    void processChangedFiles(List<File> files) {
+        watching = true;
+        List<File> changed = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile() && !isOwnWrite(file) && !isAlreadyReset(file)) {
+                changed.add(file);
+            }
+        }
+        if (!changed.isEmpty()) {
+            engine.reset(changed);
+        }
+    }
+
+    /**
+     * @return true if a file is unchanged since this tool wrote it in watch mode.
+     */
+    private boolean isOwnWrite(File file) {
+        File key = file.getAbsoluteFile();
+        AtomicFileWriter.Stamp written = writtenStamps.get(key);
+        if (written == null) {
+            return false;
+        }
+        if (written.equals(AtomicFileWriter.Stamp.of(file))) {
+            return true;
+        }
+        // Changed by another process since, so it is reset again
+        writtenStamps.remove(key, written);
+        return false;
+    }
+
+    /**
+     * Scans the .fastresume files in the specified path without changing them. A row with the statistics
+     * of every torrent that passes the filter is written to the report file, a CSV file unless its name ends
+     * in .json, and the totals are printed once all files are scanned.
+     *
+     * @param path       The path to the BT_backup folder.
+     * @param reportFile The report file.
+     * @param top        The number of torrents with the most uploaded to list.
+     */
+    void scan(String path, String reportFile, int top) {
+        File folder = new File(path);
+        if (!folder.isDirectory()) {
+            System.err.println("Invalid path specified or path is not a directory: " + path);
+            return;
+        }
+        try (FastresumeDirectory files = FastresumeDirectory.open(folder.toPath(), engine.getMetrics(),
+                FastresumeDirectory.PROGRESS_INTERVAL);
+             Writer out = Files.newBufferedWriter(Paths.get(reportFile), StandardCharsets.UTF_8)) {
+            TorrentScanner.Summary summary = TorrentScanner.scan(engine, files, out,
+                    TorrentScanner.Format.forFile(reportFile), top);
+            summary.print(System.out);
+        } catch (IOException | DirectoryIteratorException e) {
+            System.err.println("Failed to scan: " + path + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Processes the files in batches of {@link QbtWebApiClient#BATCH_SIZE}, pausing the running torrents
+     * of each batch that need a reset through the Web UI, and resuming them once the batch is written.
+     * Torrents that the client does not know or that are already paused are processed without a request.
+     *
+     * @param files The .fastresume files, which may be enumerated lazily.
+     */
+    private void processPausingTorrents(Iterable<File> files) {
+        Map<String, String> states;
+        try {
+            states = webApi.getTorrentStates();
+        } catch (IOException e) {
+            System.err.println("Failed to read torrents from Web UI - " + e.getMessage());
+            return;
+        }
+        List<File> batch = new ArrayList<>();
+        for (File file : files) {
+            batch.add(file);
+            if (batch.size() == QbtWebApiClient.BATCH_SIZE) {
+                processPausedBatch(batch, states);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            processPausedBatch(batch, states);
+        }
+    }
+
+    private void processPausedBatch(List<File> batch, Map<String, String> states) {
+        List<String> running = new ArrayList<>();
+        for (File file : batch) {
+            String name = file.getName();
+            String hash = name.substring(0, name.length() - FASTRESUME_FILE_EXTENSION.length())
+                    .toLowerCase(Locale.ROOT);
+            String state = states.get(hash);
+            if (state != null && !QbtWebApiClient.isStopped(state) && !isAlreadyReset(file)) {
+                running.add(hash);
+            }
+        }
+        if (running.isEmpty()) {
+            engine.reset(batch);
+            return;
+        }
+        try {
+            webApi.stop(running);
+            webApi.awaitStopped(running);
+        } catch (IOException e) {
+            System.err.println("Failed to pause torrents through Web UI, skipping " + batch.size() + " files - "
+                    + e.getMessage());
+            engine.getMetrics().add(RunMetrics.Counter.SKIPPED, batch.size());
+            resumeTorrents(running);
+            return;
+        }
+        System.out.println("Paused " + running.size() + " torrents");
+        try {
+            engine.reset(batch);
+        } finally {
+            resumeTorrents(running);
+        }
+    }
+
+    private void resumeTorrents(List<String> hashes) {
+        try {
+            webApi.start(hashes);
+            System.out.println("Resumed " + hashes.size() + " torrents");
+        } catch (IOException e) {
+            System.err.println("Failed to resume torrents through Web UI: " + String.join(", ", hashes) + " - "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks whether a file was already handled by the interrupted run that is being resumed, or is unchanged
+     * since the last incremental run. Called by the worker threads of the engine before a file is read.
+     *
+     * @param file The .fastresume file.
+     * @return true if the file can be skipped.
+     */
+    private boolean isDone(File file) {
+        CheckpointJournal journal = checkpoint;
+        if (journal != null && journal.isCompleted(file)) {
+            return true;
+        }
+        RunManifest runManifest = manifest;
+        if (runManifest != null && runManifest.checkUnchanged(file)) {
+            // Already carried over to the manifest, so only the checkpoint journal records it
+            if (journal != null) {
+                journal.record(file, RunManifest.Result.ALREADY_ZERO);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Asks the user to confirm the reset of a file in single file mode, showing its current values.
+     */
+    private boolean confirm(File file, String torrentName, Long[] values) {
+        System.out.println("Processing file: " + file.getName());
+        if (prompt.confirm(torrentName, describeValues(values))) {
+            return true;
+        }
+        System.out.println("Skipping torrent: " + torrentName);
+        return false;
+    }
+
+    /**
+     * @return The current values of the keys to reset, for example {@code total_uploaded 1234}.
+     */
+    private String describeValues(Long[] values) {
+        List<String> keys = engine.getKeys();
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < keys.size() && i < values.length; i++) {
+            if (values[i] != null) {
+                description.append(description.length() == 0 ? "" : ", ").append(keys.get(i)).append(' ')
+                        .append(values[i]);
+            }
+        }
+        return description.length() == 0 ? null : description.toString();
+    }
+
+    /**
+     * Prints the result of a file and records it in the manifest of an incremental run and the checkpoint
+     * journal. Files that are filtered out or skipped are not recorded, so a later run with other filters
+     * still handles them.
+     */
+    private void printResult(ResetEngine.FileResult result) {
+        File file = result.getFile();
+        switch (result.getStatus()) {
+            case RESET:
+                if (prompt == null) {
+                    // In single file mode, the file name was already printed with the prompt
+                    System.out.println("Processing file: " + file.getName());
+                }
+                printResetResult(result.getTorrentName());
+                if (result.getMessage() != null) {
+                    System.err.println(result.getMessage());
+                }
+                if (watching && result.getWritten() != null) {
+                    writtenStamps.put(file.getAbsoluteFile(), result.getWritten());
+                }
+                recordResult(file, RunManifest.Result.RESET);
+                break;
+            case ALREADY_RESET:
+                recordResult(file, RunManifest.Result.ALREADY_ZERO);
+                break;
+            case FAILED:
+                System.err.println("Failed to reset uploaded amount in file: " + file.getPath() + " - "
+                        + result.getMessage());
+                recordResult(file, RunManifest.Result.FAILED);
+                break;
+            case CONTENDED:
+                System.err.println("Failed to save the file, still in use: " + file.getPath() + " - "
+                        + result.getMessage());
+                contendedFiles.add(file.getPath());
+                recordResult(file, RunManifest.Result.FAILED);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void recordResult(File file, RunManifest.Result result) {
+        RunManifest runManifest = manifest;
+        if (runManifest != null) {
+            runManifest.record(file, result);
+        }
+        CheckpointJournal journal = checkpoint;
+        if (journal != null) {
+            journal.record(file, result);
+        }
+    }
+
+    /**
+     * Checks whether the values to reset are already zero in a file, without loading the whole file.
+     *
+     * @param file The .fastresume file.
+     * @return true if the file needs no change, false if it does or cannot be read.
+     */
+    boolean isAlreadyReset(File file) {
+        long start = System.nanoTime();
+        try (InputStream in = new FileInputStream(file)) {
+            return engine.getPatcher().isReset(in);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            engine.getMetrics().record(RunMetrics.Phase.SCAN, start);
+        }
+    }
+
+    void printResetResult(String torrentName) {
+        System.out.println("Uploaded amount reset successfully for torrent: " + torrentName);
+        addReset(torrentName);
+    }
+
+    /**
+     * Adds a torrent to the list of successful resets without printing it.
+     */
+    void addReset(String torrentName) {
+        successfulResets.add(torrentName);
+    }
+
+    /**
+     * Asks the user to confirm the reset of a torrent in single file mode.
+     *
+     * @param torrentName The name of the torrent.
+     * @return true if the torrent is reset.
+     */
+    boolean confirmReset(String torrentName) {
+        return prompt == null || prompt.confirm(torrentName, null);
+    }
+
+    ResetEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return The names of the torrents that were reset, in the order they were done.
+     */
+    List<String> getSuccessfulResets() {
+        return new ArrayList<>(successfulResets);
+    }
+
+    /**
+     * @return The files that were still in use and were not reset.
+     */
+    List<String> getContendedFiles() {
+        return new ArrayList<>(contendedFiles);
+    }
+
+    /**
+     * Saves the whole data to the file.
+     *
+     * @param data The data to save.
+     * @param path The file path to save the data.
+     * @return true if the file was saved, false otherwise.
+     */
+    public static boolean saveFileWithResetData(byte[] data, String path) {
+        return saveFileWithResetData(data, data.length, path);
+    }
+
+    /**
+     * Saves the modified data back to the file. The data is written to a temporary file that atomically
+     * replaces the original, so an interrupted write never leaves a truncated .fastresume file behind.
+     *
+     * @param data   The modified data.
+     * @param length The length of the modified data.
+     * @param path   The file path to save the data.
+     * @return true if the file was saved, false otherwise.
+     */
+    public static boolean saveFileWithResetData(byte[] data, int length, String path) {
+        try {
+            new AtomicFileWriter(AtomicFileWriter.Durability.FILE, 1).write(new File(path), data, length);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to save the file: " + path);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Prompts the user for confirmation before resetting a file.
+     *
+     * @param fastresumeFilePath The path of the .fastresume file.
+     * @return true if the user confirms, false otherwise.
+     */
+    public static boolean promptUserForReset(String fastresumeFilePath) {
+        return new ResetPrompt(System.in, System.out).confirm(getTorrentName(fastresumeFilePath), null);
+    }
+
+    /**
+     * Reads the total_uploaded value from a file without loading the whole file. The file is streamed
+     * in chunks until the key and its value have been read, so only a bounded buffer is held in memory.
+     *
+     * @param file The .fastresume file.
+     * @return The total_uploaded value, or null if the file cannot be read or holds no valid value.
+     */
+    public static Long scanUploadedValue(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return UPLOADED_PATCHER.scan(in)[0];
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resets the uploaded amount in place. The bytes after the value are shifted left,
+     * so the returned length may be smaller than the array length.
+     *
+     * @param data The raw .fastresume data, modified in place.
+     * @return The length of the modified data.
+     * @throws IllegalArgumentException if the key or a well-formed integer value is not found.
+     */
+    public static int resetUploadedAmount(byte[] data) {
+        return UPLOADED_PATCHER.patch(data, null).getLength();
+    }
+
+    /**
+     * Decodes a .torrent file.
+     *
+     * @param file The .torrent file.
+     * @return A map containing the decoded data.
+     */
+    public static Map<String, Object> decodeTorrentFile(File file) {
+        byte[] fileContent = readFileToByteArray(file);
+        Bencode bencode = new Bencode();
+        try {
+            return bencode.decode(fileContent, Type.DICTIONARY);
+        } catch (BencodeException e) {
+            System.err.println("Failed to decode: " + file.getPath());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads a file to a byte array.
+     *
+     * @param file The file to read.
+     * @return The file content as a byte array.
+     */
+    public static byte[] readFileToByteArray(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            System.err.println("Failed to read file: " + file.getPath() + " - " + e.getMessage());
+            e.printStackTrace();
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Extracts the torrent name from a .fastresume file path, reading only the bytes of the matching
+     * .torrent file up to info.name.
+     *
+     * @param fastresumeFilePath The path to the .fastresume file.
+     * @return The torrent name, or a default message if not found.
+     */
+    public static String getTorrentName(String fastresumeFilePath) {
+        return ResetEngine.readTorrentName(new File(fastresumeFilePath), null);
+    }
+
+    /**
+     * Prints the help message.
+     */
+    private static void printHelp() {
+        System.out.println("Usage: java QbtUploadResetter [options]");
+        System.out.println("Options:");
+        System.out.println("  -p, --path <path>   Specify the path to the BT_backup folder, to the torrents.db "
+                + "database, or to a zip, tar or tar.gz archive of a BT_backup folder. Repeat to reset several "
+                + "BT_backup folders.");
+        System.out.println("  --roots <file>      Reset the BT_backup folders listed in the file, one per line with "
+                + "their own options.");
+        System.out.println("  -s, --single        Prompt for confirmation before resetting the uploaded amount for each file.");
+        System.out.println("  -t, --threads <n>   Number of worker threads used to process files "
+                + "(defaults to the number of cores).");
+        System.out.println("  -i, --incremental   Skip files that are unchanged since the last incremental run "
+                + "or already reset.");
+        System.out.println("  -w, --watch         Keep running and reset .fastresume files whenever they are "
+                + "created or modified.");
+        System.out.println("  -r, --resume        Skip the files already handled by an interrupted run.");
+        System.out.println("  --undo <journal>    Restore the values recorded in an undo journal instead of "
+                + "resetting.");
+        System.out.println("  --scan <file>       Write the statistics of every torrent to a CSV or JSON file "
+                + "instead of resetting.");
+        System.out.println("  --output <file>     Write the reset copy of an archive to the file (defaults to the "
+                + "archive name with -reset added).");
+        System.out.println("  --top <n>           Number of torrents with the most uploaded listed after a scan "
+                + "(defaults to " + TorrentScanner.DEFAULT_TOP + ").");
+        System.out.println("  --keys <keys>       Comma-separated keys of the values to reset, or all for "
+                + String.join(", ", FastresumePatcher.ALL_KEYS) + ". Defaults to total_uploaded.");
+        System.out.println("  --rule <rule>       Set total_uploaded by a rule instead of resetting it: zero, "
+                + "ratio <r>, cap <size> or scale <f>, optionally followed by if tracker=<host> or if "
+                + "category=<name>. May be repeated; the first rule that applies to a torrent decides, and "
+                + "torrents that no rule applies to keep their value.");
+        System.out.println("  --name <regex>      Only reset torrents whose name matches the regular expression.");
+        System.out.println("  --name-glob <glob>  Only reset torrents whose whole name matches the glob, ignoring "
+                + "case.");
+        System.out.println("  --tracker <host>    Only reset torrents with a tracker on the host or one of its "
+                + "subdomains.");
+        System.out.println("  --category <name>   Only reset torrents in the category.");
+        System.out.println("  --save-path <path>  Only reset torrents saved in the folder or one of its subfolders.");
+        System.out.println("  --min-uploaded <n>  Only reset torrents that uploaded at least n bytes; K, M, G and T "
+                + "suffixes are allowed.");
+        System.out.println("  --web-ui <url>      Pause the torrents being reset through the qBittorrent Web UI at "
+                + "the given address.");
+        System.out.println("  --web-ui-user <name> Web UI user name; the password is read from the "
+                + QbtWebApiClient.PASSWORD_VARIABLE + " variable.");
+        System.out.println("  --retries <n>       Times a file in use by a running client is retried before it is "
+                + "given up (defaults to " + RetryScheduler.DEFAULT_ATTEMPTS + ").");
+        System.out.println("  --fsync <mode>      How writes are flushed to disk: file, batch[:n] or none "
+                + "(defaults to batch:" + AtomicFileWriter.DEFAULT_BATCH_SIZE + ").");
+        System.out.println("  --verify            Check that patched files are still valid bencode and unchanged "
+                + "outside the reset values before they are written.");
+        System.out.println("  --report <file>     Write a JSON report with the counters and phase timings of the run.");
+        System.out.println("  --prometheus <file> Write the counters and phase timings of the run in the Prometheus "
+                + "text format.");
+        System.out.println("  --cache <file>      Use the given file as the persistent torrent name cache.");
+        System.out.println("  --no-cache          Do not use the persistent torrent name cache.");
+        System.out.println("  -h, --help          Display this help message.");
+    }
+
+    /**
+     * Prints the list of files that were still in use by a running client and were not reset.
+     *
+     * @param files The paths of the files.
+     */
+    private static void printContendedList(List<String> files) {
+        if (!files.isEmpty()) {
+            System.out.println("\nThe following files were still in use and were not reset:");
+            for (int i = 0; i < files.size(); i++) {
+                System.out.println((i + 1) + ". " + files.get(i));
+            }
+        }
+    }
+
+    /**
+     * Prints the list of successfully reset torrents.
+     *
+     * @param torrentNames The names of the torrents.
+     */
+    private static void printSuccessList(List<String> torrentNames) {
+        if (!torrentNames.isEmpty()) {
+            System.out.println("\nUploaded amount reset successfully for the following torrents:");
+            for (int i = 0; i < torrentNames.size(); i++) {
+                System.out.println((i + 1) + ". " + torrentNames.get(i));
+            }
+        } else {
+            System.out.println("No uploaded amounts were reset.");
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package uploadresetter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * QbtWebApiClient pauses and resumes torrents through the Web API of a running qBittorrent, so that only the
+ * torrents being reset are stopped instead of the whole client. Requests go through HttpURLConnection, whose
+ * keep-alive cache reuses one connection to the Web UI as long as every response is read to the end.
+ *
+ * Web API 2.11 (qBittorrent 5) renamed pause and resume to stop and start; the version is asked for once at
+ * login and the matching endpoints are used.
+ */
+final class QbtWebApiClient implements Closeable {
+    static final int BATCH_SIZE = 100;
+    static final String PASSWORD_VARIABLE = "QBT_WEBUI_PASSWORD";
+    private static final String API = "/api/v2";
+    private static final String SESSION_COOKIE = "SID";
+    private static final int TIMEOUT_MILLIS = 10000;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final String HASH_SEPARATOR = "|";
+
+    private final String baseUrl;
+    private final boolean stopAndStart;
+    private volatile String sessionCookie;
+
+    private QbtWebApiClient(String baseUrl, String sessionCookie) throws IOException {
+        this.baseUrl = baseUrl;
+        this.sessionCookie = sessionCookie;
+        this.stopAndStart = isAtLeast(request("GET", "/app/webapiVersion", null).trim(), 2, 11);
+    }
+
+    /**
+     * Connects to the Web UI, logging in if a user name is given. Without a user name, the Web UI must
+     * be configured to skip authentication for this host.
+     *
+     * @param baseUrl  The address of the Web UI, for example {@code http://localhost:8080}.
+     * @param username The user name, or null to skip the login.
+     * @param password The password.
+     * @return The connected client, which should be closed to log out.
+     * @throws IOException if the Web UI cannot be reached or the login fails.
+     */
+    static QbtWebApiClient connect(String baseUrl, String username, String password) throws IOException {
+        String url = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        String cookie = null;
+        if (username != null) {
+            HttpURLConnection connection = open(url, "POST", "/auth/login", null);
+            String body = send(connection, "username=" + encode(username) + "&password="
+                    + encode(password == null ? "" : password));
+            cookie = findSessionCookie(connection);
+            if (!body.trim().equals("Ok.") || cookie == null) {
+                throw new IOException("Login to the Web UI failed: " + url);
+            }
+        }
+        return new QbtWebApiClient(url, cookie);
+    }
+
+    /**
+     * @return true if the client uses the stop and start endpoints rather than pause and resume.
+     */
+    boolean usesStopAndStart() {
+        return stopAndStart;
+    }
+
+    /**
+     * Reads the state of every torrent in the client.
+     *
+     * @return The state of each torrent by lower-case info hash.
+     * @throws IOException if the request fails.
+     */
+    Map<String, String> getTorrentStates() throws IOException {
+        return parseStates(request("GET", "/torrents/info", null));
+    }
+
+    /**
+     * Stops torrents in a single request.
+     *
+     * @param hashes The info hashes.
+     * @throws IOException if the request fails.
+     */
+    void stop(Collection<String> hashes) throws IOException {
+        request("POST", stopAndStart ? "/torrents/stop" : "/torrents/pause", hashesForm(hashes));
+    }
+
+    /**
+     * Starts torrents in a single request.
+     *
+     * @param hashes The info hashes.
+     * @throws IOException if the request fails.
+     */
+    void start(Collection<String> hashes) throws IOException {
+        request("POST", stopAndStart ? "/torrents/start" : "/torrents/resume", hashesForm(hashes));
+    }
+
+    /**
+     * Waits until the client reports all torrents as stopped, which is when it has saved their resume data.
+     *
+     * @param hashes The info hashes.
+     * @throws IOException if a request fails, or the torrents have not stopped within the timeout.
+     */
+    void awaitStopped(Collection<String> hashes) throws IOException {
+        long deadline = System.nanoTime() + TIMEOUT_MILLIS * 1_000_000L;
+        String path = "/torrents/info?hashes=" + encode(String.join(HASH_SEPARATOR, hashes));
+        while (true) {
+            Map<String, String> states = parseStates(request("GET", path, null));
+            boolean stopped = true;
+            for (String hash : hashes) {
+                String state = states.get(hash);
+                if (state != null && !isStopped(state)) {
+                    stopped = false;
+                    break;
+                }
+            }
+            if (stopped) {
+                return;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IOException("Timed out waiting for torrents to stop");
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for torrents to stop", e);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a torrent state is one in which the client does not save resume data on its own.
+     *
+     * @param state The state reported by the Web API.
+     * @return true if the torrent is stopped.
+     */
+    static boolean isStopped(String state) {
+        return state.startsWith("paused") || state.startsWith("stopped") || state.equals("error")
+                || state.equals("missingFiles");
+    }
+
+    /**
+     * Logs out, ending the session.
+     */
+    @Override
+    public void close() throws IOException {
+        if (sessionCookie != null) {
+            request("POST", "/auth/logout", "");
+            sessionCookie = null;
+        }
+    }
+
+    private String request(String method, String path, String form) throws IOException {
+        try {
+            return send(open(baseUrl, method, path, sessionCookie), form);
+        } catch (SocketException e) {
+            // The Web UI may have closed the kept-alive connection just as it was reused, which HttpURLConnection
+            // does not retry for requests with a body; every request here is safe to send again
+            return send(open(baseUrl, method, path, sessionCookie), form);
+        }
+    }
+
+    private static HttpURLConnection open(String baseUrl, String method, String path, String cookie)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + API + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        if (cookie != null) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+        return connection;
+    }
+
+    /**
+     * Sends a request and reads the whole response, which returns the connection to the keep-alive cache.
+     *
+     * @param connection The connection.
+     * @param form       The form-encoded body, or null for none.
+     * @return The response body.
+     * @throws IOException if the request fails or the response status is not 200.
+     */
+    private static String send(HttpURLConnection connection, String form) throws IOException {
+        if (form != null) {
+            byte[] body = form.getBytes(StandardCharsets.UTF_8);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream stream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        if (stream != null) {
+            try (InputStream in = stream) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    response.write(buffer, 0, n);
+                }
+            }
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException(connection.getRequestMethod() + " " + connection.getURL().getPath()
+                    + " failed with HTTP " + status);
+        }
+        return new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String findSessionCookie(HttpURLConnection connection) {
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            // Header names are case-insensitive, and servers differ in how they spell this one
+            if (!"Set-Cookie".equalsIgnoreCase(header.getKey())) {
+                continue;
+            }
+            for (String cookie : header.getValue()) {
+                String pair = cookie.split(";", 2)[0].trim();
+                if (pair.startsWith(SESSION_COOKIE + "=")) {
+                    return pair;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String hashesForm(Collection<String> hashes) {
+        return "hashes=" + encode(String.join(HASH_SEPARATOR, hashes));
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is always supported", e);
+        }
+    }
+
+    /**
+     * Checks whether a version such as {@code 2.11.2} is at least the given major and minor version.
+     */
+    static boolean isAtLeast(String version, int major, int minor) {
+        String[] parts = version.split("\\.");
+        try {
+            int actualMajor = Integer.parseInt(parts[0]);
+            int actualMinor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return actualMajor > major || actualMajor == major && actualMinor >= minor;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the hash and state of every torrent from the JSON array returned by {@code /torrents/info}.
+     * Only the string values of the top-level keys of each torrent object are looked at; everything else,
+     * including nested values and escapes inside names, is skipped.
+     *
+     * @param json The response body.
+     * @return The state of each torrent by lower-case info hash.
+     */
+    static Map<String, String> parseStates(String json) {
+        Map<String, String> states = new HashMap<>();
+        int depth = 0;
+        String key = null;
+        String hash = null;
+        String state = null;
+        boolean expectingKey = false;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                int end = i + 1;
+                StringBuilder value = new StringBuilder();
+                while (end < json.length() && json.charAt(end) != '"') {
+                    if (json.charAt(end) == '\\' && end + 1 < json.length()) {
+                        end++;
+                    }
+                    value.append(json.charAt(end));
+                    end++;
+                }
+                i = end;
+                if (depth == 2) {
+                    if (expectingKey) {
+                        key = value.toString();
+                        expectingKey = false;
+                    } else if ("hash".equals(key)) {
+                        hash = value.toString().toLowerCase(Locale.ROOT);
+                    } else if ("state".equals(key)) {
+                        state = value.toString();
+                    }
+                }
+            } else if (c == '{' || c == '[') {
+                depth++;
+                if (depth == 2) {
+                    hash = null;
+                    state = null;
+                    expectingKey = true;
+                }
+            } else if (c == '}' || c == ']') {
+                if (depth == 2 && hash != null && state != null) {
+                    states.put(hash, state);
+                }
+                depth--;
+            } else if (c == ',' && depth == 2) {
+                expectingKey = true;
+            }
+        }
+        return states;
+    }
+}
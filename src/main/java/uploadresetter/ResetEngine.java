@@ -0,0 +1,1036 @@
+package uploadresetter;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * ResetEngine resets .fastresume files. It is the per-file pipeline of the command line, which adds its
+ * prompts, checkpoints and manifests through package-private hooks, and it can be embedded by callers that
+ * run the tool in their own JVM. Every engine has its own configuration and shares no state with other
+ * engines.
+ *
+ * The result of every file is passed to a {@link Listener} as soon as the file is done, and nothing about
+ * the file is kept afterwards; a run only keeps counters, and the files waiting to be retried because a
+ * running client was using them. Memory therefore stays the same however many files a long-lived service
+ * processes. Calls to the listener are serialized, so it does not need to be thread-safe.
+ *
+ * Files whose values are already zero and torrents that the filter rejects are left alone, and files that a
+ * running client has locked or changed since they were read are retried with backoff. With
+ * {@link Builder#undo}, the original values are recorded in the undo journal of every folder before its files
+ * are written, and the journals stay open until the engine is closed.
+ *
+ * When resets are confirmed, the next {@link #PREFETCH_DEPTH} files are read and their names and values looked
+ * up on the worker threads while the current question waits for its answer, and confirmed files are written on
+ * a thread of their own, so that no question waits for a read or a write.
+ */
+public final class ResetEngine implements Closeable {
+    static final String UNKNOWN_TORRENT = "Unknown Torrent";
+    private static final String TORRENT_FILE_EXTENSION = ".torrent";
+    private static final int TASKS_PER_THREAD = 4;
+    // The number of files read and looked up ahead of the file whose reset is being confirmed
+    static final int PREFETCH_DEPTH = 16;
+
+    /**
+     * The outcome of a file.
+     */
+    public enum Status {
+        /** The values were reset and the file was written. */
+        RESET,
+        /** The values were already zero, so the file was not written. */
+        ALREADY_RESET,
+        /** The torrent did not pass the filter. */
+        FILTERED,
+        /** The file was skipped before it was read, or its reset was declined. */
+        SKIPPED,
+        /** The file could not be read, patched or written. */
+        FAILED,
+        /** A running client was still using the file when its retry budget ran out. */
+        CONTENDED
+    }
+
+    /**
+     * The result of one file.
+     */
+    public static final class FileResult {
+        private final File file;
+        private final String torrentName;
+        private final Status status;
+        private final String message;
+        private final AtomicFileWriter.Stamp written;
+
+        FileResult(File file, String torrentName, Status status, String message) {
+            this(file, torrentName, status, message, null);
+        }
+
+        FileResult(File file, String torrentName, Status status, String message, AtomicFileWriter.Stamp written) {
+            this.file = file;
+            this.torrentName = torrentName;
+            this.status = status;
+            this.message = message;
+            this.written = written;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return The torrent name, or null if it was not needed to decide the outcome.
+         */
+        public String getTorrentName() {
+            return torrentName;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return Why the file failed or was contended, a warning about a file that was reset, or null.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return The stamp of the file as the engine wrote it, or null if it was not written.
+         */
+        AtomicFileWriter.Stamp getWritten() {
+            return written;
+        }
+    }
+
+    /**
+     * Receives the result of every file of a run.
+     */
+    public interface Listener {
+        void onResult(FileResult result);
+
+        /**
+         * Called when a file that a running client is using is scheduled to be tried again later.
+         *
+         * @param file    The file.
+         * @param message Why the file could not be written.
+         */
+        default void onRetry(File file, String message) {
+        }
+    }
+
+    /**
+     * Asks whether a torrent is reset. Calls are made on the thread that started the run, in the order the
+     * files are listed, and files that are retried are not asked about again.
+     */
+    interface Confirmation {
+        /**
+         * @param file        The .fastresume file.
+         * @param torrentName The torrent name.
+         * @param values      The current values of the keys to reset, null where a key is missing.
+         * @return true if the torrent is reset.
+         */
+        boolean confirm(File file, String torrentName, Long[] values);
+    }
+
+    /**
+     * The number of files of a run with each status.
+     */
+    public static final class Summary {
+        private final long[] counts;
+        private final boolean cancelled;
+
+        Summary(long[] counts, boolean cancelled) {
+            this.counts = counts;
+            this.cancelled = cancelled;
+        }
+
+        public long getCount(Status status) {
+            return counts[status.ordinal()];
+        }
+
+        /**
+         * @return true if the run was cancelled before every file was processed.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Builds an engine. Without further settings, the engine resets total_uploaded in every file on one
+     * thread per core, flushes files like {@code --fsync batch}, and retries files in use five times.
+     */
+    public static final class Builder {
+        private List<String> keys = FastresumePatcher.DEFAULT_KEYS;
+        private List<String> rules = Collections.emptyList();
+        private String[] filterOptions = new String[0];
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private String durability = AtomicFileWriter.Durability.BATCH.name();
+        private int retryAttempts = RetryScheduler.DEFAULT_ATTEMPTS;
+        private long retryDelayMillis = RetryScheduler.DEFAULT_DELAY_MILLIS;
+        private File nameCacheFile;
+        private TorrentNameCache nameCache;
+        private boolean verify;
+        private boolean undo;
+        private boolean ordered;
+        private boolean skipAlreadyReset = true;
+        private Predicate<File> skip;
+        private Confirmation confirmation;
+        private Listener listener = result -> {
+        };
+
+        private Builder() {
+        }
+
+        /**
+         * @param resetKeys The keys of the values to reset, or {@code all}, as accepted by {@code --keys}.
+         */
+        public Builder keys(String... resetKeys) {
+            this.keys = FastresumePatcher.parse(String.join(",", resetKeys)).getKeys();
+            return this;
+        }
+
+        /**
+         * @param uploadedRules Rules for total_uploaded as accepted by {@code --rule}, for example
+         *                      {@code "ratio 1.0 if tracker=example.org"}, in the order they are tried.
+         */
+        public Builder rules(String... uploadedRules) {
+            this.rules = Arrays.asList(uploadedRules.clone());
+            return this;
+        }
+
+        /**
+         * @param options Filter options and their values as given on the command line, for example
+         *                {@code "--category", "tv", "--min-uploaded", "10G"}.
+         */
+        public Builder filter(String... options) {
+            this.filterOptions = options.clone();
+            return this;
+        }
+
+        public Builder threads(int workerThreads) {
+            if (workerThreads < 1) {
+                throw new IllegalArgumentException("Threads must be positive: " + workerThreads);
+            }
+            this.threads = workerThreads;
+            return this;
+        }
+
+        /**
+         * @param mode How writes are flushed to disk, as accepted by {@code --fsync}.
+         */
+        public Builder durability(String mode) {
+            AtomicFileWriter.parse(mode);
+            this.durability = mode;
+            return this;
+        }
+
+        /**
+         * @param attempts    The number of retries of a file in use, 0 to never retry.
+         * @param delayMillis The delay before the first retry.
+         */
+        public Builder retries(int attempts, long delayMillis) {
+            if (attempts < 0 || delayMillis < 0) {
+                throw new IllegalArgumentException("Retry attempts and delay must not be negative");
+            }
+            this.retryAttempts = attempts;
+            this.retryDelayMillis = delayMillis;
+            return this;
+        }
+
+        /**
+         * @param cacheFile The persistent torrent name cache, which is saved after every run.
+         */
+        public Builder nameCache(File cacheFile) {
+            this.nameCacheFile = cacheFile;
+            this.nameCache = null;
+            return this;
+        }
+
+        /**
+         * @param cache A torrent name cache that is already loaded and may be shared with other engines.
+         */
+        Builder nameCache(TorrentNameCache cache) {
+            this.nameCache = cache;
+            this.nameCacheFile = null;
+            return this;
+        }
+
+        /**
+         * @param verifyPatches Whether patched data is verified before it is written, like {@code --verify}.
+         *                      Files that fail verification are left unchanged and reported as failed.
+         */
+        public Builder verify(boolean verifyPatches) {
+            this.verify = verifyPatches;
+            return this;
+        }
+
+        /**
+         * @param recordUndo Whether the original values of every file are recorded in the undo journal of its
+         *                   folder before it is written, so that {@code --undo} can restore them. Files whose
+         *                   values cannot be recorded are left unchanged and reported as failed.
+         */
+        public Builder undo(boolean recordUndo) {
+            this.undo = recordUndo;
+            return this;
+        }
+
+        public Builder listener(Listener resultListener) {
+            if (resultListener == null) {
+                throw new IllegalArgumentException("Listener must not be null");
+            }
+            this.listener = resultListener;
+            return this;
+        }
+
+        /**
+         * @param inListingOrder Whether results are reported in the order the files are listed rather than as
+         *                       soon as each file is done, so that the output of a run is deterministic.
+         */
+        Builder ordered(boolean inListingOrder) {
+            this.ordered = inListingOrder;
+            return this;
+        }
+
+        /**
+         * @param skipReset Whether files whose values are already zero are left alone, which is the default.
+         *                  Otherwise they are written like any other file, unless there are rules: then a file
+         *                  that the rules do not change is never written.
+         */
+        Builder skipAlreadyReset(boolean skipReset) {
+            this.skipAlreadyReset = skipReset;
+            return this;
+        }
+
+        /**
+         * @param skipped Selects the files that are skipped before they are read, such as the files an
+         *                interrupted run already handled. It is called by the worker threads.
+         */
+        Builder skip(Predicate<File> skipped) {
+            this.skip = skipped;
+            return this;
+        }
+
+        /**
+         * @param resetConfirmation Asks whether each torrent that passes the filter is reset.
+         */
+        Builder confirmation(Confirmation resetConfirmation) {
+            this.confirmation = resetConfirmation;
+            return this;
+        }
+
+        /**
+         * @return The engine.
+         * @throws IllegalArgumentException if a filter option or rule is not valid.
+         */
+        public ResetEngine build() {
+            return new ResetEngine(this);
+        }
+    }
+
+    /**
+     * The state of one run: the counts of every status and the files waiting to be retried.
+     */
+    private static final class Run {
+        private final AtomicLongArray counts = new AtomicLongArray(Status.values().length);
+        private final RetryScheduler retries;
+
+        Run(RetryScheduler retries) {
+            this.retries = retries;
+        }
+    }
+
+    /**
+     * A file that passed every check and is to be written once its reset is confirmed, or the result that
+     * decided the file before that.
+     */
+    private static final class Candidate {
+        private final File file;
+        private final FileResult result;
+        private final AtomicFileWriter.Stamp stamp;
+        private final byte[] data;
+        private final String torrentName;
+        // Whether the file is tried again, in which case its reset was already confirmed
+        private final boolean retry;
+        // The current values of the keys to reset, or null if they were not looked up
+        private final Long[] values;
+
+        Candidate(FileResult result) {
+            this(result.file, result, null, null, null, false, null);
+        }
+
+        Candidate(File file, FileResult result, AtomicFileWriter.Stamp stamp, byte[] data, String torrentName,
+                  boolean retry, Long[] values) {
+            this.file = file;
+            this.result = result;
+            this.stamp = stamp;
+            this.data = data;
+            this.torrentName = torrentName;
+            this.retry = retry;
+            this.values = values;
+        }
+    }
+
+    private final FastresumePatcher patcher;
+    private final TorrentFilter filter;
+    private final int threads;
+    private final int retryAttempts;
+    private final long retryDelayMillis;
+    private final TorrentNameCache nameCache;
+    private final boolean verify;
+    private final boolean ordered;
+    private final boolean skipAlreadyReset;
+    private final Predicate<File> skip;
+    private final Confirmation confirmation;
+    private final Listener listener;
+    private final RunMetrics metrics = new RunMetrics();
+    private final AtomicFileWriter writer;
+    // The undo journals of the folders written to, or null if no undo data is recorded
+    private final UndoJournals journals;
+    private volatile boolean cancelled;
+
+    private ResetEngine(Builder builder) {
+        this.patcher = new FastresumePatcher(builder.keys, ResetRules.parse(builder.rules));
+        this.filter = TorrentFilter.parse(builder.filterOptions);
+        this.threads = builder.threads;
+        this.retryAttempts = builder.retryAttempts;
+        this.retryDelayMillis = builder.retryDelayMillis;
+        this.nameCache = builder.nameCacheFile == null ? builder.nameCache
+                : TorrentNameCache.load(builder.nameCacheFile, TorrentNameCache.DEFAULT_MAX_ENTRIES);
+        this.verify = builder.verify;
+        this.ordered = builder.ordered;
+        this.skipAlreadyReset = builder.skipAlreadyReset;
+        this.skip = builder.skip;
+        this.confirmation = builder.confirmation;
+        this.listener = builder.listener;
+        this.writer = AtomicFileWriter.parse(builder.durability, metrics);
+        this.journals = builder.undo ? new UndoJournals() : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Stops the running and all later runs of the engine. Files that are being processed are finished,
+     * files waiting to be retried are reported as contended, and no other file is started.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Closes the undo journals. The engine must not be running.
+     */
+    @Override
+    public void close() {
+        if (journals != null) {
+            journals.close();
+        }
+    }
+
+    /**
+     * @return The keys whose values the engine resets.
+     */
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(patcher.getKeys());
+    }
+
+    FastresumePatcher getPatcher() {
+        return patcher;
+    }
+
+    TorrentFilter getFilter() {
+        return filter;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return true if the original values are recorded in undo journals before files are written.
+     */
+    boolean isUndo() {
+        return journals != null;
+    }
+
+    /**
+     * @return The writer that files are written with, which is flushed at the end of every run.
+     */
+    AtomicFileWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * @return The metrics of all runs of the engine.
+     */
+    RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Resets the .fastresume files of a BT_backup folder, which is enumerated lazily.
+     *
+     * @param folder The BT_backup folder.
+     * @return The summary of the run.
+     * @throws IOException if the folder cannot be listed.
+     */
+    public Summary resetFolder(File folder) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return resetFolder(folder, executor, threads * TASKS_PER_THREAD);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Resets the .fastresume files of a BT_backup folder on an executor that may be shared with other runs.
+     *
+     * @param folder   The BT_backup folder.
+     * @param executor The executor that processes the files.
+     * @param window   The number of files submitted to the executor and not yet done at any time.
+     * @return The summary of the run.
+     * @throws IOException if the folder cannot be listed.
+     */
+    Summary resetFolder(File folder, Executor executor, int window) throws IOException {
+        try (FastresumeDirectory files = FastresumeDirectory.open(folder.toPath(), metrics, Integer.MAX_VALUE)) {
+            return reset(files, executor, window);
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Resets the given .fastresume files. The files are taken one at a time, so they may be enumerated lazily.
+     *
+     * @param files The .fastresume files.
+     * @return The summary of the run.
+     */
+    public Summary reset(Iterable<File> files) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return reset(files, executor, threads * TASKS_PER_THREAD);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Resets the given .fastresume files on an executor that may be shared with other runs. The files are
+     * listed on the calling thread, which waits for the run to finish.
+     *
+     * @param files    The .fastresume files.
+     * @param executor The executor that processes the files.
+     * @param window   The number of files submitted to the executor and not yet done at any time.
+     * @return The summary of the run.
+     */
+    Summary reset(Iterable<File> files, Executor executor, int window) {
+        Run run = new Run(new RetryScheduler(retryAttempts, retryDelayMillis));
+        try {
+            processAll(files.iterator(), executor, window, run);
+            List<File> due;
+            while (!cancelled && !(due = run.retries.awaitDue()).isEmpty()) {
+                processAll(due.iterator(), executor, window, run);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        } finally {
+            writer.flush();
+            if (nameCache != null) {
+                nameCache.save();
+            }
+        }
+        for (File file : run.retries.drain()) {
+            report(new FileResult(file, null, Status.CONTENDED, "Cancelled while waiting to retry"), run);
+        }
+        long[] totals = new long[run.counts.length()];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = run.counts.get(i);
+        }
+        return new Summary(totals, cancelled);
+    }
+
+    /**
+     * Submits the files to the executor one task per file, keeping at most {@code window} of them pending,
+     * and waits for all of them. Unless results are reported in listing order, every task reports its own
+     * result as soon as it is done.
+     */
+    private void processAll(Iterator<File> files, Executor executor, int window, Run run)
+            throws InterruptedException {
+        if (confirmation != null) {
+            processConfirmed(files, executor, run);
+            return;
+        }
+        CompletionService<FileResult> completion = ordered ? null : new ExecutorCompletionService<>(executor);
+        Deque<Future<FileResult>> pending = new ArrayDeque<>();
+        try {
+            while (!cancelled && files.hasNext()) {
+                if (pending.size() >= window) {
+                    finish(next(completion, pending), run);
+                }
+                File file = files.next();
+                Callable<FileResult> task = () -> {
+                    if (cancelled) {
+                        // Queued before the run was cancelled, but not started
+                        return null;
+                    }
+                    FileResult result = process(file, run);
+                    if (result != null && !ordered) {
+                        report(result, run);
+                        return null;
+                    }
+                    return result;
+                };
+                if (completion != null) {
+                    pending.add(completion.submit(task));
+                } else {
+                    FutureTask<FileResult> future = new FutureTask<>(task);
+                    executor.execute(future);
+                    pending.add(future);
+                }
+            }
+        } finally {
+            // Even when the listing fails, the files already submitted are finished and reported
+            while (!pending.isEmpty()) {
+                finish(next(completion, pending), run);
+            }
+        }
+    }
+
+    /**
+     * Processes files whose resets are confirmed. Up to {@link #PREFETCH_DEPTH} files are read, checked and
+     * looked up on the executor ahead of the file being confirmed, the confirmations are asked on the calling
+     * thread, and the confirmed files are written one at a time on a writer thread, so that the next question
+     * follows the answer to the last one at once. Results are reported in listing order, those that are done
+     * before each question.
+     */
+    private void processConfirmed(Iterator<File> files, Executor executor, Run run) throws InterruptedException {
+        Deque<Future<Candidate>> prefetched = new ArrayDeque<>();
+        Deque<Future<FileResult>> results = new ArrayDeque<>();
+        ExecutorService writes = Executors.newSingleThreadExecutor();
+        try {
+            while (true) {
+                while (!cancelled && prefetched.size() < PREFETCH_DEPTH && files.hasNext()) {
+                    File file = files.next();
+                    FutureTask<Candidate> task = new FutureTask<>(() -> prepare(file, run, true));
+                    executor.execute(task);
+                    prefetched.add(task);
+                }
+                if (cancelled || prefetched.isEmpty()) {
+                    break;
+                }
+                Candidate candidate = get(prefetched.poll());
+                while (!results.isEmpty() && results.peek().isDone()) {
+                    finish(results.poll(), run);
+                }
+                if (candidate.result != null) {
+                    results.add(CompletableFuture.completedFuture(candidate.result));
+                } else if (candidate.retry || confirmation.confirm(candidate.file, candidate.torrentName,
+                        candidate.values)) {
+                    results.add(writes.submit(() -> write(candidate, run)));
+                } else {
+                    results.add(CompletableFuture.completedFuture(new FileResult(candidate.file,
+                            candidate.torrentName, Status.SKIPPED, null)));
+                }
+            }
+        } finally {
+            // Files read ahead of a cancelled run were never asked about, so they are dropped
+            for (Future<Candidate> task : prefetched) {
+                task.cancel(false);
+            }
+            try {
+                while (!results.isEmpty()) {
+                    finish(results.poll(), run);
+                }
+            } finally {
+                writes.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return The next task to wait for: the first to complete, or the oldest if results are reported in
+     *         listing order.
+     */
+    private static Future<FileResult> next(CompletionService<FileResult> completion,
+                                           Deque<Future<FileResult>> pending) throws InterruptedException {
+        if (completion == null) {
+            return pending.poll();
+        }
+        Future<FileResult> done = completion.take();
+        pending.remove(done);
+        return done;
+    }
+
+    private void finish(Future<FileResult> task, Run run) throws InterruptedException {
+        FileResult result = get(task);
+        if (result != null) {
+            report(result, run);
+        }
+    }
+
+    /**
+     * Waits for a task, stopping the run if it failed.
+     */
+    private <T> T get(Future<T> task) throws InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            cancelled = true;
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to process files", e.getCause());
+        }
+    }
+
+    private void report(FileResult result, Run run) {
+        run.counts.incrementAndGet(result.status.ordinal());
+        metrics.increment(RunMetrics.Counter.FILES);
+        metrics.increment(counter(result.status));
+        synchronized (listener) {
+            listener.onResult(result);
+        }
+    }
+
+    /**
+     * @return The counter of the run metrics that counts the files with a status.
+     */
+    private static RunMetrics.Counter counter(Status status) {
+        switch (status) {
+            case RESET:
+                return RunMetrics.Counter.RESET;
+            case ALREADY_RESET:
+            case SKIPPED:
+                return RunMetrics.Counter.SKIPPED;
+            case FILTERED:
+                return RunMetrics.Counter.FILTERED;
+            case CONTENDED:
+                return RunMetrics.Counter.CONTENDED;
+            default:
+                return RunMetrics.Counter.FAILED;
+        }
+    }
+
+    /**
+     * Processes one file whose reset is not confirmed.
+     *
+     * @return The result, or null if the file is scheduled for a retry.
+     */
+    private FileResult process(File file, Run run) {
+        Candidate candidate = prepare(file, run, false);
+        return candidate.result != null ? candidate.result : write(candidate, run);
+    }
+
+    /**
+     * Reads and checks one file, cheapest check first: the fields of the resume data are checked before the
+     * torrent name is looked up, which may mean reading the .torrent file.
+     *
+     * @param withValues Whether to look up the current values of the keys to reset for the confirmation.
+     * @return The file if it is to be written, otherwise its result.
+     */
+    private Candidate prepare(File file, Run run, boolean withValues) {
+        boolean retry = run.retries.getAttempts(file) > 0;
+        if (retry) {
+            metrics.increment(RunMetrics.Counter.RETRIED);
+        }
+        if (skip != null && skip.test(file)) {
+            return new Candidate(new FileResult(file, null, Status.SKIPPED, null));
+        }
+        AtomicFileWriter.Stamp stamp = AtomicFileWriter.Stamp.of(file);
+        byte[] data;
+        try {
+            data = read(file);
+        } catch (IOException e) {
+            return new Candidate(new FileResult(file, null, Status.FAILED, "Failed to read file: " + e.getMessage()));
+        }
+        // A file that no rule changes would be rewritten with the same bytes, so with rules it is never written,
+        // even when files that are already zero are
+        if ((skipAlreadyReset || !patcher.getRules().isEmpty()) && isReset(data)) {
+            return new Candidate(new FileResult(file, null, Status.ALREADY_RESET, null));
+        }
+        if (!matchesFields(data)) {
+            return new Candidate(new FileResult(file, null, Status.FILTERED, null));
+        }
+        String torrentName = readTorrentName(file);
+        if (!filter.matchesName(torrentName)) {
+            return new Candidate(new FileResult(file, torrentName, Status.FILTERED, null));
+        }
+        Long[] values = withValues && !retry ? scan(data) : null;
+        return new Candidate(file, null, stamp, data, torrentName, retry, values);
+    }
+
+    /**
+     * Patches a file that is to be reset and writes it, after recording its original values if undo data
+     * is recorded. The write is conditional on the stamp taken before the file was read.
+     *
+     * @return The result, or null if the file is scheduled for a retry.
+     */
+    private FileResult write(Candidate candidate, Run run) {
+        File file = candidate.file;
+        String torrentName = candidate.torrentName;
+        AtomicFileWriter.Stamp stamp = candidate.stamp;
+        try {
+            String[] oldValues = new String[patcher.getKeys().size()];
+            FastresumePatcher.Patched patched = patch(candidate.data, oldValues);
+            if (journals == null) {
+                AtomicFileWriter.Stamp written = writer.write(file, patched.getData(), patched.getLength(), stamp);
+                return new FileResult(file, torrentName, Status.RESET, null, written);
+            }
+            if (stamp != null) {
+                // Checked before the undo record too, so that it is only written for files that will change
+                AtomicFileWriter.checkUnchanged(file, stamp);
+            }
+            long checksum = UndoJournal.checksum(patched.getData(), patched.getLength());
+            UndoJournal journal;
+            boolean recorded;
+            try {
+                journal = journals.get(file);
+                recorded = journal.record(file.getName(), patcher.getKeys(), oldValues, checksum);
+            } catch (IOException e) {
+                return new FileResult(file, torrentName, Status.FAILED, "Failed to record undo data - "
+                        + e.getMessage());
+            }
+            AtomicFileWriter.Stamp written = writer.write(file, patched.getData(), patched.getLength(), stamp);
+            if (recorded) {
+                try {
+                    journal.commit(file.getName(), checksum);
+                } catch (IOException e) {
+                    // The record is still replayed while the file matches its checksum
+                    return new FileResult(file, torrentName, Status.RESET, "Failed to commit undo data - "
+                            + e.getMessage(), written);
+                }
+            }
+            return new FileResult(file, torrentName, Status.RESET, null, written);
+        } catch (IllegalArgumentException e) {
+            return new FileResult(file, torrentName, Status.FAILED, e.getMessage());
+        } catch (AtomicFileWriter.ContendedException e) {
+            if (!cancelled && run.retries.schedule(file)) {
+                synchronized (listener) {
+                    listener.onRetry(file, e.getMessage());
+                }
+                return null;
+            }
+            return new FileResult(file, torrentName, Status.CONTENDED, e.getMessage());
+        } catch (IOException e) {
+            return new FileResult(file, torrentName, Status.FAILED, "Failed to save the file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a whole file.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    byte[] read(File file) throws IOException {
+        long start = System.nanoTime();
+        try {
+            byte[] data = Files.readAllBytes(file.toPath());
+            metrics.add(RunMetrics.Counter.BYTES_READ, data.length);
+            return data;
+        } finally {
+            metrics.record(RunMetrics.Phase.READ, start);
+        }
+    }
+
+    /**
+     * @return true if the values to reset are already zero, or at the value of their rule, in the data.
+     */
+    boolean isReset(byte[] data) {
+        return isReset(data, null);
+    }
+
+    /**
+     * @param fields The fields for the rules, or null to read them from the data.
+     * @return true if the values to reset are already zero, or at the value of their rule, in the data.
+     */
+    boolean isReset(byte[] data, TorrentFilter.ResumeFields fields) {
+        long start = System.nanoTime();
+        try {
+            return patcher.isReset(data, fields);
+        } finally {
+            metrics.record(RunMetrics.Phase.SCAN, start);
+        }
+    }
+
+    /**
+     * Applies the parts of the filter that the resume data decides. The name is checked separately, as
+     * looking it up may mean reading the .torrent file.
+     *
+     * @return true if the torrent may pass the filter.
+     */
+    boolean matchesFields(byte[] data) {
+        if (filter.isEmpty()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            return filter.matches(TorrentFilter.readFields(data));
+        } finally {
+            metrics.record(RunMetrics.Phase.SCAN, start);
+        }
+    }
+
+    private Long[] scan(byte[] data) {
+        long start = System.nanoTime();
+        try {
+            return patcher.scan(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new IllegalStateException("Reading from memory cannot fail", e);
+        } finally {
+            metrics.record(RunMetrics.Phase.SCAN, start);
+        }
+    }
+
+    /**
+     * Resets the values of the keys in a single pass over the data, verifying the patch if the engine
+     * verifies patches.
+     *
+     * @param data      The raw .fastresume data, modified in place unless a rule raises a value.
+     * @param oldValues Receives the original digits of each key, or null if they are not needed.
+     * @return The patched data.
+     * @throws IllegalArgumentException if none of the keys with a well-formed integer value is found, or the
+     *                                  patched data fails verification.
+     */
+    FastresumePatcher.Patched patch(byte[] data, String[] oldValues) {
+        return patch(data, oldValues, null);
+    }
+
+    /**
+     * Resets the values of the keys like {@link #patch(byte[], String[])}, evaluating the rules with fields
+     * of the torrent that a store keeps outside the resume data.
+     *
+     * @param fields The fields for the rules, or null to read them from the data.
+     */
+    FastresumePatcher.Patched patch(byte[] data, String[] oldValues, TorrentFilter.ResumeFields fields) {
+        long start = System.nanoTime();
+        try {
+            if (!verify) {
+                return patcher.patch(data, oldValues, null, null, fields);
+            }
+            return PatchVerifier.patch(patcher, data, oldValues != null ? oldValues
+                    : new String[patcher.getKeys().size()], fields);
+        } catch (PatchVerifier.VerificationException e) {
+            metrics.increment(RunMetrics.Counter.VERIFY_FAILED);
+            throw e;
+        } finally {
+            metrics.record(RunMetrics.Phase.PATCH, start);
+        }
+    }
+
+    /**
+     * Reads the name of a torrent, using the name cache of the engine.
+     *
+     * @param fastresumeFile The .fastresume file.
+     * @return The torrent name, or {@link #UNKNOWN_TORRENT} if it cannot be read.
+     */
+    String readTorrentName(File fastresumeFile) {
+        long start = System.nanoTime();
+        try {
+            return readTorrentName(fastresumeFile, nameCache);
+        } finally {
+            metrics.record(RunMetrics.Phase.NAME, start);
+        }
+    }
+
+    /**
+     * Reads the name of a torrent from the .torrent file next to its .fastresume file. The name cache is
+     * consulted first, otherwise only the bytes of the .torrent file up to info.name are read.
+     *
+     * @param fastresumeFile The .fastresume file.
+     * @param cache          The torrent name cache, or null.
+     * @return The torrent name, or {@link #UNKNOWN_TORRENT} if there is no .torrent file or it holds no name.
+     */
+    static String readTorrentName(File fastresumeFile, TorrentNameCache cache) {
+        String fileName = fastresumeFile.getName();
+        int dot = fileName.lastIndexOf('.');
+        String baseName = dot == -1 ? fileName : fileName.substring(0, dot);
+        File torrentFile = new File(fastresumeFile.getParentFile(), baseName + TORRENT_FILE_EXTENSION);
+        if (!torrentFile.isFile()) {
+            return UNKNOWN_TORRENT;
+        }
+        if (cache != null) {
+            String cachedName = cache.get(torrentFile);
+            if (cachedName != null) {
+                return cachedName;
+            }
+        }
+        try {
+            String name = TorrentInfoReader.readName(torrentFile);
+            if (name == null) {
+                return UNKNOWN_TORRENT;
+            }
+            if (cache != null) {
+                cache.put(torrentFile, name);
+            }
+            return name;
+        } catch (IOException e) {
+            return UNKNOWN_TORRENT;
+        }
+    }
+
+    /**
+     * The undo journals of the engine, one in every folder that files are reset in. A journal is opened when
+     * the first file of its folder is reset, and closed with the engine.
+     */
+    private static final class UndoJournals {
+        private final Map<File, UndoJournal> journals = new HashMap<>();
+
+        synchronized UndoJournal get(File file) throws IOException {
+            File folder = file.getAbsoluteFile().getParentFile();
+            UndoJournal journal = journals.get(folder);
+            if (journal == null) {
+                File journalFile = new File(folder, UndoJournal.UNDO_FILE_NAME);
+                try {
+                    journal = UndoJournal.open(journalFile);
+                } catch (IOException e) {
+                    throw new IOException("Failed to open undo journal: " + journalFile.getPath() + " - "
+                            + e.getMessage(), e);
+                }
+                journals.put(folder, journal);
+            }
+            return journal;
+        }
+
+        synchronized void close() {
+            for (UndoJournal journal : journals.values()) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    // Records are flushed as they are written, and one whose commit is lost is still replayed
+                    // while its file matches the checksum
+                }
+            }
+            journals.clear();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package uploadresetter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * ResetPrompt asks the user to confirm the reset of each torrent in single file mode. Besides yes and no,
+ * an answer can decide the remaining torrents at once: {@code all} resets them, {@code none} skips them,
+ * and {@code match <glob>} resets the ones whose name matches the glob without asking again, while the
+ * others are still asked for, or skipped after a later {@code none}.
+ *
+ * The input is read through one buffered reader for the whole run, so answers that are typed or piped
+ * ahead are not lost between prompts.
+ */
+final class ResetPrompt {
+    private static final String ANSWERS = "(y/n, all, none, match <glob>)";
+
+    private enum Decision {
+        ASK, ALL, NONE
+    }
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private Decision decision = Decision.ASK;
+    private Pattern pattern;
+
+    ResetPrompt(InputStream in, PrintStream out) {
+        this.in = new BufferedReader(new InputStreamReader(in));
+        this.out = out;
+    }
+
+    /**
+     * Asks whether to reset a torrent, unless an earlier answer already decided it. When the input ends,
+     * this and all remaining torrents are skipped.
+     *
+     * @param torrentName The name of the torrent.
+     * @param details     What is about to be reset, shown after the name, or null.
+     * @return true if the torrent is to be reset.
+     */
+    synchronized boolean confirm(String torrentName, String details) {
+        if (pattern != null && pattern.matcher(torrentName).find()) {
+            return true;
+        }
+        if (decision != Decision.ASK) {
+            return decision == Decision.ALL;
+        }
+        while (true) {
+            out.print("Reset uploaded amount for torrent: " + torrentName + (details == null ? "" : " (" + details
+                    + ")") + "? " + ANSWERS + ": ");
+            out.flush();
+            String line = readLine();
+            if (line == null) {
+                out.println();
+                out.println("No more answers, skipping the remaining torrents");
+                decision = Decision.NONE;
+                return false;
+            }
+            String input = line.trim();
+            String answer = input.toLowerCase(Locale.ROOT);
+            switch (answer) {
+                case "y":
+                case "yes":
+                    return true;
+                case "n":
+                case "no":
+                    return false;
+                case "all":
+                    decision = Decision.ALL;
+                    return true;
+                case "none":
+                    decision = Decision.NONE;
+                    return false;
+                default:
+                    if (answer.startsWith("match ") && !input.substring(6).trim().isEmpty()) {
+                        pattern = TorrentFilter.globToPattern(input.substring(6).trim());
+                        if (pattern.matcher(torrentName).find()) {
+                            return true;
+                        }
+                        // The glob says nothing about this torrent, so ask again
+                        continue;
+                    }
+                    out.println("Please answer y, n, all, none or match <glob>");
+            }
+        }
+    }
+
+    private String readLine() {
+        try {
+            return in.readLine();
+        } catch (IOException e) {
+            System.err.println("Failed to read answer - " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package uploadresetter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * ResetRules decide the new total_uploaded value of a torrent instead of zero. Each rule is an action,
+ * optionally followed by the torrents it applies to:
+ * <pre>
+ * ratio 1.0 if tracker=tracker.example.org
+ * cap 10G if category=Linux ISOs
+ * scale 0.5
+ * zero
+ * </pre>
+ * {@code ratio <r>} sets the uploaded amount to r times total_downloaded, which may raise it, {@code cap <size>}
+ * lowers it to at most a size with an optional unit like {@code --min-uploaded}, and {@code scale <f>}
+ * multiplies the value the file has by a factor, so it scales again on every run. The first rule that
+ * applies to a torrent decides, and torrents that no rule applies to are left unchanged, so a final
+ * {@code zero} rule resets all others.
+ *
+ * The rules are compiled once into a selector and a function of the uploaded and downloaded amounts, so
+ * evaluating them for a file takes the values that the patcher locates in its single pass over the data.
+ */
+final class ResetRules {
+    static final ResetRules NONE = new ResetRules(Collections.emptyList());
+    static final String RULE_OPTION = "--rule";
+
+    private static final String CONDITION = " if ";
+    private static final String TRACKER = "tracker=";
+    private static final String CATEGORY = "category=";
+
+    /**
+     * A compiled rule.
+     */
+    private static final class Rule {
+        private final String text;
+        // The torrents the rule applies to, or null for all
+        private final TorrentFilter selector;
+        // The new value from the uploaded and downloaded amounts
+        private final LongBinaryOperator value;
+        private final boolean readsDownloaded;
+
+        Rule(String text, TorrentFilter selector, LongBinaryOperator value, boolean readsDownloaded) {
+            this.text = text;
+            this.selector = selector;
+            this.value = value;
+            this.readsDownloaded = readsDownloaded;
+        }
+    }
+
+    private final List<Rule> rules;
+
+    private ResetRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Collects the values of all {@code --rule} options, in the order they are given.
+     *
+     * @param args The command-line arguments.
+     * @return The rules.
+     */
+    static List<String> findRules(String[] args) {
+        List<String> rules = new ArrayList<>();
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(RULE_OPTION)) {
+                rules.add(args[++i]);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Compiles rules.
+     *
+     * @param texts The rules, in the order they are tried.
+     * @return The compiled rules, {@link #NONE} if there are none.
+     * @throws IllegalArgumentException if a rule is not valid.
+     */
+    static ResetRules parse(List<String> texts) {
+        if (texts.isEmpty()) {
+            return NONE;
+        }
+        List<Rule> rules = new ArrayList<>();
+        for (String text : texts) {
+            rules.add(compile(text));
+        }
+        return new ResetRules(Collections.unmodifiableList(rules));
+    }
+
+    private static Rule compile(String text) {
+        String action = text.trim();
+        TorrentFilter selector = null;
+        int condition = action.indexOf(CONDITION);
+        if (condition != -1) {
+            selector = compileSelector(text, action.substring(condition + CONDITION.length()).trim());
+            action = action.substring(0, condition).trim();
+        }
+        String[] words = action.split("\\s+");
+        String name = words[0].toLowerCase(Locale.ROOT);
+        if (name.equals("zero") && words.length == 1) {
+            return new Rule(text, selector, (uploaded, downloaded) -> 0, false);
+        }
+        if (words.length != 2) {
+            throw invalid(text);
+        }
+        switch (name) {
+            case "ratio":
+                double ratio = parseFactor(text, words[1]);
+                return new Rule(text, selector, (uploaded, downloaded) -> (long) (downloaded * ratio), true);
+            case "cap":
+                long cap;
+                try {
+                    cap = TorrentFilter.parseSize(words[1]);
+                } catch (IllegalArgumentException e) {
+                    throw invalid(text);
+                }
+                return new Rule(text, selector, (uploaded, downloaded) -> Math.min(uploaded, cap), false);
+            case "scale":
+                double factor = parseFactor(text, words[1]);
+                return new Rule(text, selector, (uploaded, downloaded) -> (long) (uploaded * factor), false);
+            default:
+                throw invalid(text);
+        }
+    }
+
+    private static TorrentFilter compileSelector(String text, String condition) {
+        if (condition.startsWith(TRACKER) && condition.length() > TRACKER.length()) {
+            return new TorrentFilter(null, condition.substring(TRACKER.length()), null, null, -1);
+        }
+        if (condition.startsWith(CATEGORY)) {
+            return new TorrentFilter(null, null, condition.substring(CATEGORY.length()), null, -1);
+        }
+        throw invalid(text);
+    }
+
+    private static double parseFactor(String text, String value) {
+        try {
+            double factor = Double.parseDouble(value);
+            if (factor >= 0 && factor <= Double.MAX_VALUE) {
+                return factor;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw invalid(text);
+    }
+
+    private static IllegalArgumentException invalid(String text) {
+        return new IllegalArgumentException("Invalid value for " + RULE_OPTION + " option: " + text);
+    }
+
+    /**
+     * @return true if there are no rules, so every value is reset to zero.
+     */
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @return true if a rule reads total_downloaded.
+     */
+    boolean readsDownloaded() {
+        for (Rule rule : rules) {
+            if (rule.readsDownloaded) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a rule applies to some torrents only, so the tracker and category must be read.
+     */
+    boolean needsFields() {
+        for (Rule rule : rules) {
+            if (rule.selector != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the new uploaded amount of a torrent.
+     *
+     * @param uploaded   The current uploaded amount.
+     * @param downloaded The downloaded amount, 0 if it is not known.
+     * @param fields     The fields of the resume data, or null if no rule needs them.
+     * @return The new uploaded amount, which is never negative, or -1 if no rule applies, so the amount is
+     *         left unchanged.
+     */
+    long target(long uploaded, long downloaded, TorrentFilter.ResumeFields fields) {
+        for (Rule rule : rules) {
+            if (rule.selector == null || rule.selector.matches(fields)) {
+                return Math.max(0, rule.value.applyAsLong(uploaded, downloaded));
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        List<String> texts = new ArrayList<>();
+        for (Rule rule : rules) {
+            texts.add(rule.text);
+        }
+        return String.join("; ", texts);
+    }
+}
@@ -0,0 +1,54 @@
+package uploadresetter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * ResumeDataStore is where qBittorrent keeps the resume data of its torrents: either a BT_backup folder
+ * of .fastresume files, or the torrents.db SQLite database used by newer versions. Both hold the same
+ * bencoded resume data, which is patched with the same byte logic, as do archived copies of a folder.
+ */
+interface ResumeDataStore extends Closeable {
+    String DATABASE_FILE_EXTENSION = ".db";
+
+    /**
+     * Resets the configured values in the resume data of all torrents in the store.
+     *
+     * @param resetter The resetter whose engine, prompt and results apply to the store.
+     * @throws IOException if the store cannot be read or written.
+     */
+    void resetAll(QbtUploadResetter resetter) throws IOException;
+
+    /**
+     * Opens the store at a path: a SQLite database if the path is a .db file, a BT_backup folder otherwise.
+     *
+     * @param path The path to the BT_backup folder or the torrents.db file.
+     * @return The store.
+     * @throws IOException if the database cannot be opened.
+     */
+    static ResumeDataStore open(String path) throws IOException {
+        return open(path, null);
+    }
+
+    /**
+     * Opens the store at a path: a SQLite database if the path is a .db file, an archive of a BT_backup
+     * folder if it is a zip, tar or tar.gz file, and a BT_backup folder otherwise.
+     *
+     * @param path       The path to the BT_backup folder, the torrents.db file or the archive.
+     * @param outputPath The archive that an archive is written to, or null for the default next to it.
+     * @return The store.
+     * @throws IOException if the database cannot be opened.
+     */
+    static ResumeDataStore open(String path, String outputPath) throws IOException {
+        File file = new File(path);
+        if (ArchiveResumeDataStore.isArchive(file)) {
+            File output = outputPath != null ? new File(outputPath) : ArchiveResumeDataStore.defaultOutput(file);
+            return new ArchiveResumeDataStore(file, output, ArchiveResumeDataStore.DEFAULT_LOOKAHEAD);
+        }
+        if (SqliteResumeDataStore.isDatabase(file)) {
+            return SqliteResumeDataStore.open(file, SqliteResumeDataStore.DEFAULT_BATCH_SIZE);
+        }
+        return new FastresumeFileStore(path);
+    }
+}
@@ -0,0 +1,129 @@
+package uploadresetter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RetryScheduler holds the files that could not be written because a running client was using them,
+ * until they are due to be tried again. The delay doubles with every attempt, up to a maximum, and is
+ * jittered so that files deferred together are not all retried at the same moment. Workers only schedule
+ * files and move on; the due files are collected once the other files have been processed.
+ */
+final class RetryScheduler {
+    static final int DEFAULT_ATTEMPTS = 5;
+    static final long DEFAULT_DELAY_MILLIS = 500;
+    private static final long MAX_DELAY_MILLIS = 8000;
+
+    private static final class Entry {
+        private final File file;
+        private final long dueNanos;
+
+        Entry(File file, long dueNanos) {
+            this.file = file;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final Map<File, Integer> attempts = new HashMap<>();
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparingLong(
+            (Entry entry) -> entry.dueNanos));
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param maxAttempts     The number of times a file is retried before it is given up, 0 to never retry.
+     * @param baseDelayMillis The delay before the first retry.
+     */
+    RetryScheduler(int maxAttempts, long baseDelayMillis) {
+        if (maxAttempts < 0 || baseDelayMillis < 0) {
+            throw new IllegalArgumentException("Retry attempts and delay must not be negative");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+    }
+
+    /**
+     * Schedules a file to be tried again.
+     *
+     * @param file The file that could not be written.
+     * @return false if the retry budget of the file has run out.
+     */
+    synchronized boolean schedule(File file) {
+        int attempt = attempts.merge(file, 1, Integer::sum);
+        if (attempt > maxAttempts) {
+            return false;
+        }
+        long dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis(attempt));
+        queue.add(new Entry(file, dueNanos));
+        return true;
+    }
+
+    /**
+     * @return The number of times a file has been scheduled.
+     */
+    synchronized int getAttempts(File file) {
+        Integer count = attempts.get(file);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Computes the delay before a retry: half of the exponential backoff, plus a random part of up to the
+     * other half.
+     *
+     * @param attempt The number of the retry, starting at 1.
+     * @return The delay in milliseconds.
+     */
+    long delayMillis(int attempt) {
+        long backoff = Math.min(MAX_DELAY_MILLIS, baseDelayMillis << Math.min(attempt - 1, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * Waits until the earliest scheduled file is due and removes all files that are due by then.
+     *
+     * @return The due files, or an empty list if no file is scheduled.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    List<File> awaitDue() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    return new ArrayList<>();
+                }
+                waitNanos = queue.peek().dueNanos - System.nanoTime();
+                if (waitNanos <= 0) {
+                    List<File> due = new ArrayList<>();
+                    long now = System.nanoTime();
+                    while (!queue.isEmpty() && queue.peek().dueNanos - now <= 0) {
+                        due.add(queue.poll().file);
+                    }
+                    return due;
+                }
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Removes all scheduled files without waiting for them.
+     *
+     * @return The files that were still scheduled.
+     */
+    synchronized List<File> drain() {
+        List<File> files = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            files.add(queue.poll().file);
+        }
+        return files;
+    }
+}
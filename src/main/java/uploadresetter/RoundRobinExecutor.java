@@ -0,0 +1,119 @@
+package uploadresetter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * RoundRobinExecutor runs the tasks of several lanes on one bounded pool of worker threads. Every lane has
+ * its own queue, and the workers take one task from each lane with queued tasks in turn, so a lane with a
+ * long backlog gets the same share of the workers as a lane with a few tasks, instead of holding up the
+ * tasks queued behind it.
+ *
+ * Multi-root mode gives every BT_backup folder its own lane, so that one huge folder cannot starve the
+ * small ones.
+ */
+final class RoundRobinExecutor implements AutoCloseable {
+    /**
+     * The tasks of one submitter.
+     */
+    final class Lane implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized (RoundRobinExecutor.this) {
+                if (shutdown) {
+                    throw new RejectedExecutionException("Executor is shut down");
+                }
+                tasks.add(task);
+                RoundRobinExecutor.this.notify();
+            }
+        }
+    }
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private int nextLane;
+    private boolean shutdown;
+
+    /**
+     * Starts the worker threads.
+     *
+     * @param threads The number of worker threads.
+     */
+    RoundRobinExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "round-robin-worker-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * @return A new lane, which takes its turn after the lanes created before it.
+     */
+    synchronized Lane newLane() {
+        Lane lane = new Lane();
+        lanes.add(lane);
+        return lane;
+    }
+
+    private void work() {
+        try {
+            Runnable task;
+            while ((task = take()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // The tasks report their own failures, as FutureTask does; a stray one must not kill the worker
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Shut down
+        }
+    }
+
+    /**
+     * Waits for the next task, taken from the lane after the one the last task was taken from.
+     *
+     * @return The task, or null once the executor is shut down.
+     */
+    private synchronized Runnable take() throws InterruptedException {
+        while (!shutdown) {
+            for (int i = 0; i < lanes.size(); i++) {
+                Lane lane = lanes.get((nextLane + i) % lanes.size());
+                Runnable task = lane.tasks.poll();
+                if (task != null) {
+                    nextLane = (nextLane + i + 1) % lanes.size();
+                    return task;
+                }
+            }
+            wait();
+        }
+        return null;
+    }
+
+    /**
+     * Stops the workers. Queued tasks are dropped and running tasks are interrupted.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+}
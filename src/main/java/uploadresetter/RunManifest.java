@@ -0,0 +1,187 @@
+package uploadresetter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RunManifest records the size, modification time and result of every .fastresume file handled by an
+ * incremental run. A later incremental run skips files whose size and modification time still match
+ * a successful entry without opening them. Entries for files that no longer exist are dropped on save.
+ * Whether a file needs a change depends on the keys and rules of the run, so the manifest stores their
+ * fingerprint and is discarded by a run with a different one.
+ *
+ * The manifest is stored in a compact binary file in the BT_backup folder: int magic, int version,
+ * UTF fingerprint, int count, then for each entry: UTF file name, long size, long mtime, byte result.
+ */
+final class RunManifest {
+    static final String MANIFEST_FILE_NAME = ".upload-resetter.manifest";
+    private static final int MAGIC = 0x5142544D; // "QBTM"
+    private static final int VERSION = 2;
+
+    /**
+     * The result of handling a file.
+     */
+    enum Result {
+        RESET, ALREADY_ZERO, FAILED;
+
+        boolean isSuccessful() {
+            return this != FAILED;
+        }
+    }
+
+    private static final class FileState {
+        private final long size;
+        private final long lastModified;
+        private final Result result;
+
+        FileState(long size, long lastModified, Result result) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.result = result;
+        }
+    }
+
+    private final File manifestFile;
+    private final String fingerprint;
+    private final Map<String, FileState> previous;
+    private final Map<String, FileState> current = new ConcurrentHashMap<>();
+    private final AtomicInteger scanned = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger rewritten = new AtomicInteger();
+
+    private RunManifest(File manifestFile, String fingerprint, Map<String, FileState> previous) {
+        this.manifestFile = manifestFile;
+        this.fingerprint = fingerprint;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the manifest of the previous run from a folder. A missing or unreadable manifest, or one
+     * written with another fingerprint, results in an empty one, so every file is checked.
+     *
+     * @param folder      The BT_backup folder.
+     * @param fingerprint The {@link FastresumePatcher#getFingerprint() fingerprint} of the keys and rules of
+     *                    this run.
+     * @return The loaded manifest.
+     */
+    static RunManifest load(File folder, String fingerprint) {
+        File manifestFile = new File(folder, MANIFEST_FILE_NAME);
+        Map<String, FileState> previous = new ConcurrentHashMap<>();
+        if (manifestFile.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(manifestFile)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    System.err.println("Ignoring incompatible manifest: " + manifestFile.getPath());
+                } else if (!in.readUTF().equals(fingerprint)) {
+                    System.out.println("Ignoring manifest of a run with other keys or rules: "
+                            + manifestFile.getPath());
+                } else {
+                    int count = in.readInt();
+                    Result[] results = Result.values();
+                    for (int i = 0; i < count; i++) {
+                        String fileName = in.readUTF();
+                        previous.put(fileName, new FileState(in.readLong(), in.readLong(), results[in.readByte()]));
+                    }
+                }
+            } catch (EOFException | ArrayIndexOutOfBoundsException e) {
+                System.err.println("Ignoring corrupt manifest: " + manifestFile.getPath());
+                previous.clear();
+            } catch (IOException e) {
+                System.err.println("Failed to read manifest: " + manifestFile.getPath() + " - " + e.getMessage());
+                previous.clear();
+            }
+        }
+        return new RunManifest(manifestFile, fingerprint, previous);
+    }
+
+    /**
+     * Counts a file as scanned and checks whether it is unchanged since it was successfully handled
+     * by the previous run. Unchanged files are carried over to this run's manifest and counted as skipped.
+     *
+     * @param file The .fastresume file.
+     * @return true if the file can be skipped without opening it.
+     */
+    boolean checkUnchanged(File file) {
+        scanned.incrementAndGet();
+        FileState state = previous.get(file.getName());
+        if (state != null && state.result.isSuccessful()
+                && state.size == file.length() && state.lastModified == file.lastModified()) {
+            current.put(file.getName(), state);
+            skipped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the result of handling a file together with its current size and modification time.
+     *
+     * @param file   The .fastresume file.
+     * @param result The result.
+     */
+    void record(File file, Result result) {
+        current.put(file.getName(), new FileState(file.length(), file.lastModified(), result));
+        if (result == Result.ALREADY_ZERO) {
+            skipped.incrementAndGet();
+        } else if (result == Result.RESET) {
+            rewritten.incrementAndGet();
+        }
+    }
+
+    int getScanned() {
+        return scanned.get();
+    }
+
+    int getSkipped() {
+        return skipped.get();
+    }
+
+    int getRewritten() {
+        return rewritten.get();
+    }
+
+    /**
+     * Prints the scanned, skipped and rewritten counts of this run.
+     */
+    void printSummary() {
+        System.out.println("Scanned " + scanned.get() + " files: " + skipped.get() + " skipped, "
+                + rewritten.get() + " rewritten");
+    }
+
+    /**
+     * Writes the manifest of this run, replacing the previous one atomically.
+     */
+    void save() {
+        File tempFile = new File(manifestFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(fingerprint);
+                out.writeInt(current.size());
+                for (Map.Entry<String, FileState> e : current.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().size);
+                    out.writeLong(e.getValue().lastModified);
+                    out.writeByte(e.getValue().result.ordinal());
+                }
+            }
+            Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Failed to save manifest: " + manifestFile.getPath() + " - " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package uploadresetter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RunMetrics collects counters and per-phase latency histograms of a run, and writes them as a JSON report
+ * or in the Prometheus text format. Recording is lock-free so that worker threads can share one instance.
+ *
+ * Latencies are kept in histograms with power-of-two microsecond buckets, from 1 us up to about 34 seconds.
+ */
+final class RunMetrics {
+    private static final int BUCKETS = 26;
+    private static final String PROMETHEUS_PREFIX = "qbt_upload_resetter_";
+
+    /**
+     * The timed phases of a run.
+     */
+    enum Phase {
+        LIST, READ, SCAN, PATCH, NAME, WRITE, FSYNC;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * The counted events of a run.
+     */
+    enum Counter {
+        FILES, RESET, SKIPPED, FILTERED, FAILED, RETRIED, CONTENDED, VERIFY_FAILED, BYTES_READ, BYTES_WRITTEN;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            // Bucket i holds latencies up to 2^i microseconds, the last bucket holds everything above
+            int bucket = micros <= 1 ? 0 : Math.min(64 - Long.numberOfLeadingZeros(micros - 1), BUCKETS);
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        /**
+         * Estimates a percentile as the upper bound of the bucket that contains it.
+         */
+        long percentileMicros(double percentile) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return 1L << i;
+                }
+            }
+            return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+        }
+    }
+
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final Histogram[] histograms = new Histogram[Phase.values().length];
+
+    RunMetrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Records the duration of a phase that started at the given time.
+     *
+     * @param phase      The phase.
+     * @param startNanos The {@link System#nanoTime()} at which the phase started.
+     */
+    void record(Phase phase, long startNanos) {
+        histograms[phase.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * Adds the counters and latencies of another run, for example to total the runs of several roots.
+     *
+     * @param other The metrics to add.
+     */
+    void addAll(RunMetrics other) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i].add(other.counters[i].sum());
+        }
+        for (int i = 0; i < histograms.length; i++) {
+            Histogram histogram = histograms[i];
+            Histogram otherHistogram = other.histograms[i];
+            for (int b = 0; b <= BUCKETS; b++) {
+                histogram.buckets.addAndGet(b, otherHistogram.buckets.get(b));
+            }
+            histogram.count.add(otherHistogram.count.sum());
+            histogram.totalNanos.add(otherHistogram.totalNanos.sum());
+            histogram.maxNanos.accumulate(otherHistogram.maxNanos.get());
+        }
+    }
+
+    long count(Phase phase) {
+        return histograms[phase.ordinal()].count.sum();
+    }
+
+    /**
+     * Formats the metrics as a JSON document.
+     *
+     * @return The JSON report.
+     */
+    String toJson() {
+        return toJson(Collections.emptyMap());
+    }
+
+    /**
+     * Formats the metrics as a JSON document, with the metrics of every root of a multi-root run nested
+     * under {@code roots}.
+     *
+     * @param roots The metrics of each root by path, in the order they are listed.
+     * @return The JSON report.
+     */
+    String toJson(Map<String, RunMetrics> roots) {
+        StringWriter json = new StringWriter();
+        PrintWriter out = new PrintWriter(json);
+        out.println("{");
+        out.println("  \"startedAt\": " + startedAtMillis + ",");
+        out.println("  \"durationMillis\": " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + ",");
+        out.println("  \"counters\": {");
+        Counter[] counterValues = Counter.values();
+        for (int i = 0; i < counterValues.length; i++) {
+            out.print("    \"" + counterValues[i].label() + "\": " + get(counterValues[i]));
+            out.println(i < counterValues.length - 1 ? "," : "");
+        }
+        out.println("  },");
+        out.println("  \"phases\": {");
+        Phase[] phases = Phase.values();
+        for (int i = 0; i < phases.length; i++) {
+            Histogram histogram = histograms[i];
+            long count = histogram.count.sum();
+            long totalNanos = histogram.totalNanos.sum();
+            out.println("    \"" + phases[i].label() + "\": {");
+            out.println("      \"count\": " + count + ",");
+            out.println("      \"totalMicros\": " + TimeUnit.NANOSECONDS.toMicros(totalNanos) + ",");
+            long meanNanos = count == 0 ? 0 : totalNanos / count;
+            out.println("      \"meanMicros\": " + TimeUnit.NANOSECONDS.toMicros(meanNanos) + ",");
+            out.println("      \"maxMicros\": " + TimeUnit.NANOSECONDS.toMicros(histogram.maxNanos.get()) + ",");
+            out.println("      \"p50Micros\": " + histogram.percentileMicros(0.50) + ",");
+            out.println("      \"p90Micros\": " + histogram.percentileMicros(0.90) + ",");
+            out.println("      \"p99Micros\": " + histogram.percentileMicros(0.99) + ",");
+            out.print("      \"histogram\": [");
+            boolean first = true;
+            for (int b = 0; b <= BUCKETS; b++) {
+                long bucketCount = histogram.buckets.get(b);
+                if (bucketCount > 0) {
+                    out.print(first ? "" : ", ");
+                    out.print("{\"leMicros\": " + (b < BUCKETS ? String.valueOf(1L << b) : "null")
+                            + ", \"count\": " + bucketCount + "}");
+                    first = false;
+                }
+            }
+            out.println("]");
+            out.println(i < phases.length - 1 ? "    }," : "    }");
+        }
+        if (roots.isEmpty()) {
+            out.println("  }");
+        } else {
+            out.println("  },");
+            out.println("  \"roots\": {");
+            int i = 0;
+            for (Map.Entry<String, RunMetrics> root : roots.entrySet()) {
+                String nested = root.getValue().toJson().trim().replace(System.lineSeparator(),
+                        System.lineSeparator() + "    ");
+                out.print("    " + TorrentScanner.json(root.getKey()) + ": " + nested);
+                out.println(++i < roots.size() ? "," : "");
+            }
+            out.println("  }");
+        }
+        out.println("}");
+        out.flush();
+        return json.toString();
+    }
+
+    /**
+     * Formats the metrics in the Prometheus text exposition format.
+     *
+     * @return The Prometheus metrics.
+     */
+    String toPrometheus() {
+        return toPrometheus(Collections.emptyMap());
+    }
+
+    /**
+     * Formats the metrics in the Prometheus text exposition format. The counters of every root of a
+     * multi-root run are added as separate {@code root_} series with a {@code root} label, so that summing
+     * a series never counts a file twice.
+     *
+     * @param roots The metrics of each root by path.
+     * @return The Prometheus metrics.
+     */
+    String toPrometheus(Map<String, RunMetrics> roots) {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        out.println("# TYPE " + PROMETHEUS_PREFIX + "run_duration_seconds gauge");
+        out.println(PROMETHEUS_PREFIX + "run_duration_seconds " + seconds(System.nanoTime() - startNanos));
+        out.println("# TYPE " + PROMETHEUS_PREFIX + "run_start_time_seconds gauge");
+        out.println(PROMETHEUS_PREFIX + "run_start_time_seconds " + startedAtMillis / 1000);
+        for (Counter counter : Counter.values()) {
+            String name = PROMETHEUS_PREFIX + counter.label() + "_total";
+            out.println("# TYPE " + name + " counter");
+            out.println(name + " " + get(counter));
+        }
+        String name = PROMETHEUS_PREFIX + "phase_duration_seconds";
+        out.println("# TYPE " + name + " histogram");
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = histograms[phase.ordinal()];
+            String label = "phase=\"" + phase.label() + "\"";
+            long cumulative = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                cumulative += histogram.buckets.get(b);
+                out.println(name + "_bucket{" + label + ",le=\"" + seconds((1L << b) * 1000) + "\"} " + cumulative);
+            }
+            out.println(name + "_bucket{" + label + ",le=\"+Inf\"} " + histogram.count.sum());
+            out.println(name + "_sum{" + label + "} " + seconds(histogram.totalNanos.sum()));
+            out.println(name + "_count{" + label + "} " + histogram.count.sum());
+        }
+        if (!roots.isEmpty()) {
+            for (Counter counter : Counter.values()) {
+                String rootName = PROMETHEUS_PREFIX + "root_" + counter.label() + "_total";
+                out.println("# TYPE " + rootName + " counter");
+                for (Map.Entry<String, RunMetrics> root : roots.entrySet()) {
+                    out.println(rootName + "{root=\"" + labelValue(root.getKey()) + "\"} "
+                            + root.getValue().get(counter));
+                }
+            }
+        }
+        out.flush();
+        return text.toString();
+    }
+
+    /**
+     * Writes the JSON report to a file.
+     *
+     * @param file The report file.
+     * @throws IOException if the file cannot be written.
+     */
+    void writeJson(File file) throws IOException {
+        writeJson(file, Collections.emptyMap());
+    }
+
+    /**
+     * Writes the JSON report of a multi-root run to a file.
+     *
+     * @param file  The report file.
+     * @param roots The metrics of each root by path.
+     * @throws IOException if the file cannot be written.
+     */
+    void writeJson(File file, Map<String, RunMetrics> roots) throws IOException {
+        write(file, toJson(roots));
+    }
+
+    /**
+     * Writes the Prometheus metrics to a file, for example for the node exporter textfile collector.
+     *
+     * @param file The metrics file.
+     * @throws IOException if the file cannot be written.
+     */
+    void writePrometheus(File file) throws IOException {
+        writePrometheus(file, Collections.emptyMap());
+    }
+
+    /**
+     * Writes the Prometheus metrics of a multi-root run to a file.
+     *
+     * @param file  The metrics file.
+     * @param roots The metrics of each root by path.
+     * @throws IOException if the file cannot be written.
+     */
+    void writePrometheus(File file, Map<String, RunMetrics> roots) throws IOException {
+        write(file, toPrometheus(roots));
+    }
+
+    /**
+     * Replaces a file atomically, so that collectors never read a partially written report.
+     */
+    private static void write(File file, String content) throws IOException {
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        Files.write(tempFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String labelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+}
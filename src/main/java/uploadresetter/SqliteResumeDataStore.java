@@ -0,0 +1,415 @@
+package uploadresetter;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * SqliteResumeDataStore is the resume data of the torrents.db database that newer qBittorrent versions
+ * use instead of a BT_backup folder. The bencoded resume data of each torrent is read from the resumedata
+ * column of the torrents table, patched in memory, and written back with a prepared statement. Torrents
+ * are read and written in batches by id, each batch in a single transaction, so the database is synced
+ * once per batch rather than once per torrent.
+ *
+ * The filter options and rules apply as they do to a BT_backup folder, except that the name and category
+ * are read from their columns.
+ *
+ * Torrents whose values are already zero are not written. Together with the committed batches, this lets
+ * an interrupted run be resumed by simply running again.
+ *
+ * The original values are recorded in an undo journal next to the database, keyed by torrent id, and are
+ * committed in the journal together with their batch. Patches are verified with --verify like files are.
+ */
+final class SqliteResumeDataStore implements ResumeDataStore {
+    static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+    private static final String SELECT_BATCH = "SELECT id, COALESCE(name, torrent_id), resumedata, category,"
+            + " torrent_id FROM torrents"
+            + " WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String SELECT_IDS = "SELECT id, torrent_id FROM torrents";
+    private static final String SELECT_RESUME_DATA = "SELECT resumedata FROM torrents WHERE id = ?";
+    private static final String UPDATE = "UPDATE torrents SET resumedata = ? WHERE id = ?";
+
+    /**
+     * A torrent added to the batch of updates, which is reported and committed in the undo journal once the
+     * batch is committed.
+     */
+    private static final class Pending {
+        private final String name;
+        private final String torrentId;
+        private final long checksum;
+        // Whether an undo record was written for the torrent
+        private final boolean recorded;
+
+        Pending(String name, String torrentId, long checksum, boolean recorded) {
+            this.name = name;
+            this.torrentId = torrentId;
+            this.checksum = checksum;
+            this.recorded = recorded;
+        }
+    }
+
+    private final File databaseFile;
+    private final Connection connection;
+    private final int batchSize;
+
+    private SqliteResumeDataStore(File databaseFile, Connection connection, int batchSize) {
+        this.databaseFile = databaseFile;
+        this.connection = connection;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param file A file.
+     * @return true if the file is a torrents.db database, going by its extension.
+     */
+    static boolean isDatabase(File file) {
+        return file.isFile() && file.getName().toLowerCase(Locale.ROOT).endsWith(DATABASE_FILE_EXTENSION);
+    }
+
+    /**
+     * @param databaseFile The database file.
+     * @return The undo journal of the database, which is next to it.
+     */
+    static File undoJournalFile(File databaseFile) {
+        return new File(databaseFile.getPath() + UndoJournal.UNDO_FILE_NAME);
+    }
+
+    /**
+     * @param journalFile An undo journal.
+     * @return The database that the journal belongs to, or null if it belongs to a BT_backup folder.
+     */
+    static File databaseOfUndoJournal(File journalFile) {
+        String path = journalFile.getPath();
+        if (!path.toLowerCase(Locale.ROOT).endsWith(DATABASE_FILE_EXTENSION + UndoJournal.UNDO_FILE_NAME)) {
+            return null;
+        }
+        File databaseFile = new File(path.substring(0, path.length() - UndoJournal.UNDO_FILE_NAME.length()));
+        return isDatabase(databaseFile) ? databaseFile : null;
+    }
+
+    /**
+     * Opens a torrents.db database.
+     *
+     * @param databaseFile The database file.
+     * @param batchSize    The number of torrents read and written per transaction.
+     * @return The opened store, which must be closed.
+     * @throws IOException if the database cannot be opened.
+     */
+    static SqliteResumeDataStore open(File databaseFile, int batchSize) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        try {
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getPath());
+            try (Statement statement = connection.createStatement()) {
+                // Wait for a running qBittorrent to release its lock instead of failing right away
+                statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+            }
+            connection.setAutoCommit(false);
+            return new SqliteResumeDataStore(databaseFile, connection, batchSize);
+        } catch (SQLException e) {
+            throw new IOException("Failed to open database: " + databaseFile.getPath() + " - " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Resets the values of all torrents in the database. The database is always written by one thread, and
+     * torrents that need no change are always skipped, so the threads, incremental and resume settings of
+     * the BT_backup folder do not apply.
+     */
+    @Override
+    public void resetAll(QbtUploadResetter resetter) throws IOException {
+        System.out.println("Using torrent database: " + databaseFile.getPath());
+        ResetEngine engine = resetter.getEngine();
+        UndoJournal journal = engine.isUndo() ? openUndoJournal() : null;
+        try (PreparedStatement select = connection.prepareStatement(SELECT_BATCH);
+             PreparedStatement update = connection.prepareStatement(UPDATE)) {
+            long lastId = Long.MIN_VALUE;
+            int torrents = 0;
+            while (true) {
+                select.setLong(1, lastId);
+                select.setInt(2, batchSize);
+                List<Pending> pending = new ArrayList<>();
+                int rows = 0;
+                long start = System.nanoTime();
+                try (ResultSet result = select.executeQuery()) {
+                    while (result.next()) {
+                        rows++;
+                        lastId = result.getLong(1);
+                        String name = result.getString(2);
+                        byte[] data = result.getBytes(3);
+                        TorrentFilter.ResumeFields fields = readFields(engine, data, result.getString(4));
+                        if (isSelected(engine, name, data, fields)) {
+                            Pending torrent = addUpdate(update, lastId, name, result.getString(5), data, fields,
+                                    resetter, journal);
+                            if (torrent != null) {
+                                pending.add(torrent);
+                            }
+                        }
+                    }
+                }
+                engine.getMetrics().record(RunMetrics.Phase.READ, start);
+                writeBatch(update, pending, resetter, journal);
+                torrents += rows;
+                if (rows < batchSize) {
+                    break;
+                }
+            }
+            if (torrents == 0) {
+                System.out.println("No torrents found in the specified database");
+            }
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("Failed to update database: " + databaseFile.getPath() + " - " + e.getMessage(),
+                    e);
+        } finally {
+            if (journal != null) {
+                closeUndoJournal(journal);
+            }
+        }
+    }
+
+    private UndoJournal openUndoJournal() throws IOException {
+        File journalFile = undoJournalFile(databaseFile);
+        try {
+            return UndoJournal.open(journalFile);
+        } catch (IOException e) {
+            throw new IOException("Failed to open undo journal: " + journalFile.getPath() + " - " + e.getMessage(),
+                    e);
+        }
+    }
+
+    private static void closeUndoJournal(UndoJournal journal) {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close undo journal: " + journal.getJournalFile().getPath() + " - "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the fields of a torrent that the filter and rules check. The category is a column of the table,
+     * so it is taken from its column rather than from the resume data.
+     *
+     * @return The fields, or null if the torrent has no resume data or neither the filter nor the rules
+     *         check them.
+     */
+    private static TorrentFilter.ResumeFields readFields(ResetEngine engine, byte[] data, String category) {
+        if (data == null || engine.getFilter().isEmpty() && !engine.getPatcher().getRules().needsFields()) {
+            return null;
+        }
+        return TorrentFilter.readFields(data).withCategory(category);
+    }
+
+    /**
+     * Applies the filter to a torrent. The name is a column of the table, so it is checked first.
+     *
+     * @param fields The fields of the torrent, with the category of its column.
+     * @return true if the torrent is selected.
+     */
+    private static boolean isSelected(ResetEngine engine, String name, byte[] data,
+                                      TorrentFilter.ResumeFields fields) {
+        TorrentFilter filter = engine.getFilter();
+        if (filter.isEmpty() || data == null) {
+            return true;
+        }
+        if (filter.matchesName(name) && filter.matches(fields)) {
+            return true;
+        }
+        RunMetrics metrics = engine.getMetrics();
+        metrics.increment(RunMetrics.Counter.FILES);
+        metrics.increment(RunMetrics.Counter.FILTERED);
+        return false;
+    }
+
+    /**
+     * Patches the resume data of a torrent, records its original values in the undo journal, and adds it to
+     * the batch of updates.
+     *
+     * @param fields  The fields for the rules, with the category of its column, or null if no rule needs them.
+     * @param journal The undo journal, or null if none is written.
+     * @return The torrent if it was added to the batch, or null.
+     */
+    private static Pending addUpdate(PreparedStatement update, long id, String name, String torrentId, byte[] data,
+                                     TorrentFilter.ResumeFields fields, QbtUploadResetter resetter,
+                                     UndoJournal journal) throws SQLException {
+        ResetEngine engine = resetter.getEngine();
+        RunMetrics metrics = engine.getMetrics();
+        metrics.increment(RunMetrics.Counter.FILES);
+        if (data == null) {
+            metrics.increment(RunMetrics.Counter.SKIPPED);
+            return null;
+        }
+        metrics.add(RunMetrics.Counter.BYTES_READ, data.length);
+        if (engine.isReset(data, fields)) {
+            metrics.increment(RunMetrics.Counter.SKIPPED);
+            return null;
+        }
+        if (!resetter.confirmReset(name)) {
+            metrics.increment(RunMetrics.Counter.SKIPPED);
+            System.out.println("Skipping torrent: " + name);
+            return null;
+        }
+        String[] oldValues = new String[engine.getKeys().size()];
+        FastresumePatcher.Patched patched;
+        try {
+            patched = engine.patch(data, oldValues, fields);
+        } catch (IllegalArgumentException e) {
+            metrics.increment(RunMetrics.Counter.FAILED);
+            System.err.println("Failed to reset uploaded amount for torrent: " + name + " - " + e.getMessage());
+            return null;
+        }
+        long checksum = journal == null ? 0 : UndoJournal.checksum(patched.getData(), patched.getLength());
+        boolean recorded = false;
+        if (journal != null) {
+            try {
+                recorded = journal.record(torrentId, engine.getKeys(), oldValues, checksum);
+            } catch (IOException e) {
+                metrics.increment(RunMetrics.Counter.FAILED);
+                System.err.println("Failed to reset uploaded amount for torrent: " + name
+                        + " - Failed to record undo data - " + e.getMessage());
+                return null;
+            }
+        }
+        update.setBytes(1, patched.toArray());
+        update.setLong(2, id);
+        update.addBatch();
+        metrics.add(RunMetrics.Counter.BYTES_WRITTEN, patched.getLength());
+        return new Pending(name, torrentId, checksum, recorded);
+    }
+
+    /**
+     * Writes a batch of updates and commits it, which also ends the read transaction of the batch. The undo
+     * records of the batch are committed after it; a record that cannot be committed is still replayed while
+     * the resume data matches its checksum, so the failure is only reported.
+     */
+    private void writeBatch(PreparedStatement update, List<Pending> pending, QbtUploadResetter resetter,
+                            UndoJournal journal) throws SQLException {
+        RunMetrics metrics = resetter.getEngine().getMetrics();
+        if (!pending.isEmpty()) {
+            long start = System.nanoTime();
+            update.executeBatch();
+            metrics.record(RunMetrics.Phase.WRITE, start);
+        }
+        long start = System.nanoTime();
+        connection.commit();
+        metrics.record(RunMetrics.Phase.FSYNC, start);
+        for (Pending torrent : pending) {
+            if (torrent.recorded) {
+                try {
+                    journal.commit(torrent.torrentId, torrent.checksum);
+                } catch (IOException e) {
+                    System.err.println("Failed to commit undo data for: " + torrent.torrentId + " - "
+                            + e.getMessage());
+                }
+            }
+            metrics.increment(RunMetrics.Counter.RESET);
+            resetter.printResetResult(torrent.name);
+        }
+    }
+
+    /**
+     * Restores the values recorded in the undo journal of a database, in a single transaction.
+     *
+     * @param databaseFile The database file.
+     * @param journalFile  The undo journal of the database.
+     * @throws IOException if the database or the journal cannot be read or written.
+     */
+    static void undo(File databaseFile, File journalFile) throws IOException {
+        try (SqliteResumeDataStore store = open(databaseFile, DEFAULT_BATCH_SIZE)) {
+            store.undo(journalFile);
+        }
+    }
+
+    private void undo(File journalFile) throws IOException {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_RESUME_DATA);
+             PreparedStatement update = connection.prepareStatement(UPDATE)) {
+            Map<String, Long> ids = new HashMap<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery(SELECT_IDS)) {
+                while (result.next()) {
+                    ids.put(result.getString(2), result.getLong(1));
+                }
+            }
+            // The connection is not thread-safe, so the records are replayed by one thread
+            UndoJournal.undo(journalFile, 1, new UndoJournal.Target() {
+                @Override
+                public byte[] read(String torrentId) throws IOException {
+                    try {
+                        select.setLong(1, findId(torrentId));
+                        try (ResultSet result = select.executeQuery()) {
+                            byte[] data = result.next() ? result.getBytes(1) : null;
+                            if (data == null) {
+                                throw new IOException("No resume data");
+                            }
+                            return data;
+                        }
+                    } catch (SQLException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                }
+
+                @Override
+                public void write(String torrentId, byte[] data) throws IOException {
+                    try {
+                        update.setBytes(1, data);
+                        update.setLong(2, findId(torrentId));
+                        update.executeUpdate();
+                    } catch (SQLException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    try {
+                        connection.commit();
+                    } catch (SQLException e) {
+                        throw new IOException("Failed to update database: " + databaseFile.getPath() + " - "
+                                + e.getMessage(), e);
+                    }
+                }
+
+                private long findId(String torrentId) throws IOException {
+                    Long id = ids.get(torrentId);
+                    if (id == null) {
+                        throw new IOException("Torrent not found in database");
+                    }
+                    return id;
+                }
+            });
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("Failed to read database: " + databaseFile.getPath() + " - " + e.getMessage(), e);
+        }
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            // The connection is closed next, which discards the transaction anyway
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException("Failed to close database: " + databaseFile.getPath() + " - " + e.getMessage(), e);
+        }
+    }
+}
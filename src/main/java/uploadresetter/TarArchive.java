@@ -0,0 +1,444 @@
+package uploadresetter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TarArchive reads and writes tar archives as streams of entries, without extracting them. Only what is
+ * needed to find, copy and resize entries is parsed: the name, type and size. Every other header field,
+ * and the GNU long name and pax extended headers in front of an entry, are copied byte for byte, so
+ * entries that are not changed come out exactly as they went in.
+ */
+final class TarArchive {
+    static final int BLOCK_SIZE = 512;
+    private static final int NAME_OFFSET = 0;
+    private static final int NAME_LENGTH = 100;
+    private static final int SIZE_OFFSET = 124;
+    private static final int SIZE_LENGTH = 12;
+    private static final int CHECKSUM_OFFSET = 148;
+    private static final int CHECKSUM_LENGTH = 8;
+    private static final int TYPE_OFFSET = 156;
+    private static final int MAGIC_OFFSET = 257;
+    private static final int PREFIX_OFFSET = 345;
+    private static final int PREFIX_LENGTH = 155;
+    private static final byte[] USTAR_MAGIC = "ustar".getBytes(StandardCharsets.US_ASCII);
+    private static final String PAX_PATH = "path";
+    private static final String PAX_SIZE = "size";
+    // Extension entries that apply to the entry following them
+    private static final byte GNU_LONG_NAME = 'L';
+    private static final byte GNU_LONG_LINK = 'K';
+    private static final byte PAX_HEADER = 'x';
+    private static final int MAX_EXTENSION_SIZE = 1 << 20;
+
+    private TarArchive() {
+    }
+
+    /**
+     * An entry of an archive: its header, and the extension entries in front of it.
+     */
+    static final class Entry {
+        private final byte[] header;
+        // The header and data of each extension entry, in archive order
+        private final List<byte[][]> extensions;
+        private final String name;
+        private final long size;
+
+        private Entry(byte[] header, List<byte[][]> extensions, String name, long size) {
+            this.header = header;
+            this.extensions = extensions;
+            this.name = name;
+            this.size = size;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * @return true if the entry is a regular file.
+         */
+        boolean isFile() {
+            byte type = header[TYPE_OFFSET];
+            return type == '0' || type == 0 || type == '7';
+        }
+    }
+
+    /**
+     * Reads the entries of an archive one at a time.
+     */
+    static final class Reader implements Closeable {
+        private final InputStream in;
+        private long remaining;
+        private int padding;
+
+        Reader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Skips what is left of the current entry and reads the header of the next one.
+         *
+         * @return The entry, or null at the end of the archive.
+         * @throws IOException if the archive cannot be read or is not valid.
+         */
+        Entry next() throws IOException {
+            skipRest();
+            List<byte[][]> extensions = new ArrayList<>();
+            String longName = null;
+            String paxPath = null;
+            Long paxSize = null;
+            while (true) {
+                byte[] header = new byte[BLOCK_SIZE];
+                if (!readBlock(header) || isZero(header)) {
+                    return null;
+                }
+                verifyChecksum(header);
+                byte type = header[TYPE_OFFSET];
+                if (type == GNU_LONG_NAME || type == GNU_LONG_LINK || type == PAX_HEADER) {
+                    long size = parseSize(header);
+                    if (size > MAX_EXTENSION_SIZE) {
+                        throw new IOException("Extended header too large: " + size + " bytes");
+                    }
+                    byte[] data = new byte[(int) size];
+                    readFully(data);
+                    skipFully(padding(size));
+                    extensions.add(new byte[][]{header, data});
+                    if (type == GNU_LONG_NAME) {
+                        longName = cString(data, 0, data.length);
+                    } else if (type == PAX_HEADER) {
+                        String path = paxValue(data, PAX_PATH);
+                        paxPath = path != null ? path : paxPath;
+                        String paxSizeValue = paxValue(data, PAX_SIZE);
+                        if (paxSizeValue != null) {
+                            paxSize = parsePaxSize(paxSizeValue);
+                        }
+                    }
+                    continue;
+                }
+                String name = longName != null ? longName : paxPath != null ? paxPath : headerName(header);
+                long size = paxSize != null ? paxSize : parseSize(header);
+                remaining = size;
+                padding = padding(size);
+                return new Entry(header, extensions, name, size);
+            }
+        }
+
+        /**
+         * @return A stream of the data of the current entry, which ends with the entry.
+         */
+        InputStream getInputStream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining == 0) {
+                        return -1;
+                    }
+                    int n = in.read(b, off, (int) Math.min(len, remaining));
+                    if (n == -1) {
+                        throw new EOFException("Unexpected end of archive");
+                    }
+                    remaining -= n;
+                    return n;
+                }
+            };
+        }
+
+        private void skipRest() throws IOException {
+            skipFully(remaining + padding);
+            remaining = 0;
+            padding = 0;
+        }
+
+        private boolean readBlock(byte[] block) throws IOException {
+            int read = 0;
+            while (read < block.length) {
+                int n = in.read(block, read, block.length - read);
+                if (n == -1) {
+                    if (read == 0) {
+                        // Some writers leave out the end-of-archive blocks
+                        return false;
+                    }
+                    throw new EOFException("Unexpected end of archive");
+                }
+                read += n;
+            }
+            return true;
+        }
+
+        private void readFully(byte[] data) throws IOException {
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n == -1) {
+                    throw new EOFException("Unexpected end of archive");
+                }
+                read += n;
+            }
+        }
+
+        private void skipFully(long count) throws IOException {
+            byte[] buffer = new byte[BLOCK_SIZE * 16];
+            while (count > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+                if (n == -1) {
+                    throw new EOFException("Unexpected end of archive");
+                }
+                count -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes entries to an archive.
+     */
+    static final class Writer implements Closeable {
+        private final OutputStream out;
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Copies an entry and its data unchanged.
+         *
+         * @param entry The entry.
+         * @param data  The data of the entry, which is read to the end.
+         * @throws IOException if the data cannot be read or written.
+         */
+        void copy(Entry entry, InputStream data) throws IOException {
+            for (byte[][] extension : entry.extensions) {
+                writeEntry(extension[0], extension[1], extension[1].length);
+            }
+            out.write(entry.header);
+            byte[] buffer = new byte[BLOCK_SIZE * 16];
+            long copied = 0;
+            int n;
+            while ((n = data.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                copied += n;
+            }
+            if (copied != entry.size) {
+                throw new IOException("Entry size changed while copying: " + entry.name);
+            }
+            out.write(new byte[padding(copied)]);
+        }
+
+        /**
+         * Writes an entry with new data. The size in the header is updated, and a size in a pax extended
+         * header, which would override it, is removed.
+         *
+         * @param entry  The entry.
+         * @param data   The new data.
+         * @param length The length of the new data.
+         * @throws IOException if the entry cannot be written.
+         */
+        void write(Entry entry, byte[] data, int length) throws IOException {
+            for (byte[][] extension : entry.extensions) {
+                byte[] extensionData = extension[1];
+                if (extension[0][TYPE_OFFSET] == PAX_HEADER) {
+                    extensionData = removePaxRecord(extensionData, PAX_SIZE);
+                }
+                writeEntry(extension[0], extensionData, extensionData.length);
+            }
+            writeEntry(entry.header, data, length);
+        }
+
+        private void writeEntry(byte[] header, byte[] data, int length) throws IOException {
+            byte[] newHeader = header.clone();
+            if (parseSize(header) != length) {
+                writeOctal(newHeader, SIZE_OFFSET, SIZE_LENGTH, length);
+                writeChecksum(newHeader);
+            }
+            out.write(newHeader);
+            out.write(data, 0, length);
+            out.write(new byte[padding(length)]);
+        }
+
+        /**
+         * Writes the end-of-archive blocks and closes the stream.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                out.write(new byte[BLOCK_SIZE * 2]);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static int padding(long size) {
+        return (int) ((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String headerName(byte[] header) {
+        String name = cString(header, NAME_OFFSET, NAME_LENGTH);
+        boolean ustar = Arrays.equals(Arrays.copyOfRange(header, MAGIC_OFFSET, MAGIC_OFFSET + USTAR_MAGIC.length),
+                USTAR_MAGIC);
+        String prefix = ustar ? cString(header, PREFIX_OFFSET, PREFIX_LENGTH) : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private static String cString(byte[] data, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) {
+            end++;
+        }
+        return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the size field, which is octal, or big-endian binary with the high bit set for large sizes.
+     */
+    static long parseSize(byte[] header) throws IOException {
+        if ((header[SIZE_OFFSET] & 0x80) != 0) {
+            long size = 0;
+            for (int i = SIZE_OFFSET + 1; i < SIZE_OFFSET + SIZE_LENGTH; i++) {
+                size = size << 8 | header[i] & 0xff;
+            }
+            return size;
+        }
+        long size = 0;
+        for (int i = SIZE_OFFSET; i < SIZE_OFFSET + SIZE_LENGTH; i++) {
+            byte b = header[i];
+            if (b == 0 || b == ' ') {
+                if (size > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("Invalid size in tar header");
+            }
+            size = size * 8 + (b - '0');
+        }
+        return size;
+    }
+
+    private static void verifyChecksum(byte[] header) throws IOException {
+        long expected = 0;
+        for (int i = CHECKSUM_OFFSET; i < CHECKSUM_OFFSET + CHECKSUM_LENGTH; i++) {
+            byte b = header[i];
+            if (b >= '0' && b <= '7') {
+                expected = expected * 8 + (b - '0');
+            }
+        }
+        if (checksum(header) != expected) {
+            throw new IOException("Invalid tar header checksum");
+        }
+    }
+
+    private static long checksum(byte[] header) {
+        long sum = 0;
+        for (int i = 0; i < header.length; i++) {
+            sum += i >= CHECKSUM_OFFSET && i < CHECKSUM_OFFSET + CHECKSUM_LENGTH ? ' ' : header[i] & 0xff;
+        }
+        return sum;
+    }
+
+    private static void writeChecksum(byte[] header) {
+        // Six octal digits, a NUL and a space, as written by GNU tar
+        writeOctal(header, CHECKSUM_OFFSET, CHECKSUM_LENGTH - 1, checksum(header));
+        header[CHECKSUM_OFFSET + CHECKSUM_LENGTH - 1] = ' ';
+    }
+
+    private static void writeOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = octal.length() - digits + i;
+            header[offset + i] = (byte) (index < 0 ? '0' : octal.charAt(index));
+        }
+        header[offset + digits] = 0;
+    }
+
+    private static long parsePaxSize(String value) throws IOException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid size in pax header: " + value);
+        }
+    }
+
+    /**
+     * Finds a value in pax extended header records, which have the form {@code <length> <key>=<value>\n}.
+     */
+    static String paxValue(byte[] data, String key) {
+        String records = new String(data, StandardCharsets.UTF_8);
+        String value = null;
+        for (String record : records.split("\n")) {
+            int space = record.indexOf(' ');
+            int equals = record.indexOf('=', space + 1);
+            if (space != -1 && equals != -1 && record.substring(space + 1, equals).equals(key)) {
+                value = record.substring(equals + 1);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Removes every record with a key from pax extended header records. The length prefix of each record
+     * counts its own bytes, so records are removed whole and the others are left as they are.
+     */
+    static byte[] removePaxRecord(byte[] data, String key) {
+        ByteArrayOutputStream kept = new ByteArrayOutputStream(data.length);
+        byte[] prefix = (" " + key + "=").getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < data.length) {
+            int space = offset;
+            while (space < data.length && data[space] != ' ') {
+                space++;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(data, offset, space - offset, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                length = -1;
+            }
+            if (length <= 0 || offset + length > data.length) {
+                // Not a record; keep the rest as it is
+                kept.write(data, offset, data.length - offset);
+                break;
+            }
+            boolean matches = space + prefix.length <= data.length && Arrays.equals(
+                    Arrays.copyOfRange(data, space, space + prefix.length), prefix);
+            if (!matches) {
+                kept.write(data, offset, length);
+            }
+            offset += length;
+        }
+        return kept.toByteArray();
+    }
+}
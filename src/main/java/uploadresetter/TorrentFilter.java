@@ -0,0 +1,433 @@
+package uploadresetter;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * TorrentFilter selects the torrents to reset. Its checks are ordered by cost: the uploaded amount,
+ * category, save path and trackers are read from the resume data in a single scan of its top-level
+ * dictionary, and only torrents that pass those checks have their name looked up, which may mean
+ * reading the .torrent file. All configured checks must pass.
+ */
+final class TorrentFilter {
+    static final TorrentFilter NONE = new TorrentFilter(null, null, null, null, -1);
+
+    private static final String CATEGORY_KEY = "qBt-category";
+    private static final String SAVE_PATH_KEY = "save_path";
+    private static final String UPLOADED_KEY = FastresumePatcher.UPLOADED_KEY;
+    private static final String TRACKERS_KEY = "trackers";
+    // Keys are sorted in a bencoded dictionary, so the scan ends after the last key of interest
+    private static final String LAST_KEY = TRACKERS_KEY;
+    // Guards against absurd length prefixes in corrupt files
+    private static final int MAX_STRING_LENGTH = 64 * 1024;
+    private static final String SIZE_UNITS = "KMGTP";
+
+    private final Pattern name;
+    private final String trackerHost;
+    private final String category;
+    private final String savePath;
+    private final long minUploaded;
+
+    TorrentFilter(Pattern name, String trackerHost, String category, String savePath, long minUploaded) {
+        this.name = name;
+        this.trackerHost = trackerHost == null ? null : trackerHost.toLowerCase(Locale.ROOT);
+        this.category = category;
+        this.savePath = savePath == null ? null : normalizePath(savePath);
+        this.minUploaded = minUploaded;
+    }
+
+    /**
+     * The fields of the resume data that filters check.
+     */
+    static final class ResumeFields {
+        private final Long uploaded;
+        private final String category;
+        private final String savePath;
+        private final List<String> trackers;
+
+        ResumeFields(Long uploaded, String category, String savePath, List<String> trackers) {
+            this.uploaded = uploaded;
+            this.category = category;
+            this.savePath = savePath;
+            this.trackers = trackers;
+        }
+
+        /**
+         * Returns the fields with the category replaced, for stores that keep it outside the resume data.
+         *
+         * @param newCategory The category, or null if the torrent has none.
+         * @return The fields with the category.
+         */
+        ResumeFields withCategory(String newCategory) {
+            return new ResumeFields(uploaded, newCategory, savePath, trackers);
+        }
+
+        Long getUploaded() {
+            return uploaded;
+        }
+
+        String getCategory() {
+            return category;
+        }
+
+        String getSavePath() {
+            return savePath;
+        }
+
+        List<String> getTrackers() {
+            return trackers;
+        }
+    }
+
+    /**
+     * Builds a filter from the command-line arguments.
+     *
+     * @param args The command-line arguments.
+     * @return The filter, {@link #NONE} if no filter options are given.
+     * @throws IllegalArgumentException if a filter option has an invalid value.
+     */
+    static TorrentFilter parse(String[] args) {
+        Pattern name = null;
+        String trackerHost = null;
+        String category = null;
+        String savePath = null;
+        long minUploaded = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (!isFilterOption(args[i])) {
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i] + " option");
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--name":
+                    try {
+                        name = Pattern.compile(value);
+                    } catch (PatternSyntaxException e) {
+                        throw new IllegalArgumentException("Invalid value for --name option: " + e.getDescription());
+                    }
+                    break;
+                case "--name-glob":
+                    name = globToPattern(value);
+                    break;
+                case "--tracker":
+                    trackerHost = value;
+                    break;
+                case "--category":
+                    category = value;
+                    break;
+                case "--save-path":
+                    savePath = value;
+                    break;
+                default:
+                    minUploaded = parseSize(value);
+                    break;
+            }
+            i++;
+        }
+        if (name == null && trackerHost == null && category == null && savePath == null && minUploaded < 0) {
+            return NONE;
+        }
+        return new TorrentFilter(name, trackerHost, category, savePath, minUploaded);
+    }
+
+    static boolean isFilterOption(String arg) {
+        switch (arg) {
+            case "--name":
+            case "--name-glob":
+            case "--tracker":
+            case "--category":
+            case "--save-path":
+            case "--min-uploaded":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Converts a glob with {@code *} and {@code ?} wildcards to a case-insensitive pattern of the whole name.
+     */
+    static Pattern globToPattern(String glob) {
+        // Anchored, because names are checked with find()
+        StringBuilder regex = new StringBuilder("\\A");
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        regex.append("\\z");
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+    }
+
+    /**
+     * Parses a size in bytes with an optional binary unit suffix: K, M, G, T or P, optionally followed by B.
+     *
+     * @param value The size, for example {@code 500000} or {@code 10G}.
+     * @return The size in bytes.
+     * @throws IllegalArgumentException if the size is not valid.
+     */
+    static long parseSize(String value) {
+        String size = value.trim().toUpperCase(Locale.ROOT);
+        if (size.endsWith("B")) {
+            size = size.substring(0, size.length() - 1);
+        }
+        int shift = 0;
+        if (!size.isEmpty()) {
+            int unit = SIZE_UNITS.indexOf(size.charAt(size.length() - 1));
+            if (unit != -1) {
+                shift = 10 * (unit + 1);
+                size = size.substring(0, size.length() - 1);
+            }
+        }
+        try {
+            long bytes = Long.parseLong(size);
+            if (bytes < 0 || bytes > Long.MAX_VALUE >> shift) {
+                throw new IllegalArgumentException("Invalid value for --min-uploaded option: " + value);
+            }
+            return bytes << shift;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for --min-uploaded option: " + value);
+        }
+    }
+
+    /**
+     * @return true if the filter selects every torrent.
+     */
+    boolean isEmpty() {
+        return this == NONE;
+    }
+
+    /**
+     * Checks the fields of the resume data, which is cheap compared to looking up the name.
+     *
+     * @param fields The fields of the resume data.
+     * @return true if the torrent passes all checks of the resume data.
+     */
+    boolean matches(ResumeFields fields) {
+        if (minUploaded >= 0 && (fields.uploaded == null || fields.uploaded < minUploaded)) {
+            return false;
+        }
+        if (category != null && !category.equals(fields.category == null ? "" : fields.category)) {
+            return false;
+        }
+        if (savePath != null) {
+            if (fields.savePath == null) {
+                return false;
+            }
+            String path = normalizePath(fields.savePath);
+            if (!path.equals(savePath) && !path.startsWith(savePath + "/")) {
+                return false;
+            }
+        }
+        if (trackerHost != null) {
+            for (String tracker : fields.trackers) {
+                String host = trackerHost(tracker);
+                if (host != null && (host.equals(trackerHost) || host.endsWith("." + trackerHost))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks the name of the torrent. A regular expression may match any part of the name,
+     * a glob must match the whole name.
+     *
+     * @param torrentName The name of the torrent.
+     * @return true if the name passes the check.
+     */
+    boolean matchesName(String torrentName) {
+        return name == null || name.matcher(torrentName).find();
+    }
+
+    /**
+     * Reads the fields that filters check from the top-level dictionary of bencoded resume data. Values of
+     * other keys are skipped by their length, and the scan stops after the trackers, the last key of interest.
+     * Fields that cannot be read because the data is malformed are left out.
+     *
+     * @param data The resume data.
+     * @return The fields.
+     */
+    static ResumeFields readFields(byte[] data) {
+        Long uploaded = null;
+        String categoryValue = null;
+        String savePathValue = null;
+        List<String> trackers = Collections.emptyList();
+        int[] pos = {0};
+        try {
+            expect(data, pos, 'd');
+            while (pos[0] < data.length && data[pos[0]] != 'e') {
+                String key = readString(data, pos);
+                switch (key) {
+                    case CATEGORY_KEY:
+                        categoryValue = readString(data, pos);
+                        break;
+                    case SAVE_PATH_KEY:
+                        savePathValue = readString(data, pos);
+                        break;
+                    case UPLOADED_KEY:
+                        uploaded = readInteger(data, pos);
+                        break;
+                    case TRACKERS_KEY:
+                        trackers = readTrackers(data, pos);
+                        break;
+                    default:
+                        skipValue(data, pos);
+                        break;
+                }
+                if (key.compareTo(LAST_KEY) >= 0) {
+                    break;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Malformed data, the fields read so far are kept
+        }
+        return new ResumeFields(uploaded, categoryValue, savePathValue, trackers);
+    }
+
+    /**
+     * Reads the tracker URLs of a list of tiers, each a list of URLs.
+     */
+    private static List<String> readTrackers(byte[] data, int[] pos) {
+        List<String> trackers = new ArrayList<>();
+        expect(data, pos, 'l');
+        while (peek(data, pos) != 'e') {
+            expect(data, pos, 'l');
+            while (peek(data, pos) != 'e') {
+                trackers.add(readString(data, pos));
+            }
+            pos[0]++;
+        }
+        pos[0]++;
+        return trackers;
+    }
+
+    private static String readString(byte[] data, int[] pos) {
+        int length = 0;
+        int i = pos[0];
+        int digitsStart = i;
+        while (i < data.length && data[i] >= '0' && data[i] <= '9') {
+            length = length * 10 + (data[i] - '0');
+            if (length > MAX_STRING_LENGTH) {
+                throw new IllegalArgumentException("String too long at offset " + digitsStart);
+            }
+            i++;
+        }
+        if (i == digitsStart || i >= data.length || data[i] != ':' || i + 1 + length > data.length) {
+            throw new IllegalArgumentException("Malformed string at offset " + digitsStart);
+        }
+        pos[0] = i + 1 + length;
+        return new String(data, i + 1, length, StandardCharsets.UTF_8);
+    }
+
+    private static long readInteger(byte[] data, int[] pos) {
+        expect(data, pos, 'i');
+        int end = indexOf(data, (byte) 'e', pos[0]);
+        try {
+            long value = Long.parseLong(new String(data, pos[0], end - pos[0], StandardCharsets.US_ASCII));
+            pos[0] = end + 1;
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed integer at offset " + pos[0]);
+        }
+    }
+
+    /**
+     * Skips a value of any type without copying it, keeping track of the nesting depth instead of recursing.
+     */
+    private static void skipValue(byte[] data, int[] pos) {
+        int depth = 0;
+        do {
+            byte b = peek(data, pos);
+            if (b == 'i') {
+                pos[0] = indexOf(data, (byte) 'e', pos[0]) + 1;
+            } else if (b >= '0' && b <= '9') {
+                skipString(data, pos);
+            } else if (b == 'l' || b == 'd') {
+                depth++;
+                pos[0]++;
+            } else if (b == 'e' && depth > 0) {
+                depth--;
+                pos[0]++;
+            } else {
+                throw new IllegalArgumentException("Unexpected byte at offset " + pos[0]);
+            }
+        } while (depth > 0);
+    }
+
+    private static void skipString(byte[] data, int[] pos) {
+        long length = 0;
+        int i = pos[0];
+        while (i < data.length && data[i] >= '0' && data[i] <= '9' && length <= data.length) {
+            length = length * 10 + (data[i] - '0');
+            i++;
+        }
+        if (i >= data.length || data[i] != ':' || i + 1 + length > data.length) {
+            throw new IllegalArgumentException("Malformed string at offset " + pos[0]);
+        }
+        pos[0] = (int) (i + 1 + length);
+    }
+
+    private static byte peek(byte[] data, int[] pos) {
+        if (pos[0] >= data.length) {
+            throw new IllegalArgumentException("Unexpected end of data");
+        }
+        return data[pos[0]];
+    }
+
+    private static void expect(byte[] data, int[] pos, char expected) {
+        if (peek(data, pos) != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' at offset " + pos[0]);
+        }
+        pos[0]++;
+    }
+
+    private static int indexOf(byte[] data, byte value, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated value at offset " + from);
+    }
+
+    /**
+     * @return The lower-case host of a tracker URL, or null if it has none.
+     */
+    static String trackerHost(String tracker) {
+        try {
+            String host = new URI(tracker.trim()).getHost();
+            return host == null ? null : host.toLowerCase(Locale.ROOT);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static String normalizePath(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+}
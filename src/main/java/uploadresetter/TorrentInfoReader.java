@@ -0,0 +1,252 @@
+package uploadresetter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TorrentInfoReader is a pull-style bencode reader that extracts the torrent name from a .torrent file
+ * without decoding the whole file. String payloads that are not needed (such as the info.pieces hashes)
+ * are skipped by their length prefix instead of being copied, and reading stops as soon as info.name
+ * has been found unless the byte span of the info dictionary is requested as well.
+ */
+final class TorrentInfoReader {
+    private static final int BUFFER_SIZE = 8192;
+    // Guards against absurd length prefixes in corrupt files
+    private static final int MAX_NAME_LENGTH = 64 * 1024;
+    private static final byte[] INFO_KEY = "info".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NAME_KEY = "name".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private long position;
+    private int peeked = -2;
+
+    private TorrentInfoReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * The fields read from a .torrent file.
+     */
+    static final class TorrentInfo {
+        private final String name;
+        private final long infoStart;
+        private final long infoEnd;
+
+        TorrentInfo(String name, long infoStart, long infoEnd) {
+            this.name = name;
+            this.infoStart = infoStart;
+            this.infoEnd = infoEnd;
+        }
+
+        /**
+         * @return The value of info.name, or null if it is missing or not a string.
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return The offset of the info dictionary, or -1 if it is missing or the span was not requested.
+         */
+        long getInfoStart() {
+            return infoStart;
+        }
+
+        /**
+         * @return The offset just past the info dictionary, or -1 if it is missing or the span was not requested.
+         */
+        long getInfoEnd() {
+            return infoEnd;
+        }
+    }
+
+    /**
+     * Reads info.name from a .torrent file.
+     *
+     * @param file The .torrent file.
+     * @return The torrent name, or null if it is missing or not a string.
+     * @throws IOException if the file cannot be read or is not valid bencode.
+     */
+    static String readName(File file) throws IOException {
+        return read(file, false).getName();
+    }
+
+    /**
+     * Reads info.name from the contents of a .torrent file.
+     *
+     * @param data The contents of the .torrent file.
+     * @return The torrent name, or null if it is missing or not a string.
+     * @throws IOException if the data is not valid bencode.
+     */
+    static String readName(byte[] data) throws IOException {
+        return new TorrentInfoReader(new ByteArrayInputStream(data)).readTorrent(false).getName();
+    }
+
+    /**
+     * Reads info.name and optionally the byte span of the info dictionary from a .torrent file.
+     * The span is what the infohash is calculated over.
+     *
+     * @param file     The .torrent file.
+     * @param infoSpan Whether to read up to the end of the info dictionary to find its span.
+     * @return The fields read from the file.
+     * @throws IOException if the file cannot be read or is not valid bencode.
+     */
+    static TorrentInfo read(File file, boolean infoSpan) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            return new TorrentInfoReader(in).readTorrent(infoSpan);
+        }
+    }
+
+    private TorrentInfo readTorrent(boolean infoSpan) throws IOException {
+        expect('d');
+        while (peek() != 'e') {
+            if (keyEquals(INFO_KEY) && peek() == 'd') {
+                long infoStart = position;
+                next();
+                String name = null;
+                while (peek() != 'e') {
+                    if (name == null && keyEquals(NAME_KEY) && isDigit(peek())) {
+                        name = readString();
+                        if (!infoSpan) {
+                            return new TorrentInfo(name, -1, -1);
+                        }
+                    } else {
+                        skipValue();
+                    }
+                }
+                next();
+                return infoSpan ? new TorrentInfo(name, infoStart, position) : new TorrentInfo(name, -1, -1);
+            }
+            skipValue();
+        }
+        return new TorrentInfo(null, -1, -1);
+    }
+
+    /**
+     * Reads a dictionary key and compares it with the expected key without allocating.
+     */
+    private boolean keyEquals(byte[] expected) throws IOException {
+        long length = readLength();
+        if (length != expected.length) {
+            skip(length);
+            return false;
+        }
+        boolean equal = true;
+        for (byte b : expected) {
+            if (next() != b) {
+                equal = false;
+            }
+        }
+        return equal;
+    }
+
+    private String readString() throws IOException {
+        long length = readLength();
+        if (length > MAX_NAME_LENGTH) {
+            throw new IOException("String too long at offset " + position);
+        }
+        byte[] bytes = new byte[(int) length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) next();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips a complete value of any type. Nested containers are tracked with a depth counter
+     * so that deeply nested input cannot overflow the stack.
+     */
+    private void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int c = peek();
+            if (c == 'd' || c == 'l') {
+                next();
+                depth++;
+            } else if (c == 'e') {
+                if (depth == 0) {
+                    throw new IOException("Unexpected end of container at offset " + position);
+                }
+                next();
+                depth--;
+            } else if (c == 'i') {
+                next();
+                while (next() != 'e') {
+                    // Integer digits are not needed
+                }
+            } else if (isDigit(c)) {
+                skip(readLength());
+            } else {
+                throw new IOException("Unexpected character at offset " + position);
+            }
+        } while (depth > 0);
+    }
+
+    private long readLength() throws IOException {
+        long length = 0;
+        int c = next();
+        if (!isDigit(c)) {
+            throw new IOException("Expected a string length at offset " + (position - 1));
+        }
+        while (c != ':') {
+            if (!isDigit(c) || length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid string length at offset " + (position - 1));
+            }
+            length = length * 10 + (c - '0');
+            c = next();
+        }
+        return length;
+    }
+
+    private void skip(long count) throws IOException {
+        if (count > 0 && peeked >= 0) {
+            peeked = -2;
+            position++;
+            count--;
+        }
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("Unexpected end of file at offset " + position);
+                }
+                skipped = 1;
+            }
+            position += skipped;
+            count -= skipped;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (next() != expected) {
+            throw new IOException("Expected '" + expected + "' at offset " + (position - 1));
+        }
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = in.read();
+            if (peeked == -1) {
+                throw new EOFException("Unexpected end of file at offset " + position);
+            }
+        }
+        return peeked;
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        peeked = -2;
+        position++;
+        return c;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+}
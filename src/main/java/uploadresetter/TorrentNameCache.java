@@ -0,0 +1,178 @@
+package uploadresetter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TorrentNameCache is a persistent, size-bounded cache of torrent names keyed by the .torrent file name.
+ * An entry is only valid while the size and modification time of the .torrent file are unchanged.
+ * The least recently used entries are evicted once the cache holds more than the maximum number of entries.
+ *
+ * The cache is stored in a compact binary file:
+ *  int magic, int version, int count, then for each entry: UTF file name, long size, long mtime, UTF torrent name.
+ */
+final class TorrentNameCache {
+    private static final int MAGIC = 0x51425443; // "QBTC"
+    private static final int VERSION = 1;
+    static final int DEFAULT_MAX_ENTRIES = 100_000;
+    // Keeps every name within the 64 KiB limit of writeUTF
+    private static final int MAX_NAME_LENGTH = 16 * 1024;
+    private static final String CACHE_DIR_NAME = "qbittorrent-upload-resetter";
+    private static final String CACHE_FILE_NAME = "torrent-names.cache";
+
+    private final File cacheFile;
+    private final Map<String, CachedName> entries;
+    private boolean dirty;
+
+    private static final class CachedName {
+        private final long size;
+        private final long lastModified;
+        private final String name;
+
+        CachedName(long size, long lastModified, String name) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.name = name;
+        }
+    }
+
+    TorrentNameCache(File cacheFile, int maxEntries) {
+        this.cacheFile = cacheFile;
+        this.entries = new LinkedHashMap<String, CachedName>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedName> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the default cache file in the user cache directory.
+     *
+     * @return The default cache file.
+     */
+    static File defaultCacheFile() {
+        String base = System.getenv("XDG_CACHE_HOME");
+        if (base == null || base.isEmpty()) {
+            base = System.getenv("LocalAppData");
+        }
+        if (base == null || base.isEmpty()) {
+            base = System.getProperty("user.home") + File.separator + ".cache";
+        }
+        return new File(new File(base, CACHE_DIR_NAME), CACHE_FILE_NAME);
+    }
+
+    /**
+     * Loads a cache from a file. A missing, unreadable or incompatible file results in an empty cache.
+     *
+     * @param cacheFile  The cache file.
+     * @param maxEntries The maximum number of entries to keep.
+     * @return The loaded cache.
+     */
+    static TorrentNameCache load(File cacheFile, int maxEntries) {
+        TorrentNameCache cache = new TorrentNameCache(cacheFile, maxEntries);
+        if (!cacheFile.isFile()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("Ignoring incompatible torrent name cache: " + cacheFile.getPath());
+                return cache;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String fileName = in.readUTF();
+                cache.entries.put(fileName, new CachedName(in.readLong(), in.readLong(), in.readUTF()));
+            }
+        } catch (EOFException e) {
+            System.err.println("Ignoring truncated torrent name cache: " + cacheFile.getPath());
+            cache.entries.clear();
+        } catch (IOException e) {
+            System.err.println("Failed to read torrent name cache: " + cacheFile.getPath() + " - " + e.getMessage());
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the cached name of a .torrent file if the file is unchanged since it was cached.
+     *
+     * @param torrentFile The .torrent file.
+     * @return The cached torrent name, or null if there is no valid entry.
+     */
+    synchronized String get(File torrentFile) {
+        CachedName entry = entries.get(torrentFile.getName());
+        if (entry == null) {
+            return null;
+        }
+        if (entry.size != torrentFile.length() || entry.lastModified != torrentFile.lastModified()) {
+            entries.remove(torrentFile.getName());
+            dirty = true;
+            return null;
+        }
+        return entry.name;
+    }
+
+    /**
+     * Caches the name of a .torrent file together with its current size and modification time.
+     *
+     * @param torrentFile The .torrent file.
+     * @param name        The torrent name.
+     */
+    synchronized void put(File torrentFile, String name) {
+        if (name.length() > MAX_NAME_LENGTH) {
+            return;
+        }
+        entries.put(torrentFile.getName(), new CachedName(torrentFile.length(), torrentFile.lastModified(), name));
+        dirty = true;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the cache to its file if it has changed. The file is replaced atomically so that
+     * an interrupted write cannot leave a corrupt cache behind.
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File dir = cacheFile.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("Failed to create cache directory: " + dir.getPath());
+            return;
+        }
+        File tempFile = new File(dir, cacheFile.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, CachedName> e : entries.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().size);
+                    out.writeLong(e.getValue().lastModified);
+                    out.writeUTF(e.getValue().name);
+                }
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("Failed to save torrent name cache: " + cacheFile.getPath() + " - " + e.getMessage());
+        }
+    }
+}
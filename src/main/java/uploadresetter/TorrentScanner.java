@@ -0,0 +1,372 @@
+package uploadresetter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * TorrentScanner reports the current statistics of the torrents without changing any file. The values are
+ * read with the same automaton that resets them, so the report shows exactly what a reset would change.
+ *
+ * Files are parsed by worker threads that each pull the next file from the shared listing and keep their
+ * own totals, which are merged once all files are read. Every torrent is written as a CSV or JSON row as
+ * soon as it is parsed, and only the top torrents are kept, so memory does not grow with the folder.
+ */
+final class TorrentScanner {
+    static final int DEFAULT_TOP = 10;
+    private static final String DOWNLOADED_KEY = "total_downloaded";
+    private static final FastresumePatcher SCAN_PATCHER =
+            new FastresumePatcher(Arrays.asList(FastresumePatcher.UPLOADED_KEY, DOWNLOADED_KEY));
+    private static final String[] COLUMNS = {"file", "name", "tracker", FastresumePatcher.UPLOADED_KEY,
+            DOWNLOADED_KEY, "ratio"};
+    private static final String[] SIZE_UNITS = {"B", "KiB", "MiB", "GiB", "TiB", "PiB", "EiB"};
+
+    private TorrentScanner() {
+    }
+
+    /**
+     * The format of the report rows, chosen by the extension of the report file.
+     */
+    enum Format {
+        // One line per torrent after a header line
+        CSV,
+        // One JSON object per line
+        JSON;
+
+        static Format forFile(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            return name.endsWith(".json") || name.endsWith(".jsonl") || name.endsWith(".ndjson") ? JSON : CSV;
+        }
+    }
+
+    /**
+     * The statistics of one torrent.
+     */
+    static final class Row {
+        private final String file;
+        private final String name;
+        private final String tracker;
+        private final Long uploaded;
+        private final Long downloaded;
+
+        Row(String file, String name, String tracker, Long uploaded, Long downloaded) {
+            this.file = file;
+            this.name = name;
+            this.tracker = tracker;
+            this.uploaded = uploaded;
+            this.downloaded = downloaded;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getUploaded() {
+            return uploaded == null ? 0 : uploaded;
+        }
+
+        /**
+         * @return The share ratio, or null if nothing was downloaded.
+         */
+        Double getRatio() {
+            return downloaded == null || downloaded <= 0 ? null : (double) getUploaded() / downloaded;
+        }
+    }
+
+    /**
+     * The totals of the scanned torrents. Each worker thread fills its own instance, so adding needs no lock.
+     */
+    static final class Summary {
+        private static final Comparator<Row> BY_UPLOADED = Comparator.comparingLong(Row::getUploaded);
+
+        private final int top;
+        // The torrents with the most uploaded so far, smallest first so that it is the one replaced
+        private final PriorityQueue<Row> topRows;
+        // Uploaded, downloaded and torrent count of each tracker host
+        private final Map<String, long[]> trackers = new HashMap<>();
+        private long torrents;
+        private long uploaded;
+        private long downloaded;
+
+        Summary(int top) {
+            this.top = top;
+            this.topRows = new PriorityQueue<>(top + 1, BY_UPLOADED);
+        }
+
+        void add(Row row) {
+            torrents++;
+            uploaded += row.getUploaded();
+            downloaded += row.downloaded == null ? 0 : row.downloaded;
+            addTracker(row.tracker, row.getUploaded(), row.downloaded == null ? 0 : row.downloaded, 1);
+            if (top > 0) {
+                topRows.add(row);
+                if (topRows.size() > top) {
+                    topRows.poll();
+                }
+            }
+        }
+
+        void merge(Summary other) {
+            torrents += other.torrents;
+            uploaded += other.uploaded;
+            downloaded += other.downloaded;
+            for (Map.Entry<String, long[]> tracker : other.trackers.entrySet()) {
+                long[] totals = tracker.getValue();
+                addTracker(tracker.getKey(), totals[0], totals[1], totals[2]);
+            }
+            for (Row row : other.topRows) {
+                topRows.add(row);
+                if (topRows.size() > top) {
+                    topRows.poll();
+                }
+            }
+        }
+
+        private void addTracker(String tracker, long trackerUploaded, long trackerDownloaded, long count) {
+            long[] totals = trackers.computeIfAbsent(tracker, host -> new long[3]);
+            totals[0] += trackerUploaded;
+            totals[1] += trackerDownloaded;
+            totals[2] += count;
+        }
+
+        long getTorrents() {
+            return torrents;
+        }
+
+        long getUploaded() {
+            return uploaded;
+        }
+
+        long getDownloaded() {
+            return downloaded;
+        }
+
+        /**
+         * @return The torrents with the most uploaded, most first.
+         */
+        List<Row> getTop() {
+            List<Row> rows = new ArrayList<>(topRows);
+            rows.sort(BY_UPLOADED.reversed());
+            return rows;
+        }
+
+        /**
+         * Prints the totals, the totals per tracker and the top torrents.
+         *
+         * @param out The stream to print to.
+         */
+        void print(PrintStream out) {
+            out.println("Scanned " + torrents + " torrents: " + formatSize(uploaded) + " uploaded, "
+                    + formatSize(downloaded) + " downloaded, ratio " + formatRatio(downloaded > 0
+                    ? (double) uploaded / downloaded : null));
+            if (torrents == 0) {
+                return;
+            }
+            List<Map.Entry<String, long[]>> byTracker = new ArrayList<>(trackers.entrySet());
+            byTracker.sort(Collections.reverseOrder(Comparator.comparingLong(
+                    (Map.Entry<String, long[]> tracker) -> tracker.getValue()[0])));
+            out.println("Uploaded by tracker:");
+            for (Map.Entry<String, long[]> tracker : byTracker) {
+                long[] totals = tracker.getValue();
+                String host = tracker.getKey().isEmpty() ? "(no tracker)" : tracker.getKey();
+                out.println("  " + host + ": " + formatSize(totals[0]) + " uploaded, " + formatSize(totals[1])
+                        + " downloaded (" + totals[2] + " torrents)");
+            }
+            List<Row> rows = getTop();
+            if (!rows.isEmpty()) {
+                out.println("Top " + rows.size() + " torrents by uploaded amount:");
+                for (int i = 0; i < rows.size(); i++) {
+                    Row row = rows.get(i);
+                    out.println((i + 1) + ". " + row.name + " - " + formatSize(row.getUploaded())
+                            + " uploaded, ratio " + formatRatio(row.getRatio()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans the files on a pool of worker threads, writing a row for every torrent that passes the filter.
+     *
+     * @param engine  The engine whose filter, name cache, threads and metrics are used. Nothing is reset.
+     * @param files   The .fastresume files, which may be enumerated lazily.
+     * @param out     The writer that the rows are written to.
+     * @param format  The format of the rows.
+     * @param top     The number of torrents with the most uploaded to keep.
+     * @return The merged totals.
+     * @throws IOException if a row cannot be written.
+     */
+    static Summary scan(ResetEngine engine, Iterable<File> files, Writer out, Format format, int top)
+            throws IOException {
+        if (format == Format.CSV) {
+            out.write(String.join(",", COLUMNS) + "\n");
+        }
+        Iterator<File> iterator = files.iterator();
+        int threads = engine.getThreads();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Summary summary = new Summary(top);
+        try {
+            List<Future<Summary>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    Summary local = new Summary(top);
+                    File file;
+                    while ((file = next(iterator)) != null) {
+                        Row row = read(engine, file);
+                        if (row != null) {
+                            String line = format == Format.JSON ? toJson(row) : toCsv(row);
+                            synchronized (out) {
+                                out.write(line);
+                            }
+                            local.add(row);
+                        }
+                    }
+                    return local;
+                }));
+            }
+            for (Future<Summary> result : results) {
+                summary.merge(result.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Failed to scan files", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning files", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+        return summary;
+    }
+
+    private static File next(Iterator<File> iterator) {
+        synchronized (iterator) {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    /**
+     * Reads the statistics of one torrent.
+     *
+     * @return The row, or null if the file cannot be read or is filtered out.
+     */
+    private static Row read(ResetEngine engine, File file) {
+        RunMetrics metrics = engine.getMetrics();
+        metrics.increment(RunMetrics.Counter.FILES);
+        byte[] data;
+        try {
+            data = engine.read(file);
+        } catch (IOException e) {
+            System.err.println("Failed to read file: " + file.getPath() + " - " + e.getMessage());
+            metrics.increment(RunMetrics.Counter.FAILED);
+            return null;
+        }
+        if (!engine.matchesFields(data)) {
+            metrics.increment(RunMetrics.Counter.FILTERED);
+            return null;
+        }
+        String name = engine.readTorrentName(file);
+        if (!engine.getFilter().matchesName(name)) {
+            metrics.increment(RunMetrics.Counter.FILTERED);
+            return null;
+        }
+        long start = System.nanoTime();
+        Long[] values;
+        try {
+            values = SCAN_PATCHER.scan(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new IllegalStateException("Reading from memory cannot fail", e);
+        }
+        String tracker = "";
+        for (String url : TorrentFilter.readFields(data).getTrackers()) {
+            String host = TorrentFilter.trackerHost(url);
+            if (host != null) {
+                tracker = host;
+                break;
+            }
+        }
+        metrics.record(RunMetrics.Phase.SCAN, start);
+        return new Row(file.getName(), name, tracker, values[0], values[1]);
+    }
+
+    static String toCsv(Row row) {
+        return csv(row.file) + "," + csv(row.name) + "," + csv(row.tracker) + "," + nullable(row.uploaded) + ","
+                + nullable(row.downloaded) + "," + nullable(row.getRatio() == null ? null : formatRatio(row.getRatio()))
+                + "\n";
+    }
+
+    static String toJson(Row row) {
+        return "{\"file\": " + json(row.file) + ", \"name\": " + json(row.name) + ", \"tracker\": "
+                + json(row.tracker) + ", \"" + FastresumePatcher.UPLOADED_KEY + "\": " + row.uploaded
+                + ", \"" + DOWNLOADED_KEY + "\": " + row.downloaded + ", \"ratio\": "
+                + (row.getRatio() == null ? "null" : formatRatio(row.getRatio())) + "}\n";
+    }
+
+    private static String nullable(Object value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1
+                && value.indexOf('\r') == -1) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    static String json(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static String formatRatio(Double ratio) {
+        return ratio == null ? "-" : String.format(Locale.ROOT, "%.2f", ratio);
+    }
+
+    /**
+     * Formats a size in bytes with a binary unit, for example {@code 1.50 GiB}.
+     */
+    static String formatSize(long bytes) {
+        if (bytes < 1024 && bytes > -1024) {
+            return bytes + " B";
+        }
+        int unit = 0;
+        double size = bytes;
+        while (Math.abs(size) >= 1024 && unit < SIZE_UNITS.length - 1) {
+            size /= 1024;
+            unit++;
+        }
+        return String.format(Locale.ROOT, "%.2f %s", size, SIZE_UNITS[unit]);
+    }
+}
@@ -0,0 +1,461 @@
+package uploadresetter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * UndoJournal records the original values of every reset in a compact append-only journal, so that resets
+ * can be undone without keeping copies of the .fastresume files. For every reset file it stores the file
+ * name, the keys with their original digits, and a checksum of the file as it was written. A file is only
+ * restored while it still matches that checksum, so changes made by qBittorrent since are never overwritten.
+ * Resets in a torrents.db database are recorded the same way, with the torrent id instead of the file name.
+ *
+ * A record is written before its file is replaced, and a commit entry for it once the file has been replaced.
+ * A record without a commit whose checksum does not match its file describes a write that never happened,
+ * because it failed or the file was in use, so undo drops it instead of refusing the file. A record without
+ * a commit that does match was written just before a crash, and is replayed like a committed one.
+ *
+ * The journal is stored in the BT_backup folder as int magic, int version, then entries that start with a
+ * type byte. A record is: UTF file name, long checksum, byte key count, and for each key: UTF key, UTF digits.
+ * A commit is: UTF file name, long checksum. Version 1 journals have records only, without the type byte,
+ * which are all taken as committed. An entry cut short by a crash ends the journal, and is cut off before new
+ * entries are appended.
+ */
+final class UndoJournal implements Closeable {
+    static final String UNDO_FILE_NAME = ".upload-resetter.undo";
+    private static final int MAGIC = 0x51425455; // "QBTU"
+    private static final int VERSION = 2;
+    private static final int RECORDS_ONLY_VERSION = 1;
+    private static final byte RECORD = 1;
+    private static final byte COMMIT = 2;
+
+    /**
+     * The original values of one reset file.
+     */
+    static final class Record {
+        private final String fileName;
+        private final long checksum;
+        private final List<String> keys;
+        private final String[] values;
+        // Whether the file was replaced, set when the commit of the record is read
+        private boolean committed;
+
+        Record(String fileName, long checksum, List<String> keys, String[] values, boolean committed) {
+            this.fileName = fileName;
+            this.checksum = checksum;
+            this.keys = keys;
+            this.values = values;
+            this.committed = committed;
+        }
+
+        String getFileName() {
+            return fileName;
+        }
+
+        boolean isCommitted() {
+            return committed;
+        }
+    }
+
+    private final File journalFile;
+    private final DataOutputStream out;
+
+    private UndoJournal(File journalFile, DataOutputStream out) {
+        this.journalFile = journalFile;
+        this.out = out;
+    }
+
+    /**
+     * Opens a journal for appending, creating it if needed.
+     *
+     * @param journalFile The journal file.
+     * @return The opened journal.
+     * @throws IOException if the journal is not an undo journal or cannot be opened.
+     */
+    static UndoJournal open(File journalFile) throws IOException {
+        if (journalFile.length() > 0) {
+            long[] validLength = new long[1];
+            List<Record> records = read(journalFile, validLength);
+            if (validLength[0] == -1) {
+                // A version 1 journal, which new entries cannot be appended to
+                rewrite(journalFile, records);
+            } else if (validLength[0] < journalFile.length()) {
+                try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(validLength[0]);
+                }
+            }
+        }
+        boolean exists = journalFile.length() > 0;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(journalFile, true)));
+        if (!exists) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+        }
+        return new UndoJournal(journalFile, out);
+    }
+
+    File getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Appends the original values of a file before it is replaced. Every key whose digits change is
+     * recorded, including a zero that a rule raises; a record without any changed key is not written. Once
+     * the file has been replaced, the record is committed with {@link #commit}.
+     *
+     * @param fileName The name of the .fastresume file.
+     * @param keys     The reset keys.
+     * @param values   The original digits in the order of the keys, or null for keys that were not found or
+     *                 whose digits do not change, as reported by {@link FastresumePatcher#patch}.
+     * @param checksum The {@link #checksum} of the file as it is written.
+     * @return true if a record was written and must be committed.
+     * @throws IOException if the record cannot be written.
+     */
+    synchronized boolean record(String fileName, List<String> keys, String[] values, long checksum)
+            throws IOException {
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                changed.add(i);
+            }
+        }
+        if (changed.isEmpty()) {
+            return false;
+        }
+        out.writeByte(RECORD);
+        out.writeUTF(fileName);
+        out.writeLong(checksum);
+        out.writeByte(changed.size());
+        for (int i : changed) {
+            out.writeUTF(keys.get(i));
+            out.writeUTF(values[i]);
+        }
+        // Hand the record to the operating system before the file it describes is replaced
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Marks the last record of a file as done, after the file has been replaced.
+     *
+     * @param fileName The name of the .fastresume file.
+     * @param checksum The checksum of the record.
+     * @throws IOException if the commit cannot be written.
+     */
+    synchronized void commit(String fileName, long checksum) throws IOException {
+        out.writeByte(COMMIT);
+        out.writeUTF(fileName);
+        out.writeLong(checksum);
+        // Not flushed: a lost commit only leaves a record whose checksum still matches its file
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Computes the checksum of file data that is stored with a record.
+     *
+     * @param data   The data.
+     * @param length The number of bytes of {@code data} to include.
+     * @return The CRC-32 of the data.
+     */
+    static long checksum(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return crc.getValue();
+    }
+
+    /**
+     * Reads all complete records of a journal, in the order they were written.
+     *
+     * @param journalFile The journal file.
+     * @return The records.
+     * @throws IOException if the file cannot be read or is not an undo journal.
+     */
+    static List<Record> read(File journalFile) throws IOException {
+        return read(journalFile, new long[1]);
+    }
+
+    /**
+     * Reads all complete records of a journal, and the length of the journal up to the last complete entry,
+     * or -1 for a version 1 journal.
+     */
+    private static List<Record> read(File journalFile, long[] validLength) throws IOException {
+        List<Record> records = new ArrayList<>();
+        // The uncommitted records by file name and checksum
+        Map<String, Record> uncommitted = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            boolean typed;
+            try {
+                int version = in.readInt() == MAGIC ? in.readInt() : -1;
+                if (version != VERSION && version != RECORDS_ONLY_VERSION) {
+                    throw new IOException("Not a compatible undo journal");
+                }
+                typed = version == VERSION;
+            } catch (EOFException e) {
+                throw new IOException("Not a compatible undo journal");
+            }
+            validLength[0] = typed ? 8 : -1;
+            while (true) {
+                int type;
+                String fileName;
+                try {
+                    type = typed ? in.readByte() : RECORD;
+                    fileName = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                long checksum = in.readLong();
+                long length = (typed ? 1 : 0) + utfLength(fileName) + 8;
+                if (type == COMMIT) {
+                    Record record = uncommitted.remove(fileName + '/' + checksum);
+                    if (record != null) {
+                        record.committed = true;
+                    }
+                } else if (type == RECORD) {
+                    int count = in.readUnsignedByte();
+                    length++;
+                    String[] keys = new String[count];
+                    String[] values = new String[count];
+                    for (int i = 0; i < count; i++) {
+                        keys[i] = in.readUTF();
+                        values[i] = in.readUTF();
+                        length += utfLength(keys[i]) + utfLength(values[i]);
+                    }
+                    Record record = new Record(fileName, checksum, Arrays.asList(keys), values, !typed);
+                    records.add(record);
+                    if (typed) {
+                        uncommitted.put(fileName + '/' + checksum, record);
+                    }
+                } else {
+                    throw new IOException("Not a compatible undo journal");
+                }
+                if (typed) {
+                    validLength[0] += length;
+                }
+            }
+        } catch (EOFException e) {
+            // The last entry was cut short, the complete ones are kept
+        }
+        return records;
+    }
+
+    /**
+     * @return The number of bytes that {@link DataOutputStream#writeUTF} writes for a string.
+     */
+    private static int utfLength(String value) {
+        int length = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * Where the resume data that records describe is read from and written back to: the files of a
+     * BT_backup folder, or the torrents of a torrents.db database.
+     */
+    interface Target {
+        /**
+         * @param name The file name or torrent id of a record.
+         * @return The current resume data.
+         * @throws IOException if it cannot be read.
+         */
+        byte[] read(String name) throws IOException;
+
+        /**
+         * Replaces the resume data, which may only be visible once {@link #flush()} returns.
+         *
+         * @param name The file name or torrent id of a record.
+         * @param data The restored resume data.
+         * @throws IOException if it cannot be written.
+         */
+        void write(String name, byte[] data) throws IOException;
+
+        /**
+         * Makes all writes durable.
+         *
+         * @throws IOException if they cannot be made durable.
+         */
+        void flush() throws IOException;
+    }
+
+    /**
+     * Undoes the resets recorded in a journal. The files are in the folder of the journal, and are restored
+     * in parallel; the records of each file are replayed from the newest to the oldest. A file whose checksum
+     * no longer matches a committed record is left alone, together with its older records. The records that
+     * were replayed or dropped are removed from the journal, and the journal is deleted once it is empty.
+     *
+     * @param journalFile The journal file.
+     * @param threads     The number of worker threads.
+     * @param writer      The writer used to replace the files.
+     * @return The number of files that were not restored.
+     * @throws IOException if the journal cannot be read or rewritten.
+     */
+    static int undo(File journalFile, int threads, AtomicFileWriter writer) throws IOException {
+        File folder = journalFile.getAbsoluteFile().getParentFile();
+        return undo(journalFile, threads, new Target() {
+            @Override
+            public byte[] read(String name) throws IOException {
+                return Files.readAllBytes(new File(folder, name).toPath());
+            }
+
+            @Override
+            public void write(String name, byte[] data) throws IOException {
+                writer.write(new File(folder, name), data, data.length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writer.flush();
+            }
+        });
+    }
+
+    /**
+     * Undoes the resets recorded in a journal like {@link #undo(File, int, AtomicFileWriter)}, reading and
+     * writing the resume data through a target.
+     *
+     * @param journalFile The journal file.
+     * @param threads     The number of worker threads, 1 for targets that are not thread-safe.
+     * @param target      The resume data the records describe.
+     * @return The number of files or torrents that were not restored.
+     * @throws IOException if the journal cannot be read or rewritten, or the target cannot be flushed.
+     */
+    static int undo(File journalFile, int threads, Target target) throws IOException {
+        Map<String, List<Record>> recordsByName = new LinkedHashMap<>();
+        for (Record record : read(journalFile)) {
+            recordsByName.computeIfAbsent(record.fileName, name -> new ArrayList<>()).add(record);
+        }
+        Map<String, FastresumePatcher> patchers = new ConcurrentHashMap<>();
+        List<Record> remaining = new ArrayList<>();
+        int refused = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (List<Record> records : recordsByName.values()) {
+                results.add(executor.submit(() -> restore(target, records, patchers)));
+            }
+            int i = 0;
+            for (List<Record> records : recordsByName.values()) {
+                int done = results.get(i++).get();
+                if (done < records.size()) {
+                    refused++;
+                    remaining.addAll(records.subList(0, records.size() - done));
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to undo resets", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while undoing resets", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        target.flush();
+        rewrite(journalFile, remaining);
+        System.out.println("Restored " + (recordsByName.size() - refused) + " torrents, " + refused
+                + " not restored");
+        return refused;
+    }
+
+    /**
+     * Replays the records of one file or torrent from the newest to the oldest, dropping records of writes
+     * that never happened.
+     *
+     * @return The number of records that were replayed or dropped.
+     */
+    private static int restore(Target target, List<Record> records, Map<String, FastresumePatcher> patchers) {
+        String name = records.get(0).fileName;
+        byte[] data;
+        try {
+            data = target.read(name);
+        } catch (IOException e) {
+            System.err.println("Failed to read resume data: " + name + " - " + e.getMessage());
+            return 0;
+        }
+        int done = 0;
+        int restored = 0;
+        for (int i = records.size() - 1; i >= 0; i--) {
+            Record record = records.get(i);
+            if (checksum(data, data.length) != record.checksum) {
+                if (!record.committed) {
+                    done++;
+                    continue;
+                }
+                System.err.println("Refusing to restore resume data changed since the reset: " + name);
+                break;
+            }
+            FastresumePatcher patcher = patchers.computeIfAbsent(String.join(",", record.keys),
+                    keys -> new FastresumePatcher(record.keys));
+            try {
+                data = patcher.restore(data, record.values);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Failed to restore resume data: " + name + " - " + e.getMessage());
+                break;
+            }
+            done++;
+            restored++;
+        }
+        if (restored > 0) {
+            try {
+                target.write(name, data);
+                System.out.println("Restored: " + name);
+            } catch (IOException e) {
+                System.err.println("Failed to save resume data: " + name + " - " + e.getMessage());
+                return 0;
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Replaces the journal with the given records, or deletes it if there are none.
+     */
+    private static void rewrite(File journalFile, List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            Files.deleteIfExists(journalFile.toPath());
+            return;
+        }
+        File tempFile = new File(journalFile.getPath() + ".tmp");
+        Files.deleteIfExists(tempFile.toPath());
+        try (UndoJournal journal = open(tempFile)) {
+            for (Record record : records) {
+                journal.record(record.fileName, record.keys, record.values, record.checksum);
+                if (record.committed) {
+                    journal.commit(record.fileName, record.checksum);
+                }
+            }
+        }
+        Files.move(tempFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
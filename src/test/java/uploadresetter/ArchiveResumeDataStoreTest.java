@@ -0,0 +1,155 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class ArchiveResumeDataStoreTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void resetAll_Zip_PairsEntriesInEitherOrder() throws IOException {
+        File archive = tempDir.resolve("backup.zip").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("BT_backup/"));
+            out.closeEntry();
+            putEntry(out, "BT_backup/a.fastresume", "d14:total_uploadedi123ee");
+            putEntry(out, "BT_backup/a.torrent", "d4:infod4:name5:Alphaee");
+            putEntry(out, "BT_backup/b.torrent", "d4:infod4:name4:Betaee");
+            putEntry(out, "BT_backup/b.fastresume", "d14:total_uploadedi45ee");
+            putEntry(out, "BT_backup/c.fastresume", "d14:total_uploadedi0ee");
+            putEntry(out, "notes.txt", "kept");
+        }
+        File output = ArchiveResumeDataStore.defaultOutput(archive);
+        assertEquals("backup-reset.zip", output.getName());
+        QbtUploadResetter resetter = resetter();
+
+        try (ResumeDataStore store = ResumeDataStore.open(archive.getPath())) {
+            store.resetAll(resetter);
+        }
+
+        Map<String, String> entries = readZip(output);
+        assertEquals(Arrays.asList("BT_backup/", "BT_backup/a.torrent", "BT_backup/a.fastresume",
+                "BT_backup/b.torrent", "BT_backup/b.fastresume", "BT_backup/c.fastresume", "notes.txt"),
+                Arrays.asList(entries.keySet().toArray()));
+        assertEquals("d14:total_uploadedi0ee", entries.get("BT_backup/a.fastresume"));
+        assertEquals("d14:total_uploadedi0ee", entries.get("BT_backup/b.fastresume"));
+        assertEquals("kept", entries.get("notes.txt"));
+        assertEquals(Arrays.asList("Alpha", "Beta"), resetter.getSuccessfulResets());
+        assertEquals(1, resetter.getEngine().getMetrics().get(RunMetrics.Counter.SKIPPED));
+        assertEquals("d14:total_uploadedi123ee", readZip(archive).get("BT_backup/a.fastresume"));
+    }
+
+    @Test
+    void resetAll_TarGzWithNameFilter_ResetsSelectedTorrents() throws IOException {
+        File archive = tempDir.resolve("backup.tgz").toFile();
+        try (GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(archive))) {
+            out.write(TarArchiveTest.entry("a.fastresume", '0', bytes("d14:total_uploadedi123ee")));
+            out.write(TarArchiveTest.entry("a.torrent", '0', bytes("d4:infod4:name5:Alphaee")));
+            out.write(TarArchiveTest.entry("b.fastresume", '0', bytes("d14:total_uploadedi45ee")));
+            out.write(TarArchiveTest.entry("b.torrent", '0', bytes("d4:infod4:name4:Betaee")));
+            out.write(new byte[TarArchive.BLOCK_SIZE * 2]);
+        }
+        File output = tempDir.resolve("out.tar.gz").toFile();
+        QbtUploadResetter resetter = resetter("--name", "^Al");
+
+        new ArchiveResumeDataStore(archive, output, 1).resetAll(resetter);
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (TarArchive.Reader reader = new TarArchive.Reader(new GZIPInputStream(new FileInputStream(output)))) {
+            TarArchive.Entry entry;
+            while ((entry = reader.next()) != null) {
+                entries.put(entry.getName(), read(reader.getInputStream()));
+            }
+        }
+        assertEquals("d14:total_uploadedi0ee", entries.get("a.fastresume"));
+        assertEquals("d14:total_uploadedi45ee", entries.get("b.fastresume"));
+        assertEquals(4, entries.size());
+        assertEquals(1, resetter.getEngine().getMetrics().get(RunMetrics.Counter.FILTERED));
+    }
+
+    @Test
+    void resetAll_TorrentBeyondLookahead_UsesUnknownName() throws IOException {
+        File archive = tempDir.resolve("backup.zip").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            putEntry(out, "a.fastresume", "d14:total_uploadedi1ee");
+            putEntry(out, "b.fastresume", "d14:total_uploadedi2ee");
+            putEntry(out, "a.torrent", "d4:infod4:name5:Alphaee");
+        }
+        File output = tempDir.resolve("out.zip").toFile();
+        QbtUploadResetter resetter = resetter();
+
+        new ArchiveResumeDataStore(archive, output, 1).resetAll(resetter);
+
+        assertEquals(Arrays.asList("Unknown Torrent", "Unknown Torrent"), resetter.getSuccessfulResets());
+        assertEquals("d14:total_uploadedi0ee", readZip(output).get("a.fastresume"));
+    }
+
+    @Test
+    void resetAll_CorruptArchive_KeepsNoPartialOutput() throws IOException {
+        File archive = tempDir.resolve("backup.tar").toFile();
+        byte[] entry = TarArchiveTest.entry("a.fastresume", '0', bytes("d14:total_uploadedi1ee"));
+        Files.write(archive.toPath(), Arrays.copyOf(entry, 600));
+        File output = tempDir.resolve("out.tar").toFile();
+
+        IOException e = assertThrows(IOException.class,
+                () -> new ArchiveResumeDataStore(archive, output, 1).resetAll(resetter()));
+
+        assertTrue(e.getMessage().startsWith("Failed to process archive: "));
+        assertFalse(output.exists());
+        assertFalse(new File(output.getPath() + AtomicFileWriter.TEMP_FILE_SUFFIX).exists());
+    }
+
+    private static QbtUploadResetter resetter(String... filter) {
+        return new QbtUploadResetter(ResetEngine.builder().threads(1).filter(filter), false, false, null, null);
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, String content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(bytes(content));
+        out.closeEntry();
+    }
+
+    private static Map<String, String> readZip(File file) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(file))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), read(in));
+            }
+        }
+        return entries;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            data.write(buffer, 0, n);
+        }
+        return new String(data.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
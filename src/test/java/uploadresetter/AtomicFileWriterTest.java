@@ -0,0 +1,118 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+
+public class AtomicFileWriterTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void write_ReplacesContentAndRemovesTempFile() throws IOException {
+        File target = tempDir.resolve("a.fastresume").toFile();
+        Files.write(target.toPath(), "old content".getBytes(StandardCharsets.US_ASCII));
+        byte[] data = "new content plus unused tail".getBytes(StandardCharsets.US_ASCII);
+
+        for (AtomicFileWriter.Durability durability : AtomicFileWriter.Durability.values()) {
+            new AtomicFileWriter(durability, 1).write(target, data, 11);
+            assertEquals("new content", new String(Files.readAllBytes(target.toPath()), StandardCharsets.US_ASCII));
+        }
+        assertFalse(new File(target.getPath() + AtomicFileWriter.TEMP_FILE_SUFFIX).exists());
+    }
+
+    @Test
+    void write_KeepsPermissionsAndOwner() throws IOException {
+        File target = tempDir.resolve("a.fastresume").toFile();
+        Files.write(target.toPath(), "old content".getBytes(StandardCharsets.US_ASCII));
+        PosixFileAttributeView view = Files.getFileAttributeView(target.toPath(), PosixFileAttributeView.class);
+        assumeTrue(view != null, "POSIX file attributes are not supported");
+        view.setPermissions(PosixFilePermissions.fromString("rw-r-----"));
+        UserPrincipal owner = view.getOwner();
+        if (owner.getName().equals("root")) {
+            try {
+                owner = tempDir.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName("nobody");
+                view.setOwner(owner);
+            } catch (IOException e) {
+                owner = view.getOwner();
+            }
+        }
+
+        new AtomicFileWriter(AtomicFileWriter.Durability.NONE, 1).write(target, new byte[]{'x'}, 1);
+
+        view = Files.getFileAttributeView(target.toPath(), PosixFileAttributeView.class);
+        assertEquals("rw-r-----", PosixFilePermissions.toString(view.readAttributes().permissions()));
+        assertEquals(owner, view.getOwner());
+    }
+
+    @Test
+    void write_BatchMode_FlushesAcrossBatches() throws IOException {
+        AtomicFileWriter writer = new AtomicFileWriter(AtomicFileWriter.Durability.BATCH, 2);
+        for (int i = 0; i < 5; i++) {
+            writer.write(tempDir.resolve(i + ".fastresume").toFile(), new byte[] {'d', 'e'}, 2);
+        }
+        writer.flush();
+        assertEquals(5, tempDir.toFile().list().length);
+    }
+
+    @Test
+    void write_LockedOrChangedFile_ThrowsContendedAndKeepsOriginal() throws IOException {
+        File target = tempDir.resolve("a.fastresume").toFile();
+        Files.write(target.toPath(), "old content".getBytes(StandardCharsets.US_ASCII));
+        AtomicFileWriter.Stamp stamp = AtomicFileWriter.Stamp.of(target);
+        AtomicFileWriter writer = new AtomicFileWriter(AtomicFileWriter.Durability.NONE, 1);
+        byte[] data = "new content".getBytes(StandardCharsets.US_ASCII);
+
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            assertThrows(AtomicFileWriter.ContendedException.class, () -> writer.write(target, data, 11, stamp));
+        }
+        Files.setLastModifiedTime(target.toPath(), FileTime.fromMillis(target.lastModified() - 5000));
+        assertThrows(AtomicFileWriter.ContendedException.class, () -> writer.write(target, data, 11, stamp));
+        assertEquals("old content", new String(Files.readAllBytes(target.toPath()), StandardCharsets.US_ASCII));
+        assertFalse(new File(target.getPath() + AtomicFileWriter.TEMP_FILE_SUFFIX).exists());
+
+        AtomicFileWriter.Stamp written = writer.write(target, data, 11, AtomicFileWriter.Stamp.of(target));
+        assertEquals("new content", new String(Files.readAllBytes(target.toPath()), StandardCharsets.US_ASCII));
+        assertEquals(AtomicFileWriter.Stamp.of(target), written);
+    }
+
+    @Test
+    void write_MissingDirectory_ThrowsAndKeepsNothing() {
+        File target = tempDir.resolve("missing/a.fastresume").toFile();
+        AtomicFileWriter writer = new AtomicFileWriter(AtomicFileWriter.Durability.FILE, 1);
+        assertThrows(IOException.class, () -> writer.write(target, new byte[] {'d', 'e'}, 2));
+        assertFalse(target.exists());
+    }
+
+    @Test
+    void parse_ValidValues() {
+        assertEquals(AtomicFileWriter.Durability.FILE, AtomicFileWriter.parse("file").getDurability());
+        assertEquals(AtomicFileWriter.Durability.NONE, AtomicFileWriter.parse("none").getDurability());
+        AtomicFileWriter batch = AtomicFileWriter.parse("batch:500");
+        assertEquals(AtomicFileWriter.Durability.BATCH, batch.getDurability());
+        assertEquals(500, batch.getBatchSize());
+        assertEquals(AtomicFileWriter.DEFAULT_BATCH_SIZE, AtomicFileWriter.parse("batch").getBatchSize());
+    }
+
+    @Test
+    void parse_InvalidValues_Throw() {
+        assertThrows(IllegalArgumentException.class, () -> AtomicFileWriter.parse("sometimes"));
+        assertThrows(IllegalArgumentException.class, () -> AtomicFileWriter.parse("batch:0"));
+        assertThrows(IllegalArgumentException.class, () -> AtomicFileWriter.parse("batch:many"));
+        assertThrows(IllegalArgumentException.class, () -> AtomicFileWriter.parse("file:10"));
+    }
+}
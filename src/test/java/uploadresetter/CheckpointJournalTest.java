@@ -0,0 +1,56 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CheckpointJournalTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void record_WritesInBatchesAfterSyncingFiles() throws IOException {
+        AtomicInteger syncs = new AtomicInteger();
+        CheckpointJournal journal = CheckpointJournal.open(tempDir.toFile(), false, 2, syncs::incrementAndGet);
+        journal.record(new File("a.fastresume"), RunManifest.Result.RESET);
+        assertEquals(0, journal.getJournalFile().length());
+        journal.record(new File("b.fastresume"), RunManifest.Result.FAILED);
+        assertEquals(1, syncs.get());
+        journal.record(new File("c.fastresume"), RunManifest.Result.ALREADY_ZERO);
+        journal.close();
+
+        assertEquals("RESET\ta.fastresume\nFAILED\tb.fastresume\nALREADY_ZERO\tc.fastresume\n",
+                new String(Files.readAllBytes(journal.getJournalFile().toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void open_Resume_SkipsSuccessfulFilesAndIgnoresTornLine() throws IOException {
+        Files.write(tempDir.resolve(CheckpointJournal.JOURNAL_FILE_NAME),
+                "RESET\ta.fastresume\nFAILED\tb.fastresume\nALREADY_ZERO\tc.fastresume\nRESET\td.fast"
+                        .getBytes(StandardCharsets.UTF_8));
+        CheckpointJournal journal = CheckpointJournal.open(tempDir.toFile(), true, 10, () -> { });
+        assertEquals(2, journal.getCompletedCount());
+        assertTrue(journal.isCompleted(new File("a.fastresume")));
+        assertFalse(journal.isCompleted(new File("b.fastresume")));
+        assertTrue(journal.isCompleted(new File("c.fastresume")));
+        assertFalse(journal.isCompleted(new File("d.fastresume")));
+        journal.delete();
+        assertFalse(journal.getJournalFile().exists());
+    }
+
+    @Test
+    void open_WithoutResume_StartsOver() throws IOException {
+        Files.write(tempDir.resolve(CheckpointJournal.JOURNAL_FILE_NAME),
+                "RESET\ta.fastresume\n".getBytes(StandardCharsets.UTF_8));
+        CheckpointJournal journal = CheckpointJournal.open(tempDir.toFile(), false, 10, () -> { });
+        assertFalse(journal.isCompleted(new File("a.fastresume")));
+        journal.close();
+        assertEquals(0, journal.getJournalFile().length());
+    }
+}
@@ -0,0 +1,56 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FastresumeDirectoryTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void iterator_ListsOnlyFastresumeFiles() throws IOException {
+        for (String name : Arrays.asList("a.fastresume", "b.fastresume", "a.torrent", "c.fastresume.tmp")) {
+            Files.write(tempDir.resolve(name), new byte[] {'d', 'e'});
+        }
+        List<String> names = new ArrayList<>();
+        try (FastresumeDirectory directory = FastresumeDirectory.open(tempDir, new RunMetrics(), 1000)) {
+            for (File file : directory) {
+                names.add(file.getName());
+            }
+            assertEquals(2, directory.getListed());
+        }
+        names.sort(null);
+        assertEquals(Arrays.asList("a.fastresume", "b.fastresume"), names);
+    }
+
+    @Test
+    void iterator_PrintsProgressOfListedFiles() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            Files.write(tempDir.resolve(i + ".fastresume"), new byte[] {'d', 'e'});
+        }
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outContent));
+        try (FastresumeDirectory directory = FastresumeDirectory.open(tempDir, new RunMetrics(), 2)) {
+            for (File file : directory) {
+                assertTrue(directory.getListed() > 0);
+            }
+        } finally {
+            System.setOut(originalOut);
+        }
+        String output = outContent.toString();
+        assertTrue(output.contains("Progress: 2 files listed"));
+        assertTrue(output.contains("Progress: 4 files listed"));
+        assertFalse(output.contains("Progress: 5 files listed"));
+    }
+}
@@ -0,0 +1,165 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class FastresumePatcherTest {
+    private static final FastresumePatcher ALL = FastresumePatcher.parse("all");
+
+    @Test
+    void patch_ResetsAllKeysInAnyOrder() {
+        byte[] data = bytes("d11:active_timei3600e13:finished_timei-5e12:seeding_timei120e"
+                + "16:total_downloadedi77e14:total_uploadedi123456e7:trackersle5:zzzzzi9ee");
+        FastresumePatcher.Patched patched = ALL.patch(data);
+        assertSame(data, patched.getData());
+        assertEquals("d11:active_timei0e13:finished_timei0e12:seeding_timei0e"
+                + "16:total_downloadedi0e14:total_uploadedi0e7:trackersle5:zzzzzi9ee", string(patched));
+    }
+
+    @Test
+    void patch_MissingKeys_ResetsTheOthers() {
+        byte[] data = bytes("d12:seeding_timei120e14:total_uploadedi5ee");
+        assertEquals("d12:seeding_timei0e14:total_uploadedi0ee", string(ALL.patch(data)));
+    }
+
+    @Test
+    void patch_OnlyResetsFirstIntegerOccurrence() {
+        byte[] data = bytes("d1:x16:14:total_uploadedi14:total_uploadedi7e1:yd14:total_uploadedi8eee");
+        FastresumePatcher.Patched patched = new FastresumePatcher(FastresumePatcher.DEFAULT_KEYS).patch(data);
+        assertEquals("d1:x16:14:total_uploadedi14:total_uploadedi0e1:yd14:total_uploadedi8eee", string(patched));
+    }
+
+    @Test
+    void patch_NoKeyFound_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> ALL.patch(bytes("d8:trackerslee")));
+        assertThrows(IllegalArgumentException.class, () -> ALL.patch(bytes("d11:active_timeixee")));
+    }
+
+    @Test
+    void patch_WithRules_LowersUploadedInTheSamePass() {
+        FastresumePatcher patcher = FastresumePatcher.parse("seeding_time,total_uploaded")
+                .withRules(ResetRules.parse(Arrays.asList("ratio 0.5 if category=tv", "scale 0.1")));
+        byte[] data = bytes("d12:qBt-category2:tv12:seeding_timei9e16:total_downloadedi2000e"
+                + "14:total_uploadedi123456ee");
+        String[] oldValues = new String[2];
+        assertEquals("d12:qBt-category2:tv12:seeding_timei0e16:total_downloadedi2000e14:total_uploadedi1000ee",
+                string(patcher.patch(data, oldValues)));
+        assertEquals(Arrays.asList("9", "123456"), Arrays.asList(oldValues));
+
+        data = bytes("d14:total_uploadedi123456e5:zzzzzi1ee");
+        assertEquals("d14:total_uploadedi12345e5:zzzzzi1ee", string(patcher.patch(data)));
+        assertThrows(IllegalArgumentException.class, () -> FastresumePatcher.parse("seeding_time")
+                .withRules(ResetRules.parse(Arrays.asList("zero"))));
+    }
+
+    @Test
+    void isReset_WithRules_ComparesUploadedWithRuleValue() throws IOException {
+        FastresumePatcher patcher = new FastresumePatcher(FastresumePatcher.DEFAULT_KEYS,
+                ResetRules.parse(Arrays.asList("ratio 1")));
+        assertTrue(patcher.isReset(bytes("d16:total_downloadedi50e14:total_uploadedi50ee")));
+        assertFalse(patcher.isReset(bytes("d16:total_downloadedi50e14:total_uploadedi51ee")));
+        assertEquals(1, patcher.scan(new ByteArrayInputStream(bytes("d14:total_uploadedi5ee"))).length);
+        FastresumePatcher byCategory = new FastresumePatcher(FastresumePatcher.DEFAULT_KEYS,
+                ResetRules.parse(Arrays.asList("cap 50 if category=tv")));
+        byte[] capped = bytes("d12:qBt-category2:tv14:total_uploadedi50ee");
+        assertTrue(byCategory.isReset(capped));
+        // The category is read from a stream too, so the stream and the array agree
+        assertTrue(byCategory.isReset(new ByteArrayInputStream(capped)));
+        assertFalse(byCategory.isReset(new ByteArrayInputStream(bytes("d12:qBt-category2:tv14:total_uploadedi51ee"))));
+        // No rule applies to other torrents, so they are left as they are
+        assertTrue(byCategory.isReset(new ByteArrayInputStream(bytes("d14:total_uploadedi51ee"))));
+    }
+
+    @Test
+    void patch_WithRules_RaisesUploadedInANewArrayAndKeepsUnmatched() {
+        FastresumePatcher patcher = FastresumePatcher.parse("all")
+                .withRules(ResetRules.parse(Arrays.asList("ratio 2 if category=tv")));
+        byte[] data = bytes("d11:active_timei60e12:qBt-category2:tv16:total_downloadedi600e"
+                + "14:total_uploadedi9e5:zzzzzi1ee");
+        String[] oldValues = new String[patcher.getKeys().size()];
+        FastresumePatcher.Patched patched = patcher.patch(data, oldValues);
+        assertNotSame(data, patched.getData());
+        assertEquals("d11:active_timei0e12:qBt-category2:tv16:total_downloadedi0e14:total_uploadedi1200e"
+                + "5:zzzzzi1ee", string(patched));
+        assertEquals("9", oldValues[0]);
+        assertArrayEquals(data, patcher.restore(patched.toArray(), oldValues));
+
+        data = bytes("d11:active_timei60e14:total_uploadedi9ee");
+        patched = patcher.patch(data, oldValues);
+        assertEquals("d11:active_timei0e14:total_uploadedi9ee", string(patched));
+        assertNull(oldValues[0]);
+        assertEquals("60", oldValues[3]);
+    }
+
+    @Test
+    void patch_ReportsOnlyChangedValues() {
+        FastresumePatcher patcher = FastresumePatcher.parse("all")
+                .withRules(ResetRules.parse(Arrays.asList("scale 2")));
+        byte[] original = bytes("d11:active_timei0e16:total_downloadedi7e14:total_uploadedi0ee");
+        String[] oldValues = new String[patcher.getKeys().size()];
+        FastresumePatcher.Patched patched = patcher.patch(original.clone(), oldValues);
+        assertEquals("d11:active_timei0e16:total_downloadedi0e14:total_uploadedi0ee", string(patched));
+        // Zero scaled is zero, so only total_downloaded changes
+        assertEquals(Arrays.asList(null, "7", null, null, null), Arrays.asList(oldValues));
+
+        patcher = FastresumePatcher.parse(FastresumePatcher.UPLOADED_KEY)
+                .withRules(ResetRules.parse(Arrays.asList("ratio 1")));
+        original = bytes("d16:total_downloadedi50e14:total_uploadedi0ee");
+        assertFalse(patcher.isReset(original));
+        oldValues = new String[1];
+        patched = patcher.patch(original.clone(), oldValues);
+        assertEquals("d16:total_downloadedi50e14:total_uploadedi50ee", string(patched));
+        // A zero that a rule raises is reported, so that it can be restored
+        assertEquals("0", oldValues[0]);
+        assertArrayEquals(original, patcher.restore(patched.toArray(), oldValues));
+    }
+
+    @Test
+    void restore_UndoesPatch() {
+        byte[] original = bytes("d13:finished_timei-5e12:seeding_timei120e14:total_uploadedi123456ee");
+        byte[] data = original.clone();
+        String[] oldValues = new String[ALL.getKeys().size()];
+        FastresumePatcher.Patched patched = ALL.patch(data, oldValues);
+        assertEquals(Arrays.asList("123456", null, "120", null, "-5"), Arrays.asList(oldValues));
+        assertArrayEquals(original, ALL.restore(patched.toArray(), oldValues));
+    }
+
+    @Test
+    void scan_ReadsValuesAcrossChunks() throws IOException {
+        StringBuilder padding = new StringBuilder();
+        while (padding.length() < 8190) {
+            padding.append('p');
+        }
+        byte[] data = bytes("d1:p" + padding.length() + ":" + padding + "16:total_downloadedi-42e"
+                + "11:active_timei0ee");
+        Long[] values = ALL.scan(new ByteArrayInputStream(data));
+        assertEquals(Arrays.asList(null, -42L, null, 0L, null), Arrays.asList(values));
+    }
+
+    @Test
+    void isReset_RequiresAllFoundValuesToBeZero() throws IOException {
+        assertTrue(ALL.isReset(new ByteArrayInputStream(bytes("d11:active_timei0e14:total_uploadedi0ee"))));
+        assertFalse(ALL.isReset(new ByteArrayInputStream(bytes("d11:active_timei1e14:total_uploadedi0ee"))));
+        assertFalse(ALL.isReset(new ByteArrayInputStream(bytes("d8:trackerslee"))));
+    }
+
+    @Test
+    void parse_KeysAndAll() {
+        assertEquals(Arrays.asList("seeding_time", "total_uploaded"),
+                FastresumePatcher.parse(" seeding_time, total_uploaded,,seeding_time").getKeys());
+        assertEquals(FastresumePatcher.ALL_KEYS, FastresumePatcher.parse("ALL").getKeys());
+        assertThrows(IllegalArgumentException.class, () -> FastresumePatcher.parse(" , "));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String string(FastresumePatcher.Patched patched) {
+        return new String(patched.getData(), 0, patched.getLength(), StandardCharsets.US_ASCII);
+    }
+}
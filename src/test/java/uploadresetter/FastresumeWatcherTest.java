@@ -0,0 +1,74 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+public class FastresumeWatcherTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void run_ModifiedFastresumeFile_ResetsUploadedAmount() throws Exception {
+        File fastresume = tempDir.resolve("a.fastresume").toFile();
+        File other = tempDir.resolve("a.txt").toFile();
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outContent));
+        QbtUploadResetter resetter = new QbtUploadResetter(ResetEngine.builder().threads(2), false, false, null,
+                null);
+        Thread watcher = new Thread(() -> {
+            try {
+                new FastresumeWatcher(tempDir, 100, resetter::processChangedFiles).run();
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+        try {
+            watcher.start();
+            waitFor(() -> outContent.toString().contains("Watching for changes in"));
+            write(other, "d14:total_uploadedi5ee");
+            for (int i = 1; i <= 5; i++) {
+                write(fastresume, "d14:total_uploadedi" + i + "00ee");
+            }
+            waitFor(() -> "d14:total_uploadedi0ee".equals(read(fastresume)));
+        } finally {
+            watcher.interrupt();
+            watcher.join(10_000);
+            System.setOut(originalOut);
+        }
+        assertFalse(watcher.isAlive());
+        assertEquals("d14:total_uploadedi5ee", read(other));
+        String output = outContent.toString();
+        assertEquals(output.indexOf("Processing file: a.fastresume"),
+                output.lastIndexOf("Processing file: a.fastresume"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String read(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the watcher");
+            Thread.sleep(20);
+        }
+    }
+}
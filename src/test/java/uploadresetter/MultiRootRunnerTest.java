@@ -0,0 +1,161 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class MultiRootRunnerTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void run_TriesRulesOfRootFirst() throws IOException {
+        File alice = folder("alice");
+        File bob = folder("bob");
+        write(alice, "a.fastresume", "d14:total_uploadedi1000ee");
+        write(bob, "b.fastresume", "d14:total_uploadedi1000ee");
+        List<MultiRootRunner.Root> roots = Arrays.asList(new MultiRootRunner.Root(alice.getPath(), "--rule", "cap 10"),
+                new MultiRootRunner.Root(bob.getPath()));
+        MultiRootRunner runner = new MultiRootRunner(roots, new String[]{"--fsync", "none", "--rule", "scale 0.5"}, 1,
+                null);
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            runner.run();
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertEquals("d14:total_uploadedi10ee", read(alice, "a.fastresume"));
+        assertEquals("d14:total_uploadedi500ee", read(bob, "b.fastresume"));
+        assertThrows(IllegalArgumentException.class, () -> new MultiRootRunner(Collections.singletonList(
+                new MultiRootRunner.Root(alice.getPath(), "--rule", "half")), new String[0], 1, null));
+    }
+
+    @Test
+    void readRoots_ParsesPathsAndOptions() throws IOException {
+        File file = tempDir.resolve("roots.conf").toFile();
+        Files.write(file.toPath(), Arrays.asList("# path [options]", "", "/srv/alice/BT_backup",
+                "  \"/srv/bob/qBittorrent data/BT_backup\" --keys all --category \"tv shows\""));
+
+        List<MultiRootRunner.Root> roots = MultiRootRunner.readRoots(file);
+
+        assertEquals(2, roots.size());
+        assertEquals("/srv/alice/BT_backup", roots.get(0).getPath());
+        assertEquals(0, roots.get(0).getOptions().length);
+        assertEquals("/srv/bob/qBittorrent data/BT_backup", roots.get(1).getPath());
+        assertArrayEquals(new String[]{"--keys", "all", "--category", "tv shows"}, roots.get(1).getOptions());
+
+        Files.write(file.toPath(), Arrays.asList("\"/srv/alice/BT_backup"));
+        assertThrows(IllegalArgumentException.class, () -> MultiRootRunner.readRoots(file));
+    }
+
+    @Test
+    void run_AppliesOptionsOfEachRoot() throws IOException {
+        File alice = folder("alice");
+        File bob = folder("bob");
+        write(alice, "a.fastresume", "d12:qBt-category2:tv16:total_downloadedi9e14:total_uploadedi7ee");
+        write(alice, "b.fastresume", "d12:qBt-category6:movies14:total_uploadedi7ee");
+        write(bob, "c.fastresume", "d12:qBt-category6:movies16:total_downloadedi9e14:total_uploadedi5ee");
+        write(bob, "d.fastresume", "d14:total_uploadedi0ee");
+        List<MultiRootRunner.Root> roots = Arrays.asList(
+                new MultiRootRunner.Root(alice.getPath(), "--category", "tv", "--keys", "all"),
+                new MultiRootRunner.Root(bob.getPath()));
+        MultiRootRunner runner = new MultiRootRunner(roots, new String[]{"--fsync", "none"}, 2, null);
+
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        Map<String, ResetEngine.Summary> summaries;
+        try {
+            summaries = runner.run();
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertEquals("d12:qBt-category2:tv16:total_downloadedi0e14:total_uploadedi0ee", read(alice, "a.fastresume"));
+        assertEquals("d12:qBt-category6:movies14:total_uploadedi7ee", read(alice, "b.fastresume"));
+        assertEquals("d12:qBt-category6:movies16:total_downloadedi9e14:total_uploadedi0ee",
+                read(bob, "c.fastresume"));
+        assertEquals(1, summaries.get(alice.getPath()).getCount(ResetEngine.Status.FILTERED));
+        // Without --incremental, a file that is already zero is reset like on the command line
+        assertEquals(0, summaries.get(bob.getPath()).getCount(ResetEngine.Status.ALREADY_RESET));
+        assertEquals(2, runner.getMetrics().get(bob.getPath()).get(RunMetrics.Counter.RESET));
+        String output = outContent.toString();
+        assertTrue(output.contains("Processed 2 files: 1 reset, 0 already reset, 1 filtered, 0 failed, 0 in use in "
+                + alice.getPath()));
+        assertTrue(output.contains("Processed 4 files: 3 reset, 0 already reset, 1 filtered, 0 failed, 0 in use in "
+                + "2 roots"));
+    }
+
+    @Test
+    void run_RecordsUndoInEachRoot() throws IOException {
+        File alice = folder("alice");
+        File bob = folder("bob");
+        write(alice, "a.fastresume", "d14:total_uploadedi1000ee");
+        write(alice, "a.torrent", "d4:infod4:name5:Alphaee");
+        write(bob, "b.fastresume", "d14:total_uploadedi2000ee");
+        MultiRootRunner runner = new MultiRootRunner(Arrays.asList(new MultiRootRunner.Root(alice.getPath()),
+                new MultiRootRunner.Root(bob.getPath())), new String[]{"--fsync", "none"}, 2, null);
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            runner.run();
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        List<String> resets = runner.getResets();
+        assertEquals(2, resets.size());
+        assertTrue(resets.contains("Alpha"));
+        assertTrue(runner.getContendedFiles().isEmpty());
+        for (File folder : Arrays.asList(alice, bob)) {
+            List<UndoJournal.Record> records = UndoJournal.read(new File(folder, UndoJournal.UNDO_FILE_NAME));
+            assertEquals(1, records.size());
+            assertTrue(records.get(0).isCommitted());
+        }
+        UndoJournal.undo(new File(bob, UndoJournal.UNDO_FILE_NAME), 1,
+                new AtomicFileWriter(AtomicFileWriter.Durability.NONE, 1));
+        assertEquals("d14:total_uploadedi2000ee", read(bob, "b.fastresume"));
+    }
+
+    @Test
+    void new_OptionNotSupportedPerRoot_Throws() {
+        List<MultiRootRunner.Root> roots = Arrays.asList(new MultiRootRunner.Root("/srv/alice", "--single"),
+                new MultiRootRunner.Root("/srv/bob", "--keys"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new MultiRootRunner(roots.subList(0, 1), new String[0], 1, null));
+        assertEquals("Invalid options for root: /srv/alice - Option cannot be given per root: --single",
+                e.getMessage());
+        assertThrows(IllegalArgumentException.class,
+                () -> new MultiRootRunner(roots.subList(1, 2), new String[0], 1, null));
+    }
+
+    private File folder(String name) {
+        File folder = tempDir.resolve(name).toFile();
+        assertTrue(folder.mkdir());
+        return folder;
+    }
+
+    private static void write(File folder, String name, String content) throws IOException {
+        Files.write(new File(folder, name).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File folder, String name) throws IOException {
+        return new String(Files.readAllBytes(new File(folder, name).toPath()), StandardCharsets.UTF_8);
+    }
+}
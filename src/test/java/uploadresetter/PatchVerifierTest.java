@@ -0,0 +1,107 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+public class PatchVerifierTest {
+    @Test
+    void patch_ValidData_MatchesUnverifiedPatch() {
+        FastresumePatcher patcher = FastresumePatcher.parse("all");
+        String content = "d11:active_timei77e4:name3:abc16:total_downloadedi123e14:total_uploadedi456ee";
+        byte[] expected = bytes(content);
+        byte[] expectedPatch = patcher.patch(expected).toArray();
+        byte[] data = bytes(content);
+        String[] oldValues = new String[patcher.getKeys().size()];
+
+        FastresumePatcher.Patched patched = PatchVerifier.patch(patcher, data, oldValues);
+
+        assertArrayEquals(expectedPatch, patched.toArray());
+        assertEquals("456", oldValues[0]);
+        assertTrue(Arrays.asList("CRC32C", "CRC32").contains(PatchVerifier.getAlgorithm()));
+    }
+
+    @Test
+    void patch_RaisedValue_Verifies() {
+        FastresumePatcher patcher = FastresumePatcher.parse(FastresumePatcher.UPLOADED_KEY)
+                .withRules(ResetRules.parse(Arrays.asList("ratio 1.5")));
+        byte[] data = bytes("d4:name3:abc16:total_downloadedi1000e14:total_uploadedi9ee");
+
+        FastresumePatcher.Patched patched = PatchVerifier.patch(patcher, data, new String[1]);
+
+        assertEquals("d4:name3:abc16:total_downloadedi1000e14:total_uploadedi1500ee",
+                new String(patched.toArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void patch_KeyInsideString_FailsVerification() {
+        FastresumePatcher patcher = FastresumePatcher.parse(FastresumePatcher.UPLOADED_KEY);
+        byte[] data = bytes("d4:note23:xx14:total_uploadedi55e14:total_uploadedi7ee");
+
+        assertThrows(PatchVerifier.VerificationException.class,
+                () -> PatchVerifier.patch(patcher, data, new String[1]));
+    }
+
+    @Test
+    void verify_ChangedByteOutsideValues_FailsChecksum() {
+        FastresumePatcher patcher = FastresumePatcher.parse(FastresumePatcher.UPLOADED_KEY);
+        byte[] data = bytes("d4:name3:abc14:total_uploadedi456ee");
+        int[] newOffsets = new int[1];
+        Checksum kept = new CRC32();
+        int length = patcher.patch(data, null, kept, newOffsets).getLength();
+        data[9] = 'x';
+
+        PatchVerifier.VerificationException e = assertThrows(PatchVerifier.VerificationException.class,
+                () -> PatchVerifier.verify(patcher, data, length, newOffsets, 0, kept.getValue()));
+        assertTrue(e.getMessage().contains("does not match the original"));
+        // Only the checksum used for patching decides, so a CRC32 patch verifies with CRC32 as well
+        data[9] = 'a';
+        if (PatchVerifier.getAlgorithm().equals("CRC32")) {
+            PatchVerifier.verify(patcher, data, length, newOffsets, 0, kept.getValue());
+        }
+        int[] misplaced = {newOffsets[0] - 1};
+        e = assertThrows(PatchVerifier.VerificationException.class,
+                () -> PatchVerifier.verify(patcher, data, length, misplaced, 0, kept.getValue()));
+        assertTrue(e.getMessage().contains("has no valid value"));
+    }
+
+    @Test
+    void verify_ValueOtherThanTarget_Fails() {
+        FastresumePatcher patcher = FastresumePatcher.parse(FastresumePatcher.UPLOADED_KEY)
+                .withRules(ResetRules.parse(Arrays.asList("ratio 1.5")));
+        byte[] data = bytes("d16:total_downloadedi1000e14:total_uploadedi9ee");
+        int[] newOffsets = new int[1];
+        Checksum kept = new CRC32();
+        FastresumePatcher.Patched patched = patcher.patch(data, null, kept, newOffsets);
+        byte[] patchedData = patched.getData();
+        int length = patched.getLength();
+        assertEquals(1500, patched.getUploaded());
+
+        PatchVerifier.VerificationException e = assertThrows(PatchVerifier.VerificationException.class,
+                () -> PatchVerifier.verify(patcher, patchedData, length, newOffsets, 0, kept.getValue()));
+        assertTrue(e.getMessage().contains("is not set to 0"));
+        // A well-formed value with a wrong digit
+        patchedData[newOffsets[0] + 1] = '6';
+        e = assertThrows(PatchVerifier.VerificationException.class,
+                () -> PatchVerifier.verify(patcher, patchedData, length, newOffsets, 1500, kept.getValue()));
+        assertTrue(e.getMessage().contains("is not set to 1500"));
+    }
+
+    @Test
+    void checkStructure_InvalidBencode_Throws() {
+        PatchVerifier.checkStructure(bytes("d1:ai-12e1:bli0e3:xyzee"), 23);
+        for (String invalid : new String[]{"d1:ai1e", "d1:ai1eee", "d1:a5:abce", "d1:ai1-ee", "d1:ai1ee1",
+                "d1:a:e", "x"}) {
+            byte[] data = bytes(invalid);
+            assertThrows(PatchVerifier.VerificationException.class,
+                    () -> PatchVerifier.checkStructure(data, data.length), invalid);
+        }
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,916 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.util.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class QbtUploadResetterTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testMainWithPathArgument() {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        String[] args = {"--path", "test_path"};
+        QbtUploadResetter.main(args);
+        assertTrue(outContent.toString().contains("Path specified: test_path"));
+        System.setOut(System.out);
+    }
+
+    @Test
+    void testMainWithPathArgumentMissedValue() {
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errContent));
+        String[] args = {"--path"};
+        QbtUploadResetter.main(args);
+        assertTrue(errContent.toString().contains("Missing value for -p/--path option"));
+        System.setOut(System.out);
+    }
+
+    @Test
+    void testMainWithSingleArgument() {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        String[] args = {"--single"};
+        QbtUploadResetter.main(args);
+        System.setOut(System.out);
+        assertTrue(outContent.toString().contains("Using single file mode"));
+    }
+
+    @Test
+    void testMainWithSingleArgument2() {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        String[] args = {"-s"};
+        QbtUploadResetter.main(args);
+        System.setOut(System.out);
+        assertTrue(outContent.toString().contains("Using single file mode"));
+    }
+
+    @Test
+    void testMainWithoutArguments() {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        String[] args = {};
+        QbtUploadResetter.main(args);
+        assertTrue(outContent.toString().contains("Using default path"));
+        System.setOut(System.out);
+    }
+
+    @Test
+    void testMainWithHelpArgument() {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        String[] args = {"--help"};
+        QbtUploadResetter.main(args);
+        assertTrue(outContent.toString().contains("Usage: java QbtUploadResetter"));
+        System.setOut(System.out);
+    }
+
+    @Test
+    void testMainWithUnknownArgument() {
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errContent));
+        String[] args = {"--unknown"};
+        QbtUploadResetter.main(args);
+        assertTrue(errContent.toString().contains("Unknown option: --unknown"));
+        System.setOut(System.out);
+    }
+
+    @Test
+    void testMainWithThreadsArgumentInvalidValue() {
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errContent));
+        String[] args = {"--threads", "zero", "--path", "test_path"};
+        QbtUploadResetter.main(args);
+        assertTrue(errContent.toString().contains("Invalid value for -t/--threads option"));
+        System.setErr(System.err);
+    }
+
+    @Test
+    public void testReadFileToByteArray() throws IOException {
+        File tempFile = tempDir.resolve("testfile.txt").toFile();
+        String content = "Hello, World!";
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            fos.write(content.getBytes());
+        }
+        byte[] result = QbtUploadResetter.readFileToByteArray(tempFile);
+        assertArrayEquals(content.getBytes(), result);
+    }
+
+    @Test
+    public void testReadFileToByteArrayEmptyFile() throws IOException {
+        File emptyFile = tempDir.resolve("emptyfile.txt").toFile();
+        emptyFile.createNewFile();
+        byte[] result = QbtUploadResetter.readFileToByteArray(emptyFile);
+        assertEquals(0, result.length);
+    }
+
+    @Test
+    public void testReadFileToByteArray_ExceptionHandling() {
+        File nonExistentFile = new File("nonexistentfile.txt");
+        byte[] result = QbtUploadResetter.readFileToByteArray(nonExistentFile);
+        assertEquals(0, result.length);
+    }
+
+    @Test
+    public void testSaveFileWithResetData() throws IOException {
+        byte[] expectedBytes = "Hello, World!".getBytes(StandardCharsets.US_ASCII);
+        File tempFile = tempDir.resolve("testfile.txt").toFile();
+        QbtUploadResetter.saveFileWithResetData(expectedBytes, tempFile.getAbsolutePath());
+        byte[] actualBytes;
+        try (FileInputStream fis = new FileInputStream(tempFile)) {
+            ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = fis.read(buffer)) != -1) {
+                outContent.write(buffer, 0, bytesRead);
+            }
+            actualBytes = outContent.toByteArray();
+        }
+        assertArrayEquals(expectedBytes, actualBytes);
+    }
+
+    @Test
+    public void testSaveFileWithResetData_WritesShorterData() throws IOException {
+        File tempFile = tempDir.resolve("testfile.txt").toFile();
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            fos.write(bytes("prefix14:total_uploadedi123456e8:trackers"));
+        }
+        byte[] data = QbtUploadResetter.readFileToByteArray(tempFile);
+        int length = QbtUploadResetter.resetUploadedAmount(data);
+        QbtUploadResetter.saveFileWithResetData(data, length, tempFile.getAbsolutePath());
+        assertArrayEquals(bytes("prefix14:total_uploadedi0e8:trackers"),
+                QbtUploadResetter.readFileToByteArray(tempFile));
+    }
+
+    @Test
+    void testSaveFileWithResetData_ExceptionHandling() {
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errContent));
+        String invalidPath = "invalid/path.txt";
+        QbtUploadResetter.saveFileWithResetData(new byte[0], invalidPath);
+        String errorOutput = errContent.toString();
+        System.setErr(System.err);
+        assertTrue(errorOutput.contains("Failed to save the file: " + invalidPath));
+    }
+
+    @Test
+    void resetUploadedAmount_ValuePresent() {
+        byte[] data = bytes("somePrefix14:total_uploadedi123456e8:trackerssomeSuffix");
+        int length = QbtUploadResetter.resetUploadedAmount(data);
+        assertEquals("somePrefix14:total_uploadedi0e8:trackerssomeSuffix",
+                new String(data, 0, length, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void resetUploadedAmount_DoesNotDependOnFollowingKey() {
+        byte[] data = bytes("d14:total_uploadedi42e5:zzzzzi1ee");
+        int length = QbtUploadResetter.resetUploadedAmount(data);
+        assertEquals("d14:total_uploadedi0e5:zzzzzi1ee", new String(data, 0, length, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void resetUploadedAmount_NegativeValue() {
+        byte[] data = bytes("14:total_uploadedi-7ee");
+        int length = QbtUploadResetter.resetUploadedAmount(data);
+        assertEquals("14:total_uploadedi0ee", new String(data, 0, length, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void resetUploadedAmount_KeyMissing() {
+        byte[] data = bytes("somePrefixsomeSuffix8:trackers");
+        assertThrows(IllegalArgumentException.class, () -> QbtUploadResetter.resetUploadedAmount(data));
+    }
+
+    @Test
+    void resetUploadedAmount_ValueNotAnInteger() {
+        byte[] data = bytes("somePrefix14:total_uploadedimiddlePart8:trackers");
+        assertThrows(IllegalArgumentException.class, () -> QbtUploadResetter.resetUploadedAmount(data));
+    }
+
+    @Test
+    void resetUploadedAmount_ValueNotTerminated() {
+        byte[] data = bytes("somePrefix14:total_uploadedi123");
+        assertThrows(IllegalArgumentException.class, () -> QbtUploadResetter.resetUploadedAmount(data));
+    }
+
+    @Test
+    void resetUploadedAmount_EmptyInput() {
+        byte[] data = new byte[0];
+        assertThrows(IllegalArgumentException.class, () -> QbtUploadResetter.resetUploadedAmount(data));
+    }
+
+    @Test
+    void promptUserForReset_YesInput() {
+        String input = "yes\n";
+        InputStream inputStream = new ByteArrayInputStream(input.getBytes());
+        System.setIn(inputStream);
+        boolean result = QbtUploadResetter.promptUserForReset("examplePath");
+        System.setIn(System.in);
+        assertTrue(result);
+    }
+
+    @Test
+    void promptUserForReset_YInput() {
+        String input = "y\n";
+        InputStream inputStream = new ByteArrayInputStream(input.getBytes());
+        System.setIn(inputStream);
+        boolean result = QbtUploadResetter.promptUserForReset("examplePath");
+        System.setIn(System.in);
+        assertTrue(result);
+    }
+
+    @Test
+    void promptUserForReset_NoInput() {
+        String input = "no\n";
+        InputStream inputStream = new ByteArrayInputStream(input.getBytes());
+        System.setIn(inputStream);
+        boolean result = QbtUploadResetter.promptUserForReset("examplePath");
+        System.setIn(System.in);
+        assertFalse(result);
+    }
+
+    @Test
+    void decodeTorrentFile_ValidFile_ReturnsMap() {
+        File testFile = new File(getClass().getResource("/testDir/bunny.torrent").getFile());
+        try {
+            Map<String, Object> result = QbtUploadResetter.decodeTorrentFile(testFile);
+            assertNotNull(result);
+            assertTrue(result.containsKey("website"));
+            assertEquals("http://bbb3d.renderfarming.net", result.get("website"));
+        } catch (Exception e) {
+            fail("Exception occurred: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void decodeTorrentFile_InvalidFile_ReturnsNull() {
+        File testFile = new File("invalid.torrent");
+        Map<String, Object> result = QbtUploadResetter.decodeTorrentFile(testFile);
+        assertNull(result);
+        testFile.delete();
+    }
+
+    @Test
+    void getTorrentName_ValidFile_ReturnsName() {
+        String fastresumeFilePath = "src/test/resources/testDir/bunny.fastresume";
+        String torrentName = QbtUploadResetter.getTorrentName(fastresumeFilePath);
+        assertEquals("bbb_sunflower_1080p_30fps_stereo_abl.mp4", torrentName);
+    }
+
+    @Test
+    void getTorrentName_DecodedDataNotNull_ReturnsTorrentName() {
+        String fastresumeFilePath = "src/test/resources/invalid.fastresume";
+        String expectedTorrentName = "Unknown Torrent";
+        String actualTorrentName = QbtUploadResetter.getTorrentName(fastresumeFilePath);
+        assertEquals(expectedTorrentName, actualTorrentName);
+    }
+
+    @Test
+    void getTorrentName_InfoIsNull_ReturnsNull() {
+        String fastresumeFilePath = "src/test/resources/invalid-info-null.fastresume";
+        String expectedTorrentName = "Unknown Torrent";
+        String actualTorrentName = QbtUploadResetter.getTorrentName(fastresumeFilePath);
+        assertEquals(expectedTorrentName, actualTorrentName);
+    }
+
+    @Test
+    void getTorrentName_NameObjNotString_ReturnsNull() {
+        String fastresumeFilePath = "src/test/resources/invalid-name-not-string.fastresume";
+        String expectedTorrentName = "Unknown Torrent";
+        String actualTorrentName = QbtUploadResetter.getTorrentName(fastresumeFilePath);
+        assertEquals(expectedTorrentName, actualTorrentName);
+    }
+
+    @Test
+    void testFilesFoundSingleFileModeDisabled() {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        QbtUploadResetter.processFiles("src/test/resources/testDir", false);
+        String output = outContent.toString();
+        assertTrue(output.contains("Processing file: bunny.fastresume"));
+        assertTrue(output.contains("Uploaded amount reset successfully for torrent: bbb_sunflower_1080p_30fps_stereo_abl.mp4"));
+        final PrintStream originalOut = System.out;
+        System.setOut(originalOut);
+    }
+
+    @Test
+    void testFilesFoundSingleFileModeEnabledWithSkipping() {
+        String input1 = "n";
+        ByteArrayInputStream inContent = new ByteArrayInputStream(input1.getBytes());
+        System.setIn(inContent);
+        PrintStream originalOut = System.out;
+        final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        inContent = new ByteArrayInputStream("n".getBytes());
+        System.setIn(inContent);
+        QbtUploadResetter.processFiles("src/test/resources/testDir", true);
+        String output = outContent.toString();
+        assertTrue(output.contains("Processing file: bunny.fastresume"));
+        assertTrue(output.contains("Skipping torrent: bbb_sunflower_1080p_30fps_stereo_abl.mp4"));
+        System.setOut(originalOut);
+    }
+
+
+    @Test
+    void processFiles_InvalidPath_PrintsErrorMessage() {
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errContent));
+        String invalidPath = "invalid/path";
+        QbtUploadResetter.processFiles(invalidPath, false);
+        String expectedErrorMessage = "Invalid path specified or path is not a directory: invalid/path";
+        assertEquals(expectedErrorMessage, errContent.toString().trim());
+        System.setErr(System.err);
+    }
+
+    @Test
+    void processFiles_NotADirectory() {
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errContent));
+        String invalidPath = "src/test/resources/invalid.torrent";
+        QbtUploadResetter.processFiles(invalidPath, false);
+        String expectedErrorMessage = "Invalid path specified or path is not a directory: src/test/resources/invalid.torrent";
+        assertEquals(expectedErrorMessage, errContent.toString().trim());
+        System.setErr(System.err);
+    }
+
+    @Test
+    void processFiles_NoFastresumeFilesInNonEmptyDir_PrintsNoFilesFoundMessage() throws IOException {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        File tempDir = new File(System.getProperty("java.io.tmpdir"), "tempDir");
+        tempDir.mkdir();
+        File tempFile = new File(tempDir, "test.txt");
+        tempFile.createNewFile();
+        QbtUploadResetter.processFiles(tempDir.getAbsolutePath(), false);
+        String expectedMessage = "No .fastresume files found in the specified path";
+        assertEquals(expectedMessage, outContent.toString().trim());
+        System.setOut(System.out);
+        tempFile.delete();
+        tempDir.delete();
+    }
+
+    @Test
+    void processFiles_WithFastresumeFiles_ProcessesFiles() {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        File tempDir = new File(System.getProperty("java.io.tmpdir"), "tempDir");
+        tempDir.mkdir();
+        File fastresumeFile = new File(tempDir, "sample.fastresume");
+        try {
+            fastresumeFile.createNewFile();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        QbtUploadResetter.processFiles(tempDir.getAbsolutePath(), false);
+        System.out.println(outContent.toString());
+        System.setOut(System.out);
+        fastresumeFile.delete();
+        tempDir.delete();
+    }
+
+    @Test
+    void processFiles_MultipleThreads_ResetsAllFilesInListingOrder() throws IOException {
+        File dir = tempDir.toFile();
+        for (int i = 0; i < 20; i++) {
+            try (FileOutputStream fos = new FileOutputStream(new File(dir, "file" + i + ".fastresume"))) {
+                fos.write(bytes("d14:total_uploadedi" + (i + 1000) + "e8:trackerslee"));
+            }
+        }
+        String[] listed = dir.list((d, name) -> name.endsWith(".fastresume"));
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outContent));
+        QbtUploadResetter.processFiles(dir.getAbsolutePath(), false, 4);
+        System.setOut(originalOut);
+
+        String output = outContent.toString();
+        int previous = -1;
+        for (String name : listed) {
+            int index = output.indexOf("Processing file: " + name);
+            assertTrue(index > previous);
+            previous = index;
+            assertArrayEquals(bytes("d14:total_uploadedi0e8:trackerslee"),
+                    QbtUploadResetter.readFileToByteArray(new File(dir, name)));
+        }
+    }
+
+    @Test
+    void processFiles_MultipleThreads_ReportsInvalidFileAndContinues() throws IOException {
+        File dir = tempDir.toFile();
+        try (FileOutputStream fos = new FileOutputStream(new File(dir, "broken.fastresume"))) {
+            fos.write(bytes("d8:trackerslee"));
+        }
+        try (FileOutputStream fos = new FileOutputStream(new File(dir, "valid.fastresume"))) {
+            fos.write(bytes("d14:total_uploadedi5ee"));
+        }
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        PrintStream originalErr = System.err;
+        System.setErr(new PrintStream(errContent));
+        QbtUploadResetter.processFiles(dir.getAbsolutePath(), false, 2);
+        System.setErr(originalErr);
+
+        assertTrue(errContent.toString().contains("Failed to reset uploaded amount in file: "));
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"),
+                QbtUploadResetter.readFileToByteArray(new File(dir, "valid.fastresume")));
+    }
+
+    @Test
+    void scanUploadedValue_ReturnsValue() throws IOException {
+        File file = tempDir.resolve("a.fastresume").toFile();
+        Files.write(file.toPath(), bytes("d1:x10:14:total_up14:total_uploadedi-1234567ee"));
+        assertEquals(Long.valueOf(-1234567), QbtUploadResetter.scanUploadedValue(file));
+    }
+
+    @Test
+    void scanUploadedValue_MissingOrInvalidValue_ReturnsNull() throws IOException {
+        File file = tempDir.resolve("a.fastresume").toFile();
+        Files.write(file.toPath(), bytes("d14:total_uploadedixe"));
+        assertNull(QbtUploadResetter.scanUploadedValue(file));
+        Files.write(file.toPath(), bytes("d8:trackerslee"));
+        assertNull(QbtUploadResetter.scanUploadedValue(file));
+        assertNull(QbtUploadResetter.scanUploadedValue(new File("nonexistentfile.fastresume")));
+    }
+
+    @Test
+    void processFiles_IncrementalMode_SkipsFilesThatNeedNoChange() throws IOException {
+        File dir = tempDir.toFile();
+        File zero = new File(dir, "zero.fastresume");
+        File nonZero = new File(dir, "nonzero.fastresume");
+        Files.write(zero.toPath(), bytes("d14:total_uploadedi0ee"));
+        Files.write(nonZero.toPath(), bytes("d14:total_uploadedi99ee"));
+        assertTrue(zero.setLastModified(1_000_000_000L));
+
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outContent));
+        QbtUploadResetter.processFiles(dir.getAbsolutePath(), false, 2, true);
+        String firstRun = outContent.toString();
+        outContent.reset();
+        QbtUploadResetter.processFiles(dir.getAbsolutePath(), false, 2, true);
+        String secondRun = outContent.toString();
+        System.setOut(originalOut);
+
+        assertEquals(1_000_000_000L, zero.lastModified());
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"), QbtUploadResetter.readFileToByteArray(nonZero));
+        assertFalse(firstRun.contains("Processing file: zero.fastresume"));
+        assertTrue(firstRun.contains("Processing file: nonzero.fastresume"));
+        assertTrue(firstRun.contains("Scanned 2 files: 1 skipped, 1 rewritten"));
+        assertTrue(secondRun.contains("Scanned 2 files: 2 skipped, 0 rewritten"));
+        assertTrue(new File(dir, RunManifest.MANIFEST_FILE_NAME).isFile());
+    }
+
+    @Test
+    void main_IncrementalWithCategoryRule_SkipsFilesAtTheirRuleValue() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        File capped = new File(dir, "a.fastresume");
+        File unmatched = new File(dir, "b.fastresume");
+        Files.write(capped.toPath(), bytes("d12:qBt-category2:tv14:total_uploadedi50ee"));
+        Files.write(unmatched.toPath(), bytes("d14:total_uploadedi70ee"));
+        assertTrue(capped.setLastModified(1_000_000_000L));
+        assertTrue(unmatched.setLastModified(1_000_000_000L));
+
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outContent));
+        try {
+            QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "--incremental",
+                    "--rule", "cap 50 if category=tv"});
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertTrue(outContent.toString().contains("Scanned 2 files: 2 skipped, 0 rewritten"));
+        assertEquals(1_000_000_000L, capped.lastModified());
+        assertEquals(1_000_000_000L, unmatched.lastModified());
+    }
+
+    @Test
+    void processFolder_WithRule_LeavesFilesTheRulesDoNotChange() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        File capped = new File(dir, "a.fastresume");
+        File unmatched = new File(dir, "b.fastresume");
+        File lowered = new File(dir, "c.fastresume");
+        Files.write(capped.toPath(), bytes("d12:qBt-category2:tv14:total_uploadedi50ee"));
+        Files.write(unmatched.toPath(), bytes("d14:total_uploadedi70ee"));
+        Files.write(lowered.toPath(), bytes("d12:qBt-category2:tv14:total_uploadedi80ee"));
+        assertTrue(capped.setLastModified(1_000_000_000L));
+        assertTrue(unmatched.setLastModified(1_000_000_000L));
+
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outContent));
+        QbtUploadResetter resetter = new QbtUploadResetter(ResetEngine.builder().threads(1)
+                .rules("cap 50 if category=tv"), false, false, null, null);
+        try {
+            resetter.processFolder(dir.getAbsolutePath());
+        } finally {
+            System.setOut(originalOut);
+            resetter.getEngine().close();
+        }
+
+        // Only the file that the rule lowers is written and reported as reset
+        assertEquals(Collections.singletonList("Unknown Torrent"), resetter.getSuccessfulResets());
+        assertFalse(outContent.toString().contains("Processing file: a.fastresume"));
+        assertFalse(outContent.toString().contains("Processing file: b.fastresume"));
+        assertEquals(1_000_000_000L, capped.lastModified());
+        assertEquals(1_000_000_000L, unmatched.lastModified());
+        assertArrayEquals(bytes("d12:qBt-category2:tv14:total_uploadedi50ee"),
+                QbtUploadResetter.readFileToByteArray(lowered));
+    }
+
+    @Test
+    void processChangedFiles_ScaleRule_IgnoresItsOwnWrites() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        File file = new File(dir, "a.fastresume");
+        Files.write(file.toPath(), bytes("d14:total_uploadedi100ee"));
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        QbtUploadResetter resetter = new QbtUploadResetter(ResetEngine.builder().threads(1).rules("scale 0.5"),
+                false, false, null, null);
+        try {
+            resetter.processChangedFiles(Collections.singletonList(file));
+            assertArrayEquals(bytes("d14:total_uploadedi50ee"), QbtUploadResetter.readFileToByteArray(file));
+            // The change event of the file the tool has just written
+            resetter.processChangedFiles(Collections.singletonList(file));
+            assertArrayEquals(bytes("d14:total_uploadedi50ee"), QbtUploadResetter.readFileToByteArray(file));
+            // A save by the client is scaled again
+            Files.write(file.toPath(), bytes("d14:total_uploadedi80ee"));
+            assertTrue(file.setLastModified(1_000_000_000L));
+            resetter.processChangedFiles(Collections.singletonList(file));
+        } finally {
+            System.setOut(originalOut);
+            resetter.getEngine().close();
+        }
+
+        assertArrayEquals(bytes("d14:total_uploadedi40ee"), QbtUploadResetter.readFileToByteArray(file));
+    }
+
+    @Test
+    void main_WithReport_WritesMetrics() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        Files.write(new File(dir, "a.fastresume").toPath(), bytes("d14:total_uploadedi99ee"));
+        File report = tempDir.resolve("report.json").toFile();
+        File prometheus = tempDir.resolve("metrics.prom").toFile();
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "--fsync", "none",
+                "--report", report.getPath(), "--prometheus", prometheus.getPath()});
+        System.setOut(originalOut);
+
+        String json = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"files\": 1"));
+        assertTrue(json.contains("\"reset\": 1"));
+        assertTrue(json.contains("\"bytes_written\": 22"));
+        String text = new String(Files.readAllBytes(prometheus.toPath()), StandardCharsets.UTF_8);
+        assertTrue(text.contains("qbt_upload_resetter_reset_total 1"));
+    }
+
+    @Test
+    void main_SeveralRoots_ResetsEachRootAndReportsThem() throws IOException {
+        File first = tempDir.resolve("first").toFile();
+        File second = tempDir.resolve("second").toFile();
+        assertTrue(first.mkdir());
+        assertTrue(second.mkdir());
+        Files.write(new File(first, "a.fastresume").toPath(), bytes("d14:total_uploadedi99ee"));
+        Files.write(new File(second, "b.fastresume").toPath(), bytes("d14:total_uploadedi5ee"));
+        Files.write(new File(second, "c.fastresume").toPath(), bytes("d14:total_uploadedi0ee"));
+        File report = tempDir.resolve("report.json").toFile();
+
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        try {
+            QbtUploadResetter.main(new String[] {"-p", first.getAbsolutePath(), "-p", second.getAbsolutePath(),
+                    "--no-cache", "--fsync", "none", "-t", "2", "--report", report.getPath()});
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"),
+                Files.readAllBytes(new File(first, "a.fastresume").toPath()));
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"),
+                Files.readAllBytes(new File(second, "b.fastresume").toPath()));
+        assertTrue(outContent.toString().contains("Processed 3 files: 3 reset, 0 already reset, 0 filtered, 0 failed, "
+                + "0 in use in 2 roots"));
+        String json = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"reset\": 3"));
+        assertTrue(json.contains("\"roots\": {"));
+        assertTrue(outContent.toString().contains("for the following torrents:" + System.lineSeparator() + "1. "));
+        assertTrue(outContent.toString().contains(System.lineSeparator() + "2. "));
+        assertTrue(new File(first, UndoJournal.UNDO_FILE_NAME).isFile());
+        assertTrue(new File(second, UndoJournal.UNDO_FILE_NAME).isFile());
+    }
+
+    @Test
+    void main_Verify_LeavesBadSpliceUnchanged() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        byte[] content = bytes("d4:note23:xx14:total_uploadedi55e14:total_uploadedi7ee");
+        File file = new File(dir, "a.fastresume");
+        Files.write(file.toPath(), content);
+        Files.write(new File(dir, "b.fastresume").toPath(), bytes("d14:total_uploadedi7ee"));
+        File report = tempDir.resolve("report.json").toFile();
+
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        System.setErr(new PrintStream(errContent));
+        try {
+            QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "--verify",
+                    "--report", report.getPath()});
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"),
+                Files.readAllBytes(new File(dir, "b.fastresume").toPath()));
+        assertTrue(errContent.toString().contains("Patched data failed verification"));
+        String json = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"verify_failed\": 1"));
+    }
+
+    @Test
+    void main_Rules_SetUploadedByTrackerAndRejectInvalidRules() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        File tracked = new File(dir, "a.fastresume");
+        Files.write(tracked.toPath(), bytes("d16:total_downloadedi400e14:total_uploadedi900e"
+                + "8:trackersll30:https://t.example.org/announceeee"));
+        File other = new File(dir, "b.fastresume");
+        Files.write(other.toPath(), bytes("d16:total_downloadedi400e14:total_uploadedi900ee"));
+
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        System.setErr(new PrintStream(errContent));
+        try {
+            QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "--rule", "ratio",
+                    "--verify"});
+            assertTrue(errContent.toString().contains("Invalid value for --rule option: ratio"));
+            assertEquals(900, QbtUploadResetter.scanUploadedValue(other));
+
+            QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "--verify",
+                    "--rule", "ratio 1.0 if tracker=example.org", "--rule", "cap 100"});
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+
+        assertEquals("d16:total_downloadedi400e14:total_uploadedi400e8:trackersll30:https://t.example.org/announceeee",
+                new String(Files.readAllBytes(tracked.toPath()), StandardCharsets.US_ASCII));
+        assertEquals(100, QbtUploadResetter.scanUploadedValue(other));
+    }
+
+    @Test
+    void main_WithAllKeys_ResetsAllValues() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        File file = new File(dir, "a.fastresume");
+        Files.write(file.toPath(), bytes("d11:active_timei60e12:seeding_timei30e14:total_uploadedi99ee"));
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "--keys", "all"});
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertArrayEquals(bytes("d11:active_timei0e12:seeding_timei0e14:total_uploadedi0ee"),
+                QbtUploadResetter.readFileToByteArray(file));
+    }
+
+    @Test
+    void main_WithFilters_OnlyResetsSelectedTorrents() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        File selected = new File(dir, "a.fastresume");
+        File otherCategory = new File(dir, "b.fastresume");
+        File belowMinimum = new File(dir, "c.fastresume");
+        Files.write(selected.toPath(), bytes("d12:qBt-category2:tv14:total_uploadedi5000ee"));
+        Files.write(otherCategory.toPath(), bytes("d12:qBt-category6:movies14:total_uploadedi5000ee"));
+        Files.write(belowMinimum.toPath(), bytes("d12:qBt-category2:tv14:total_uploadedi50ee"));
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "-t", "2",
+                    "--category", "tv", "--min-uploaded", "1K"});
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertArrayEquals(bytes("d12:qBt-category2:tv14:total_uploadedi0ee"),
+                QbtUploadResetter.readFileToByteArray(selected));
+        assertArrayEquals(bytes("d12:qBt-category6:movies14:total_uploadedi5000ee"),
+                QbtUploadResetter.readFileToByteArray(otherCategory));
+        assertArrayEquals(bytes("d12:qBt-category2:tv14:total_uploadedi50ee"),
+                QbtUploadResetter.readFileToByteArray(belowMinimum));
+    }
+
+    @Test
+    void main_SingleWithBatchAnswers_ResetsMatchingTorrents() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        String[] names = {"Alpha", "Almond", "Beta"};
+        for (int i = 0; i < names.length; i++) {
+            Files.write(new File(dir, i + ".fastresume").toPath(), bytes("d14:total_uploadedi" + (i + 1) + "ee"));
+            Files.write(new File(dir, i + ".torrent").toPath(), bytes("d4:infod4:name" + names[i].length() + ":"
+                    + names[i] + "ee"));
+        }
+
+        InputStream originalIn = System.in;
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setIn(new ByteArrayInputStream(bytes("match al*\nnone\n")));
+        System.setOut(new PrintStream(outContent));
+        try {
+            QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "-s"});
+        } finally {
+            System.setIn(originalIn);
+            System.setOut(originalOut);
+        }
+
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"), Files.readAllBytes(new File(dir, "0.fastresume").toPath()));
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"), Files.readAllBytes(new File(dir, "1.fastresume").toPath()));
+        assertArrayEquals(bytes("d14:total_uploadedi3ee"), Files.readAllBytes(new File(dir, "2.fastresume").toPath()));
+        assertTrue(outContent.toString().contains("Skipping torrent: Beta"));
+        assertTrue(outContent.toString().contains("(total_uploaded "));
+    }
+
+    @Test
+    void main_InvalidFilter_ResetsNothing() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        File file = new File(dir, "a.fastresume");
+        Files.write(file.toPath(), bytes("d14:total_uploadedi99ee"));
+
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errContent));
+        try {
+            QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "--name", "[a-"});
+        } finally {
+            System.setErr(originalErr);
+        }
+
+        assertArrayEquals(bytes("d14:total_uploadedi99ee"), QbtUploadResetter.readFileToByteArray(file));
+        assertTrue(errContent.toString().contains("Invalid value for --name option"));
+    }
+
+    @Test
+    void main_Scan_WritesReportWithoutChangingFiles() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        File file = new File(dir, "a.fastresume");
+        Files.write(file.toPath(), bytes("d16:total_downloadedi50e14:total_uploadedi99ee"));
+        File report = tempDir.resolve("scan.json").toFile();
+
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        try {
+            QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache", "--scan",
+                    report.getPath(), "--top", "1"});
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertArrayEquals(bytes("d16:total_downloadedi50e14:total_uploadedi99ee"),
+                QbtUploadResetter.readFileToByteArray(file));
+        assertFalse(new File(dir, UndoJournal.UNDO_FILE_NAME).exists());
+        String json = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+        assertEquals("{\"file\": \"a.fastresume\", \"name\": \"Unknown Torrent\", \"tracker\": \"\", "
+                + "\"total_uploaded\": 99, \"total_downloaded\": 50, \"ratio\": 1.98}\n", json);
+        assertTrue(outContent.toString().contains("Scanned 1 torrents: 99 B uploaded, 50 B downloaded, ratio 1.98"));
+    }
+
+    @Test
+    void processFiles_LockedFile_RetriesThenReportsContended() throws IOException {
+        File dir = tempDir.toFile();
+        File locked = new File(dir, "locked.fastresume");
+        File free = new File(dir, "free.fastresume");
+        Files.write(locked.toPath(), bytes("d14:total_uploadedi5ee"));
+        Files.write(free.toPath(), bytes("d14:total_uploadedi7ee"));
+        QbtUploadResetter resetter = new QbtUploadResetter(ResetEngine.builder().threads(2).retries(2, 10), false,
+                false, null, null);
+
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+        try (FileChannel channel = FileChannel.open(locked.toPath(), StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            resetter.processFolder(dir.getAbsolutePath());
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+
+        assertArrayEquals(bytes("d14:total_uploadedi5ee"), QbtUploadResetter.readFileToByteArray(locked));
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"), QbtUploadResetter.readFileToByteArray(free));
+        assertEquals(Collections.singletonList(locked.getAbsolutePath()), resetter.getContendedFiles());
+        assertTrue(outContent.toString().contains("File in use, retrying later: locked.fastresume"));
+    }
+
+    @Test
+    void processFiles_FileReleased_ResetOnRetry() throws Exception {
+        File dir = tempDir.toFile();
+        File file = new File(dir, "a.fastresume");
+        Files.write(file.toPath(), bytes("d14:total_uploadedi5ee"));
+        QbtUploadResetter resetter = new QbtUploadResetter(ResetEngine.builder().threads(1)
+                .retries(RetryScheduler.DEFAULT_ATTEMPTS, 200), false, false, null, null);
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        FileLock lock = channel.lock();
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                lock.release();
+                channel.close();
+            } catch (InterruptedException | IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try {
+            releaser.start();
+            resetter.processFolder(dir.getAbsolutePath());
+        } finally {
+            System.setOut(originalOut);
+            releaser.join();
+        }
+
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"), QbtUploadResetter.readFileToByteArray(file));
+        assertTrue(resetter.getContendedFiles().isEmpty());
+    }
+
+    @Test
+    void processFiles_Resume_SkipsFilesInJournalAndRemovesIt() throws IOException {
+        File dir = tempDir.toFile();
+        Files.write(new File(dir, "done.fastresume").toPath(), bytes("d14:total_uploadedi5ee"));
+        Files.write(new File(dir, "todo.fastresume").toPath(), bytes("d14:total_uploadedi7ee"));
+        File journal = new File(dir, CheckpointJournal.JOURNAL_FILE_NAME);
+        Files.write(journal.toPath(), bytes("RESET\tdone.fastresume\n"));
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        QbtUploadResetter.processFiles(dir.getAbsolutePath(), false, 2, false, true);
+        System.setOut(originalOut);
+
+        assertArrayEquals(bytes("d14:total_uploadedi5ee"),
+                QbtUploadResetter.readFileToByteArray(new File(dir, "done.fastresume")));
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"),
+                QbtUploadResetter.readFileToByteArray(new File(dir, "todo.fastresume")));
+        assertFalse(journal.exists());
+    }
+
+    @Test
+    void main_Undo_RestoresResetValues() throws IOException {
+        File dir = tempDir.resolve("backup").toFile();
+        assertTrue(dir.mkdir());
+        File file = new File(dir, "a.fastresume");
+        Files.write(file.toPath(), bytes("d14:total_uploadedi99ee"));
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        QbtUploadResetter.main(new String[] {"-p", dir.getAbsolutePath(), "--no-cache"});
+        assertArrayEquals(bytes("d14:total_uploadedi0ee"), QbtUploadResetter.readFileToByteArray(file));
+        File journal = new File(dir, UndoJournal.UNDO_FILE_NAME);
+        QbtUploadResetter.main(new String[] {"--undo", journal.getPath(), "--no-cache"});
+        System.setOut(originalOut);
+
+        assertArrayEquals(bytes("d14:total_uploadedi99ee"), QbtUploadResetter.readFileToByteArray(file));
+        assertFalse(journal.exists());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,159 @@
+package uploadresetter;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class QbtWebApiClientTest {
+    private static final String RUNNING = "0123456789abcdef0123456789abcdef01234567";
+    private static final String PAUSED = "89abcdef0123456789abcdef0123456789abcdef";
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    // Method, path with query, body and cookie of every request
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile String apiVersion = "2.11.2";
+    private volatile boolean stopped;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v2/", exchange -> {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    content.write(buffer, 0, n);
+                }
+                body = new String(content.toByteArray(), StandardCharsets.UTF_8);
+            }
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            requests.add(exchange.getRequestMethod() + " " + path + (query == null ? "" : "?" + query) + " " + body
+                    + " " + exchange.getRequestHeaders().getFirst("Cookie"));
+            String response = "";
+            if (path.equals("/api/v2/auth/login")) {
+                response = body.equals("username=admin&password=secret") ? "Ok." : "Fails.";
+                exchange.getResponseHeaders().add("Set-Cookie", "SID=abc; HttpOnly; path=/");
+            } else if (path.equals("/api/v2/app/webapiVersion")) {
+                response = apiVersion;
+            } else if (path.equals("/api/v2/torrents/info")) {
+                response = "[{\"hash\":\"" + RUNNING + "\",\"name\":\"A {\\\"tricky\\\"} name\",\"tags\":[\"x\"],"
+                        + "\"state\":\"" + (stopped ? "stoppedUP" : "uploading") + "\"},"
+                        + "{\"state\":\"pausedUP\",\"hash\":\"" + PAUSED.toUpperCase() + "\"}]";
+            } else if (path.endsWith("/stop") || path.endsWith("/pause")) {
+                stopped = true;
+            } else if (path.endsWith("/start") || path.endsWith("/resume")) {
+                stopped = false;
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void connect_LogsInAndStopsAndStartsWithSession() throws IOException {
+        try (QbtWebApiClient client = QbtWebApiClient.connect(url() + "/", "admin", "secret")) {
+            assertTrue(client.usesStopAndStart());
+            client.stop(Arrays.asList("a", "b"));
+            client.start(Collections.singletonList("a"));
+        }
+        assertEquals(Arrays.asList(
+                "POST /api/v2/auth/login username=admin&password=secret null",
+                "GET /api/v2/app/webapiVersion  SID=abc",
+                "POST /api/v2/torrents/stop hashes=a%7Cb SID=abc",
+                "POST /api/v2/torrents/start hashes=a SID=abc",
+                "POST /api/v2/auth/logout  SID=abc"), requests);
+    }
+
+    @Test
+    void connect_OlderApiUsesPauseAndResume() throws IOException {
+        apiVersion = "2.9.3";
+        try (QbtWebApiClient client = QbtWebApiClient.connect(url(), null, null)) {
+            assertFalse(client.usesStopAndStart());
+            client.stop(Collections.singletonList("a"));
+            client.start(Collections.singletonList("a"));
+        }
+        assertEquals("POST /api/v2/torrents/pause hashes=a null", requests.get(1));
+        assertEquals("POST /api/v2/torrents/resume hashes=a null", requests.get(2));
+        assertEquals(3, requests.size());
+    }
+
+    @Test
+    void connect_WrongPassword_Throws() {
+        assertThrows(IOException.class, () -> QbtWebApiClient.connect(url(), "admin", "wrong"));
+    }
+
+    @Test
+    void getTorrentStates_ReadsHashAndStateOfEachTorrent() throws IOException {
+        try (QbtWebApiClient client = QbtWebApiClient.connect(url(), null, null)) {
+            Map<String, String> states = client.getTorrentStates();
+            assertEquals(2, states.size());
+            assertEquals("uploading", states.get(RUNNING));
+            assertEquals("pausedUP", states.get(PAUSED));
+        }
+    }
+
+    @Test
+    void processFiles_PausesOnlyRunningTorrentsThatNeedReset() throws IOException {
+        File dir = tempDir.toFile();
+        File running = new File(dir, RUNNING + ".fastresume");
+        File paused = new File(dir, PAUSED + ".fastresume");
+        File unknown = new File(dir, "unknown.fastresume");
+        for (File file : Arrays.asList(running, paused, unknown)) {
+            Files.write(file.toPath(), "d14:total_uploadedi5ee".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try (QbtWebApiClient client = QbtWebApiClient.connect(url(), null, null)) {
+            new QbtUploadResetter(ResetEngine.builder().threads(2), false, false, null, client)
+                    .processFolder(dir.getAbsolutePath());
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        for (File file : Arrays.asList(running, paused, unknown)) {
+            assertEquals("d14:total_uploadedi0ee",
+                    new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII));
+        }
+        assertTrue(requests.contains("POST /api/v2/torrents/stop hashes=" + RUNNING + " null"));
+        assertEquals("POST /api/v2/torrents/start hashes=" + RUNNING + " null", requests.get(requests.size() - 1));
+        assertFalse(stopped);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,213 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ResetEngineTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void resetFolder_ReportsEveryFile() throws IOException {
+        write("a.fastresume", "d14:total_uploadedi123ee");
+        write("b.fastresume", "d14:total_uploadedi0ee");
+        write("c.fastresume", "d14:total_uploadedi5");
+        Files.write(tempDir.resolve("a.torrent"), bytes("d4:infod4:name5:Alphaee"));
+        Map<String, ResetEngine.FileResult> results = new HashMap<>();
+        ResetEngine engine = ResetEngine.builder().threads(2).durability("none")
+                .listener(result -> results.put(result.getFile().getName(), result)).build();
+
+        ResetEngine.Summary summary = engine.resetFolder(tempDir.toFile());
+
+        assertEquals(3, results.size());
+        assertEquals(ResetEngine.Status.RESET, results.get("a.fastresume").getStatus());
+        assertEquals("Alpha", results.get("a.fastresume").getTorrentName());
+        assertEquals(ResetEngine.Status.ALREADY_RESET, results.get("b.fastresume").getStatus());
+        assertEquals(ResetEngine.Status.FAILED, results.get("c.fastresume").getStatus());
+        assertNotNull(results.get("c.fastresume").getMessage());
+        assertEquals(1, summary.getCount(ResetEngine.Status.RESET));
+        assertEquals(1, summary.getCount(ResetEngine.Status.FAILED));
+        assertFalse(summary.isCancelled());
+        assertEquals("d14:total_uploadedi0ee", read("a.fastresume"));
+    }
+
+    @Test
+    void reset_WithFilterAndKeys_LeavesOtherTorrents() throws IOException {
+        File tv = write("tv.fastresume", "d12:qBt-category2:tv16:total_downloadedi9e14:total_uploadedi7ee");
+        File movies = write("movies.fastresume", "d12:qBt-category6:movies14:total_uploadedi7ee");
+        ResetEngine engine = ResetEngine.builder().keys("all").filter("--category", "tv").build();
+
+        ResetEngine.Summary summary = engine.reset(Arrays.asList(tv, movies));
+
+        assertEquals(1, summary.getCount(ResetEngine.Status.RESET));
+        assertEquals(1, summary.getCount(ResetEngine.Status.FILTERED));
+        assertEquals("d12:qBt-category2:tv16:total_downloadedi0e14:total_uploadedi0ee", read("tv.fastresume"));
+        assertEquals("d12:qBt-category6:movies14:total_uploadedi7ee", read("movies.fastresume"));
+        assertThrows(IllegalArgumentException.class, () -> ResetEngine.builder().filter("--category").build());
+    }
+
+    @Test
+    void reset_WithUndo_RecordsOriginalValues() throws IOException {
+        File a = write("a.fastresume", "d14:total_uploadedi123ee");
+        File b = write("b.fastresume", "d14:total_uploadedi0ee");
+        try (ResetEngine engine = ResetEngine.builder().durability("none").undo(true).build()) {
+            engine.reset(Arrays.asList(a, b));
+        }
+
+        List<UndoJournal.Record> records = UndoJournal.read(tempDir.resolve(UndoJournal.UNDO_FILE_NAME).toFile());
+        assertEquals(1, records.size());
+        assertEquals("a.fastresume", records.get(0).getFileName());
+        assertTrue(records.get(0).isCommitted());
+        assertEquals(0, UndoJournal.undo(tempDir.resolve(UndoJournal.UNDO_FILE_NAME).toFile(), 1,
+                new AtomicFileWriter(AtomicFileWriter.Durability.NONE, 1)));
+        assertEquals("d14:total_uploadedi123ee", read("a.fastresume"));
+    }
+
+    @Test
+    void reset_WithUndo_RecordsZeroRaisedByRule() throws IOException {
+        File file = write("a.fastresume", "d16:total_downloadedi40e14:total_uploadedi0ee");
+        try (ResetEngine engine = ResetEngine.builder().rules("ratio 1").undo(true).build()) {
+            engine.reset(Collections.singletonList(file));
+        }
+        assertEquals("d16:total_downloadedi40e14:total_uploadedi40ee", read("a.fastresume"));
+
+        assertEquals(0, UndoJournal.undo(tempDir.resolve(UndoJournal.UNDO_FILE_NAME).toFile(), 1,
+                new AtomicFileWriter(AtomicFileWriter.Durability.NONE, 1)));
+        assertEquals("d16:total_downloadedi40e14:total_uploadedi0ee", read("a.fastresume"));
+    }
+
+    @Test
+    void reset_OrderedWithSkip_ReportsInListingOrder() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            files.add(write(i + ".fastresume", "d14:total_uploadedi0ee"));
+        }
+        List<String> reported = Collections.synchronizedList(new ArrayList<>());
+        ResetEngine engine = ResetEngine.builder().threads(4).ordered(true).skipAlreadyReset(false)
+                .skip(file -> file.getName().startsWith("3"))
+                .listener(result -> reported.add(result.getFile().getName() + " " + result.getStatus())).build();
+
+        ResetEngine.Summary summary = engine.reset(files);
+
+        assertEquals(Arrays.asList("0.fastresume RESET", "1.fastresume RESET", "2.fastresume RESET",
+                "3.fastresume SKIPPED", "4.fastresume RESET", "5.fastresume RESET", "6.fastresume RESET",
+                "7.fastresume RESET"), reported);
+        assertEquals(7, summary.getCount(ResetEngine.Status.RESET));
+        assertEquals(1, summary.getCount(ResetEngine.Status.SKIPPED));
+    }
+
+    @Test
+    void reset_WithConfirmation_AsksInListingOrder() throws IOException {
+        File a = write("a.fastresume", "d14:total_uploadedi1ee");
+        File b = write("b.fastresume", "d14:total_uploadedi2ee");
+        List<String> asked = Collections.synchronizedList(new ArrayList<>());
+        ResetEngine engine = ResetEngine.builder().threads(2).confirmation((file, name, values) -> {
+            asked.add(file.getName() + " " + name + " " + values[0]);
+            return file == a;
+        }).build();
+
+        ResetEngine.Summary summary = engine.reset(Arrays.asList(a, b));
+
+        assertEquals(Arrays.asList("a.fastresume Unknown Torrent 1", "b.fastresume Unknown Torrent 2"), asked);
+        assertEquals(1, summary.getCount(ResetEngine.Status.RESET));
+        assertEquals("d14:total_uploadedi0ee", read("a.fastresume"));
+        assertEquals("d14:total_uploadedi2ee", read("b.fastresume"));
+    }
+
+    @Test
+    void reset_WithConfirmation_ReadsAheadWhileAsking() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            files.add(write(i + ".fastresume", "d14:total_uploadedi1ee"));
+        }
+        CountDownLatch read = new CountDownLatch(files.size());
+        Thread caller = Thread.currentThread();
+        List<Boolean> readAhead = new ArrayList<>();
+        ResetEngine engine = ResetEngine.builder().threads(1).skip(file -> {
+            read.countDown();
+            return false;
+        }).confirmation((file, name, values) -> {
+            try {
+                // With one worker, the later files are only read while this question waits if they are read ahead
+                readAhead.add(Thread.currentThread() == caller && read.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return true;
+        }).build();
+
+        ResetEngine.Summary summary = engine.reset(files);
+
+        assertEquals(Arrays.asList(true, true, true), readAhead);
+        assertEquals(3, summary.getCount(ResetEngine.Status.RESET));
+        assertEquals("d14:total_uploadedi0ee", read("2.fastresume"));
+    }
+
+    @Test
+    void cancel_StopsTakingFiles() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(write(i + ".fastresume", "d14:total_uploadedi1ee"));
+        }
+        List<File> reported = new ArrayList<>();
+        ResetEngine[] engine = new ResetEngine[1];
+        engine[0] = ResetEngine.builder().threads(1).listener(result -> {
+            reported.add(result.getFile());
+            engine[0].cancel();
+        }).build();
+
+        ResetEngine.Summary summary = engine[0].reset(files);
+
+        assertEquals(1, reported.size());
+        assertTrue(summary.isCancelled());
+        assertTrue(engine[0].isCancelled());
+    }
+
+    @Test
+    void reset_LockedFile_IsRetriedThenContended() throws IOException {
+        File locked = write("a.fastresume", "d14:total_uploadedi1ee");
+        List<ResetEngine.FileResult> results = Collections.synchronizedList(new ArrayList<>());
+        ResetEngine engine = ResetEngine.builder().retries(2, 1).listener(results::add).build();
+
+        try (FileChannel channel = FileChannel.open(locked.toPath(), StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            ResetEngine.Summary summary = engine.reset(Collections.singletonList(locked));
+            assertEquals(1, summary.getCount(ResetEngine.Status.CONTENDED));
+        }
+
+        assertEquals(1, results.size());
+        assertEquals(ResetEngine.Status.CONTENDED, results.get(0).getStatus());
+        assertEquals("d14:total_uploadedi1ee", read("a.fastresume"));
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = tempDir.resolve(name).toFile();
+        Files.write(file.toPath(), bytes(content));
+        return file;
+    }
+
+    private String read(String name) throws IOException {
+        return new String(Files.readAllBytes(tempDir.resolve(name)), StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.US_ASCII);
+    }
+}
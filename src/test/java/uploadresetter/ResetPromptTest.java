@@ -0,0 +1,54 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+public class ResetPromptTest {
+    @Test
+    void confirm_YesAndNo() {
+        ResetPrompt prompt = prompt("y\nNO\nYes\n", new ByteArrayOutputStream());
+        assertTrue(prompt.confirm("A", null));
+        assertFalse(prompt.confirm("B", null));
+        assertTrue(prompt.confirm("C", null));
+    }
+
+    @Test
+    void confirm_AllAndNone_DecideTheRest() {
+        ResetPrompt all = prompt("all\n", new ByteArrayOutputStream());
+        assertTrue(all.confirm("A", null));
+        assertTrue(all.confirm("B", null));
+
+        ResetPrompt none = prompt("none\n", new ByteArrayOutputStream());
+        assertFalse(none.confirm("A", null));
+        assertFalse(none.confirm("B", null));
+    }
+
+    @Test
+    void confirm_Match_ResetsMatchingAndAsksForOthers() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResetPrompt prompt = prompt("match *.iso\nn\nnone\n", out);
+        assertFalse(prompt.confirm("Movie.mkv", "total_uploaded 5"));
+        assertTrue(prompt.confirm("Linux.ISO", null));
+        assertFalse(prompt.confirm("Other.mkv", null));
+        assertTrue(prompt.confirm("BSD.iso", null));
+        assertTrue(out.toString().contains("Reset uploaded amount for torrent: Movie.mkv (total_uploaded 5)? "));
+    }
+
+    @Test
+    void confirm_InvalidAnswerAsksAgainAndEndOfInputSkips() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResetPrompt prompt = prompt("maybe\n", out);
+        assertFalse(prompt.confirm("A", null));
+        assertFalse(prompt.confirm("B", null));
+        assertTrue(out.toString().contains("Please answer y, n, all, none or match <glob>"));
+        assertTrue(out.toString().contains("No more answers, skipping the remaining torrents"));
+    }
+
+    private static ResetPrompt prompt(String input, ByteArrayOutputStream out) {
+        return new ResetPrompt(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), new PrintStream(out));
+    }
+}
@@ -0,0 +1,64 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ResetRulesTest {
+    private static final TorrentFilter.ResumeFields TV = TorrentFilter.readFields(bytes(
+            "d12:qBt-category2:tv8:trackersll30:udp://tracker.example.org:1337eee"));
+    private static final TorrentFilter.ResumeFields OTHER = TorrentFilter.readFields(bytes("d4:name1:xe"));
+
+    @Test
+    void target_FirstApplyingRuleDecides() {
+        ResetRules rules = ResetRules.parse(Arrays.asList("ratio 1.5 if tracker=Example.org", "cap 1K if category=tv",
+                "scale 0.25"));
+        assertTrue(rules.readsDownloaded());
+        assertTrue(rules.needsFields());
+        assertEquals(150, rules.target(1000, 100, TV));
+        assertEquals(250, rules.target(1000, 100, OTHER));
+        ResetRules categories = ResetRules.parse(Arrays.asList("cap 1K if category=tv", "zero if category=",
+                "scale 1"));
+        assertEquals(1024, categories.target(5000, 0, TV));
+        assertEquals(0, categories.target(5000, 0, OTHER));
+    }
+
+    @Test
+    void target_RaisesButNeverGoesNegative() {
+        ResetRules rules = ResetRules.parse(Collections.singletonList("ratio 2"));
+        assertEquals(2000, rules.target(100, 1000, null));
+        assertEquals(0, rules.target(-5, 0, null));
+        assertEquals(150, ResetRules.parse(Collections.singletonList("scale 1.5")).target(100, 0, null));
+        assertEquals(100, ResetRules.parse(Collections.singletonList("cap 1G")).target(100, 0, null));
+    }
+
+    @Test
+    void target_NoRuleApplies_LeavesUnchanged() {
+        ResetRules rules = ResetRules.parse(Collections.singletonList("cap 10 if category=tv"));
+        assertEquals(-1, rules.target(100, 0, OTHER));
+        assertEquals(0, ResetRules.parse(Arrays.asList("cap 10 if category=tv", "zero")).target(100, 0, OTHER));
+    }
+
+    @Test
+    void findRules_CollectsRepeatedOptions() {
+        assertEquals(Arrays.asList("zero", "scale 0.5"), ResetRules.findRules(new String[]{"--rule", "zero", "-p",
+                "x", "--rule", "scale 0.5"}));
+        assertSame(ResetRules.NONE, ResetRules.parse(Collections.emptyList()));
+    }
+
+    @Test
+    void parse_InvalidRules_Throw() {
+        for (String invalid : new String[]{"", "half", "zero 1", "ratio", "ratio -1", "ratio x", "scale -1",
+                "cap 10Q", "cap 1G if", "cap 1G if name=x", "scale 0.5 if tracker="}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> ResetRules.parse(Collections.singletonList(invalid)), invalid);
+            assertTrue(e.getMessage().startsWith("Invalid value for --rule option"));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
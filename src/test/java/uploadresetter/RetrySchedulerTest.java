@@ -0,0 +1,56 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RetrySchedulerTest {
+    @Test
+    void schedule_StopsWhenBudgetRunsOut() {
+        RetryScheduler scheduler = new RetryScheduler(2, 0);
+        File file = new File("a.fastresume");
+        assertEquals(0, scheduler.getAttempts(file));
+        assertTrue(scheduler.schedule(file));
+        assertTrue(scheduler.schedule(file));
+        assertFalse(scheduler.schedule(file));
+        assertEquals(3, scheduler.getAttempts(file));
+        assertFalse(new RetryScheduler(0, 0).schedule(file));
+    }
+
+    @Test
+    void delayMillis_BacksOffWithJitter() {
+        RetryScheduler scheduler = new RetryScheduler(10, 100);
+        for (int i = 0; i < 50; i++) {
+            long first = scheduler.delayMillis(1);
+            long third = scheduler.delayMillis(3);
+            long capped = scheduler.delayMillis(10);
+            assertTrue(first >= 50 && first <= 100, "first retry: " + first);
+            assertTrue(third >= 200 && third <= 400, "third retry: " + third);
+            assertTrue(capped >= 4000 && capped <= 8000, "capped retry: " + capped);
+        }
+    }
+
+    @Test
+    void awaitDue_ReturnsDueFilesInOrder() throws InterruptedException {
+        RetryScheduler scheduler = new RetryScheduler(3, 20);
+        File first = new File("a.fastresume");
+        File second = new File("b.fastresume");
+        scheduler.schedule(first);
+        scheduler.schedule(second);
+        scheduler.schedule(second);
+
+        List<File> due = scheduler.awaitDue();
+        assertTrue(due.contains(first) || due.contains(second));
+        List<File> all = new ArrayList<>(due);
+        while (!(due = scheduler.awaitDue()).isEmpty()) {
+            all.addAll(due);
+        }
+        Collections.sort(all);
+        assertEquals(Arrays.asList(first, second, second), all);
+        assertEquals(Collections.emptyList(), scheduler.drain());
+    }
+}
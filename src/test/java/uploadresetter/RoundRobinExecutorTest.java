@@ -0,0 +1,62 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class RoundRobinExecutorTest {
+    @Test
+    void execute_LanesTakeTurns() throws InterruptedException {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(6);
+        try (RoundRobinExecutor executor = new RoundRobinExecutor(1)) {
+            RoundRobinExecutor.Lane big = executor.newLane();
+            RoundRobinExecutor.Lane small = executor.newLane();
+            big.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i <= 4; i++) {
+                String name = "a" + i;
+                big.execute(() -> {
+                    order.add(name);
+                    done.countDown();
+                });
+            }
+            for (int i = 1; i <= 2; i++) {
+                String name = "b" + i;
+                small.execute(() -> {
+                    order.add(name);
+                    done.countDown();
+                });
+            }
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(Arrays.asList("b1", "a1", "b2", "a2", "a3", "a4"), order);
+    }
+
+    @Test
+    void execute_AfterClose_Throws() {
+        RoundRobinExecutor executor = new RoundRobinExecutor(2);
+        RoundRobinExecutor.Lane lane = executor.newLane();
+        executor.close();
+        assertThrows(RejectedExecutionException.class, () -> lane.execute(() -> {
+        }));
+        assertThrows(IllegalArgumentException.class, () -> new RoundRobinExecutor(0));
+    }
+}
@@ -0,0 +1,99 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class RunManifestTest {
+    private static final String KEYS = FastresumePatcher.parse("total_uploaded").getFingerprint();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void load_OtherKeysOrRules_DiscardsManifest() throws IOException {
+        File file = file("a.fastresume", "abc");
+        RunManifest first = RunManifest.load(tempDir.toFile(), KEYS);
+        first.record(file, RunManifest.Result.ALREADY_ZERO);
+        first.save();
+
+        FastresumePatcher all = FastresumePatcher.parse("all");
+        assertFalse(RunManifest.load(tempDir.toFile(), all.getFingerprint()).checkUnchanged(file));
+        FastresumePatcher ruled = FastresumePatcher.parse("total_uploaded")
+                .withRules(ResetRules.parse(Collections.singletonList("cap 1G")));
+        assertNotEquals(KEYS, ruled.getFingerprint());
+        assertFalse(RunManifest.load(tempDir.toFile(), ruled.getFingerprint()).checkUnchanged(file));
+        assertTrue(RunManifest.load(tempDir.toFile(), KEYS).checkUnchanged(file));
+    }
+
+    @Test
+    void checkUnchanged_NoPreviousRun_ReturnsFalse() throws IOException {
+        RunManifest manifest = RunManifest.load(tempDir.toFile(), KEYS);
+        assertFalse(manifest.checkUnchanged(file("a.fastresume", "abc")));
+        assertEquals(1, manifest.getScanned());
+        assertEquals(0, manifest.getSkipped());
+    }
+
+    @Test
+    void checkUnchanged_RecordedInPreviousRun_ReturnsTrue() throws IOException {
+        File file = file("a.fastresume", "abc");
+        RunManifest first = RunManifest.load(tempDir.toFile(), KEYS);
+        first.record(file, RunManifest.Result.RESET);
+        first.save();
+
+        RunManifest second = RunManifest.load(tempDir.toFile(), KEYS);
+        assertTrue(second.checkUnchanged(file));
+        assertEquals(1, second.getSkipped());
+        second.save();
+        assertTrue(RunManifest.load(tempDir.toFile(), KEYS).checkUnchanged(file));
+    }
+
+    @Test
+    void checkUnchanged_ModifiedSinceRecorded_ReturnsFalse() throws IOException {
+        File file = file("a.fastresume", "abc");
+        RunManifest first = RunManifest.load(tempDir.toFile(), KEYS);
+        first.record(file, RunManifest.Result.ALREADY_ZERO);
+        first.save();
+        assertTrue(file.setLastModified(file.lastModified() - 60_000));
+
+        assertFalse(RunManifest.load(tempDir.toFile(), KEYS).checkUnchanged(file));
+    }
+
+    @Test
+    void checkUnchanged_FailedInPreviousRun_ReturnsFalse() throws IOException {
+        File file = file("a.fastresume", "abc");
+        RunManifest first = RunManifest.load(tempDir.toFile(), KEYS);
+        first.record(file, RunManifest.Result.FAILED);
+        first.save();
+
+        assertFalse(RunManifest.load(tempDir.toFile(), KEYS).checkUnchanged(file));
+    }
+
+    @Test
+    void record_CountsSkippedAndRewritten() throws IOException {
+        RunManifest manifest = RunManifest.load(tempDir.toFile(), KEYS);
+        manifest.record(file("a.fastresume", "a"), RunManifest.Result.ALREADY_ZERO);
+        manifest.record(file("b.fastresume", "b"), RunManifest.Result.RESET);
+        manifest.record(file("c.fastresume", "c"), RunManifest.Result.FAILED);
+        assertEquals(1, manifest.getSkipped());
+        assertEquals(1, manifest.getRewritten());
+    }
+
+    @Test
+    void load_CorruptManifest_ReturnsEmptyManifest() throws IOException {
+        Files.write(tempDir.resolve(RunManifest.MANIFEST_FILE_NAME), new byte[] {0x51, 0x42, 0x54, 0x4D, 0, 0});
+        File file = file("a.fastresume", "abc");
+        assertFalse(RunManifest.load(tempDir.toFile(), KEYS).checkUnchanged(file));
+    }
+
+    private File file(String name, String content) throws IOException {
+        File file = tempDir.resolve(name).toFile();
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+}
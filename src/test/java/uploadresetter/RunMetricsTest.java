@@ -0,0 +1,104 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RunMetricsTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void counters_AreSummed() {
+        RunMetrics metrics = new RunMetrics();
+        metrics.increment(RunMetrics.Counter.FILES);
+        metrics.increment(RunMetrics.Counter.FILES);
+        metrics.add(RunMetrics.Counter.BYTES_READ, 1500);
+        assertEquals(2, metrics.get(RunMetrics.Counter.FILES));
+        assertEquals(1500, metrics.get(RunMetrics.Counter.BYTES_READ));
+        assertEquals(0, metrics.get(RunMetrics.Counter.FAILED));
+    }
+
+    @Test
+    void record_CountsPhases() {
+        RunMetrics metrics = new RunMetrics();
+        long start = System.nanoTime();
+        metrics.record(RunMetrics.Phase.READ, start);
+        metrics.record(RunMetrics.Phase.READ, start);
+        assertEquals(2, metrics.count(RunMetrics.Phase.READ));
+        assertEquals(0, metrics.count(RunMetrics.Phase.WRITE));
+    }
+
+    @Test
+    void toJson_ContainsCountersAndPhases() {
+        RunMetrics metrics = new RunMetrics();
+        metrics.increment(RunMetrics.Counter.RESET);
+        metrics.record(RunMetrics.Phase.PATCH, System.nanoTime() - 3_000_000);
+
+        String json = metrics.toJson();
+        assertTrue(json.contains("\"reset\": 1"));
+        assertTrue(json.contains("\"patch\": {"));
+        assertTrue(json.contains("\"p99Micros\": 4096"));
+        assertTrue(json.contains("{\"leMicros\": 4096, \"count\": 1}"));
+    }
+
+    @Test
+    void addAll_WithRoots_ReportsEachRootAndTotal() {
+        RunMetrics first = new RunMetrics();
+        first.increment(RunMetrics.Counter.RESET);
+        first.record(RunMetrics.Phase.WRITE, System.nanoTime() - 3_000_000);
+        RunMetrics second = new RunMetrics();
+        second.add(RunMetrics.Counter.RESET, 2);
+        Map<String, RunMetrics> roots = new LinkedHashMap<>();
+        roots.put("/a/BT_backup", first);
+        roots.put("C:\\b\"", second);
+        RunMetrics total = new RunMetrics();
+        total.addAll(first);
+        total.addAll(second);
+
+        assertEquals(3, total.get(RunMetrics.Counter.RESET));
+        assertEquals(1, total.count(RunMetrics.Phase.WRITE));
+        String json = total.toJson(roots);
+        assertTrue(json.contains("\"reset\": 3"));
+        assertTrue(json.contains("\"/a/BT_backup\": {"));
+        assertTrue(json.contains("\"C:\\\\b\\\"\": {"));
+        assertEquals(3, json.split("\"reset\"", -1).length - 1);
+        String text = total.toPrometheus(roots);
+        assertTrue(text.contains("qbt_upload_resetter_reset_total 3\n"));
+        assertTrue(text.contains("qbt_upload_resetter_root_reset_total{root=\"/a/BT_backup\"} 1\n"));
+        assertTrue(text.contains("qbt_upload_resetter_root_reset_total{root=\"C:\\\\b\\\"\"} 2\n"));
+    }
+
+    @Test
+    void toPrometheus_WritesCumulativeHistogram() {
+        RunMetrics metrics = new RunMetrics();
+        metrics.add(RunMetrics.Counter.BYTES_WRITTEN, 42);
+        metrics.record(RunMetrics.Phase.FSYNC, System.nanoTime() - 3_000_000);
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("# TYPE qbt_upload_resetter_bytes_written_total counter\n"
+                + "qbt_upload_resetter_bytes_written_total 42\n"));
+        String bucket = "qbt_upload_resetter_phase_duration_seconds_bucket{phase=\"fsync\",le=";
+        assertTrue(text.contains(bucket + "\"0.002048\"} 0"));
+        assertTrue(text.contains(bucket + "\"0.004096\"} 1"));
+        assertTrue(text.contains("qbt_upload_resetter_phase_duration_seconds_count{phase=\"fsync\"} 1"));
+    }
+
+    @Test
+    void writeJson_WritesFile() throws IOException {
+        RunMetrics metrics = new RunMetrics();
+        File report = tempDir.resolve("report.json").toFile();
+        metrics.writeJson(report);
+        String json = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+        assertEquals(metrics.toJson().substring(0, 10), json.substring(0, 10));
+        assertTrue(json.contains("\"counters\""));
+        assertFalse(new File(report.getPath() + ".tmp").exists());
+    }
+}
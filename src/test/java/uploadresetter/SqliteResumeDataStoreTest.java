@@ -0,0 +1,187 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class SqliteResumeDataStoreTest {
+    @TempDir
+    Path tempDir;
+
+    private File database;
+
+    @BeforeEach
+    void createDatabase() throws SQLException {
+        database = tempDir.resolve("torrents.db").toFile();
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement()) {
+            // The columns of qBittorrent's torrents table that the store uses
+            statement.execute("CREATE TABLE torrents (id INTEGER PRIMARY KEY, torrent_id BLOB NOT NULL UNIQUE,"
+                    + " name TEXT, category TEXT, metadata BLOB, resumedata BLOB)");
+            insert(connection, 1, "Reset Me", "d14:total_uploadedi123ee");
+            insert(connection, 2, null, "d14:total_uploadedi0ee");
+            insert(connection, 3, "Broken", "d8:trackerslee");
+            insert(connection, 5, "Also Me", "d14:total_uploadedi-9e8:trackerslee");
+            insert(connection, 8, "And Me", "d14:total_uploadedi7ee");
+        }
+    }
+
+    @Test
+    void resetAll_PatchesResumeDataInBatches() throws IOException, SQLException {
+        QbtUploadResetter resetter = resetter(ResetEngine.builder());
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        System.setErr(new PrintStream(errContent));
+        try (SqliteResumeDataStore store = SqliteResumeDataStore.open(database, 2)) {
+            store.resetAll(resetter);
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+
+        assertEquals("d14:total_uploadedi0ee", resumeData(1));
+        assertEquals("d14:total_uploadedi0ee", resumeData(2));
+        assertEquals("d8:trackerslee", resumeData(3));
+        assertEquals("d14:total_uploadedi0e8:trackerslee", resumeData(5));
+        assertEquals("d14:total_uploadedi0ee", resumeData(8));
+        assertEquals(3, resetter.getSuccessfulResets().size());
+        assertTrue(errContent.toString().contains("Failed to reset uploaded amount for torrent: Broken"));
+    }
+
+    @Test
+    void resetAll_WithFilter_SkipsOtherTorrents() throws IOException, SQLException {
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE torrents SET category = 'keep' WHERE id = 5");
+        }
+        QbtUploadResetter resetter = resetter(ResetEngine.builder().filter("--category", "keep", "--name-glob", "*me"));
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try (SqliteResumeDataStore store = SqliteResumeDataStore.open(database, 10)) {
+            store.resetAll(resetter);
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertEquals("d14:total_uploadedi123ee", resumeData(1));
+        assertEquals("d14:total_uploadedi0e8:trackerslee", resumeData(5));
+        assertEquals("d14:total_uploadedi7ee", resumeData(8));
+    }
+
+    @Test
+    void resetAll_WithRules_TakesCategoryFromColumn() throws IOException, SQLException {
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE torrents SET category = 'keep' WHERE id = 8");
+            statement.execute("UPDATE torrents SET category = 'other' WHERE id = 5");
+        }
+        QbtUploadResetter resetter = resetter(ResetEngine.builder()
+                .rules("zero if category=keep", "cap 100 if category="));
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try (SqliteResumeDataStore store = SqliteResumeDataStore.open(database, 10)) {
+            store.resetAll(resetter);
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertEquals("d14:total_uploadedi100ee", resumeData(1));
+        assertEquals("d14:total_uploadedi-9e8:trackerslee", resumeData(5));
+        assertEquals("d14:total_uploadedi0ee", resumeData(8));
+    }
+
+    @Test
+    void resetAll_RecordsUndoByTorrentIdAndVerifies() throws IOException, SQLException {
+        try (Connection connection = connect()) {
+            insert(connection, 9, "Inside String", "d4:note23:xx14:total_uploadedi55e14:total_uploadedi6ee");
+        }
+        File journalFile = SqliteResumeDataStore.undoJournalFile(database);
+        assertEquals(database, SqliteResumeDataStore.databaseOfUndoJournal(journalFile));
+        QbtUploadResetter resetter = resetter(ResetEngine.builder().undo(true).verify(true));
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        System.setErr(new PrintStream(errContent));
+        try {
+            try (SqliteResumeDataStore store = SqliteResumeDataStore.open(database, 2)) {
+                store.resetAll(resetter);
+            }
+            assertEquals("d14:total_uploadedi0ee", resumeData(1));
+            assertEquals("d4:note23:xx14:total_uploadedi55e14:total_uploadedi6ee", resumeData(9));
+            assertTrue(errContent.toString().contains("Inside String - Patched data failed verification"));
+            List<UndoJournal.Record> records = UndoJournal.read(journalFile);
+            assertEquals(Arrays.asList("hash1", "hash5", "hash8"),
+                    records.stream().map(UndoJournal.Record::getFileName).collect(Collectors.toList()));
+            assertTrue(records.stream().allMatch(UndoJournal.Record::isCommitted));
+
+            QbtUploadResetter.undo(journalFile.getPath(), 1);
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+
+        assertEquals("d14:total_uploadedi123ee", resumeData(1));
+        assertEquals("d14:total_uploadedi-9e8:trackerslee", resumeData(5));
+        assertEquals("d14:total_uploadedi7ee", resumeData(8));
+        assertFalse(journalFile.exists());
+    }
+
+    @Test
+    void open_StoreForPath() throws IOException {
+        try (ResumeDataStore store = ResumeDataStore.open(database.getPath())) {
+            assertTrue(store instanceof SqliteResumeDataStore);
+        }
+        try (ResumeDataStore store = ResumeDataStore.open(tempDir.toString())) {
+            assertTrue(store instanceof FastresumeFileStore);
+        }
+    }
+
+    private static QbtUploadResetter resetter(ResetEngine.Builder builder) {
+        return new QbtUploadResetter(builder.threads(1), false, false, null, null);
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+    }
+
+    private static void insert(Connection connection, int id, String name, String resumeData) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO torrents (id, torrent_id, name, resumedata) VALUES (?, ?, ?, ?)")) {
+            insert.setInt(1, id);
+            insert.setString(2, "hash" + id);
+            insert.setString(3, name);
+            insert.setBytes(4, resumeData.getBytes(StandardCharsets.US_ASCII));
+            insert.executeUpdate();
+        }
+    }
+
+    private String resumeData(int id) throws SQLException {
+        try (Connection connection = connect();
+             PreparedStatement select = connection.prepareStatement("SELECT resumedata FROM torrents WHERE id = ?")) {
+            select.setInt(1, id);
+            try (ResultSet result = select.executeQuery()) {
+                assertTrue(result.next());
+                return new String(result.getBytes(1), StandardCharsets.US_ASCII);
+            }
+        }
+    }
+}
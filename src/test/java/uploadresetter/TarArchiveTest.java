@@ -0,0 +1,119 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TarArchiveTest {
+    @Test
+    void copy_UnchangedEntries_AreByteForByte() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        archive.write(entry("a.txt", '0', bytes("hello")));
+        archive.write(entry("dir/", '5', new byte[0]));
+        archive.write(new byte[TarArchive.BLOCK_SIZE * 2]);
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        try (TarArchive.Reader reader = new TarArchive.Reader(new ByteArrayInputStream(archive.toByteArray()));
+             TarArchive.Writer writer = new TarArchive.Writer(copy)) {
+            TarArchive.Entry entry;
+            while ((entry = reader.next()) != null) {
+                writer.copy(entry, reader.getInputStream());
+            }
+        }
+
+        assertArrayEquals(archive.toByteArray(), copy.toByteArray());
+    }
+
+    @Test
+    void write_ResizedEntry_UpdatesSizeAndDropsPaxSize() throws IOException {
+        String longName = "BT_backup/" + String.join("", Collections.nCopies(12, "0123456789"))
+                + ".fastresume";
+        byte[] pax = bytes("29 path=ignored/by/long/name\n12 size=128\n");
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        archive.write(entry("././@LongLink", 'L', bytes(longName)));
+        archive.write(entry("PaxHeaders/a", 'x', pax));
+        archive.write(entry("truncated", '0', new byte[128]));
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        try (TarArchive.Reader reader = new TarArchive.Reader(new ByteArrayInputStream(archive.toByteArray()));
+             TarArchive.Writer writer = new TarArchive.Writer(copy)) {
+            TarArchive.Entry entry = reader.next();
+            assertEquals(longName, entry.getName());
+            assertEquals(128, entry.getSize());
+            assertTrue(entry.isFile());
+            writer.write(entry, bytes("d14:total_uploadedi0ee"), 22);
+            assertNull(reader.next());
+        }
+
+        try (TarArchive.Reader reader = new TarArchive.Reader(new ByteArrayInputStream(copy.toByteArray()))) {
+            TarArchive.Entry entry = reader.next();
+            assertEquals(longName, entry.getName());
+            assertEquals(22, entry.getSize());
+            byte[] data = new byte[22];
+            assertEquals(22, reader.getInputStream().read(data));
+            assertEquals("d14:total_uploadedi0ee", new String(data, StandardCharsets.US_ASCII));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void removePaxRecord_KeepsOtherRecords() {
+        byte[] records = bytes("12 size=128\n16 path=a/b.txt\n");
+        assertEquals("16 path=a/b.txt\n", new String(TarArchive.removePaxRecord(records, "size"),
+                StandardCharsets.UTF_8));
+        assertEquals("a/b.txt", TarArchive.paxValue(records, "path"));
+        assertNull(TarArchive.paxValue(records, "mtime"));
+    }
+
+    @Test
+    void next_CorruptHeader_Throws() {
+        byte[] header = entry("a.txt", '0', new byte[0]);
+        header[0] = 'b';
+        TarArchive.Reader reader = new TarArchive.Reader(new ByteArrayInputStream(header));
+        assertThrows(IOException.class, reader::next);
+    }
+
+    /**
+     * Builds a ustar entry with its padding.
+     */
+    static byte[] entry(String name, char type, byte[] data) {
+        byte[] header = new byte[TarArchive.BLOCK_SIZE];
+        byte[] nameBytes = bytes(name);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        field(header, 100, "0000644");
+        field(header, 108, "0001750");
+        field(header, 116, "0001750");
+        field(header, 124, String.format("%011o", data.length));
+        field(header, 136, "14712345670");
+        header[156] = (byte) type;
+        field(header, 257, "ustar");
+        header[263] = '0';
+        header[264] = '0';
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        field(header, 148, String.format("%06o", sum));
+        int padded = (data.length + TarArchive.BLOCK_SIZE - 1) / TarArchive.BLOCK_SIZE * TarArchive.BLOCK_SIZE;
+        byte[] entry = new byte[TarArchive.BLOCK_SIZE + padded];
+        System.arraycopy(header, 0, entry, 0, header.length);
+        System.arraycopy(data, 0, entry, TarArchive.BLOCK_SIZE, data.length);
+        return entry;
+    }
+
+    private static void field(byte[] header, int offset, String value) {
+        byte[] bytes = bytes(value);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+        header[offset + bytes.length] = 0;
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
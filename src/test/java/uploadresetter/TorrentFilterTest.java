@@ -0,0 +1,85 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TorrentFilterTest {
+    private static final byte[] RESUME_DATA = bytes("d11:active_timei5e12:qBt-category6:movies"
+            + "9:save_path13:D:\\Media\\Film14:total_uploadedi2048e"
+            + "8:trackersll30:udp://tracker.example.org:1337el26:https://other.net/announceee5:zzzzzi1ee");
+
+    @Test
+    void readFields_ReadsTopLevelFields() {
+        TorrentFilter.ResumeFields fields = TorrentFilter.readFields(RESUME_DATA);
+        assertEquals(Long.valueOf(2048), fields.getUploaded());
+        assertEquals("movies", fields.getCategory());
+        assertEquals("D:\\Media\\Film", fields.getSavePath());
+        assertEquals(Arrays.asList("udp://tracker.example.org:1337", "https://other.net/announce"),
+                fields.getTrackers());
+    }
+
+    @Test
+    void readFields_MalformedData_KeepsFieldsReadSoFar() {
+        TorrentFilter.ResumeFields fields = TorrentFilter.readFields(bytes("d14:total_uploadedi7e9:save_path99:x"));
+        assertEquals(Long.valueOf(7), fields.getUploaded());
+        assertNull(fields.getSavePath());
+        assertEquals(Collections.emptyList(), fields.getTrackers());
+        assertNull(TorrentFilter.readFields(bytes("not bencode")).getUploaded());
+    }
+
+    @Test
+    void matches_ChecksAllConfiguredFields() {
+        TorrentFilter.ResumeFields fields = TorrentFilter.readFields(RESUME_DATA);
+        assertTrue(filter("--tracker", "Example.org").matches(fields));
+        assertFalse(filter("--tracker", "ample.org").matches(fields));
+        assertTrue(filter("--category", "movies", "--min-uploaded", "2K").matches(fields));
+        assertFalse(filter("--category", "movies", "--min-uploaded", "3K").matches(fields));
+        assertFalse(filter("--category", "").matches(fields));
+        assertTrue(filter("--save-path", "D:/Media/").matches(fields));
+        assertFalse(filter("--save-path", "D:/Med").matches(fields));
+        assertTrue(filter("--category", "").matches(TorrentFilter.readFields(bytes("d4:name1:xe"))));
+    }
+
+    @Test
+    void matchesName_RegexFindsAndGlobMatchesWholeName() {
+        assertTrue(filter("--name", "S0[1-3]").matchesName("Show.S02E01.1080p"));
+        assertFalse(filter("--name", "S0[4-9]").matchesName("Show.S02E01.1080p"));
+        assertTrue(filter("--name-glob", "show.*.1080?").matchesName("Show.S02E01.1080p"));
+        assertFalse(filter("--name-glob", "show.*").matchesName("The Show.S02E01"));
+        assertTrue(TorrentFilter.NONE.matchesName("anything"));
+    }
+
+    @Test
+    void parse_NoFilterOptions_ReturnsNone() {
+        assertSame(TorrentFilter.NONE, filter("-p", "folder", "-s"));
+        assertFalse(filter("--name", "x").isEmpty());
+    }
+
+    @Test
+    void parse_InvalidValues_Throw() {
+        assertThrows(IllegalArgumentException.class, () -> filter("--name", "("));
+        assertThrows(IllegalArgumentException.class, () -> filter("--min-uploaded", "ten"));
+        assertThrows(IllegalArgumentException.class, () -> filter("--min-uploaded", "-1"));
+        assertThrows(IllegalArgumentException.class, () -> filter("--min-uploaded", "99999999P"));
+        assertThrows(IllegalArgumentException.class, () -> filter("--tracker"));
+    }
+
+    @Test
+    void parseSize_BinaryUnits() {
+        assertEquals(500, TorrentFilter.parseSize("500"));
+        assertEquals(1536, TorrentFilter.parseSize("1536b"));
+        assertEquals(10L << 30, TorrentFilter.parseSize("10G"));
+        assertEquals(2L << 40, TorrentFilter.parseSize("2tb"));
+    }
+
+    private static TorrentFilter filter(String... args) {
+        return TorrentFilter.parse(args);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,95 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.dampcake.bencode.Bencode;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TorrentInfoReaderTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readName_ValidTorrent_ReturnsName() throws IOException {
+        File torrent = new File("src/test/resources/testDir/bunny.torrent");
+        assertEquals("bbb_sunflower_1080p_30fps_stereo_abl.mp4", TorrentInfoReader.readName(torrent));
+    }
+
+    @Test
+    void readName_InfoMissing_ReturnsNull() throws IOException {
+        assertNull(TorrentInfoReader.readName(new File("src/test/resources/invalid-info-null.torrent")));
+    }
+
+    @Test
+    void readName_NameNotString_ReturnsNull() throws IOException {
+        assertNull(TorrentInfoReader.readName(new File("src/test/resources/invalid-name-not-string.torrent")));
+    }
+
+    @Test
+    void readName_EmptyFile_Throws() {
+        assertThrows(IOException.class,
+                () -> TorrentInfoReader.readName(new File("src/test/resources/invalid.torrent")));
+    }
+
+    @Test
+    void readName_Truncated_Throws() throws IOException {
+        File torrent = write("d4:infod6:pieces100:abc");
+        assertThrows(IOException.class, () -> TorrentInfoReader.readName(torrent));
+    }
+
+    @Test
+    void readName_NameAfterLargePieces_ReturnsUtf8Name() throws IOException {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("files", Arrays.asList(file("a.bin"), file("b.bin")));
+        info.put("name", "Ünïcode name");
+        info.put("pieces", new String(new char[200000]));
+        Map<String, Object> torrent = new LinkedHashMap<>();
+        torrent.put("announce", "http://tracker.example/announce");
+        torrent.put("info", info);
+        File file = tempDir.resolve("large.torrent").toFile();
+        Files.write(file.toPath(), new Bencode().encode(torrent));
+
+        assertEquals("Ünïcode name", TorrentInfoReader.readName(file));
+    }
+
+    @Test
+    void read_InfoSpan_MatchesInfoDictionary() throws Exception {
+        File torrent = new File("src/test/resources/testDir/bunny.torrent");
+        TorrentInfoReader.TorrentInfo info = TorrentInfoReader.read(torrent, true);
+        byte[] data = Files.readAllBytes(torrent.toPath());
+
+        Bencode bencode = new Bencode(true);
+        Map<String, Object> decoded = bencode.decode(data, com.dampcake.bencode.Type.DICTIONARY);
+        byte[] expected = bencode.encode((Map<?, ?>) decoded.get("info"));
+        byte[] actual = Arrays.copyOfRange(data, (int) info.getInfoStart(), (int) info.getInfoEnd());
+
+        assertEquals("bbb_sunflower_1080p_30fps_stereo_abl.mp4", info.getName());
+        assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(expected),
+                MessageDigest.getInstance("SHA-1").digest(actual));
+    }
+
+    private static Map<String, Object> file(String name) {
+        Map<String, Object> file = new LinkedHashMap<>();
+        file.put("length", 1024L);
+        file.put("path", Arrays.asList("dir", name));
+        return file;
+    }
+
+    private File write(String content) throws IOException {
+        File file = tempDir.resolve("test.torrent").toFile();
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        return file;
+    }
+}
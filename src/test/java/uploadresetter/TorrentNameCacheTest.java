@@ -0,0 +1,93 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TorrentNameCacheTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void get_UnknownFile_ReturnsNull() throws IOException {
+        TorrentNameCache cache = new TorrentNameCache(tempDir.resolve("names.cache").toFile(), 10);
+        assertNull(cache.get(torrent("a.torrent", "abc")));
+    }
+
+    @Test
+    void saveAndLoad_RoundTripsEntries() throws IOException {
+        File cacheFile = tempDir.resolve("cache/names.cache").toFile();
+        File torrent = torrent("a.torrent", "abc");
+        TorrentNameCache cache = new TorrentNameCache(cacheFile, 10);
+        cache.put(torrent, "Ünïcode name");
+        cache.save();
+
+        TorrentNameCache loaded = TorrentNameCache.load(cacheFile, 10);
+        assertEquals(1, loaded.size());
+        assertEquals("Ünïcode name", loaded.get(torrent));
+    }
+
+    @Test
+    void get_ChangedFile_InvalidatesEntry() throws IOException {
+        File torrent = torrent("a.torrent", "abc");
+        TorrentNameCache cache = new TorrentNameCache(tempDir.resolve("names.cache").toFile(), 10);
+        cache.put(torrent, "name");
+        try (FileOutputStream fos = new FileOutputStream(torrent, true)) {
+            fos.write('d');
+        }
+        assertNull(cache.get(torrent));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void get_ChangedModificationTime_InvalidatesEntry() throws IOException {
+        File torrent = torrent("a.torrent", "abc");
+        TorrentNameCache cache = new TorrentNameCache(tempDir.resolve("names.cache").toFile(), 10);
+        cache.put(torrent, "name");
+        assertTrue(torrent.setLastModified(torrent.lastModified() - 60_000));
+        assertNull(cache.get(torrent));
+    }
+
+    @Test
+    void put_OverMaxEntries_EvictsLeastRecentlyUsed() throws IOException {
+        File a = torrent("a.torrent", "a");
+        File b = torrent("b.torrent", "b");
+        File c = torrent("c.torrent", "c");
+        TorrentNameCache cache = new TorrentNameCache(tempDir.resolve("names.cache").toFile(), 2);
+        cache.put(a, "A");
+        cache.put(b, "B");
+        cache.get(a);
+        cache.put(c, "C");
+
+        assertEquals("A", cache.get(a));
+        assertNull(cache.get(b));
+        assertEquals("C", cache.get(c));
+    }
+
+    @Test
+    void load_CorruptFile_ReturnsEmptyCache() throws IOException {
+        File cacheFile = tempDir.resolve("names.cache").toFile();
+        Files.write(cacheFile.toPath(), new byte[] {1, 2, 3});
+        assertEquals(0, TorrentNameCache.load(cacheFile, 10).size());
+    }
+
+    @Test
+    void getTorrentName_UsesCacheFirst() throws IOException {
+        File dir = tempDir.toFile();
+        File torrent = torrent("cached.torrent", "not bencode");
+        TorrentNameCache cache = new TorrentNameCache(tempDir.resolve("names.cache").toFile(), 10);
+        cache.put(torrent, "Cached Name");
+        assertEquals("Cached Name", ResetEngine.readTorrentName(new File(dir, "cached.fastresume"), cache));
+    }
+
+    private File torrent(String name, String content) throws IOException {
+        File file = tempDir.resolve(name).toFile();
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+}
@@ -0,0 +1,79 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TorrentScannerTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void scan_WritesRowsAndMergesTotals() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            File file = tempDir.resolve(i + ".fastresume").toFile();
+            Files.write(file.toPath(), bytes("d16:total_downloadedi" + i * 10 + "e14:total_uploadedi" + i * 100
+                    + "e8:trackersll" + (i % 2 == 0 ? "19:http://a.org/annce" : "19:http://b.net/annce") + "eee"));
+            files.add(file);
+        }
+        StringWriter out = new StringWriter();
+        TorrentScanner.Summary summary = TorrentScanner.scan(ResetEngine.builder().threads(4).build(), files, out,
+                TorrentScanner.Format.CSV, 3);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals("file,name,tracker,total_uploaded,total_downloaded,ratio", lines[0]);
+        assertEquals(21, lines.length);
+        assertTrue(Arrays.asList(lines).contains("7.fastresume,Unknown Torrent,b.net,700,70,10.00"));
+        assertEquals(20, summary.getTorrents());
+        assertEquals(21000, summary.getUploaded());
+        assertEquals(2100, summary.getDownloaded());
+        assertEquals(3, summary.getTop().size());
+        assertEquals(2000, summary.getTop().get(0).getUploaded());
+        assertEquals(1800, summary.getTop().get(2).getUploaded());
+        for (File file : files) {
+            assertTrue(new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).contains("i"
+                    + file.getName().replace(".fastresume", "") + "00e"));
+        }
+    }
+
+    @Test
+    void toJson_EscapesAndWritesNulls() {
+        TorrentScanner.Row row = new TorrentScanner.Row("a.fastresume", "Say \"hi\"\\", "", 5L, null);
+        assertEquals("{\"file\": \"a.fastresume\", \"name\": \"Say \\\"hi\\\"\\\\\", \"tracker\": \"\", "
+                + "\"total_uploaded\": 5, \"total_downloaded\": null, \"ratio\": null}\n", TorrentScanner.toJson(row));
+        assertEquals("a.fastresume,\"Say \"\"hi\"\"\\\",,5,,\n", TorrentScanner.toCsv(row));
+    }
+
+    @Test
+    void print_ListsTrackersAndTop() {
+        TorrentScanner.Summary first = new TorrentScanner.Summary(1);
+        TorrentScanner.Summary second = new TorrentScanner.Summary(1);
+        first.add(new TorrentScanner.Row("a", "Small", "a.org", 1024L, 2048L));
+        second.add(new TorrentScanner.Row("b", "Large", "", 3L << 30, null));
+        first.merge(second);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        first.print(new PrintStream(out));
+
+        String text = out.toString();
+        assertTrue(text.contains("Scanned 2 torrents: 3.00 GiB uploaded, 2.00 KiB downloaded"));
+        assertTrue(text.contains("  (no tracker): 3.00 GiB uploaded, 0 B downloaded (1 torrents)"));
+        assertTrue(text.contains("1. Large - 3.00 GiB uploaded, ratio -"));
+        assertFalse(text.contains("Small -"));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,166 @@
+package uploadresetter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class UndoJournalTest {
+    private static final FastresumePatcher ALL = FastresumePatcher.parse("all");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void record_SkipsRecordsWithoutChangedValues() throws IOException {
+        File journalFile = tempDir.resolve(UndoJournal.UNDO_FILE_NAME).toFile();
+        try (UndoJournal journal = UndoJournal.open(journalFile)) {
+            journal.record("a.fastresume", ALL.getKeys(), new String[] {"5", null, null, null, null}, 1);
+            journal.record("b.fastresume", ALL.getKeys(), new String[] {null, null, null, null, null}, 2);
+            // A zero that a rule raises changes too
+            journal.record("c.fastresume", ALL.getKeys(), new String[] {"0", null, null, null, null}, 3);
+        }
+        List<UndoJournal.Record> records = UndoJournal.read(journalFile);
+        assertEquals(2, records.size());
+        assertEquals("a.fastresume", records.get(0).getFileName());
+        assertEquals("c.fastresume", records.get(1).getFileName());
+    }
+
+    @Test
+    void open_CutsOffTornRecord() throws IOException {
+        File journalFile = tempDir.resolve(UndoJournal.UNDO_FILE_NAME).toFile();
+        try (UndoJournal journal = UndoJournal.open(journalFile)) {
+            journal.record("a.fastresume", ALL.getKeys(), new String[] {"5", null, null, null, null}, 1);
+            journal.record("b.fastresume", ALL.getKeys(), new String[] {"6", null, null, null, null}, 2);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        try (UndoJournal journal = UndoJournal.open(journalFile)) {
+            journal.record("c.fastresume", ALL.getKeys(), new String[] {"7", null, null, null, null}, 3);
+        }
+        List<UndoJournal.Record> records = UndoJournal.read(journalFile);
+        assertEquals(2, records.size());
+        assertEquals("c.fastresume", records.get(1).getFileName());
+    }
+
+    @Test
+    void undo_ReplaysRecordsNewestFirst() throws IOException {
+        File journalFile = tempDir.resolve(UndoJournal.UNDO_FILE_NAME).toFile();
+        File file = tempDir.resolve("a.fastresume").toFile();
+        byte[] original = bytes("d11:active_timei60e14:total_uploadedi-12345ee");
+        Files.write(file.toPath(), original);
+        try (UndoJournal journal = UndoJournal.open(journalFile)) {
+            reset(journal, file, new FastresumePatcher(FastresumePatcher.DEFAULT_KEYS));
+            reset(journal, file, ALL);
+        }
+        assertArrayEquals(bytes("d11:active_timei0e14:total_uploadedi0ee"), Files.readAllBytes(file.toPath()));
+
+        assertEquals(0, undo(journalFile));
+        assertArrayEquals(original, Files.readAllBytes(file.toPath()));
+        assertFalse(journalFile.exists());
+    }
+
+    @Test
+    void undo_RefusesChangedFileAndKeepsItsRecords() throws IOException {
+        File journalFile = tempDir.resolve(UndoJournal.UNDO_FILE_NAME).toFile();
+        File changed = tempDir.resolve("changed.fastresume").toFile();
+        File unchanged = tempDir.resolve("unchanged.fastresume").toFile();
+        Files.write(changed.toPath(), bytes("d14:total_uploadedi5ee"));
+        Files.write(unchanged.toPath(), bytes("d14:total_uploadedi6ee"));
+        try (UndoJournal journal = UndoJournal.open(journalFile)) {
+            reset(journal, changed, ALL);
+            reset(journal, unchanged, ALL);
+        }
+        Files.write(changed.toPath(), bytes("d14:total_uploadedi0e5:queuei1ee"));
+
+        assertEquals(1, undo(journalFile));
+        assertArrayEquals(bytes("d14:total_uploadedi0e5:queuei1ee"), Files.readAllBytes(changed.toPath()));
+        assertArrayEquals(bytes("d14:total_uploadedi6ee"), Files.readAllBytes(unchanged.toPath()));
+        List<UndoJournal.Record> records = UndoJournal.read(journalFile);
+        assertEquals(1, records.size());
+        assertEquals("changed.fastresume", records.get(0).getFileName());
+    }
+
+    @Test
+    void undo_DropsUncommittedRecordOfWriteThatNeverHappened() throws IOException {
+        File journalFile = tempDir.resolve(UndoJournal.UNDO_FILE_NAME).toFile();
+        File file = tempDir.resolve("a.fastresume").toFile();
+        byte[] original = bytes("d11:active_timei60e14:total_uploadedi5ee");
+        Files.write(file.toPath(), original);
+        try (UndoJournal journal = UndoJournal.open(journalFile)) {
+            reset(journal, file, new FastresumePatcher(FastresumePatcher.DEFAULT_KEYS));
+            // The write of this reset failed, so its record was never committed
+            byte[] neverWritten = bytes("d11:active_timei0e14:total_uploadedi0ee");
+            assertTrue(journal.record(file.getName(), ALL.getKeys(), new String[] {null, null, null, "60", null},
+                    UndoJournal.checksum(neverWritten, neverWritten.length)));
+        }
+        List<UndoJournal.Record> records = UndoJournal.read(journalFile);
+        assertTrue(records.get(0).isCommitted());
+        assertFalse(records.get(1).isCommitted());
+
+        assertEquals(0, undo(journalFile));
+        assertArrayEquals(original, Files.readAllBytes(file.toPath()));
+        assertFalse(journalFile.exists());
+    }
+
+    @Test
+    void open_Version1Journal_KeepsRecordsAsCommitted() throws IOException {
+        File journalFile = tempDir.resolve(UndoJournal.UNDO_FILE_NAME).toFile();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(journalFile))) {
+            out.writeInt(0x51425455);
+            out.writeInt(1);
+            out.writeUTF("a.fastresume");
+            out.writeLong(1);
+            out.writeByte(1);
+            out.writeUTF(FastresumePatcher.UPLOADED_KEY);
+            out.writeUTF("5");
+        }
+        try (UndoJournal journal = UndoJournal.open(journalFile)) {
+            journal.record("b.fastresume", ALL.getKeys(), new String[] {"6", null, null, null, null}, 2);
+        }
+        List<UndoJournal.Record> records = UndoJournal.read(journalFile);
+        assertEquals(2, records.size());
+        assertTrue(records.get(0).isCommitted());
+        assertEquals("b.fastresume", records.get(1).getFileName());
+        assertFalse(records.get(1).isCommitted());
+    }
+
+    private static void reset(UndoJournal journal, File file, FastresumePatcher patcher) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        String[] oldValues = new String[patcher.getKeys().size()];
+        FastresumePatcher.Patched patched = patcher.patch(data, oldValues);
+        long checksum = UndoJournal.checksum(patched.getData(), patched.getLength());
+        journal.record(file.getName(), patcher.getKeys(), oldValues, checksum);
+        Files.write(file.toPath(), patched.toArray());
+        journal.commit(file.getName(), checksum);
+    }
+
+    private static int undo(File journalFile) throws IOException {
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            return UndoJournal.undo(journalFile, 2,
+                    new AtomicFileWriter(AtomicFileWriter.Durability.NONE, AtomicFileWriter.DEFAULT_BATCH_SIZE));
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}